@@ -0,0 +1,62 @@
+package com.podverse.fdroid;
+
+import static org.junit.Assert.assertNotNull;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+public class PVBenchmarkTest {
+    /*
+        Runs the benchmarks of the debug source set on a device, with connectedDebugAndroidTest.
+        Each benchmark logs its results under its own tag and describes what it measures. None of
+        them touch the app's own data.
+     */
+
+    // PV.CustomRSS.parallelParserDefaultLimit, what parseAllAddByRSSPodcasts uses by default
+    private static final int FEED_PARSER_PARALLEL_LIMIT = 3;
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    }
+
+    @Test
+    public void pushBenchmark() throws Exception {
+        assertNotNull(PVPushBenchmark.run(context));
+    }
+
+    @Test
+    public void episodeStoreBenchmark() throws Exception {
+        assertNotNull(PVEpisodeStoreBenchmark.run(context));
+    }
+
+    @Test
+    public void feedParserBenchmark() throws Exception {
+        assertNotNull(PVFeedParserBenchmark.run(context, FEED_PARSER_PARALLEL_LIMIT));
+    }
+
+    @Test
+    public void downloadSoakTest() throws Exception {
+        // Throws when a download fails or a file doesn't match
+        assertNotNull(PVDownloadSoakTest.run(context));
+    }
+
+    @Test
+    public void asyncStorageBenchmark() throws Exception {
+        assertNotNull(PVAsyncStorageBenchmark.run(context));
+    }
+
+    @Test
+    public void mediaIndexBenchmark() {
+        assertNotNull(NoxMediaIndexBenchmark.INSTANCE.run());
+    }
+}
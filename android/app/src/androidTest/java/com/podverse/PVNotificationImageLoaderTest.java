@@ -0,0 +1,304 @@
+package com.podverse.fdroid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(AndroidJUnit4.class)
+public class PVNotificationImageLoaderTest {
+    /*
+        Runs PVNotificationImageLoader against a local HTTP server that serves artwork with
+        validators, redirects, oversized and slow responses. Each test has a loader and disk cache
+        of its own, so the app's cached artwork isn't touched.
+     */
+
+    private static final String CACHE_DIR_NAME = "notification-image-loader-test";
+    private static final String ETAG = "\"pv-image-loader-test\"";
+    private static final String LAST_MODIFIED = "Mon, 01 Jan 2024 00:00:00 GMT";
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long SLOW_RESPONSE_MS = 3000;
+
+    private static class Request {
+        final String path;
+        final Map<String, String> headers;
+
+        Request(String path, Map<String, String> headers) {
+            this.path = path;
+            this.headers = headers;
+        }
+    }
+
+    private static class Server {
+        final ServerSocket serverSocket;
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final List<Request> requests = new ArrayList<>();
+        final Map<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+        final byte[] image;
+
+        Server(byte[] image) throws IOException {
+            this.image = image;
+            serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            executor.execute(this::serve);
+        }
+
+        String getUrl(String path) {
+            return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/" + path;
+        }
+
+        int getRequestCount(String path) {
+            AtomicInteger count = requestCounts.get("/" + path);
+            return count != null ? count.get() : 0;
+        }
+
+        synchronized Request getLastRequest(String path) {
+            for (int i = requests.size() - 1; i >= 0; i--) {
+                if (requests.get(i).path.equals("/" + path)) {
+                    return requests.get(i);
+                }
+            }
+            return null;
+        }
+
+        void close() throws IOException {
+            serverSocket.close();
+            executor.shutdownNow();
+        }
+
+        private void serve() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    executor.execute(() -> respond(socket));
+                } catch (IOException e) {
+                    // Closed when the test finishes
+                    return;
+                }
+            }
+        }
+
+        private void respond(Socket socket) {
+            try (Socket connection = socket) {
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(connection.getInputStream(), StandardCharsets.US_ASCII));
+                String path = reader.readLine().split(" ")[1];
+                Map<String, String> headers = new HashMap<>();
+                String line;
+                while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                    int colon = line.indexOf(':');
+                    headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+                }
+
+                synchronized (this) {
+                    requests.add(new Request(path, headers));
+                }
+                requestCounts.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+
+                OutputStream output = connection.getOutputStream();
+                if (path.equals("/image")) {
+                    if (ETAG.equals(headers.get("if-none-match"))) {
+                        writeHead(output, "304 Not Modified", null, -1);
+                    } else {
+                        writeHead(output, "200 OK", "ETag: " + ETAG + "\r\nLast-Modified: " + LAST_MODIFIED, image.length);
+                        output.write(image);
+                    }
+                } else if (path.equals("/slow-image")) {
+                    Thread.sleep(SLOW_RESPONSE_MS / 3);
+                    writeHead(output, "200 OK", null, image.length);
+                    output.write(image);
+                } else if (path.equals("/slow")) {
+                    Thread.sleep(SLOW_RESPONSE_MS);
+                    writeHead(output, "200 OK", null, image.length);
+                    output.write(image);
+                } else if (path.startsWith("/redirect/")) {
+                    int hops = Integer.parseInt(path.substring("/redirect/".length()));
+                    String location = hops > 1 ? "/redirect/" + (hops - 1) : "/image";
+                    writeHead(output, "302 Found", "Location: " + location, 0);
+                } else if (path.equals("/too-large")) {
+                    writeHead(output, "200 OK", null, PVNotificationImageLoader.MAX_IMAGE_BYTES + 1);
+                    output.write(image);
+                } else if (path.equals("/too-large-unknown-length")) {
+                    // Without a Content-Length, so the cap has to be enforced while reading
+                    writeHead(output, "200 OK", null, -1);
+                    byte[] buffer = new byte[64 * 1024];
+                    for (long written = 0; written <= PVNotificationImageLoader.MAX_IMAGE_BYTES; written += buffer.length) {
+                        output.write(buffer);
+                    }
+                } else {
+                    writeHead(output, "404 Not Found", null, 0);
+                }
+                output.flush();
+            } catch (IOException | InterruptedException e) {
+                // The loader gave up on the response
+            }
+        }
+
+        private static void writeHead(OutputStream output, String status, String headers, long contentLength)
+                throws IOException {
+            StringBuilder head = new StringBuilder("HTTP/1.1 ").append(status).append("\r\n");
+            if (headers != null) {
+                head.append(headers).append("\r\n");
+            }
+            if (contentLength >= 0) {
+                head.append("Content-Length: ").append(contentLength).append("\r\n");
+            }
+            head.append("Connection: close\r\n\r\n");
+            output.write(head.toString().getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    private Context context;
+    private File cacheDir;
+    private Server server;
+
+    @Before
+    public void setUp() throws IOException {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        cacheDir = new File(context.getCacheDir(), CACHE_DIR_NAME);
+        deleteDirectory(cacheDir);
+        server = new Server(createImage(2048, 1024));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+        deleteDirectory(cacheDir);
+    }
+
+    @Test
+    public void loadsAndScalesDownImage() {
+        Bitmap bitmap = newLoader(Long.MAX_VALUE).load(server.getUrl("image"), TIMEOUT_NANOS);
+
+        assertNotNull(bitmap);
+        int targetSizePx = Math.min(context.getResources().getDisplayMetrics().widthPixels, 1024);
+        assertTrue(Math.max(bitmap.getWidth(), bitmap.getHeight()) <= targetSizePx);
+    }
+
+    @Test
+    public void followsRedirectsUpToTheLimit() {
+        var loader = newLoader(Long.MAX_VALUE);
+
+        assertNotNull(loader.load(server.getUrl("redirect/" + PVNotificationImageLoader.MAX_REDIRECTS), TIMEOUT_NANOS));
+        assertNull(loader.load(server.getUrl("redirect/" + (PVNotificationImageLoader.MAX_REDIRECTS + 1)), TIMEOUT_NANOS));
+    }
+
+    @Test
+    public void rejectsImagesOverTheSizeCap() {
+        var loader = newLoader(Long.MAX_VALUE);
+
+        assertNull(loader.load(server.getUrl("too-large"), TIMEOUT_NANOS));
+        assertNull(loader.load(server.getUrl("too-large-unknown-length"), TIMEOUT_NANOS));
+    }
+
+    @Test
+    public void revalidatesWithETagAndLastModified() {
+        // Every load after the first revalidates
+        var loader = newLoader(0);
+
+        assertNotNull(loader.load(server.getUrl("image"), TIMEOUT_NANOS));
+        assertNull(server.getLastRequest("image").headers.get("if-none-match"));
+
+        assertNotNull(loader.load(server.getUrl("image"), TIMEOUT_NANOS));
+        Request revalidation = server.getLastRequest("image");
+        assertEquals(ETAG, revalidation.headers.get("if-none-match"));
+        assertEquals(LAST_MODIFIED, revalidation.headers.get("if-modified-since"));
+        assertEquals(2, server.getRequestCount("image"));
+    }
+
+    @Test
+    public void servesFromMemoryUntilRevalidationIsDue() {
+        var loader = newLoader(Long.MAX_VALUE);
+
+        assertNotNull(loader.load(server.getUrl("image"), TIMEOUT_NANOS));
+        assertNotNull(loader.load(server.getUrl("image"), TIMEOUT_NANOS));
+        assertEquals(1, server.getRequestCount("image"));
+    }
+
+    @Test
+    public void givesUpAtTheDeadline() {
+        long start = System.nanoTime();
+        Bitmap bitmap = newLoader(Long.MAX_VALUE).load(server.getUrl("slow"), TimeUnit.MILLISECONDS.toNanos(500));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertNull(bitmap);
+        assertTrue("Waited " + elapsedMs + " ms", elapsedMs < SLOW_RESPONSE_MS);
+    }
+
+    @Test
+    public void sharesOneDownloadBetweenConcurrentRequests() throws Exception {
+        var loader = newLoader(Long.MAX_VALUE);
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+
+        try {
+            List<Future<Bitmap>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(callers.submit(() -> loader.load(server.getUrl("slow-image"), TIMEOUT_NANOS)));
+            }
+            for (Future<Bitmap> result : results) {
+                assertNotNull(result.get());
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+
+        assertEquals(1, server.getRequestCount("slow-image"));
+    }
+
+    private PVNotificationImageLoader newLoader(long revalidateAfterMs) {
+        return new PVNotificationImageLoader(context, cacheDir, revalidateAfterMs);
+    }
+
+    private static byte[] createImage(int width, int height) {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(0xff336699);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, output);
+        bitmap.recycle();
+
+        return output.toByteArray();
+    }
+
+    private static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
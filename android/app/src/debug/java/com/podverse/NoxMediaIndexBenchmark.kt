@@ -0,0 +1,145 @@
+package com.podverse.fdroid
+
+import android.database.sqlite.SQLiteDatabase
+import android.provider.MediaStore
+import android.util.Log
+import com.facebook.react.bridge.Arguments
+import com.facebook.react.bridge.WritableMap
+
+/*
+    Benchmarks NoxMediaIndex on a synthetic library of TRACK_COUNT tracks. Only in debug builds,
+    run on the device by PVBenchmarkTest. The tracks are rows of an in-memory SQLite table with
+    MediaStore's column names, so the index runs the same selections against it, and the device's
+    library is never touched. DOWNLOAD_COUNT of the tracks are episodes in DOWNLOAD_DIR, spread
+    through the library.
+
+    - fullScan: every row read and filtered by RELATIVE_PATH in Kotlin, which is what listMediaDir
+      did before
+    - dirSelection: DOWNLOAD_DIR filtered in SQL and read in pages, with nothing cached
+    - dirCached: the same lookup answered from memory
+    - fileNameSelection / fileNameCached: display name lookups, uncached and cached
+    - fileNameBatch: every download's display name in one uncached batch lookup
+ */
+object NoxMediaIndexBenchmark {
+    private const val TRACK_COUNT = 50000
+    private const val DIRECTORY_COUNT = 500
+    private const val DOWNLOAD_COUNT = 300
+    private const val DOWNLOAD_DIR = "Podcasts/Podverse/"
+    private const val ITERATIONS = 20
+    private const val TABLE = "audio"
+
+    fun run(): WritableMap {
+        val db = SQLiteDatabase.create(null)
+        try {
+            createLibrary(db)
+
+            val index = NoxMediaIndex { selection, selectionArgs, limit ->
+                db.query(TABLE, NoxMediaIndex.PROJECTION, selection, selectionArgs, null, null,
+                    "${MediaStore.Audio.Media._ID} ASC", limit.toString())
+            }
+
+            val results = Arguments.createMap()
+            results.putInt("tracks", TRACK_COUNT)
+            results.putInt("downloads", DOWNLOAD_COUNT)
+
+            var start = System.nanoTime()
+            repeat(ITERATIONS) { check(fullScan(db, DOWNLOAD_DIR) == DOWNLOAD_COUNT) }
+            results.putMap("fullScan", result(ITERATIONS, System.nanoTime() - start))
+
+            start = System.nanoTime()
+            repeat(ITERATIONS) {
+                index.invalidate()
+                check(index.listDir(DOWNLOAD_DIR, true).size == DOWNLOAD_COUNT)
+            }
+            results.putMap("dirSelection", result(ITERATIONS, System.nanoTime() - start))
+
+            start = System.nanoTime()
+            repeat(ITERATIONS) { check(index.listDir(DOWNLOAD_DIR, true).size == DOWNLOAD_COUNT) }
+            results.putMap("dirCached", result(ITERATIONS, System.nanoTime() - start))
+
+            index.invalidate()
+            start = System.nanoTime()
+            for (download in 0 until DOWNLOAD_COUNT) {
+                check(index.findByFileName("episode-$download.mp3").size == 1)
+            }
+            results.putMap("fileNameSelection", result(DOWNLOAD_COUNT, System.nanoTime() - start))
+
+            start = System.nanoTime()
+            for (download in 0 until DOWNLOAD_COUNT) {
+                check(index.findByFileName("episode-$download.mp3").size == 1)
+            }
+            results.putMap("fileNameCached", result(DOWNLOAD_COUNT, System.nanoTime() - start))
+
+            val fileNames = (0 until DOWNLOAD_COUNT).map { "episode-$it.mp3" } + "missing.mp3"
+            start = System.nanoTime()
+            repeat(ITERATIONS) {
+                index.invalidate()
+                val files = index.findByFileNames(fileNames)
+                check(files.size == fileNames.size && files.values.count { it.isEmpty() } == 1)
+            }
+            results.putMap("fileNameBatch", result(ITERATIONS, System.nanoTime() - start))
+
+            Log.i("NoxFileUtil", results.toString())
+
+            return results
+        } finally {
+            db.close()
+        }
+    }
+
+    private fun createLibrary(db: SQLiteDatabase) {
+        db.execSQL("CREATE TABLE $TABLE (" +
+            "${MediaStore.Audio.Media._ID} INTEGER PRIMARY KEY, " +
+            "${MediaStore.Audio.Media.RELATIVE_PATH} TEXT, " +
+            "${MediaStore.Audio.Media.DISPLAY_NAME} TEXT, " +
+            "${MediaStore.Audio.Media.DATA} TEXT)")
+
+        val insert = db.compileStatement("INSERT INTO $TABLE VALUES (?, ?, ?, ?)")
+        val downloadEvery = TRACK_COUNT / DOWNLOAD_COUNT
+        db.beginTransaction()
+        try {
+            for (track in 1..TRACK_COUNT) {
+                val isDownload = track % downloadEvery == 0 && track / downloadEvery <= DOWNLOAD_COUNT
+                val relativePath = if (isDownload) DOWNLOAD_DIR else "Music/Artist ${track % DIRECTORY_COUNT}/"
+                val fileName = if (isDownload) "episode-${track / downloadEvery - 1}.mp3" else "track-$track.mp3"
+                insert.bindLong(1, track.toLong())
+                insert.bindString(2, relativePath)
+                insert.bindString(3, fileName)
+                insert.bindString(4, "/storage/emulated/0/$relativePath$fileName")
+                insert.executeInsert()
+            }
+            db.setTransactionSuccessful()
+        } finally {
+            db.endTransaction()
+            insert.close()
+        }
+    }
+
+    private fun fullScan(db: SQLiteDatabase, relativeDir: String): Int {
+        var matches = 0
+        db.query(TABLE, NoxMediaIndex.PROJECTION, null, null, null, null, null).use { cursor ->
+            val idColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID)
+            val pathColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.RELATIVE_PATH)
+            val nameColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DISPLAY_NAME)
+            val dataColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATA)
+            while (cursor.moveToNext()) {
+                val mediaPath = cursor.getString(pathColumn)
+                if (mediaPath.startsWith(relativeDir)) {
+                    NoxMediaIndex.MediaFile(
+                        cursor.getLong(idColumn), mediaPath, cursor.getString(nameColumn), cursor.getString(dataColumn))
+                    matches++
+                }
+            }
+        }
+        return matches
+    }
+
+    private fun result(operations: Int, elapsedNanos: Long): WritableMap {
+        val result = Arguments.createMap()
+        result.putInt("operations", operations)
+        result.putDouble("totalMs", elapsedNanos / 1_000_000.0)
+        result.putDouble("avgUs", elapsedNanos / operations.toDouble() / 1000)
+
+        return result
+    }
+}
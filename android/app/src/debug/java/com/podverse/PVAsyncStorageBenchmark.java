@@ -0,0 +1,159 @@
+package com.podverse.fdroid;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PVAsyncStorageBenchmark {
+    /*
+        Compares the startup reads of AsyncStorage keys one at a time with a single
+        PVAsyncStorageModule.multiGetBatched read. Only in debug builds, run on the device by
+        PVBenchmarkTest. A throwaway database with AsyncStorage's table is used, so the app's
+        storage is never touched.
+
+        Startup reads about STARTUP_KEY_COUNT keys. Most are small settings, and LARGE_VALUE_CHARS
+        lists the sizes of the few large JSON values, such as the queue and history.
+
+        - perKey: one query per key, which is what each AsyncStorage.getItem call runs natively, with
+          the values stored as plain text. The bridge round trip of every call comes on top of this.
+        - batched: the same keys read by multiGetBatched's code in one transaction, with the large
+          values stored compressed as multiSetBatched writes them
+     */
+
+    private static final int STARTUP_KEY_COUNT = 40;
+    private static final int[] LARGE_VALUE_CHARS = {20 * 1024, 50 * 1024, 200 * 1024, 500 * 1024};
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int ITERATIONS = 20;
+    private static final String DATABASE_FILE_NAME = "PVAsyncStorageBenchmark.db";
+    private static final String PLAIN_KEY_PREFIX = "plain:";
+    private static final String BATCHED_KEY_PREFIX = "batched:";
+
+    @NonNull
+    public static WritableMap run(@NonNull Context context) throws IOException {
+        File databaseFile = new File(context.getCacheDir(), DATABASE_FILE_NAME);
+        SQLiteDatabase.deleteDatabase(databaseFile);
+        SQLiteDatabase database = SQLiteDatabase.openOrCreateDatabase(databaseFile, null);
+
+        try {
+            database.execSQL("CREATE TABLE " + PVAsyncStorageSizeTracker.TABLE_CATALYST + " ("
+                    + PVAsyncStorageSizeTracker.KEY_COLUMN + " TEXT PRIMARY KEY, "
+                    + PVAsyncStorageSizeTracker.VALUE_COLUMN + " TEXT NOT NULL)");
+
+            List<String> plainKeys = new ArrayList<>();
+            List<String> batchedKeys = new ArrayList<>();
+            long plainChars = 0;
+            long batchedChars = 0;
+
+            for (int i = 0; i < STARTUP_KEY_COUNT; i++) {
+                String value = i < LARGE_VALUE_CHARS.length
+                        ? syntheticJson(LARGE_VALUE_CHARS[i])
+                        : "{\"setting\":" + i + ",\"enabled\":true}";
+                String storedValue = PVCompressedValue.encode(value);
+
+                plainKeys.add(PLAIN_KEY_PREFIX + i);
+                batchedKeys.add(BATCHED_KEY_PREFIX + i);
+                insert(database, PLAIN_KEY_PREFIX + i, value);
+                insert(database, BATCHED_KEY_PREFIX + i, storedValue);
+                plainChars += value.length();
+                batchedChars += storedValue.length();
+            }
+
+            WritableMap results = Arguments.createMap();
+            results.putInt("keys", STARTUP_KEY_COUNT);
+            results.putDouble("plainChars", plainChars);
+            results.putDouble("batchedChars", batchedChars);
+            results.putMap("perKey", benchmarkPerKey(database, plainKeys));
+            results.putMap("batched", benchmarkBatched(database, batchedKeys));
+
+            Log.i("com.podverse.fdroid.PVAsyncStorageBenchmark", results.toString());
+
+            return results;
+        } finally {
+            database.close();
+            SQLiteDatabase.deleteDatabase(databaseFile);
+        }
+    }
+
+    private static WritableMap benchmarkPerKey(SQLiteDatabase database, List<String> keys) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            readPerKey(database, keys);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            readPerKey(database, keys);
+        }
+
+        return result(ITERATIONS, System.nanoTime() - start);
+    }
+
+    private static WritableMap benchmarkBatched(SQLiteDatabase database, List<String> keys) throws IOException {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            PVAsyncStorageModule.readBatch(database, keys);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            PVAsyncStorageModule.readBatch(database, keys);
+        }
+
+        return result(ITERATIONS, System.nanoTime() - start);
+    }
+
+    // The query AsyncStorage's multiGet runs for a getItem call, outside of a transaction
+    private static void readPerKey(SQLiteDatabase database, List<String> keys) {
+        for (String key : keys) {
+            try (Cursor cursor = database.rawQuery(
+                    "SELECT " + PVAsyncStorageSizeTracker.KEY_COLUMN + ", " + PVAsyncStorageSizeTracker.VALUE_COLUMN
+                            + " FROM " + PVAsyncStorageSizeTracker.TABLE_CATALYST
+                            + " WHERE " + PVAsyncStorageSizeTracker.KEY_COLUMN + " IN (?)",
+                    new String[]{key})) {
+                while (cursor.moveToNext()) {
+                    cursor.getString(1);
+                }
+            }
+        }
+    }
+
+    private static void insert(SQLiteDatabase database, String key, String value) {
+        database.execSQL("INSERT INTO " + PVAsyncStorageSizeTracker.TABLE_CATALYST + " VALUES (?, ?)",
+                new Object[]{key, value});
+    }
+
+    // A JSON array of episode-like objects, about as compressible as the real queue and history
+    private static String syntheticJson(int chars) {
+        StringBuilder json = new StringBuilder(chars + 256).append('[');
+        for (int i = 0; json.length() < chars; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"episode-").append(i)
+                    .append("\",\"title\":\"Episode ").append(i).append(": a reasonably long episode title\"")
+                    .append(",\"podcastId\":\"podcast-").append(i % 50)
+                    .append("\",\"mediaUrl\":\"https://example.com/podcast-").append(i % 50).append("/episode-").append(i).append(".mp3\"")
+                    .append(",\"pubDate\":\"2024-01-01T00:00:00.000Z\",\"duration\":").append(1800 + i).append('}');
+        }
+
+        return json.append(']').toString();
+    }
+
+    private static WritableMap result(int operations, long elapsedNanos) {
+        WritableMap result = Arguments.createMap();
+        result.putInt("operations", operations);
+        result.putDouble("totalMs", elapsedNanos / 1_000_000.0);
+        result.putDouble("avgUs", elapsedNanos / (double) operations / 1000);
+
+        return result;
+    }
+}
@@ -0,0 +1,347 @@
+package com.podverse.fdroid;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class PVDownloadSoakTest {
+    /*
+        Runs PVDownloadEngine against a local HTTP server that drops connections partway through a
+        response, and checks every downloaded file byte for byte. Only in debug builds, run on the
+        device by PVBenchmarkTest. It uses its own database, so the app's downloads aren't touched.
+
+        - ranged: a file served with Range support, fetched in chunks
+        - singleStream: a file served without Range support, fetched as a single stream
+        - pauseResume: a ranged download paused and resumed partway
+        - restart: a ranged download stopped as if the app was killed, then resumed by a new engine
+          on the same database, which must only fetch what was missing
+
+        Throws when a download fails or a file doesn't match.
+     */
+
+    private static final String DATABASE_NAME = "PVDownloadsSoakTest";
+    private static final String DIRECTORY_NAME = "download-soak-test";
+    private static final String ETAG = "\"pv-download-soak-test\"";
+    private static final int RANGED_FILE_BYTES = 16 * 1024 * 1024;
+    private static final int STREAM_FILE_BYTES = 4 * 1024 * 1024;
+    private static final double DROP_RATE = 0.3;
+    private static final long THROTTLED_BYTES_PER_SECOND = 4 * 1024 * 1024;
+    private static final long STOP_AFTER_MS = 1000;
+    private static final long TIMEOUT_MS = 120000;
+
+    private static class Server {
+        final ServerSocket serverSocket;
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final Random random = new Random(42);
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong drops = new AtomicLong();
+        final AtomicLong bytesServed = new AtomicLong();
+        final byte[] rangedFile = createFile(RANGED_FILE_BYTES, 1);
+        final byte[] streamFile = createFile(STREAM_FILE_BYTES, 2);
+
+        Server() throws IOException {
+            serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            executor.execute(this::serve);
+        }
+
+        String getUrl(String path) {
+            return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/" + path;
+        }
+
+        void resetStats() {
+            requests.set(0);
+            drops.set(0);
+            bytesServed.set(0);
+        }
+
+        void close() throws IOException {
+            serverSocket.close();
+            executor.shutdownNow();
+        }
+
+        private void serve() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    executor.execute(() -> respond(socket));
+                } catch (IOException e) {
+                    // Closed when the soak test finishes
+                    return;
+                }
+            }
+        }
+
+        private void respond(Socket socket) {
+            try (Socket connection = socket) {
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(connection.getInputStream(), StandardCharsets.US_ASCII));
+                String requestLine = reader.readLine();
+                String range = null;
+                String ifRange = null;
+                String line;
+                while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                    String lowerCase = line.toLowerCase(Locale.ROOT);
+                    if (lowerCase.startsWith("range:")) {
+                        range = line.substring(6).trim();
+                    } else if (lowerCase.startsWith("if-range:")) {
+                        ifRange = line.substring(9).trim();
+                    }
+                }
+                requests.incrementAndGet();
+
+                String path = requestLine == null ? "" : requestLine.split(" ")[1].substring(1);
+                boolean supportsRanges = path.equals("ranged");
+                byte[] file = supportsRanges ? rangedFile : path.equals("stream") ? streamFile : null;
+
+                OutputStream output = connection.getOutputStream();
+                if (file == null) {
+                    output.write("HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\nConnection: close\r\n\r\n"
+                            .getBytes(StandardCharsets.US_ASCII));
+                    return;
+                }
+
+                int start = 0;
+                int end = file.length - 1;
+                String headers;
+                if (supportsRanges && range != null && (ifRange == null || ifRange.equals(ETAG))) {
+                    String[] bounds = range.substring("bytes=".length()).split("-", -1);
+                    start = Integer.parseInt(bounds[0]);
+                    if (!bounds[1].isEmpty()) {
+                        end = Math.min(end, Integer.parseInt(bounds[1]));
+                    }
+                    headers = "HTTP/1.1 206 Partial Content\r\nContent-Range: bytes " + start + "-" + end + "/"
+                            + file.length + "\r\n";
+                } else {
+                    headers = "HTTP/1.1 200 OK\r\n";
+                }
+                if (supportsRanges) {
+                    headers += "Accept-Ranges: bytes\r\nETag: " + ETAG + "\r\n";
+                }
+                headers += "Content-Type: audio/mpeg\r\nContent-Length: " + (end - start + 1)
+                        + "\r\nConnection: close\r\n\r\n";
+                output.write(headers.getBytes(StandardCharsets.US_ASCII));
+
+                int length = end - start + 1;
+                synchronized (random) {
+                    if (random.nextDouble() < DROP_RATE) {
+                        length = random.nextInt(length);
+                        drops.incrementAndGet();
+                    }
+                }
+
+                for (int offset = 0; offset < length; offset += 64 * 1024) {
+                    int sliceLength = Math.min(64 * 1024, length - offset);
+                    output.write(file, start + offset, sliceLength);
+                    bytesServed.addAndGet(sliceLength);
+                }
+                output.flush();
+            } catch (IOException e) {
+                // The engine disconnects when a download is paused or stopped
+            }
+        }
+    }
+
+    private static class StatusListener implements PVDownloadEngine.Listener {
+        final Map<String, LinkedBlockingQueue<String>> statuses = new ConcurrentHashMap<>();
+
+        @Override
+        public void onProgress(@NonNull List<PVDownloadEngine.Progress> progress) {
+            // Only statuses are waited on
+        }
+
+        @Override
+        public void onStatusChanged(@NonNull String id, @NonNull String status, @Nullable String error) {
+            if (PVDownloadEngine.STATUS_ERROR.equals(status)) {
+                Log.e("com.podverse.fdroid.PVDownloadSoakTest", "Download " + id + " failed: " + error);
+            }
+            getStatuses(id).add(status);
+        }
+
+        void awaitStatus(String id, String status) throws Exception {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            while (true) {
+                String next = getStatuses(id).poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                if (next == null) {
+                    throw new IOException("Timed out waiting for " + id + " to be " + status);
+                }
+                if (next.equals(status)) {
+                    return;
+                }
+                if (PVDownloadEngine.STATUS_ERROR.equals(next)) {
+                    throw new IOException("Download " + id + " failed");
+                }
+            }
+        }
+
+        private LinkedBlockingQueue<String> getStatuses(String id) {
+            LinkedBlockingQueue<String> queue = statuses.get(id);
+            if (queue == null) {
+                statuses.putIfAbsent(id, new LinkedBlockingQueue<>());
+                queue = statuses.get(id);
+            }
+            return queue;
+        }
+    }
+
+    @NonNull
+    public static WritableMap run(@NonNull Context context) throws Exception {
+        context.deleteDatabase(DATABASE_NAME);
+        File directory = new File(context.getCacheDir(), DIRECTORY_NAME);
+        deleteDirectory(directory);
+
+        PVDownloadStore store = new PVDownloadStore(context, DATABASE_NAME);
+        Server server = new Server();
+        StatusListener listener = new StatusListener();
+        PVDownloadEngine engine = new PVDownloadEngine(store);
+        engine.setListener(listener);
+
+        try {
+            WritableMap results = Arguments.createMap();
+
+            server.resetStats();
+            long start = System.nanoTime();
+            String ranged = new File(directory, "ranged.bin").getPath();
+            engine.download("ranged", server.getUrl("ranged"), ranged, Collections.emptyMap());
+            listener.awaitStatus("ranged", PVDownloadEngine.STATUS_FINISHED);
+            verify(ranged, server.rangedFile);
+            results.putMap("ranged", result(server, System.nanoTime() - start));
+
+            server.resetStats();
+            start = System.nanoTime();
+            String stream = new File(directory, "stream.bin").getPath();
+            engine.download("stream", server.getUrl("stream"), stream, Collections.emptyMap());
+            listener.awaitStatus("stream", PVDownloadEngine.STATUS_FINISHED);
+            verify(stream, server.streamFile);
+            results.putMap("singleStream", result(server, System.nanoTime() - start));
+
+            engine.setLimits(PVDownloadEngine.DEFAULT_MAX_CONCURRENT_DOWNLOADS,
+                    PVDownloadEngine.DEFAULT_MAX_CONNECTIONS_PER_DOWNLOAD, THROTTLED_BYTES_PER_SECOND);
+
+            server.resetStats();
+            start = System.nanoTime();
+            String pauseResume = new File(directory, "pause-resume.bin").getPath();
+            engine.download("pauseResume", server.getUrl("ranged"), pauseResume, Collections.emptyMap());
+            Thread.sleep(STOP_AFTER_MS);
+            engine.pause("pauseResume");
+            listener.awaitStatus("pauseResume", PVDownloadEngine.STATUS_PAUSED);
+            engine.resume("pauseResume");
+            listener.awaitStatus("pauseResume", PVDownloadEngine.STATUS_FINISHED);
+            verify(pauseResume, server.rangedFile);
+            results.putMap("pauseResume", result(server, System.nanoTime() - start));
+
+            start = System.nanoTime();
+            String restart = new File(directory, "restart.bin").getPath();
+            engine.download("restart", server.getUrl("ranged"), restart, Collections.emptyMap());
+            Thread.sleep(STOP_AFTER_MS);
+            engine.shutdown();
+
+            server.resetStats();
+            engine = new PVDownloadEngine(store);
+            engine.setListener(listener);
+            PVDownloadStore.Download download = store.getDownload("restart");
+            if (download == null || !PVDownloadEngine.STATUS_PENDING.equals(download.status)) {
+                throw new IOException("Interrupted download wasn't left pending");
+            }
+            long bytesWritten = engine.getBytesWritten(download);
+            engine.resume("restart");
+            listener.awaitStatus("restart", PVDownloadEngine.STATUS_FINISHED);
+            verify(restart, server.rangedFile);
+            if (bytesWritten == 0 || server.bytesServed.get() >= RANGED_FILE_BYTES) {
+                throw new IOException("Interrupted download started over instead of resuming");
+            }
+            WritableMap restartResult = result(server, System.nanoTime() - start);
+            restartResult.putDouble("bytesResumedFrom", bytesWritten);
+            results.putMap("restart", restartResult);
+
+            Log.i("com.podverse.fdroid.PVDownloadSoakTest", results.toString());
+
+            return results;
+        } finally {
+            engine.shutdown();
+            server.close();
+            store.close();
+            context.deleteDatabase(DATABASE_NAME);
+            deleteDirectory(directory);
+        }
+    }
+
+    /**
+     * Returns a file whose bytes differ with their position, so a byte written at the wrong offset
+     * is caught.
+     */
+    private static byte[] createFile(int length, int seed) {
+        byte[] file = new byte[length];
+        for (int position = 0; position < length; position++) {
+            file[position] = (byte) ((position * seed) ^ (position >>> 8) ^ (position >>> 16));
+        }
+        return file;
+    }
+
+    private static void verify(String path, byte[] expected) throws IOException {
+        File file = new File(path);
+        if (file.length() != expected.length) {
+            throw new IOException(file.getName() + " is " + file.length() + " bytes, not " + expected.length);
+        }
+
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream input = new FileInputStream(file)) {
+            int position = 0;
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                for (int index = 0; index < read; index++, position++) {
+                    if (buffer[index] != expected[position]) {
+                        throw new IOException(file.getName() + " differs at byte " + position);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static WritableMap result(Server server, long elapsedNanos) {
+        WritableMap result = Arguments.createMap();
+        result.putDouble("totalMs", elapsedNanos / 1_000_000.0);
+        result.putDouble("requests", server.requests.get());
+        result.putDouble("drops", server.drops.get());
+        result.putDouble("bytesServed", server.bytesServed.get());
+
+        return result;
+    }
+}
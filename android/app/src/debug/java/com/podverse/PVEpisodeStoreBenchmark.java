@@ -0,0 +1,237 @@
+package com.podverse.fdroid;
+
+import android.content.Context;
+import android.util.JsonReader;
+import android.util.JsonWriter;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+public class PVEpisodeStoreBenchmark {
+    /*
+        Benchmarks PVEpisodeStore on a synthetic library of FEED_COUNT feeds with EPISODES_PER_FEED
+        episodes each. Only in debug builds, run on the device by PVBenchmarkTest. A throwaway
+        database and library file are used, the app's episodes are never touched.
+
+        - rebuild: indexing the whole library from its stored JSON
+        - updateOne: replacing one feed's episodes, which is what a write after refreshing one feed does
+        - fullScan: parsing the whole library to filter one date range, which is what every episode
+          list render did before, minus the JS overhead
+        - firstPage / dateRange / titleSearch / videoOnly: single page queries against the store
+     */
+
+    private static final int FEED_COUNT = 200;
+    private static final int EPISODES_PER_FEED = 1000;
+    private static final int PAGE_SIZE = 20;
+    private static final int QUERY_ITERATIONS = 50;
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+    private static final long NEWEST_PUB_DATE = 1704067200000L; // 2024-01-01
+
+    private static final String BENCHMARK_DATABASE_NAME = "PVEpisodeStoreBenchmark";
+    private static final String BENCHMARK_LIBRARY_FILE_NAME = "pv_episode_store_benchmark.json";
+
+    @NonNull
+    public static WritableMap run(@NonNull Context context) throws IOException {
+        File libraryFile = new File(context.getCacheDir(), BENCHMARK_LIBRARY_FILE_NAME);
+        var store = new PVEpisodeStore(context, BENCHMARK_DATABASE_NAME);
+
+        try {
+            writeLibrary(libraryFile);
+
+            WritableMap results = Arguments.createMap();
+            results.putInt("episodes", FEED_COUNT * EPISODES_PER_FEED);
+            results.putDouble("libraryBytes", libraryFile.length());
+
+            long start = System.nanoTime();
+            try (BufferedReader reader = new BufferedReader(new FileReader(libraryFile))) {
+                store.rebuild(reader);
+            }
+            results.putMap("rebuild", result(1, System.nanoTime() - start));
+
+            var feedUrls = new ArrayList<String>();
+            for (int feed = 0; feed < FEED_COUNT; feed++) {
+                feedUrls.add(feedUrl(feed));
+            }
+            StringWriter changedPodcasts = new StringWriter();
+            try (JsonWriter writer = new JsonWriter(changedPodcasts)) {
+                writer.beginArray();
+                writePodcast(writer, 0, isoDateFormat());
+                writer.endArray();
+            }
+
+            start = System.nanoTime();
+            store.update(new StringReader(changedPodcasts.toString()), feedUrls);
+            results.putMap("updateOne", result(1, System.nanoTime() - start));
+
+            // Roughly one page of server results, 30 days back from the newest episode
+            long oldestPubDate = NEWEST_PUB_DATE - 30 * DAY_MS;
+
+            start = System.nanoTime();
+            int matched = fullScan(libraryFile, oldestPubDate);
+            WritableMap fullScan = result(1, System.nanoTime() - start);
+            fullScan.putInt("matched", matched);
+            results.putMap("fullScan", fullScan);
+
+            var firstPage = new PVEpisodeStore.Query();
+            firstPage.limit = PAGE_SIZE;
+            results.putMap("firstPage", benchmarkQuery(store, firstPage));
+
+            var dateRange = new PVEpisodeStore.Query();
+            dateRange.oldestPubDate = oldestPubDate;
+            dateRange.limit = PAGE_SIZE;
+            results.putMap("dateRange", benchmarkQuery(store, dateRange));
+
+            var titleSearch = new PVEpisodeStore.Query();
+            titleSearch.searchTitle = "Episode 42";
+            titleSearch.limit = PAGE_SIZE;
+            results.putMap("titleSearch", benchmarkQuery(store, titleSearch));
+
+            var videoOnly = new PVEpisodeStore.Query();
+            videoOnly.hasVideo = true;
+            videoOnly.limit = PAGE_SIZE;
+            results.putMap("videoOnly", benchmarkQuery(store, videoOnly));
+
+            Log.i("com.podverse.fdroid.PVEpisodeStoreBenchmark", results.toString());
+
+            return results;
+        } finally {
+            store.deleteDatabase(context);
+            libraryFile.delete();
+        }
+    }
+
+    private static WritableMap benchmarkQuery(PVEpisodeStore store, PVEpisodeStore.Query query) {
+        // Warm up the page cache and the compiled statement
+        store.queryEpisodes(query);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < QUERY_ITERATIONS; i++) {
+            store.queryEpisodes(query);
+        }
+
+        return result(QUERY_ITERATIONS, System.nanoTime() - start);
+    }
+
+    private static int fullScan(File libraryFile, long oldestPubDate) throws IOException {
+        SimpleDateFormat isoDateFormat = isoDateFormat();
+        int matched = 0;
+
+        try (JsonReader reader = new JsonReader(new BufferedReader(new FileReader(libraryFile)))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (!"episodes".equals(reader.nextName())) {
+                        reader.skipValue();
+                        continue;
+                    }
+
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            if ("pubDate".equals(reader.nextName())) {
+                                try {
+                                    if (isoDateFormat.parse(reader.nextString()).getTime() >= oldestPubDate) {
+                                        matched++;
+                                    }
+                                } catch (ParseException e) {
+                                    // Not counted
+                                }
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                    }
+                    reader.endArray();
+                }
+                reader.endObject();
+            }
+            reader.endArray();
+        }
+
+        return matched;
+    }
+
+    private static void writeLibrary(File libraryFile) throws IOException {
+        SimpleDateFormat isoDateFormat = isoDateFormat();
+
+        try (JsonWriter writer = new JsonWriter(new BufferedWriter(new FileWriter(libraryFile)))) {
+            writer.beginArray();
+            for (int feed = 0; feed < FEED_COUNT; feed++) {
+                writePodcast(writer, feed, isoDateFormat);
+            }
+            writer.endArray();
+        }
+    }
+
+    private static void writePodcast(JsonWriter writer, int feed, SimpleDateFormat isoDateFormat) throws IOException {
+        String feedUrl = feedUrl(feed);
+
+        writer.beginObject();
+        writer.name("addByRSSPodcastFeedUrl").value(feedUrl);
+        writer.name("id").value(feedUrl);
+        writer.name("title").value("Benchmark Podcast " + feed);
+        writer.name("description").value("A synthetic podcast used to benchmark the episode store.");
+        writer.name("imageUrl").value("https://images.example.com/benchmark-" + feed + ".jpg");
+        writer.name("hasVideo").value(feed % 10 == 0);
+
+        writer.name("episodes").beginArray();
+        for (int episode = 0; episode < EPISODES_PER_FEED; episode++) {
+            // Feeds publish on staggered schedules, so pubDates interleave across feeds
+            long pubDate = NEWEST_PUB_DATE - episode * (feed % 7 + 1) * DAY_MS - feed * 60_000L;
+
+            writer.beginObject();
+            writer.name("addedByRSS").value(true);
+            writer.name("id").value("benchmark-" + feed + "-" + episode);
+            writer.name("mediaUrl").value("https://media.example.com/benchmark-" + feed + "-" + episode + ".mp3");
+            writer.name("mediaType").value(feed % 10 == 0 ? "video/mp4" : "audio/mpeg");
+            writer.name("title").value("Episode " + episode + " of Benchmark Podcast " + feed);
+            writer.name("description").value("Show notes for episode " + episode + ", long enough to look like a real description of an episode.");
+            writer.name("duration").value(3600);
+            writer.name("pubDate").value(isoDateFormat.format(new Date(pubDate)));
+            writer.endObject();
+        }
+        writer.endArray();
+
+        writer.endObject();
+    }
+
+    private static String feedUrl(int feed) {
+        return "https://feeds.example.com/benchmark-" + feed + ".xml";
+    }
+
+    private static SimpleDateFormat isoDateFormat() {
+        SimpleDateFormat isoDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        isoDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return isoDateFormat;
+    }
+
+    private static WritableMap result(int operations, long elapsedNanos) {
+        WritableMap result = Arguments.createMap();
+        result.putInt("operations", operations);
+        result.putDouble("totalMs", elapsedNanos / 1_000_000.0);
+        result.putDouble("avgUs", elapsedNanos / (double) operations / 1000);
+
+        return result;
+    }
+}
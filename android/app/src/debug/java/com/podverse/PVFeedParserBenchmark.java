@@ -0,0 +1,245 @@
+package com.podverse.fdroid;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class PVFeedParserBenchmark {
+    /*
+        Benchmarks fetching and parsing a corpus of feeds through PVFeedParserModule's code path.
+        Only in debug builds, run on the device by PVBenchmarkTest.
+
+        The feeds are served by a minimal HTTP server on localhost, so results don't depend on the
+        network. The corpus is every .xml file in the app's external files directory under
+        CORPUS_DIRECTORY_NAME, e.g. large real-world feeds pushed there with adb. When there are
+        none, SYNTHETIC_FEED_COUNT synthetic feeds shaped like large real-world feeds are used.
+
+        - sequential: every feed parsed on a single worker
+        - parallel: every feed parsed on parallelLimit workers, like parseAllAddByRSSPodcasts
+     */
+
+    private static final String CORPUS_DIRECTORY_NAME = "feed-benchmark";
+    private static final int SYNTHETIC_FEED_COUNT = 12;
+    private static final int SYNTHETIC_EPISODES_PER_FEED = 2000;
+    private static final int TIMEOUT_MS = 60000;
+
+    @NonNull
+    public static WritableMap run(@NonNull Context context, int parallelLimit) throws Exception {
+        Map<String, byte[]> corpus = loadCorpus(context);
+
+        try (ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            ExecutorService server = Executors.newCachedThreadPool();
+            server.execute(() -> serve(serverSocket, corpus, server));
+
+            List<String> urls = new ArrayList<>();
+            long corpusBytes = 0;
+            for (Map.Entry<String, byte[]> feed : corpus.entrySet()) {
+                urls.add("http://127.0.0.1:" + serverSocket.getLocalPort() + "/" + feed.getKey());
+                corpusBytes += feed.getValue().length;
+            }
+
+            WritableMap results = Arguments.createMap();
+            results.putInt("feeds", urls.size());
+            results.putDouble("corpusBytes", corpusBytes);
+            results.putInt("parallelLimit", parallelLimit);
+
+            // Warm up the parser and the connections
+            results.putInt("episodes", parseAll(urls, 1));
+
+            long start = System.nanoTime();
+            parseAll(urls, 1);
+            results.putMap("sequential", result(urls.size(), System.nanoTime() - start));
+
+            start = System.nanoTime();
+            parseAll(urls, parallelLimit);
+            results.putMap("parallel", result(urls.size(), System.nanoTime() - start));
+
+            server.shutdownNow();
+
+            Log.i("com.podverse.fdroid.PVFeedParserBenchmark", results.toString());
+
+            return results;
+        }
+    }
+
+    private static int parseAll(List<String> urls, int parallelLimit) throws Exception {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        PVFeedParserModule.setPoolSize(pool, parallelLimit);
+        ThreadLocal<PVFeedParser> feedParser = new ThreadLocal<PVFeedParser>() {
+            @Override
+            protected PVFeedParser initialValue() {
+                return new PVFeedParser();
+            }
+        };
+
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (String url : urls) {
+                results.add(pool.submit(() -> PVFeedParserModule.fetchAndParse(
+                        feedParser.get(), url, url, Collections.emptyMap(), TIMEOUT_MS, null, false)));
+            }
+
+            int episodes = 0;
+            for (Future<String> result : results) {
+                episodes += new JSONObject(result.get()).getJSONArray("episodes").length();
+            }
+            return episodes;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void serve(ServerSocket serverSocket, Map<String, byte[]> corpus, ExecutorService server) {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                server.execute(() -> respond(socket, corpus));
+            } catch (IOException e) {
+                // Closed when the benchmark finishes
+                return;
+            }
+        }
+    }
+
+    private static void respond(Socket socket, Map<String, byte[]> corpus) {
+        try (Socket connection = socket) {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(connection.getInputStream(), StandardCharsets.US_ASCII));
+            String requestLine = reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                // Request headers aren't used
+            }
+
+            String path = requestLine == null ? "" : requestLine.split(" ")[1].substring(1);
+            byte[] body = corpus.get(path);
+
+            OutputStream output = connection.getOutputStream();
+            if (body == null) {
+                output.write("HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\nConnection: close\r\n\r\n"
+                        .getBytes(StandardCharsets.US_ASCII));
+            } else {
+                output.write(("HTTP/1.1 200 OK\r\nContent-Type: application/rss+xml\r\nContent-Length: "
+                        + body.length + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                output.write(body);
+            }
+            output.flush();
+        } catch (IOException e) {
+            Log.e("com.podverse.fdroid.PVFeedParserBenchmark", "Failed to serve feed", e);
+        }
+    }
+
+    private static Map<String, byte[]> loadCorpus(Context context) throws IOException {
+        Map<String, byte[]> corpus = new HashMap<>();
+
+        File corpusDirectory = context.getExternalFilesDir(CORPUS_DIRECTORY_NAME);
+        File[] files = corpusDirectory == null ? null : corpusDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(".xml")) {
+                    corpus.put(file.getName(), readFile(file));
+                }
+            }
+        }
+
+        if (corpus.isEmpty()) {
+            for (int feed = 0; feed < SYNTHETIC_FEED_COUNT; feed++) {
+                corpus.put("synthetic-" + feed + ".xml", syntheticFeed(feed));
+            }
+        }
+
+        return corpus;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        try (InputStream input = new FileInputStream(file)) {
+            int offset = 0;
+            int read;
+            while (offset < bytes.length && (read = input.read(bytes, offset, bytes.length - offset)) != -1) {
+                offset += read;
+            }
+        }
+        return bytes;
+    }
+
+    private static byte[] syntheticFeed(int feed) {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<rss version=\"2.0\" xmlns:itunes=\"http://www.itunes.com/dtds/podcast-1.0.dtd\"")
+                .append(" xmlns:podcast=\"https://podcastindex.org/namespace/1.0\"")
+                .append(" xmlns:content=\"http://purl.org/rss/1.0/modules/content/\"><channel>\n")
+                .append("<title>Benchmark Podcast ").append(feed).append("</title>\n")
+                .append("<link>https://example.com/benchmark-").append(feed).append("</link>\n")
+                .append("<language>en</language>\n")
+                .append("<description><![CDATA[<p>A synthetic podcast used to benchmark the feed parser.</p>]]></description>\n")
+                .append("<itunes:image href=\"https://images.example.com/benchmark-").append(feed).append(".jpg\"/>\n")
+                .append("<itunes:explicit>no</itunes:explicit>\n")
+                .append("<podcast:guid>benchmark-").append(feed).append("</podcast:guid>\n")
+                .append("<podcast:funding url=\"https://example.com/support\">Support the show</podcast:funding>\n")
+                .append("<podcast:value type=\"lightning\" method=\"keysend\" suggested=\"0.00000005000\">")
+                .append("<podcast:valueRecipient name=\"Host\" type=\"node\" address=\"03ae9f91a0cb8ff43840e3c322c4c61f019d8c1c3cea15a25cfc425ac605e61a4a\" split=\"100\"/>")
+                .append("</podcast:value>\n");
+
+        for (int episode = 0; episode < SYNTHETIC_EPISODES_PER_FEED; episode++) {
+            xml.append("<item>\n")
+                    .append("<title>Episode ").append(episode).append(" of Benchmark Podcast ").append(feed).append("</title>\n")
+                    .append("<guid isPermaLink=\"false\">benchmark-").append(feed).append('-').append(episode).append("</guid>\n")
+                    .append("<pubDate>Mon, 01 Jan 2024 10:00:00 GMT</pubDate>\n")
+                    .append("<enclosure url=\"https://media.example.com/benchmark-").append(feed).append('-').append(episode)
+                    .append(".mp3\" type=\"audio/mpeg\" length=\"52428800\"/>\n")
+                    .append("<itunes:duration>01:02:03</itunes:duration>\n")
+                    .append("<itunes:episodeType>full</itunes:episodeType>\n")
+                    .append("<description><![CDATA[<p>Show notes for episode ").append(episode)
+                    .append(", long enough to look like the description of a real episode.</p>")
+                    .append("<ul><li>00:00 Intro</li><li>05:00 News</li><li>45:00 Listener mail</li></ul>")
+                    .append("<p>Links: <a href=\"https://example.com/a\">one</a>, <a href=\"https://example.com/b\">two</a></p>]]></description>\n")
+                    .append("<content:encoded><![CDATA[<p>Full show notes for episode ").append(episode)
+                    .append(" that feeds often repeat next to the description.</p>]]></content:encoded>\n")
+                    .append("<podcast:soundbite startTime=\"120\" duration=\"30\">Highlight</podcast:soundbite>\n")
+                    .append("</item>\n");
+        }
+
+        xml.append("</channel></rss>\n");
+
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static WritableMap result(int operations, long elapsedNanos) {
+        WritableMap result = Arguments.createMap();
+        result.putInt("operations", operations);
+        result.putDouble("totalMs", elapsedNanos / 1_000_000.0);
+        result.putDouble("avgUs", elapsedNanos / (double) operations / 1000);
+
+        return result;
+    }
+}
@@ -0,0 +1,262 @@
+package com.podverse.fdroid;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class PVPushBenchmark {
+    /*
+        Benchmarks for the native push pipeline. Only in debug builds, run on the device by
+        PVBenchmarkTest with connectedDebugAndroidTest.
+
+        A throwaway key set and notification store are used, so the app's push keys and stored
+        notifications are never touched. Payloads are encrypted with Tink the same way a push server
+        would, then measured stage by stage and as a whole burst:
+
+        - decryptRebuild: WebPush decryption per message with the keys parsed and the decryptor
+          built for every message, as decryptNotification did before it was cached
+        - decrypt: WebPush decryption per message with the cached decryptor
+        - storePopSharedPreferences: the same with the comma-separated id list in SharedPreferences
+          that PVNotificationStore replaced, as a baseline
+        - storePop: storing and popping with STORED_NOTIFICATIONS already stored
+        - jsonOrgJson / jsonStreaming: building an org.json tree versus PVJsonConverter
+        - endToEnd: decrypt, parse, store and convert for a burst of BURST_SIZE messages
+     */
+
+    private static final int WARMUP_ITERATIONS = 50;
+    private static final int ITERATIONS = 500;
+    private static final int BURST_SIZE = 200;
+    private static final int STORED_NOTIFICATIONS = PVNotificationStore.MAX_STORED_NOTIFICATIONS;
+    private static final String BENCHMARK_STORE_FILE_NAME = "pv_notifications_benchmark.log";
+    private static final String BENCHMARK_SHARED_PREF_NAME = "PVNotificationsBenchmark";
+    private static final String PREF_KEY_NOTIFICATION_IDS = "notification_ids";
+    private static final String PREF_KEY_NOTIFICATION_PREFIX = "pvn-";
+    private static final String DELIMITER = ",";
+
+    @NonNull
+    public static WritableMap run(@NonNull Context context) throws GeneralSecurityException, IOException, JSONException {
+        var keys = PVUnifiedPushEncryption.generate();
+
+        String[] payloads = new String[ITERATIONS];
+        byte[][] encryptedPayloads = new byte[ITERATIONS][];
+        for (int i = 0; i < ITERATIONS; i++) {
+            payloads[i] = syntheticPayload(i);
+            encryptedPayloads[i] = keys.encrypt(payloads[i].getBytes(StandardCharsets.UTF_8));
+        }
+
+        WritableMap results = Arguments.createMap();
+        results.putMap("decryptRebuild", benchmarkDecryptRebuild(keys, encryptedPayloads));
+        results.putMap("decrypt", benchmarkDecrypt(keys, encryptedPayloads));
+        results.putMap("storePopSharedPreferences", benchmarkStorePopSharedPreferences(context, payloads));
+        results.putMap("storePop", benchmarkStorePop(context, payloads));
+        results.putMap("jsonOrgJson", benchmarkOrgJson(payloads));
+        results.putMap("jsonStreaming", benchmarkStreamingJson(payloads));
+        results.putMap("endToEnd", benchmarkEndToEnd(context, keys, encryptedPayloads));
+
+        Log.i("com.podverse.fdroid.PVPushBenchmark", results.toString());
+
+        return results;
+    }
+
+    private static WritableMap benchmarkDecryptRebuild(PVUnifiedPushEncryption keys, byte[][] encryptedPayloads)
+            throws GeneralSecurityException {
+        String pushPrivateKey = keys.getPushPrivateKey();
+        String pushPublicKey = keys.getPushPublicKey();
+        String authKey = keys.getAuthKey();
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            PVUnifiedPushEncryption.fromStored(pushPrivateKey, pushPublicKey, authKey).decrypt(encryptedPayloads[i]);
+        }
+
+        long start = System.nanoTime();
+        for (byte[] encryptedPayload : encryptedPayloads) {
+            PVUnifiedPushEncryption.fromStored(pushPrivateKey, pushPublicKey, authKey).decrypt(encryptedPayload);
+        }
+
+        return result(encryptedPayloads.length, System.nanoTime() - start);
+    }
+
+    private static WritableMap benchmarkDecrypt(PVUnifiedPushEncryption keys, byte[][] encryptedPayloads) throws GeneralSecurityException {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            keys.decrypt(encryptedPayloads[i]);
+        }
+
+        long start = System.nanoTime();
+        for (byte[] encryptedPayload : encryptedPayloads) {
+            keys.decrypt(encryptedPayload);
+        }
+
+        return result(encryptedPayloads.length, System.nanoTime() - start);
+    }
+
+    private static WritableMap benchmarkStorePopSharedPreferences(Context context, String[] payloads) {
+        SharedPreferences preferences = context.getSharedPreferences(BENCHMARK_SHARED_PREF_NAME, Context.MODE_PRIVATE);
+        preferences.edit().clear().commit();
+
+        try {
+            for (int i = 0; i < STORED_NOTIFICATIONS; i++) {
+                storeSharedPreferences(preferences, i + 1, payloads[i % payloads.length]);
+            }
+
+            // Same load as storePop
+            long start = System.nanoTime();
+            for (int i = 0; i < payloads.length; i++) {
+                int messageId = STORED_NOTIFICATIONS + i + 1;
+                storeSharedPreferences(preferences, messageId, payloads[i]);
+                popSharedPreferences(preferences, messageId - STORED_NOTIFICATIONS / 2);
+            }
+
+            return result(payloads.length, System.nanoTime() - start);
+        } finally {
+            preferences.edit().clear().commit();
+        }
+    }
+
+    // PVUnifiedPushModule.storeNotificationString before PVNotificationStore, without the logging
+    private static void storeSharedPreferences(SharedPreferences preferences, int messageId, String payload) {
+        SharedPreferences.Editor editor = preferences.edit();
+
+        editor.putString(PREF_KEY_NOTIFICATION_PREFIX + messageId, payload);
+        String notificationIds = preferences.getString(PREF_KEY_NOTIFICATION_IDS, "");
+        notificationIds += messageId + DELIMITER;
+
+        List<String> allNotificationList = new ArrayList<>(Arrays.asList(notificationIds.split(DELIMITER)));
+        if (allNotificationList.size() > STORED_NOTIFICATIONS) {
+            String firstMessageId = allNotificationList.get(0);
+            editor.remove(PREF_KEY_NOTIFICATION_PREFIX + firstMessageId);
+            notificationIds = notificationIds.replace(firstMessageId + DELIMITER, "");
+        }
+        editor.putString(PREF_KEY_NOTIFICATION_IDS, notificationIds);
+
+        editor.apply();
+    }
+
+    // PVUnifiedPushModule.popNotification before PVNotificationStore, without the logging. It removed
+    // the prefixed key from the id list, which never matched, so popped ids stayed until trimmed.
+    private static String popSharedPreferences(SharedPreferences preferences, int messageId) {
+        SharedPreferences.Editor editor = preferences.edit();
+
+        String messageIdKey = PREF_KEY_NOTIFICATION_PREFIX + messageId;
+        String notificationPayload = preferences.getString(messageIdKey, null);
+        editor.remove(messageIdKey);
+
+        String notificationIds = preferences.getString(PREF_KEY_NOTIFICATION_IDS, "");
+        notificationIds = notificationIds.replace(messageIdKey + DELIMITER, "");
+        editor.putString(PREF_KEY_NOTIFICATION_IDS, notificationIds);
+
+        editor.apply();
+
+        return notificationPayload;
+    }
+
+    private static WritableMap benchmarkStorePop(Context context, String[] payloads) {
+        var store = new PVNotificationStore(context, BENCHMARK_STORE_FILE_NAME, false);
+
+        try {
+            for (int i = 0; i < STORED_NOTIFICATIONS; i++) {
+                store.store(i + 1, payloads[i % payloads.length]);
+            }
+
+            // Each iteration stores one notification and pops an older one, keeping the store full
+            long start = System.nanoTime();
+            for (int i = 0; i < payloads.length; i++) {
+                int messageId = STORED_NOTIFICATIONS + i + 1;
+                store.store(messageId, payloads[i]);
+                store.pop(messageId - STORED_NOTIFICATIONS / 2);
+            }
+
+            return result(payloads.length, System.nanoTime() - start);
+        } finally {
+            store.delete();
+        }
+    }
+
+    private static WritableMap benchmarkOrgJson(String[] payloads) throws JSONException {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            new JSONObject(payloads[i]);
+        }
+
+        long start = System.nanoTime();
+        for (String payload : payloads) {
+            new JSONObject(payload);
+        }
+
+        return result(payloads.length, System.nanoTime() - start);
+    }
+
+    private static WritableMap benchmarkStreamingJson(String[] payloads) throws IOException {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            PVJsonConverter.toWritableMap(payloads[i]);
+        }
+
+        long start = System.nanoTime();
+        for (String payload : payloads) {
+            PVJsonConverter.toWritableMap(payload);
+        }
+
+        return result(payloads.length, System.nanoTime() - start);
+    }
+
+    private static WritableMap benchmarkEndToEnd(Context context, PVUnifiedPushEncryption keys, byte[][] encryptedPayloads)
+            throws GeneralSecurityException, IOException, JSONException {
+        var store = new PVNotificationStore(context, BENCHMARK_STORE_FILE_NAME, false);
+        int burstSize = Math.min(BURST_SIZE, encryptedPayloads.length);
+
+        try {
+            long start = System.nanoTime();
+            for (int i = 0; i < burstSize; i++) {
+                String payload = new String(keys.decrypt(encryptedPayloads[i]), StandardCharsets.UTF_8);
+                new JSONObject(payload);
+                store.store(i + 1, payload);
+                PVJsonConverter.toWritableMap(store.pop(i + 1));
+            }
+            long elapsedNanos = System.nanoTime() - start;
+
+            WritableMap result = result(burstSize, elapsedNanos);
+            result.putDouble("messagesPerSecond", burstSize / (elapsedNanos / 1_000_000_000.0));
+
+            return result;
+        } finally {
+            store.delete();
+        }
+    }
+
+    private static WritableMap result(int operations, long elapsedNanos) {
+        WritableMap result = Arguments.createMap();
+        result.putInt("operations", operations);
+        result.putDouble("totalMs", elapsedNanos / 1_000_000.0);
+        result.putDouble("avgUs", elapsedNanos / (double) operations / 1000);
+
+        return result;
+    }
+
+    private static String syntheticPayload(int index) throws JSONException {
+        JSONObject payload = new JSONObject();
+        payload.put("body", "A new episode of Benchmark Podcast is available");
+        payload.put("title", "Benchmark Podcast");
+        payload.put("podcastId", "benchmark-podcast-" + (index % 20));
+        payload.put("episodeId", "benchmark-episode-" + index);
+        payload.put("podcastTitle", "Benchmark Podcast " + (index % 20));
+        payload.put("episodeTitle", "Episode " + index + ": a reasonably long episode title for a push payload");
+        payload.put("notificationType", index % 10 == 0 ? PVPushNotification.TYPE_LIVE : PVPushNotification.TYPE_NEW_EPISODE);
+        payload.put("timeSent", "2024-01-01T00:00:00.000Z");
+        payload.put("image", "https://images.podverse.fm/benchmark-podcast-" + (index % 20) + ".jpg");
+
+        return payload.toString();
+    }
+}
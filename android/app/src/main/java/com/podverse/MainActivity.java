@@ -1,8 +1,8 @@
 package com.podverse.fdroid;
 
 import com.facebook.react.ReactActivity;
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.WritableMap;
-import com.facebook.react.bridge.WritableNativeMap;
 
 import android.os.Build;
 import android.os.Bundle;
@@ -12,8 +12,7 @@ import android.content.pm.ActivityInfo;
 import android.content.res.Configuration;
 import android.util.Log;
 
-import org.json.JSONException;
-import org.json.JSONObject;
+import java.io.IOException;
 
 public class MainActivity extends ReactActivity {
     /**
@@ -81,24 +80,25 @@ public class MainActivity extends ReactActivity {
         }
 
         String notificationString = PVUnifiedPushModule.popNotification(this, messageId);
-        JSONObject notificationJson;
-        try {
-            notificationJson = new JSONObject(notificationString);
-        } catch (JSONException e) {
-            e.printStackTrace();
+        if (notificationString == null) {
+            Log.e("com.podverse.MainActivity", "no stored notification for pv_message_id " + messageId);
             return;
         }
 
-        WritableMap eventMap = new WritableNativeMap();
+        // Parse the payload once and share the result between the initial notification and the event
+        WritableMap notificationMap;
         try {
-            eventMap.putMap("data", PVUnifiedPushModule.jsonToReact(notificationJson));
-        } catch (JSONException e) {
+            notificationMap = PVJsonConverter.toWritableMap(notificationString);
+        } catch (IOException e) {
             e.printStackTrace();
             return;
         }
 
-        PVUnifiedPushModule.setInitialNotification(eventMap);
+        PVUnifiedPushModule.setInitialNotification(notificationMap.copy());
+
+        WritableMap payload = Arguments.createMap();
+        payload.putMap("data", notificationMap);
 
-        PVUnifiedPushModule.emitEvent(this, "UnifiedPushMessage", instance, notificationString);
+        PVUnifiedPushModule.emitEvent("UnifiedPushMessage", instance, payload);
     }
 }
@@ -49,10 +49,16 @@ public class MainApplication extends Application implements ReactApplication {
     super.onCreate();
     SoLoader.init(this, /* native exopackage */ false);
     registerActivityLifecycleCallbacks(OrientationActivityLifecycle.getInstance());
+    PVUnifiedPushEncryption.prewarmDecryptor(this);
+    PVUnifiedPushMessageReceiver.resumePendingMessages(this);
+    PVAsyncStorageMaintenanceJobService.schedule(this);
 
     // Added to address "Row too big to fit into CursorWindow" issue on some Android devices.
     // with large files in AsyncStorage (like big parsed RSS feeds)
     // https://github.com/react-native-async-storage/async-storage/issues/617
+    // ADD_BY_RSS_PODCASTS has moved to PVLargeValueStore, which only needs a large window to read
+    // the value it migrates out of AsyncStorage once.
+    // Remove this once the remaining large keys have moved there too.
     try {
       Field field = CursorWindow.class.getDeclaredField("sCursorWindowSize");
       field.setAccessible(true);
@@ -63,4 +69,11 @@ public class MainApplication extends Application implements ReactApplication {
       }
     }
   }
+
+  @Override
+  public void onTrimMemory(int level) {
+    super.onTrimMemory(level);
+    // The process may be killed without another callback, so write out buffered playback state now
+    PVPlaybackStateBuffer.getInstance(this).flushAsync();
+  }
 }
@@ -1,7 +1,11 @@
 package com.podverse.fdroid
 
+import android.content.ContentResolver
 import android.content.ContentUris
+import android.database.Cursor
 import android.net.Uri
+import android.os.Build
+import android.os.Bundle
 import android.provider.MediaStore
 import android.util.Log
 import com.facebook.react.bridge.Arguments
@@ -9,7 +13,9 @@ import com.facebook.react.bridge.Promise
 import com.facebook.react.bridge.ReactApplicationContext
 import com.facebook.react.bridge.ReactContextBaseJavaModule
 import com.facebook.react.bridge.ReactMethod
+import com.facebook.react.bridge.ReadableArray
 import com.facebook.react.bridge.WritableArray
+import com.facebook.react.bridge.WritableMap
 import com.facebook.react.bridge.WritableNativeArray
 
 
@@ -17,36 +23,51 @@ class NoxAndroidModule(reactContext: ReactApplicationContext) :
     ReactContextBaseJavaModule(reactContext) {
     override fun getName() = "NoxAndroidModule"
 
-    private fun _listMediaDir(relativeDir: String, subdir: Boolean, selection: String? = null): WritableArray {
+    // Kept current by a ContentObserver from the first lookup until the module is destroyed
+    private val mediaIndexDelegate = lazy {
+        NoxMediaIndex(::queryAudio).also { index ->
+            reactApplicationContext.contentResolver.registerContentObserver(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, true, index.observer)
+        }
+    }
+    private val mediaIndex by mediaIndexDelegate
+
+    private fun queryAudio(selection: String, selectionArgs: Array<String>, limit: Int): Cursor? {
+        val contentResolver = reactApplicationContext.contentResolver
+        val sortOrder = "${MediaStore.Audio.Media._ID} ASC"
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            val queryArgs = Bundle().apply {
+                putString(ContentResolver.QUERY_ARG_SQL_SELECTION, selection)
+                putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, selectionArgs)
+                putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, sortOrder)
+                putInt(ContentResolver.QUERY_ARG_LIMIT, limit)
+            }
+            return contentResolver.query(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, NoxMediaIndex.PROJECTION, queryArgs, null)
+        }
+
+        // MediaStore only takes a limit since R, so the first page has every row
+        return contentResolver.query(
+            MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, NoxMediaIndex.PROJECTION, selection, selectionArgs, sortOrder)
+    }
+
+    private fun toMediaItem(mediaFile: NoxMediaIndex.MediaFile): WritableMap {
+        val mediaItem = Arguments.createMap()
+        mediaItem.putString("URI",
+            "content:/" + ContentUris.appendId(
+                Uri.Builder().path(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI.path),
+                mediaFile.id).build().toString())
+        mediaItem.putString("relativePath", mediaFile.relativePath)
+        mediaItem.putString("fileName", mediaFile.fileName)
+        mediaItem.putString("realPath", mediaFile.realPath)
+        return mediaItem
+    }
+
+    private fun toWritableArray(lookup: () -> List<NoxMediaIndex.MediaFile>): WritableArray {
         val results: WritableArray = WritableNativeArray()
         try {
-            val query = reactApplicationContext.contentResolver.query(
-                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
-                arrayOf(
-                    MediaStore.Audio.Media._ID,
-                    MediaStore.Audio.Media.RELATIVE_PATH,
-                    MediaStore.Audio.Media.DISPLAY_NAME,
-                    MediaStore.Audio.Media.DATA
-                ), selection,null, null)
-            query?.use { cursor ->
-                val idColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID)
-                val pathColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.RELATIVE_PATH)
-                val nameColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DISPLAY_NAME)
-                val dataColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATA)
-                while (cursor.moveToNext()) {
-                    val mediaPath = cursor.getString(pathColumn)
-                    if (mediaPath == relativeDir || (subdir && mediaPath.startsWith(relativeDir))) {
-                        val mediaItem = Arguments.createMap()
-                        mediaItem.putString("URI",
-                            "content:/" + ContentUris.appendId(
-                                Uri.Builder().path(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI.path),
-                                cursor.getLong(idColumn)).build().toString())
-                        mediaItem.putString("relativePath",mediaPath)
-                        mediaItem.putString("fileName", cursor.getString(nameColumn))
-                        mediaItem.putString("realPath", cursor.getString(dataColumn))
-                        results.pushMap(mediaItem)
-                    }
-                }
+            for (mediaFile in lookup()) {
+                results.pushMap(toMediaItem(mediaFile))
             }
         } catch (e: Exception) {
             Log.e("NoxFileUtil", e.toString())
@@ -54,17 +75,57 @@ class NoxAndroidModule(reactContext: ReactApplicationContext) :
         return results
     }
 
+    // One { key, isMissing, files } per distinct key in the order given. A failed lookup rejects
+    // rather than reporting every key as missing.
+    private fun resolveBatch(
+        keys: ReadableArray,
+        callback: Promise,
+        lookup: (List<String>) -> Map<String, List<NoxMediaIndex.MediaFile>>
+    ) {
+        try {
+            val values = (0 until keys.size()).mapNotNull { keys.getString(it) }
+            val results: WritableArray = WritableNativeArray()
+            for ((key, mediaFiles) in lookup(values)) {
+                val files: WritableArray = WritableNativeArray()
+                mediaFiles.forEach { files.pushMap(toMediaItem(it)) }
+
+                val result = Arguments.createMap()
+                result.putString("key", key)
+                result.putBoolean("isMissing", mediaFiles.isEmpty())
+                result.putArray("files", files)
+                results.pushMap(result)
+            }
+            callback.resolve(results)
+        } catch (e: Exception) {
+            Log.e("NoxFileUtil", e.toString())
+            callback.reject(e)
+        }
+    }
+
     @ReactMethod fun listMediaDir(relativeDir: String, subdir: Boolean, callback: Promise) {
-        callback.resolve(_listMediaDir(relativeDir, subdir))
+        callback.resolve(toWritableArray { mediaIndex.listDir(relativeDir, subdir) })
     }
 
     @ReactMethod fun listMediaFileByFName(filename: String, callback: Promise) {
-        callback.resolve(_listMediaDir("", true,
-            "${MediaStore.Audio.Media.DISPLAY_NAME} IN ('$filename')"))
+        callback.resolve(toWritableArray { mediaIndex.findByFileName(filename) })
     }
 
     @ReactMethod fun listMediaFileByID(id: String, callback: Promise) {
-        callback.resolve(_listMediaDir("", true,
-            "${MediaStore.Audio.Media._ID} = $id"))
+        callback.resolve(toWritableArray { mediaIndex.findById(id) })
+    }
+
+    @ReactMethod fun listMediaFilesByFNames(filenames: ReadableArray, callback: Promise) {
+        resolveBatch(filenames, callback) { mediaIndex.findByFileNames(it) }
+    }
+
+    @ReactMethod fun listMediaFilesByIDs(ids: ReadableArray, callback: Promise) {
+        resolveBatch(ids, callback) { mediaIndex.findByIds(it) }
+    }
+
+    override fun onCatalystInstanceDestroy() {
+        super.onCatalystInstanceDestroy()
+        if (mediaIndexDelegate.isInitialized()) {
+            reactApplicationContext.contentResolver.unregisterContentObserver(mediaIndex.observer)
+        }
     }
 }
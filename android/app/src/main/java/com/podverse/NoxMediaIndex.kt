@@ -0,0 +1,234 @@
+package com.podverse.fdroid
+
+import android.database.ContentObserver
+import android.database.Cursor
+import android.provider.MediaStore
+
+/*
+    Looks up audio files in MediaStore with the filtering done in SQL, and keeps the results of
+    recent lookups in memory until MediaStore reports a change to [observer], which must be
+    registered for MediaStore.Audio.Media.EXTERNAL_CONTENT_URI and its descendants.
+
+    The cache holds at most MAX_CACHED_FILES files, an empty lookup counting as one, and drops the
+    least recently used lookups to stay under it. A lookup of more files isn't cached at all, so a
+    listing of the whole library doesn't push out every other lookup.
+
+    Rows are read in pages of PAGE_SIZE ordered by _ID, each page starting after the last _ID of
+    the previous one, so a large directory never has to fit in a single cursor window.
+
+    Lookups by several IDs or file names at once only query the values that aren't cached, at most
+    MAX_IN_ARGS of them per IN selection, and cache each value's files as a lookup of that value.
+
+    [query] runs a selection against the audio table with PROJECTION, ordered by _ID and limited
+    to a number of rows when the provider supports it.
+ */
+class NoxMediaIndex(
+    private val query: (selection: String, selectionArgs: Array<String>, limit: Int) -> Cursor?
+) {
+
+    data class MediaFile(val id: Long, val relativePath: String?, val fileName: String?, val realPath: String?)
+
+    companion object {
+        const val PAGE_SIZE = 500
+
+        // A few MB of MediaFile rows, enough for a large library's directory listings and the
+        // per-file results of a batch lookup without holding on to the whole library
+        const val MAX_CACHED_FILES = 10000
+
+        // Below SQLite's old limit of 999 arguments, with one more taken by the _ID page bound
+        const val MAX_IN_ARGS = 500
+
+        val PROJECTION = arrayOf(
+            MediaStore.Audio.Media._ID,
+            MediaStore.Audio.Media.RELATIVE_PATH,
+            MediaStore.Audio.Media.DISPLAY_NAME,
+            MediaStore.Audio.Media.DATA
+        )
+
+        private fun escapeLike(value: String) =
+            value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_")
+    }
+
+    // In access order, so the eldest entry is the least recently used
+    private val lookups = LinkedHashMap<String, List<MediaFile>>(16, 0.75f, true)
+
+    // Files held by lookups, guarded by lookups
+    private var cachedFiles = 0
+
+    // Bumped on every change, so a lookup that raced a change isn't cached
+    private var generation = 0L
+
+    val observer = object : ContentObserver(null) {
+        override fun onChange(selfChange: Boolean) {
+            invalidate()
+        }
+    }
+
+    fun invalidate() {
+        synchronized(lookups) {
+            lookups.clear()
+            cachedFiles = 0
+            generation++
+        }
+    }
+
+    /**
+     * Returns the files in relativeDir, and in its subdirectories when subdir is set. An empty
+     * relativeDir with subdir set returns every file.
+     */
+    fun listDir(relativeDir: String, subdir: Boolean): List<MediaFile> {
+        if (!subdir) {
+            return lookup("dir:$relativeDir", "${MediaStore.Audio.Media.RELATIVE_PATH} = ?", arrayOf(relativeDir))
+        }
+        if (relativeDir.isEmpty()) {
+            return lookup("all", null, emptyArray())
+        }
+
+        // LIKE ignores case, so the prefix is checked again exactly
+        return lookup(
+            "subdir:$relativeDir",
+            "${MediaStore.Audio.Media.RELATIVE_PATH} LIKE ? ESCAPE '\\'",
+            arrayOf(escapeLike(relativeDir) + "%")
+        ) { it.relativePath?.startsWith(relativeDir) == true }
+    }
+
+    fun findByFileName(fileName: String): List<MediaFile> =
+        lookup("name:$fileName", "${MediaStore.Audio.Media.DISPLAY_NAME} = ?", arrayOf(fileName))
+
+    fun findById(id: String): List<MediaFile> =
+        lookup("id:$id", "${MediaStore.Audio.Media._ID} = ?", arrayOf(id))
+
+    /**
+     * Returns the files of each display name in fileNames, with an empty list for a name that
+     * has none.
+     */
+    fun findByFileNames(fileNames: List<String>): Map<String, List<MediaFile>> =
+        lookupAll("name:", MediaStore.Audio.Media.DISPLAY_NAME, fileNames) { it.fileName }
+
+    /**
+     * Returns the file of each _ID in ids as a list of at most one, with an empty list for an ID
+     * that has none. IDs are matched in their decimal form.
+     */
+    fun findByIds(ids: List<String>): Map<String, List<MediaFile>> =
+        lookupAll("id:", MediaStore.Audio.Media._ID, ids) { it.id.toString() }
+
+    private fun lookup(
+        key: String,
+        selection: String?,
+        selectionArgs: Array<String>,
+        filter: (MediaFile) -> Boolean = { true }
+    ): List<MediaFile> {
+        val lookupGeneration = synchronized(lookups) {
+            lookups[key]?.let { return it }
+            generation
+        }
+
+        val files = queryAll(selection, selectionArgs).filter(filter)
+
+        synchronized(lookups) {
+            if (generation == lookupGeneration) {
+                cache(key, files)
+            }
+        }
+        return files
+    }
+
+    private fun lookupAll(
+        keyPrefix: String,
+        column: String,
+        values: List<String>,
+        valueOf: (MediaFile) -> String?
+    ): Map<String, List<MediaFile>> {
+        val results = LinkedHashMap<String, List<MediaFile>>()
+        val misses = ArrayList<String>()
+        val lookupGeneration = synchronized(lookups) {
+            for (value in values.distinct()) {
+                val files = lookups["$keyPrefix$value"]
+                if (files != null) {
+                    results[value] = files
+                } else {
+                    misses.add(value)
+                }
+            }
+            generation
+        }
+        if (misses.isEmpty()) {
+            return results
+        }
+
+        val found = HashMap<String, MutableList<MediaFile>>()
+        for (chunk in misses.chunked(MAX_IN_ARGS)) {
+            val selection = "$column IN (${chunk.joinToString(",") { "?" }})"
+            for (file in queryAll(selection, chunk.toTypedArray())) {
+                val value = valueOf(file) ?: continue
+                found.getOrPut(value) { ArrayList() }.add(file)
+            }
+        }
+
+        synchronized(lookups) {
+            for (value in misses) {
+                val files = found[value] ?: emptyList()
+                results[value] = files
+                if (generation == lookupGeneration) {
+                    cache("$keyPrefix$value", files)
+                }
+            }
+        }
+        return results
+    }
+
+    // Called holding lookups
+    private fun cache(key: String, files: List<MediaFile>) {
+        val weight = weightOf(files)
+        if (weight > MAX_CACHED_FILES) {
+            return
+        }
+
+        lookups.put(key, files)?.let { cachedFiles -= weightOf(it) }
+        cachedFiles += weight
+
+        // The entry just put is the most recently used, so it's never the one dropped
+        val eldest = lookups.values.iterator()
+        while (cachedFiles > MAX_CACHED_FILES) {
+            cachedFiles -= weightOf(eldest.next())
+            eldest.remove()
+        }
+    }
+
+    private fun weightOf(files: List<MediaFile>) = maxOf(1, files.size)
+
+    private fun queryAll(selection: String?, selectionArgs: Array<String>): List<MediaFile> {
+        val files = ArrayList<MediaFile>()
+        val pageSelection = if (selection == null) {
+            "${MediaStore.Audio.Media._ID} > ?"
+        } else {
+            "($selection) AND ${MediaStore.Audio.Media._ID} > ?"
+        }
+        var lastId = -1L
+
+        while (true) {
+            val page = query(pageSelection, selectionArgs + lastId.toString(), PAGE_SIZE) ?: break
+            var rows = 0
+            page.use { cursor ->
+                val idColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID)
+                val pathColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.RELATIVE_PATH)
+                val nameColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DISPLAY_NAME)
+                val dataColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATA)
+                while (cursor.moveToNext()) {
+                    val id = cursor.getLong(idColumn)
+                    files.add(MediaFile(
+                        id, cursor.getString(pathColumn), cursor.getString(nameColumn), cursor.getString(dataColumn)))
+                    lastId = maxOf(lastId, id)
+                    rows++
+                }
+            }
+
+            // A provider that ignores the limit returns every row in the first page
+            if (rows < PAGE_SIZE) {
+                break
+            }
+        }
+
+        return files
+    }
+}
@@ -0,0 +1,159 @@
+package com.podverse.fdroid;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.os.CancellationSignal;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+import com.reactnativecommunity.asyncstorage.ReactDatabaseSupplier;
+
+public class PVAsyncStorageMaintenance {
+    /*
+        Gives the space of deleted and rewritten AsyncStorage rows back to the file system.
+
+        Large values like the queue and RSS podcasts used to be rewritten whole on every change, which
+        leaves the freed pages inside the database file. SQLite reuses them but never shrinks the file,
+        so it keeps growing toward the AsyncStorage size limit.
+
+        The database is created with auto_vacuum=NONE, which can only be changed by a full VACUUM.
+        That runs once, when allowFullVacuum is set, e.g. while charging. After that, each run
+        releases free pages with incremental_vacuum in steps of PAGES_PER_STEP until they are below
+        the thresholds, the time budget runs out or the run is cancelled. Every run also checkpoints
+        the WAL when the database uses one.
+
+        Runs from PVAsyncStorageMaintenanceJobService while the device is idle or charging, and from
+        PVAsyncStorageModule when a write finds storage nearly full.
+     */
+
+    private static final String MAINTENANCE_SHARED_PREF_NAME = "PVAsyncStorageMaintenance";
+    private static final String PREF_KEY_LAST_RUN_AT = "lastRunAt";
+    private static final String PREF_KEY_LAST_BYTES_RECLAIMED = "lastBytesReclaimed";
+    private static final String PREF_KEY_TOTAL_BYTES_RECLAIMED = "totalBytesReclaimed";
+
+    private static final double FREE_RATIO_THRESHOLD = 0.1;
+    private static final long FREE_BYTES_THRESHOLD = 1024 * 1024;
+    private static final int PAGES_PER_STEP = 256;
+    private static final long TIME_BUDGET_MS = 5 * 1000;
+
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    /**
+     * Returns the number of bytes the database files shrank by.
+     */
+    public static synchronized long run(
+            @NonNull Context context,
+            boolean allowFullVacuum,
+            @Nullable CancellationSignal cancellationSignal) {
+        SQLiteDatabase database = ReactDatabaseSupplier.getInstance(context.getApplicationContext()).get();
+        long bytesBefore = PVAsyncStorageSizeTracker.getDatabaseFileBytes(database);
+
+        try {
+            if (needsVacuum(database)) {
+                if (getPragmaLong(database, "auto_vacuum") == AUTO_VACUUM_INCREMENTAL) {
+                    vacuumIncrementally(database, cancellationSignal);
+                } else if (allowFullVacuum) {
+                    // Only takes effect with the VACUUM that follows, which also releases every free page
+                    database.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+                    database.execSQL("VACUUM");
+                }
+            }
+
+            if ("wal".equalsIgnoreCase(getPragmaString(database, "journal_mode"))) {
+                runPragma(database, "PRAGMA wal_checkpoint(TRUNCATE)");
+            }
+        } catch (SQLiteException e) {
+            // Usually another statement is in progress, the next run tries again
+            Log.e("com.podverse.fdroid.PVAsyncStorageMaintenance", "Maintenance stopped early", e);
+        }
+
+        long bytesReclaimed = Math.max(0, bytesBefore - PVAsyncStorageSizeTracker.getDatabaseFileBytes(database));
+
+        SharedPreferences preferences = getPreferences(context);
+        preferences.edit()
+                .putLong(PREF_KEY_LAST_RUN_AT, System.currentTimeMillis())
+                .putLong(PREF_KEY_LAST_BYTES_RECLAIMED, bytesReclaimed)
+                .putLong(PREF_KEY_TOTAL_BYTES_RECLAIMED, preferences.getLong(PREF_KEY_TOTAL_BYTES_RECLAIMED, 0) + bytesReclaimed)
+                .apply();
+
+        return bytesReclaimed;
+    }
+
+    @NonNull
+    public static WritableMap getStats(@NonNull Context context) {
+        SQLiteDatabase database = ReactDatabaseSupplier.getInstance(context.getApplicationContext()).get();
+        long pageSize = getPragmaLong(database, "page_size");
+        long pageCount = getPragmaLong(database, "page_count");
+        long freePages = getPragmaLong(database, "freelist_count");
+        long autoVacuum = getPragmaLong(database, "auto_vacuum");
+        SharedPreferences preferences = getPreferences(context);
+
+        WritableMap stats = Arguments.createMap();
+        stats.putDouble("pageSize", pageSize);
+        stats.putDouble("pageCount", pageCount);
+        stats.putDouble("freePages", freePages);
+        stats.putDouble("freeRatio", pageCount > 0 ? freePages / (double) pageCount : 0);
+        stats.putString("autoVacuum", autoVacuum == AUTO_VACUUM_INCREMENTAL ? "incremental" : autoVacuum == 1 ? "full" : "none");
+        stats.putDouble("lastRunAt", preferences.getLong(PREF_KEY_LAST_RUN_AT, 0));
+        stats.putDouble("lastBytesReclaimed", preferences.getLong(PREF_KEY_LAST_BYTES_RECLAIMED, 0));
+        stats.putDouble("totalBytesReclaimed", preferences.getLong(PREF_KEY_TOTAL_BYTES_RECLAIMED, 0));
+
+        return stats;
+    }
+
+    private static void vacuumIncrementally(SQLiteDatabase database, @Nullable CancellationSignal cancellationSignal) {
+        long deadline = SystemClock.elapsedRealtime() + TIME_BUDGET_MS;
+
+        while (needsVacuum(database) && SystemClock.elapsedRealtime() < deadline) {
+            if (cancellationSignal != null && cancellationSignal.isCanceled()) {
+                return;
+            }
+            runPragma(database, "PRAGMA incremental_vacuum(" + PAGES_PER_STEP + ")");
+        }
+    }
+
+    private static boolean needsVacuum(SQLiteDatabase database) {
+        long pageCount = getPragmaLong(database, "page_count");
+        long freePages = getPragmaLong(database, "freelist_count");
+
+        if (freePages == 0 || pageCount == 0) {
+            return false;
+        }
+
+        return freePages / (double) pageCount >= FREE_RATIO_THRESHOLD
+                || freePages * getPragmaLong(database, "page_size") >= FREE_BYTES_THRESHOLD;
+    }
+
+    private static long getPragmaLong(SQLiteDatabase database, String pragma) {
+        try (Cursor cursor = database.rawQuery("PRAGMA " + pragma, null)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+
+    private static String getPragmaString(SQLiteDatabase database, String pragma) {
+        try (Cursor cursor = database.rawQuery("PRAGMA " + pragma, null)) {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        }
+    }
+
+    private static void runPragma(SQLiteDatabase database, String sql) {
+        // Pragmas that do work only run as far as their cursor is stepped
+        try (Cursor cursor = database.rawQuery(sql, null)) {
+            while (cursor.moveToNext()) {
+                // Nothing to read
+            }
+        }
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(MAINTENANCE_SHARED_PREF_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,86 @@
+package com.podverse.fdroid;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+public class PVAsyncStorageMaintenanceJobService extends JobService {
+    /*
+        Runs PVAsyncStorageMaintenance about once a day, once while the device is idle and once while
+        it is charging. JobScheduler combines constraints with AND, so each is its own job. Only the
+        charging job may run the one-time full VACUUM, which rewrites the whole database.
+     */
+
+    private static final int JOB_ID_IDLE = 4201;
+    private static final int JOB_ID_CHARGING = 4202;
+    private static final long JOB_INTERVAL_MS = 24L * 60 * 60 * 1000;
+
+    private CancellationSignal cancellationSignal;
+
+    /**
+     * Schedules both jobs unless they are already pending. Safe to call on every app start.
+     */
+    public static void schedule(@NonNull Context context) {
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (jobScheduler == null) {
+            return;
+        }
+
+        boolean idlePending = false;
+        boolean chargingPending = false;
+        for (JobInfo job : jobScheduler.getAllPendingJobs()) {
+            idlePending |= job.getId() == JOB_ID_IDLE;
+            chargingPending |= job.getId() == JOB_ID_CHARGING;
+        }
+
+        ComponentName service = new ComponentName(context, PVAsyncStorageMaintenanceJobService.class);
+        if (!idlePending) {
+            jobScheduler.schedule(new JobInfo.Builder(JOB_ID_IDLE, service)
+                    .setRequiresDeviceIdle(true)
+                    .setPeriodic(JOB_INTERVAL_MS)
+                    .build());
+        }
+        if (!chargingPending) {
+            jobScheduler.schedule(new JobInfo.Builder(JOB_ID_CHARGING, service)
+                    .setRequiresCharging(true)
+                    .setPeriodic(JOB_INTERVAL_MS)
+                    .build());
+        }
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        cancellationSignal = new CancellationSignal();
+        CancellationSignal signal = cancellationSignal;
+        boolean allowFullVacuum = params.getJobId() == JOB_ID_CHARGING;
+
+        new Thread(() -> {
+            try {
+                long bytesReclaimed = PVAsyncStorageMaintenance.run(getApplicationContext(), allowFullVacuum, signal);
+                Log.i("com.podverse.fdroid.PVAsyncStorageMaintenanceJobService", "Reclaimed " + bytesReclaimed + " bytes");
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVAsyncStorageMaintenanceJobService", "Maintenance failed", e);
+            }
+            jobFinished(params, false);
+        }, "pv-async-storage-maintenance").start();
+
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        if (cancellationSignal != null) {
+            cancellationSignal.cancel();
+        }
+
+        // The periodic job runs again on its next interval
+        return false;
+    }
+}
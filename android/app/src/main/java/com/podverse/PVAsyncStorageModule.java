@@ -1,18 +1,43 @@
 package com.podverse.fdroid;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
+import android.util.Log;
+
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
-import com.facebook.react.modules.storage.ReactDatabaseSupplier;
+import com.facebook.react.bridge.ReadableArray;
+import com.reactnativecommunity.asyncstorage.ReactDatabaseSupplier;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.bridge.WritableNativeMap;
-import java.io.File;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class PVAsyncStorageModule extends ReactContextBaseJavaModule {
+    // duplicated in android/gradle.properties and src/lib/asyncStorage.ts
+    private static final long ASYNC_STORAGE_DB_SIZE_BYTES = 33L * 1024 * 1024;
+    // Writes are reported as exceeding capacity once within this margin of the limit
+    private static final long CAPACITY_MARGIN_BYTES = 3L * 1024 * 1024;
+    // Stays well below SQLite's default limit of 999 bound parameters
+    private static final int MAX_KEYS_PER_QUERY = 500;
+
     private ReactDatabaseSupplier mReactDatabaseSupplier;
+    private PVAsyncStorageSizeTracker mSizeTracker;
+    private final ExecutorService mStorageExecutor = Executors.newSingleThreadExecutor();
 
     PVAsyncStorageModule(ReactApplicationContext context) {
        super(context);
+       // Shares the database connection with @react-native-community/async-storage
        mReactDatabaseSupplier = ReactDatabaseSupplier.getInstance(context);
    }
 
@@ -21,12 +46,292 @@ public class PVAsyncStorageModule extends ReactContextBaseJavaModule {
         return "PVAsyncStorage";
     }
 
+    private synchronized PVAsyncStorageSizeTracker getSizeTracker() {
+        if (mSizeTracker == null) {
+            mSizeTracker = new PVAsyncStorageSizeTracker(mReactDatabaseSupplier.get());
+        }
+        return mSizeTracker;
+    }
+
     @ReactMethod
     public void getUsedStorageSize(Promise promise) {
-        File f = new File(mReactDatabaseSupplier.get().getPath());
-        long dbSize = f.length();
-        WritableMap resultData = new WritableNativeMap();
-        resultData.putInt("size", (int)dbSize);
-        promise.resolve(resultData);
+        mStorageExecutor.execute(() -> {
+            WritableMap resultData = new WritableNativeMap();
+            resultData.putDouble("size", getSizeTracker().getUsedBytes());
+            promise.resolve(resultData);
+        });
+    }
+
+    @ReactMethod
+    public void getStorageBreakdown(Promise promise) {
+        mStorageExecutor.execute(() -> {
+            try {
+                var sizeTracker = getSizeTracker();
+                WritableMap resultData = new WritableNativeMap();
+                resultData.putDouble("size", sizeTracker.getUsedBytes());
+                resultData.putDouble("limit", ASYNC_STORAGE_DB_SIZE_BYTES);
+                resultData.putArray("keys", sizeTracker.getKeyBreakdown());
+                promise.resolve(resultData);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVAsyncStorageModule", "Failed to read storage breakdown", e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    /**
+     * Writes an AsyncStorage item and checks the remaining capacity in the same call. The value is
+     * written even when capacity is nearly exhausted, "exceeded" tells JS to warn the user.
+     */
+    @ReactMethod
+    public void setItemWithCapacityCheck(String key, String value, Promise promise) {
+        mStorageExecutor.execute(() -> {
+            try {
+                var sizeTracker = getSizeTracker();
+                long previousValueBytes = sizeTracker.getValueBytes(key);
+                long newValueBytes = utf8Length(value);
+                boolean exceeded = sizeTracker.getUsedBytes() + newValueBytes - previousValueBytes
+                        >= ASYNC_STORAGE_DB_SIZE_BYTES - CAPACITY_MARGIN_BYTES;
+
+                SQLiteDatabase database = mReactDatabaseSupplier.get();
+                SQLiteStatement statement = database.compileStatement(
+                        "INSERT OR REPLACE INTO " + PVAsyncStorageSizeTracker.TABLE_CATALYST + " VALUES (?, ?);");
+                try {
+                    statement.bindString(1, key);
+                    statement.bindString(2, value);
+                    statement.execute();
+                } finally {
+                    statement.close();
+                }
+
+                sizeTracker.recordWrite(previousValueBytes, newValueBytes);
+
+                WritableMap resultData = new WritableNativeMap();
+                resultData.putBoolean("exceeded", exceeded);
+                resultData.putDouble("size", sizeTracker.getUsedBytes());
+                promise.resolve(resultData);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVAsyncStorageModule", "Failed to write " + key, e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    /**
+     * Reads keys in one transaction and resolves with a map of every key to its value, or to null
+     * when the key isn't stored. Values compressed by multiSetBatched are decompressed.
+     */
+    @ReactMethod
+    public void multiGetBatched(ReadableArray keys, Promise promise) {
+        mStorageExecutor.execute(() -> {
+            try {
+                var keyList = toKeyList(keys);
+                Map<String, String> values = readBatch(mReactDatabaseSupplier.get(), keyList);
+
+                WritableMap resultData = new WritableNativeMap();
+                for (String key : keyList) {
+                    String value = values.get(key);
+                    if (value == null) {
+                        resultData.putNull(key);
+                    } else {
+                        resultData.putString(key, value);
+                    }
+                }
+                promise.resolve(resultData);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVAsyncStorageModule", "Failed to read batch", e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    /**
+     * Writes [key, value] pairs in one transaction, removing keys whose value is null. Values longer
+     * than PVCompressedValue.COMPRESSION_THRESHOLD_CHARS are compressed, so they must be read back
+     * with multiGetBatched. Resolves with the same result as setItemWithCapacityCheck.
+     */
+    @ReactMethod
+    public void multiSetBatched(ReadableArray keyValuePairs, Promise promise) {
+        mStorageExecutor.execute(() -> {
+            try {
+                var sizeTracker = getSizeTracker();
+                List<String> keys = new ArrayList<>(keyValuePairs.size());
+                List<String> storedValues = new ArrayList<>(keyValuePairs.size());
+                long newValueBytes = 0;
+
+                for (int i = 0; i < keyValuePairs.size(); i++) {
+                    ReadableArray pair = keyValuePairs.getArray(i);
+                    String value = pair.isNull(1) ? null : PVCompressedValue.encode(pair.getString(1));
+                    keys.add(pair.getString(0));
+                    storedValues.add(value);
+                    newValueBytes += value == null ? 0 : utf8Length(value);
+                }
+
+                SQLiteDatabase database = mReactDatabaseSupplier.get();
+                long previousValueBytes;
+
+                database.beginTransaction();
+                try {
+                    previousValueBytes = getValueBytes(database, keys);
+
+                    SQLiteStatement insert = database.compileStatement(
+                            "INSERT OR REPLACE INTO " + PVAsyncStorageSizeTracker.TABLE_CATALYST + " VALUES (?, ?);");
+                    SQLiteStatement delete = database.compileStatement(
+                            "DELETE FROM " + PVAsyncStorageSizeTracker.TABLE_CATALYST + " WHERE " + PVAsyncStorageSizeTracker.KEY_COLUMN + " = ?;");
+                    try {
+                        for (int i = 0; i < keys.size(); i++) {
+                            String value = storedValues.get(i);
+                            if (value == null) {
+                                delete.bindString(1, keys.get(i));
+                                delete.execute();
+                            } else {
+                                insert.bindString(1, keys.get(i));
+                                insert.bindString(2, value);
+                                insert.execute();
+                            }
+                        }
+                    } finally {
+                        insert.close();
+                        delete.close();
+                    }
+
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+
+                sizeTracker.recordWrite(previousValueBytes, newValueBytes);
+                long usedBytes = sizeTracker.getUsedBytes();
+
+                WritableMap resultData = new WritableNativeMap();
+                resultData.putBoolean("exceeded", usedBytes >= ASYNC_STORAGE_DB_SIZE_BYTES - CAPACITY_MARGIN_BYTES);
+                resultData.putDouble("size", usedBytes);
+                promise.resolve(resultData);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVAsyncStorageModule", "Failed to write batch", e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void getStorageMaintenanceStats(Promise promise) {
+        mStorageExecutor.execute(() -> {
+            try {
+                promise.resolve(PVAsyncStorageMaintenance.getStats(getReactApplicationContext()));
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVAsyncStorageModule", "Failed to read maintenance stats", e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    /**
+     * Runs PVAsyncStorageMaintenance now, reclaiming free pages incrementally. The one-time full
+     * VACUUM blocks every other AsyncStorage caller, so it is left to the charging job. Resolves with
+     * the bytes reclaimed and the same capacity result as setItemWithCapacityCheck.
+     */
+    @ReactMethod
+    public void runStorageMaintenance(Promise promise) {
+        mStorageExecutor.execute(() -> {
+            try {
+                long bytesReclaimed = PVAsyncStorageMaintenance.run(getReactApplicationContext(), false, null);
+
+                var sizeTracker = getSizeTracker();
+                sizeTracker.invalidate();
+                long usedBytes = sizeTracker.getUsedBytes();
+
+                WritableMap resultData = new WritableNativeMap();
+                resultData.putDouble("bytesReclaimed", bytesReclaimed);
+                resultData.putBoolean("exceeded", usedBytes >= ASYNC_STORAGE_DB_SIZE_BYTES - CAPACITY_MARGIN_BYTES);
+                resultData.putDouble("size", usedBytes);
+                promise.resolve(resultData);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVAsyncStorageModule", "Storage maintenance failed", e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    private static long getValueBytes(SQLiteDatabase database, List<String> keys) {
+        long bytes = 0;
+
+        for (int start = 0; start < keys.size(); start += MAX_KEYS_PER_QUERY) {
+            var chunk = keys.subList(start, Math.min(start + MAX_KEYS_PER_QUERY, keys.size()));
+            try (Cursor cursor = database.rawQuery(
+                    "SELECT total(length(CAST(" + PVAsyncStorageSizeTracker.VALUE_COLUMN + " AS BLOB)))"
+                            + " FROM " + PVAsyncStorageSizeTracker.TABLE_CATALYST
+                            + " WHERE " + PVAsyncStorageSizeTracker.KEY_COLUMN + " IN (" + placeholders(chunk.size()) + ")",
+                    chunk.toArray(new String[0]))) {
+                if (cursor.moveToFirst()) {
+                    bytes += cursor.getLong(0);
+                }
+            }
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Reads keys in one transaction, decompressing their values. Keys that aren't stored are left
+     * out. Also used by PVAsyncStorageBenchmark.
+     */
+    static Map<String, String> readBatch(SQLiteDatabase database, List<String> keys) throws IOException {
+        HashMap<String, String> values = new HashMap<>();
+
+        database.beginTransactionNonExclusive();
+        try {
+            for (int start = 0; start < keys.size(); start += MAX_KEYS_PER_QUERY) {
+                var chunk = keys.subList(start, Math.min(start + MAX_KEYS_PER_QUERY, keys.size()));
+                try (Cursor cursor = database.rawQuery(
+                        "SELECT " + PVAsyncStorageSizeTracker.KEY_COLUMN + ", " + PVAsyncStorageSizeTracker.VALUE_COLUMN
+                                + " FROM " + PVAsyncStorageSizeTracker.TABLE_CATALYST
+                                + " WHERE " + PVAsyncStorageSizeTracker.KEY_COLUMN + " IN (" + placeholders(chunk.size()) + ")",
+                        chunk.toArray(new String[0]))) {
+                    while (cursor.moveToNext()) {
+                        values.put(cursor.getString(0), cursor.getString(1));
+                    }
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            entry.setValue(PVCompressedValue.decode(entry.getValue()));
+        }
+
+        return values;
+    }
+
+    private static List<String> toKeyList(ReadableArray keys) {
+        List<String> keyList = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            keyList.add(keys.getString(i));
+        }
+        return keyList;
+    }
+
+    private static String placeholders(int count) {
+        return TextUtils.join(",", Collections.nCopies(count, "?"));
+    }
+
+    private static long utf8Length(String value) {
+        long bytes = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,103 @@
+package com.podverse.fdroid;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.File;
+
+public class PVAsyncStorageSizeTracker {
+    /*
+        Tracks how much space the AsyncStorage database uses, counting the main file together with its
+        -wal and -journal files.
+
+        The files are stat'ed once and the result is adjusted by the size difference of every write
+        that goes through PVAsyncStorageModule. Writes made directly through AsyncStorage aren't seen
+        here, so the files are stat'ed again once the last stat is older than RESYNC_INTERVAL_MS.
+     */
+
+    static final String TABLE_CATALYST = "catalystLocalStorage";
+    static final String KEY_COLUMN = "key";
+    static final String VALUE_COLUMN = "value";
+
+    private static final long RESYNC_INTERVAL_MS = 30 * 1000;
+    private static final String[] DB_FILE_SUFFIXES = {"", "-wal", "-journal"};
+
+    private final SQLiteDatabase database;
+    private long measuredBytes = -1;
+    private long measuredAt = 0;
+    private long bytesSinceMeasured = 0;
+
+    PVAsyncStorageSizeTracker(@NonNull SQLiteDatabase database) {
+        this.database = database;
+    }
+
+    public synchronized long getUsedBytes() {
+        long now = System.currentTimeMillis();
+
+        if (measuredBytes < 0 || now - measuredAt > RESYNC_INTERVAL_MS) {
+            measuredBytes = getDatabaseFileBytes(database);
+            measuredAt = now;
+            bytesSinceMeasured = 0;
+        }
+
+        return Math.max(0, measuredBytes + bytesSinceMeasured);
+    }
+
+    /**
+     * Makes the next getUsedBytes stat the files again, after something other than a write has
+     * changed their size.
+     */
+    public synchronized void invalidate() {
+        measuredBytes = -1;
+    }
+
+    public synchronized void recordWrite(long previousValueBytes, long newValueBytes) {
+        bytesSinceMeasured += newValueBytes - previousValueBytes;
+    }
+
+    static long getDatabaseFileBytes(@NonNull SQLiteDatabase database) {
+        long bytes = 0;
+        for (String suffix : DB_FILE_SUFFIXES) {
+            bytes += new File(database.getPath() + suffix).length();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the stored size of the value for key in bytes, or 0 if the key isn't stored.
+     */
+    public long getValueBytes(@NonNull String key) {
+        try (Cursor cursor = database.rawQuery(
+                "SELECT length(CAST(" + VALUE_COLUMN + " AS BLOB)) FROM " + TABLE_CATALYST + " WHERE " + KEY_COLUMN + " = ?",
+                new String[]{key})) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+
+    /**
+     * Returns every key with the size of its value in bytes, largest first.
+     */
+    @NonNull
+    public WritableArray getKeyBreakdown() {
+        WritableArray breakdown = Arguments.createArray();
+
+        try (Cursor cursor = database.rawQuery(
+                "SELECT " + KEY_COLUMN + ", length(CAST(" + VALUE_COLUMN + " AS BLOB)) AS bytes FROM " + TABLE_CATALYST + " ORDER BY bytes DESC",
+                null)) {
+            while (cursor.moveToNext()) {
+                WritableMap entry = Arguments.createMap();
+                entry.putString("key", cursor.getString(0));
+                entry.putDouble("bytes", cursor.getLong(1));
+                breakdown.pushMap(entry);
+            }
+        }
+
+        return breakdown;
+    }
+}
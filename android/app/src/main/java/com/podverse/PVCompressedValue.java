@@ -0,0 +1,71 @@
+package com.podverse.fdroid;
+
+import android.util.Base64;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class PVCompressedValue {
+    /*
+        Compression for AsyncStorage values written through PVAsyncStorageModule.multiSetBatched.
+
+        The value column is TEXT and is shared with @react-native-community/async-storage, so a
+        compressed value is stored as MARKER followed by its gzipped UTF-8 bytes in base64. JSON text
+        never starts with MARKER, so plain values pass through decode unchanged. A compressed value can
+        only be read back through multiGetBatched.
+     */
+
+    static final int COMPRESSION_THRESHOLD_CHARS = 16 * 1024;
+
+    private static final String MARKER = "\u0001pvgz:";
+
+    /**
+     * Returns value compressed when it is longer than COMPRESSION_THRESHOLD_CHARS and compression
+     * makes it smaller, otherwise value itself.
+     */
+    @NonNull
+    public static String encode(@NonNull String value) throws IOException {
+        if (value.length() <= COMPRESSION_THRESHOLD_CHARS) {
+            return value;
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(value.length() / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        String encoded = MARKER + Base64.encodeToString(compressed.toByteArray(), Base64.NO_WRAP);
+
+        return encoded.length() < value.length() ? encoded : value;
+    }
+
+    @Nullable
+    public static String decode(@Nullable String stored) throws IOException {
+        if (stored == null || !stored.startsWith(MARKER)) {
+            return stored;
+        }
+
+        byte[] compressed = Base64.decode(stored.substring(MARKER.length()), Base64.NO_WRAP);
+        StringBuilder value = new StringBuilder(compressed.length * 4);
+        char[] buffer = new char[8192];
+
+        try (Reader reader = new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(compressed)), StandardCharsets.UTF_8)) {
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                value.append(buffer, 0, read);
+            }
+        }
+
+        return value.toString();
+    }
+}
@@ -0,0 +1,839 @@
+package com.podverse.fdroid;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class PVDownloadEngine {
+    /*
+        Downloads episodes over HTTP, resuming to the byte from what PVDownloadStore recorded.
+
+        The first request asks for the whole file with Range: bytes=0-. When the server answers
+        206 with the file's length, the file is split into up to maxConnectionsPerDownload chunks
+        of at least MIN_CHUNK_BYTES, each fetched over its own connection, and the first response
+        carries on as the first chunk. Otherwise the download falls back to a single stream, which
+        restarts from 0 when interrupted. Ranges requested later send If-Range, so a file that
+        changed on the server is planned again instead of mixing two versions.
+
+        A chunk retries its own range after a network error, up to MAX_CHUNK_RETRIES times. At
+        most maxConcurrentDownloads run at once and the rest wait in the order they were added.
+        When maxBytesPerSecond is set, every connection of every download draws from it.
+
+        Progress goes to the Listener in one batch every PROGRESS_INTERVAL_MS, only for the
+        downloads that made progress since the last batch.
+
+        The engine runs on its own thread pools. The instance from getInstance reports how many
+        downloads are running or queued to PVDownloadService, which keeps the app in the
+        foreground until that count drops to 0.
+     */
+
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_DOWNLOADING = "DOWNLOADING";
+    public static final String STATUS_PAUSED = "PAUSED";
+    public static final String STATUS_FINISHED = "FINISHED";
+    public static final String STATUS_ERROR = "ERROR";
+
+    // Never stored, a canceled download is removed
+    private static final String STATUS_CANCELED = "CANCELED";
+
+    static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 2;
+    static final int DEFAULT_MAX_CONNECTIONS_PER_DOWNLOAD = 4;
+    static final long MIN_CHUNK_BYTES = 2 * 1024 * 1024;
+    static final long PROGRESS_INTERVAL_MS = 500;
+
+    private static final long PERSIST_INTERVAL_BYTES = 1024 * 1024;
+    private static final int MAX_CHUNK_RETRIES = 5;
+    private static final long RETRY_DELAY_MS = 1000;
+    private static final int MAX_REPLANS = 1;
+    private static final int TIMEOUT_MS = 30000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static PVDownloadEngine instance;
+
+    public interface Listener {
+        void onProgress(@NonNull List<Progress> progress);
+
+        void onStatusChanged(@NonNull String id, @NonNull String status, @Nullable String error);
+    }
+
+    interface ActivityListener {
+        void onDownloadCountChanged(int downloadCount);
+    }
+
+    public static class Progress {
+        @NonNull
+        public final String id;
+        public final long bytesWritten;
+        // -1 when the length is unknown
+        public final long totalBytes;
+
+        Progress(@NonNull String id, long bytesWritten, long totalBytes) {
+            this.id = id;
+            this.bytesWritten = bytesWritten;
+            this.totalBytes = totalBytes;
+        }
+    }
+
+    private static class StoppedException extends IOException {
+        StoppedException() {
+            super("Download stopped");
+        }
+    }
+
+    private static class FileChangedException extends IOException {
+        FileChangedException() {
+            super("File changed on the server");
+        }
+    }
+
+    private static class ActiveDownload {
+        final PVDownloadStore.Download download;
+        final AtomicBoolean hasProgress = new AtomicBoolean(false);
+        final Set<HttpURLConnection> connections = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        volatile List<PVDownloadStore.Chunk> chunks = Collections.emptyList();
+        // Set by pause and cancel
+        volatile String stopStatus;
+        // Set when a chunk fails, to stop the other chunks of the same attempt
+        volatile boolean failed = false;
+
+        ActiveDownload(PVDownloadStore.Download download) {
+            this.download = download;
+        }
+
+        void stop(String status) {
+            if (stopStatus == null || STATUS_CANCELED.equals(status)) {
+                stopStatus = status;
+            }
+            disconnect();
+        }
+
+        void fail() {
+            failed = true;
+            disconnect();
+        }
+
+        void checkStopped() throws StoppedException {
+            if (stopStatus != null || failed) {
+                throw new StoppedException();
+            }
+        }
+
+        long getBytesWritten() {
+            long bytesWritten = 0;
+            for (PVDownloadStore.Chunk chunk : chunks) {
+                bytesWritten += chunk.bytesWritten.get();
+            }
+            return bytesWritten;
+        }
+
+        Progress getProgress() {
+            return new Progress(download.id, getBytesWritten(), download.totalBytes);
+        }
+
+        private void disconnect() {
+            // Unblocks connections waiting on a read
+            for (HttpURLConnection connection : connections) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private final PVDownloadStore mStore;
+    private final ExecutorService mDownloadExecutor = Executors.newCachedThreadPool();
+    private final ExecutorService mConnectionExecutor = Executors.newCachedThreadPool();
+    private final ScheduledExecutorService mProgressExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final LinkedHashSet<String> mQueue = new LinkedHashSet<>();
+    private final Map<String, ActiveDownload> mActive = new HashMap<>();
+    private final Object mBandwidthLock = new Object();
+
+    private ScheduledFuture<?> mProgressTicker;
+    private int mDownloadCount = 0;
+    private ActivityListener mActivityListener;
+    private long mNextBandwidthNanos = 0;
+    private volatile Listener mListener;
+    private volatile int mMaxConcurrentDownloads = DEFAULT_MAX_CONCURRENT_DOWNLOADS;
+    private volatile int mMaxConnectionsPerDownload = DEFAULT_MAX_CONNECTIONS_PER_DOWNLOAD;
+    private volatile long mMaxBytesPerSecond = 0;
+
+    PVDownloadEngine(@NonNull PVDownloadStore store) {
+        mStore = store;
+
+        // Downloads that were running when the app was killed wait for JS to resume them
+        for (PVDownloadStore.Download download : store.getDownloads()) {
+            if (STATUS_DOWNLOADING.equals(download.status)) {
+                store.setStatus(download.id, STATUS_PENDING, null);
+            }
+        }
+    }
+
+    public static synchronized PVDownloadEngine getInstance(@NonNull Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            instance = new PVDownloadEngine(PVDownloadStore.getInstance(context));
+            instance.setActivityListener(downloadCount -> PVDownloadService.setDownloadCount(appContext, downloadCount));
+        }
+
+        return instance;
+    }
+
+    public void setListener(@Nullable Listener listener) {
+        mListener = listener;
+    }
+
+    synchronized void setActivityListener(@Nullable ActivityListener listener) {
+        mActivityListener = listener;
+    }
+
+    /**
+     * maxBytesPerSecond of 0 means unlimited. Downloads already running keep their connections.
+     */
+    public void setLimits(int maxConcurrentDownloads, int maxConnectionsPerDownload, long maxBytesPerSecond) {
+        mMaxConcurrentDownloads = Math.max(1, maxConcurrentDownloads);
+        mMaxConnectionsPerDownload = Math.max(1, maxConnectionsPerDownload);
+        mMaxBytesPerSecond = Math.max(0, maxBytesPerSecond);
+        schedule();
+    }
+
+    /**
+     * Queues a download. A download with the same id, url and destination that didn't finish is
+     * resumed instead of restarted.
+     */
+    public void download(@NonNull String id, @NonNull String url, @NonNull String destination,
+                         @NonNull Map<String, String> headers) {
+        synchronized (this) {
+            ActiveDownload active = mActive.get(id);
+            if (active != null && active.stopStatus == null || mQueue.contains(id)) {
+                // Already downloading, or waiting to
+                return;
+            }
+        }
+
+        PVDownloadStore.Download existing = mStore.getDownload(id);
+        if (existing != null && existing.url.equals(url) && existing.destination.equals(destination)
+                && !STATUS_FINISHED.equals(existing.status)) {
+            mStore.setStatus(id, STATUS_PENDING, null);
+        } else {
+            mStore.putDownload(new PVDownloadStore.Download(id, url, destination, headers, STATUS_PENDING));
+        }
+
+        enqueue(id);
+    }
+
+    public void pause(@NonNull String id) {
+        ActiveDownload active;
+        synchronized (this) {
+            active = mActive.get(id);
+            if (active == null) {
+                mQueue.remove(id);
+            }
+        }
+
+        if (active != null) {
+            active.stop(STATUS_PAUSED);
+            return;
+        }
+
+        // A queued download was removed, which lowers the download count
+        schedule();
+
+        PVDownloadStore.Download download = mStore.getDownload(id);
+        if (download != null && !STATUS_FINISHED.equals(download.status)) {
+            mStore.setStatus(id, STATUS_PAUSED, null);
+            notifyStatusChanged(id, STATUS_PAUSED, null);
+        }
+    }
+
+    /**
+     * Queues a paused, failed or interrupted download again. Returns false when there is no
+     * download with that id, so the caller can start it over.
+     */
+    public boolean resume(@NonNull String id) {
+        PVDownloadStore.Download download = mStore.getDownload(id);
+        if (download == null) {
+            return false;
+        }
+
+        if (!STATUS_FINISHED.equals(download.status)) {
+            mStore.setStatus(id, STATUS_PENDING, null);
+            enqueue(id);
+        }
+
+        return true;
+    }
+
+    /**
+     * Stops a download and deletes its file and what is known about it.
+     */
+    public void cancel(@NonNull String id) {
+        ActiveDownload active;
+        synchronized (this) {
+            mQueue.remove(id);
+            active = mActive.get(id);
+        }
+
+        if (active != null) {
+            // Deleted once its connections have stopped writing
+            active.stop(STATUS_CANCELED);
+            return;
+        }
+
+        // A queued download was removed, which lowers the download count
+        schedule();
+
+        PVDownloadStore.Download download = mStore.getDownload(id);
+        if (download != null) {
+            new File(download.destination).delete();
+            mStore.removeDownload(id);
+        }
+    }
+
+    /**
+     * Forgets a finished or failed download, keeping its file.
+     */
+    public void clear(@NonNull String id) {
+        synchronized (this) {
+            if (mActive.containsKey(id) || mQueue.contains(id)) {
+                return;
+            }
+        }
+
+        mStore.removeDownload(id);
+    }
+
+    @NonNull
+    public List<PVDownloadStore.Download> getDownloads() {
+        return mStore.getDownloads();
+    }
+
+    public long getBytesWritten(@NonNull PVDownloadStore.Download download) {
+        synchronized (this) {
+            ActiveDownload active = mActive.get(download.id);
+            if (active != null) {
+                return active.getBytesWritten();
+            }
+        }
+
+        if (STATUS_FINISHED.equals(download.status)) {
+            return Math.max(0, download.totalBytes);
+        }
+        if (!download.supportsRanges) {
+            // A single stream starts over when resumed
+            return 0;
+        }
+
+        long bytesWritten = 0;
+        for (PVDownloadStore.Chunk chunk : mStore.getChunks(download.id)) {
+            bytesWritten += chunk.bytesWritten.get();
+        }
+        return bytesWritten;
+    }
+
+    /**
+     * Stops every download where it is, as if the app was killed. Only for PVDownloadSoakTest.
+     */
+    void shutdown() throws InterruptedException {
+        synchronized (this) {
+            mQueue.clear();
+            for (ActiveDownload active : mActive.values()) {
+                active.fail();
+            }
+        }
+
+        mDownloadExecutor.shutdownNow();
+        mConnectionExecutor.shutdownNow();
+        mProgressExecutor.shutdownNow();
+        mDownloadExecutor.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        mConnectionExecutor.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void enqueue(String id) {
+        synchronized (this) {
+            mQueue.add(id);
+        }
+        schedule();
+    }
+
+    private synchronized void schedule() {
+        if (mDownloadExecutor.isShutdown()) {
+            return;
+        }
+
+        Iterator<String> queued = mQueue.iterator();
+        while (mActive.size() < mMaxConcurrentDownloads && queued.hasNext()) {
+            String id = queued.next();
+            if (mActive.containsKey(id)) {
+                // Still stopping, it starts again once it has
+                continue;
+            }
+            queued.remove();
+
+            PVDownloadStore.Download download = mStore.getDownload(id);
+            if (download == null) {
+                continue;
+            }
+
+            ActiveDownload active = new ActiveDownload(download);
+            mActive.put(id, active);
+            mDownloadExecutor.execute(() -> run(active));
+        }
+
+        if (!mActive.isEmpty() && mProgressTicker == null) {
+            mProgressTicker = mProgressExecutor.scheduleAtFixedRate(
+                    this::reportProgress, PROGRESS_INTERVAL_MS, PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        } else if (mActive.isEmpty() && mProgressTicker != null) {
+            mProgressTicker.cancel(false);
+            mProgressTicker = null;
+        }
+
+        int downloadCount = mActive.size() + mQueue.size();
+        if (downloadCount != mDownloadCount) {
+            mDownloadCount = downloadCount;
+            if (mActivityListener != null) {
+                mActivityListener.onDownloadCountChanged(downloadCount);
+            }
+        }
+    }
+
+    private void run(ActiveDownload active) {
+        PVDownloadStore.Download download = active.download;
+        String status;
+        String error = null;
+        long totalBytes = -1;
+
+        try {
+            mStore.setStatus(download.id, STATUS_DOWNLOADING, null);
+            notifyStatusChanged(download.id, STATUS_DOWNLOADING, null);
+            totalBytes = fetch(active);
+            status = STATUS_FINISHED;
+        } catch (Exception e) {
+            if (active.stopStatus != null) {
+                status = active.stopStatus;
+            } else if (active.failed) {
+                // Stopped by shutdown, left as it was
+                return;
+            } else {
+                status = STATUS_ERROR;
+                error = e.getMessage() != null ? e.getMessage() : e.toString();
+                Log.e("com.podverse.fdroid.PVDownloadEngine", "Failed to download " + download.url, e);
+            }
+        }
+
+        if (STATUS_CANCELED.equals(active.stopStatus)) {
+            status = STATUS_CANCELED;
+        }
+
+        synchronized (this) {
+            mActive.remove(download.id);
+        }
+
+        try {
+            if (STATUS_CANCELED.equals(status)) {
+                new File(download.destination).delete();
+                mStore.removeDownload(download.id);
+            } else if (STATUS_FINISHED.equals(status)) {
+                mStore.setFinished(download.id, totalBytes);
+            } else {
+                mStore.setStatus(download.id, status, error);
+            }
+        } catch (Exception e) {
+            Log.e("com.podverse.fdroid.PVDownloadEngine", "Failed to save download " + download.id, e);
+        }
+
+        if (!STATUS_CANCELED.equals(status)) {
+            Listener listener = mListener;
+            if (listener != null && active.hasProgress.getAndSet(false)) {
+                listener.onProgress(Collections.singletonList(active.getProgress()));
+            }
+            notifyStatusChanged(download.id, status, error);
+        }
+
+        schedule();
+    }
+
+    /**
+     * Fetches every chunk that isn't complete, planning the chunks first when there are none, and
+     * returns the length of the file.
+     */
+    private long fetch(ActiveDownload active) throws IOException {
+        PVDownloadStore.Download download = active.download;
+        File file = new File(download.destination);
+
+        // Without the file, what was written is gone
+        List<PVDownloadStore.Chunk> chunks = file.exists()
+                ? mStore.getChunks(download.id)
+                : Collections.emptyList();
+
+        for (int replans = 0; ; replans++) {
+            HttpURLConnection probe = null;
+            if (chunks.isEmpty()) {
+                probe = probe(download);
+                try {
+                    chunks = plan(download);
+                    File parent = file.getParentFile();
+                    if (parent != null) {
+                        parent.mkdirs();
+                    }
+                    try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+                        output.setLength(Math.max(0, download.totalBytes));
+                    }
+                    mStore.setPlan(download, chunks);
+                } catch (IOException | RuntimeException e) {
+                    probe.disconnect();
+                    throw e;
+                }
+            }
+
+            active.chunks = chunks;
+            try {
+                fetchChunks(active, chunks, probe);
+                break;
+            } catch (FileChangedException e) {
+                if (replans >= MAX_REPLANS || active.stopStatus != null) {
+                    throw e;
+                }
+                chunks = Collections.emptyList();
+            }
+        }
+
+        if (download.totalBytes >= 0) {
+            return download.totalBytes;
+        }
+
+        // A single stream of unknown length ends where the server closed it
+        long totalBytes = active.getBytesWritten();
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.setLength(totalBytes);
+        }
+        return totalBytes;
+    }
+
+    /**
+     * Requests the whole file as a range, and records on download whether ranges are supported,
+     * its length and validators. Returns the connection, to be read as the first chunk.
+     */
+    private static HttpURLConnection probe(PVDownloadStore.Download download) throws IOException {
+        Map<String, String> headers = getRequestHeaders(download);
+        headers.put("Range", "bytes=0-");
+
+        HttpURLConnection connection = PVFeedFetcher.open(download.url, headers, TIMEOUT_MS);
+        long rangeTotal = connection.getResponseCode() == HttpURLConnection.HTTP_PARTIAL
+                ? parseContentRangeTotal(connection.getHeaderField("Content-Range"))
+                : -1;
+
+        download.supportsRanges = rangeTotal > 0;
+        download.totalBytes = download.supportsRanges
+                ? rangeTotal
+                : parseLength(connection.getHeaderField("Content-Length"));
+        download.etag = connection.getHeaderField("ETag");
+        download.lastModified = connection.getHeaderField("Last-Modified");
+
+        return connection;
+    }
+
+    private List<PVDownloadStore.Chunk> plan(PVDownloadStore.Download download) {
+        List<PVDownloadStore.Chunk> chunks = new ArrayList<>();
+        if (!download.supportsRanges) {
+            chunks.add(new PVDownloadStore.Chunk(0, 0, download.totalBytes > 0 ? download.totalBytes - 1 : -1, 0));
+            return chunks;
+        }
+
+        long total = download.totalBytes;
+        long maxChunks = (total + MIN_CHUNK_BYTES - 1) / MIN_CHUNK_BYTES;
+        int count = (int) Math.max(1, Math.min(mMaxConnectionsPerDownload, maxChunks));
+        long chunkSize = total / count;
+        for (int index = 0; index < count; index++) {
+            long startByte = index * chunkSize;
+            long endByte = index == count - 1 ? total - 1 : startByte + chunkSize - 1;
+            chunks.add(new PVDownloadStore.Chunk(index, startByte, endByte, 0));
+        }
+
+        return chunks;
+    }
+
+    private void fetchChunks(ActiveDownload active, List<PVDownloadStore.Chunk> chunks,
+                             @Nullable HttpURLConnection probe) throws IOException {
+        CompletionService<Void> completion = new ExecutorCompletionService<>(mConnectionExecutor);
+        int pending = 0;
+        for (PVDownloadStore.Chunk chunk : chunks) {
+            HttpURLConnection connection = chunk.index == 0 ? probe : null;
+            if (chunk.isComplete()) {
+                if (connection != null) {
+                    connection.disconnect();
+                }
+                continue;
+            }
+
+            completion.submit(() -> {
+                fetchChunk(active, chunk, connection);
+                return null;
+            });
+            pending++;
+        }
+
+        IOException failure = null;
+        try {
+            for (; pending > 0; pending--) {
+                try {
+                    completion.take().get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof IOException
+                                ? (IOException) e.getCause()
+                                : new IOException(e.getCause());
+                        active.fail();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            active.fail();
+            throw new InterruptedIOException();
+        }
+
+        // Every chunk of this attempt has stopped, so another attempt can start clean
+        active.failed = false;
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void fetchChunk(ActiveDownload active, PVDownloadStore.Chunk chunk,
+                            @Nullable HttpURLConnection connection) throws IOException, InterruptedException {
+        PVDownloadStore.Download download = active.download;
+        int retries = 0;
+
+        while (!chunk.isComplete()) {
+            active.checkStopped();
+            try {
+                if (connection == null) {
+                    connection = openChunk(download, chunk);
+                }
+                active.connections.add(connection);
+                active.checkStopped();
+
+                boolean ended = read(active, chunk, connection);
+                if (ended && chunk.endByte < 0) {
+                    return;
+                }
+                if (ended && !chunk.isComplete()) {
+                    throw new IOException("Connection closed before the end of chunk " + chunk.index);
+                }
+            } catch (StoppedException | FileChangedException e) {
+                throw e;
+            } catch (IOException e) {
+                active.checkStopped();
+                if (e instanceof PVFeedFetcher.HttpStatusException
+                        && ((PVFeedFetcher.HttpStatusException) e).statusCode < 500) {
+                    throw e;
+                }
+                if (++retries > MAX_CHUNK_RETRIES) {
+                    throw e;
+                }
+                Thread.sleep(RETRY_DELAY_MS * retries);
+            } finally {
+                if (connection != null) {
+                    active.connections.remove(connection);
+                    connection.disconnect();
+                    connection = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Requests what is left of a chunk. Throws FileChangedException when the server sends the whole
+     * file instead, which it does when If-Range no longer matches.
+     */
+    private static HttpURLConnection openChunk(PVDownloadStore.Download download, PVDownloadStore.Chunk chunk)
+            throws IOException {
+        Map<String, String> headers = getRequestHeaders(download);
+        if (!download.supportsRanges) {
+            chunk.bytesWritten.set(0);
+            return PVFeedFetcher.open(download.url, headers, TIMEOUT_MS);
+        }
+
+        long fromByte = chunk.startByte + chunk.bytesWritten.get();
+        headers.put("Range", "bytes=" + fromByte + "-" + (chunk.endByte >= 0 ? chunk.endByte : ""));
+
+        // Weak ETags can't be used with If-Range
+        String validator = download.etag != null && !download.etag.startsWith("W/")
+                ? download.etag
+                : download.lastModified;
+        if (validator != null) {
+            headers.put("If-Range", validator);
+        }
+
+        HttpURLConnection connection = PVFeedFetcher.open(download.url, headers, TIMEOUT_MS);
+        if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+            connection.disconnect();
+            throw new FileChangedException();
+        }
+
+        return connection;
+    }
+
+    /**
+     * Writes the response into the chunk's range of the file, and returns true when the response
+     * ended. bytes_written is stored every PERSIST_INTERVAL_BYTES, always after the bytes it counts
+     * were written.
+     */
+    private boolean read(ActiveDownload active, PVDownloadStore.Chunk chunk, HttpURLConnection connection)
+            throws IOException {
+        PVDownloadStore.Download download = active.download;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long unsavedBytes = 0;
+
+        try (InputStream input = connection.getInputStream();
+             RandomAccessFile output = new RandomAccessFile(download.destination, "rw")) {
+            output.seek(chunk.startByte + chunk.bytesWritten.get());
+
+            while (true) {
+                long remaining = chunk.endByte >= 0
+                        ? chunk.endByte + 1 - chunk.startByte - chunk.bytesWritten.get()
+                        : buffer.length;
+                if (remaining <= 0) {
+                    return false;
+                }
+
+                int length = acquireBandwidth((int) Math.min(buffer.length, remaining));
+                int read = input.read(buffer, 0, length);
+                if (read == -1) {
+                    return true;
+                }
+                active.checkStopped();
+
+                output.write(buffer, 0, read);
+                chunk.bytesWritten.addAndGet(read);
+                active.hasProgress.set(true);
+
+                unsavedBytes += read;
+                if (unsavedBytes >= PERSIST_INTERVAL_BYTES && download.supportsRanges) {
+                    mStore.setChunkProgress(download.id, chunk.index, chunk.bytesWritten.get());
+                    unsavedBytes = 0;
+                }
+            }
+        } finally {
+            if (unsavedBytes > 0 && download.supportsRanges) {
+                mStore.setChunkProgress(download.id, chunk.index, chunk.bytesWritten.get());
+            }
+        }
+    }
+
+    /**
+     * Waits until length bytes fit in maxBytesPerSecond, shared by every connection, and returns how
+     * many bytes may be read. Reads are capped to a tenth of a second of bandwidth so connections
+     * take turns.
+     */
+    private int acquireBandwidth(int length) throws InterruptedIOException {
+        long maxBytesPerSecond = mMaxBytesPerSecond;
+        if (maxBytesPerSecond <= 0) {
+            return length;
+        }
+
+        int granted = (int) Math.min(length, Math.max(1, maxBytesPerSecond / 10));
+        long waitNanos;
+        synchronized (mBandwidthLock) {
+            long now = System.nanoTime();
+            long start = Math.max(now, mNextBandwidthNanos);
+            mNextBandwidthNanos = start + granted * 1_000_000_000L / maxBytesPerSecond;
+            waitNanos = start - now;
+        }
+
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        return granted;
+    }
+
+    private void reportProgress() {
+        try {
+            List<Progress> progress = new ArrayList<>();
+            synchronized (this) {
+                for (ActiveDownload active : mActive.values()) {
+                    if (active.hasProgress.getAndSet(false)) {
+                        progress.add(active.getProgress());
+                    }
+                }
+            }
+
+            Listener listener = mListener;
+            if (listener != null && !progress.isEmpty()) {
+                listener.onProgress(progress);
+            }
+        } catch (Exception e) {
+            // An exception would cancel the ticker
+            Log.e("com.podverse.fdroid.PVDownloadEngine", "Failed to report progress", e);
+        }
+    }
+
+    private void notifyStatusChanged(String id, String status, @Nullable String error) {
+        Listener listener = mListener;
+        if (listener != null) {
+            listener.onStatusChanged(id, status, error);
+        }
+    }
+
+    private static Map<String, String> getRequestHeaders(PVDownloadStore.Download download) {
+        Map<String, String> headers = new HashMap<>(download.headers);
+        // Byte offsets must match the file, not a compressed response
+        headers.put("Accept-Encoding", "identity");
+        return headers;
+    }
+
+    /**
+     * Returns the length from a Content-Range of bytes 0-99/1000, or -1 when it's unknown.
+     */
+    private static long parseContentRangeTotal(@Nullable String contentRange) {
+        if (contentRange == null) {
+            return -1;
+        }
+
+        int slash = contentRange.lastIndexOf('/');
+        return slash >= 0 ? parseLength(contentRange.substring(slash + 1)) : -1;
+    }
+
+    private static long parseLength(@Nullable String length) {
+        if (length == null) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(length.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.podverse.fdroid;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class PVDownloadModule extends ReactContextBaseJavaModule implements PVDownloadEngine.Listener {
+    // Exposes PVDownloadEngine to JS. Progress arrives as one PVDownloadProgress event per
+    // PVDownloadEngine.PROGRESS_INTERVAL_MS for every download that made progress, and each status
+    // change as a PVDownloadStateChanged event. A finished download stays known until JS has moved
+    // it into the downloaded episodes and calls clear.
+
+    public static final String EVENT_DOWNLOAD_PROGRESS = "PVDownloadProgress";
+    public static final String EVENT_DOWNLOAD_STATE_CHANGED = "PVDownloadStateChanged";
+
+    private final ExecutorService mDownloadExecutor = Executors.newSingleThreadExecutor();
+    private PVDownloadEngine mEngine;
+
+    PVDownloadModule(ReactApplicationContext context) {
+        super(context);
+    }
+
+    @Override
+    public String getName() {
+        return "PVDownloadEngine";
+    }
+
+    @ReactMethod
+    public void download(String id, String url, String destination, ReadableMap headers, Promise promise) {
+        var requestHeaders = PVFeedParserModule.toHeaders(headers);
+
+        mDownloadExecutor.execute(() -> {
+            try {
+                getEngine().download(id, url, destination, requestHeaders);
+                promise.resolve(null);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVDownloadModule", "Failed to start download " + id, e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void pause(String id, Promise promise) {
+        mDownloadExecutor.execute(() -> {
+            try {
+                getEngine().pause(id);
+                promise.resolve(null);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVDownloadModule", "Failed to pause download " + id, e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    /**
+     * Resolves with false when the download isn't known, so JS can start it over.
+     */
+    @ReactMethod
+    public void resume(String id, Promise promise) {
+        mDownloadExecutor.execute(() -> {
+            try {
+                promise.resolve(getEngine().resume(id));
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVDownloadModule", "Failed to resume download " + id, e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void cancel(String id, Promise promise) {
+        mDownloadExecutor.execute(() -> {
+            try {
+                getEngine().cancel(id);
+                promise.resolve(null);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVDownloadModule", "Failed to cancel download " + id, e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void clear(String id, Promise promise) {
+        mDownloadExecutor.execute(() -> {
+            try {
+                getEngine().clear(id);
+                promise.resolve(null);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVDownloadModule", "Failed to clear download " + id, e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    /**
+     * Resolves with every known download as { id, url, destination, status, error, bytesWritten,
+     * totalBytes }, with a totalBytes of -1 when the length isn't known yet.
+     */
+    @ReactMethod
+    public void getDownloads(Promise promise) {
+        mDownloadExecutor.execute(() -> {
+            try {
+                PVDownloadEngine engine = getEngine();
+                WritableArray downloads = Arguments.createArray();
+                for (PVDownloadStore.Download download : engine.getDownloads()) {
+                    WritableMap item = Arguments.createMap();
+                    item.putString("id", download.id);
+                    item.putString("url", download.url);
+                    item.putString("destination", download.destination);
+                    item.putString("status", download.status);
+                    item.putString("error", download.error);
+                    item.putDouble("bytesWritten", engine.getBytesWritten(download));
+                    item.putDouble("totalBytes", download.totalBytes);
+                    downloads.pushMap(item);
+                }
+                promise.resolve(downloads);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVDownloadModule", "Failed to read downloads", e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    /**
+     * A maxBytesPerSecond of 0 means unlimited.
+     */
+    @ReactMethod
+    public void setLimits(int maxConcurrentDownloads, int maxConnectionsPerDownload, double maxBytesPerSecond,
+                          Promise promise) {
+        mDownloadExecutor.execute(() -> {
+            try {
+                getEngine().setLimits(maxConcurrentDownloads, maxConnectionsPerDownload, (long) maxBytesPerSecond);
+                promise.resolve(null);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVDownloadModule", "Failed to set download limits", e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void addListener(String eventName) {
+        // Required by NativeEventEmitter
+    }
+
+    @ReactMethod
+    public void removeListeners(Integer count) {
+        // Required by NativeEventEmitter
+    }
+
+    @Override
+    public void onProgress(@NonNull List<PVDownloadEngine.Progress> progress) {
+        WritableArray downloads = Arguments.createArray();
+        for (PVDownloadEngine.Progress item : progress) {
+            WritableMap download = Arguments.createMap();
+            download.putString("id", item.id);
+            download.putDouble("bytesWritten", item.bytesWritten);
+            download.putDouble("totalBytes", item.totalBytes);
+            downloads.pushMap(download);
+        }
+
+        WritableMap event = Arguments.createMap();
+        event.putArray("downloads", downloads);
+        emit(EVENT_DOWNLOAD_PROGRESS, event);
+    }
+
+    @Override
+    public void onStatusChanged(@NonNull String id, @NonNull String status, @Nullable String error) {
+        WritableMap event = Arguments.createMap();
+        event.putString("id", id);
+        event.putString("status", status);
+        event.putString("error", error);
+        emit(EVENT_DOWNLOAD_STATE_CHANGED, event);
+    }
+
+    private PVDownloadEngine getEngine() {
+        if (mEngine == null) {
+            // Opens PVDownloadStore, so only on mDownloadExecutor
+            mEngine = PVDownloadEngine.getInstance(getReactApplicationContext());
+            mEngine.setListener(this);
+        }
+
+        return mEngine;
+    }
+
+    private void emit(String eventName, WritableMap event) {
+        var context = getReactApplicationContext();
+        if (!context.hasActiveCatalystInstance()) {
+            return;
+        }
+
+        context.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class).emit(eventName, event);
+    }
+}
@@ -0,0 +1,175 @@
+package com.podverse.fdroid;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.app.NotificationCompat;
+import androidx.core.content.ContextCompat;
+
+public class PVDownloadService extends Service {
+    /*
+        Keeps the app in the foreground while PVDownloadEngine has downloads running or queued, so
+        the system doesn't stop them once the user leaves the app. The engine reports its download
+        count, the first download starts the service and an empty queue stops it.
+
+        The service is only started when it isn't running. Later counts update its notification
+        directly, since Android 12 refuses most foreground service starts from the background.
+     */
+
+    private static final String CHANNEL_ID = "downloads";
+    private static final int NOTIFICATION_ID = 4301;
+
+    private static final Object lock = new Object();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Guarded by lock
+    private static PVDownloadService runningService;
+    private static boolean isStarting = false;
+    private static int downloadCount = 0;
+
+    /**
+     * Called by PVDownloadEngine whenever the number of running and queued downloads changes.
+     */
+    static void setDownloadCount(@NonNull Context context, int count) {
+        synchronized (lock) {
+            downloadCount = count;
+            if (runningService != null) {
+                PVDownloadService service = runningService;
+                mainHandler.post(service::refresh);
+                return;
+            }
+            if (count == 0 || isStarting) {
+                return;
+            }
+            isStarting = true;
+        }
+
+        try {
+            ContextCompat.startForegroundService(context, new Intent(context, PVDownloadService.class));
+        } catch (IllegalStateException e) {
+            // Started from the background on Android 12 or higher, the downloads still run as long as the process does
+            Log.w("com.podverse.fdroid.PVDownloadService", "Downloading without a foreground service", e);
+            synchronized (lock) {
+                isStarting = false;
+            }
+        }
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        int count;
+        synchronized (lock) {
+            runningService = this;
+            isStarting = false;
+            count = downloadCount;
+        }
+
+        // Every startForegroundService has to be answered with startForeground, even when the queue drained meanwhile
+        Notification notification = buildNotification(count);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            startForeground(NOTIFICATION_ID, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_DATA_SYNC);
+        } else {
+            startForeground(NOTIFICATION_ID, notification);
+        }
+
+        if (count == 0) {
+            stop();
+        }
+
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        synchronized (lock) {
+            if (runningService == this) {
+                runningService = null;
+            }
+        }
+        super.onDestroy();
+    }
+
+    @Nullable
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    private void refresh() {
+        int count;
+        synchronized (lock) {
+            if (runningService != this) {
+                return;
+            }
+            count = downloadCount;
+        }
+
+        if (count == 0) {
+            stop();
+            return;
+        }
+
+        NotificationManager notificationManager =
+                (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        notificationManager.notify(NOTIFICATION_ID, buildNotification(count));
+    }
+
+    private void stop() {
+        synchronized (lock) {
+            // A download added from now on starts the service again
+            if (runningService == this) {
+                runningService = null;
+            }
+        }
+
+        stopForeground(true);
+        stopSelf();
+    }
+
+    @NonNull
+    private Notification buildNotification(int count) {
+        registerNotificationChannel();
+
+        Intent intent = new Intent(this, MainActivity.class);
+        intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        PendingIntent pendingIntent = PendingIntent.getActivity(this, NOTIFICATION_ID, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle("Downloading episodes")
+                .setContentText(count == 1 ? "1 episode" : count + " episodes")
+                .setProgress(0, 0, true)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .setCategory(NotificationCompat.CATEGORY_PROGRESS)
+                .setContentIntent(pendingIntent)
+                .build();
+    }
+
+    private void registerNotificationChannel() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return;
+        }
+
+        // Low importance, so the notification shows without a sound
+        NotificationChannel channel = new NotificationChannel(
+                CHANNEL_ID,
+                "Downloads",
+                NotificationManager.IMPORTANCE_LOW);
+        ((NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE)).createNotificationChannel(channel);
+    }
+}
@@ -0,0 +1,311 @@
+package com.podverse.fdroid;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class PVDownloadStore extends SQLiteOpenHelper {
+    /*
+        What PVDownloadEngine knows about each download, so a download resumes where it stopped
+        after a pause, a network error or the app being killed.
+
+        A download is split into chunks, each a byte range of the file fetched over its own
+        connection. bytes_written of a chunk is only stored after those bytes have been written to
+        the file, so resuming from it never leaves a gap. A download that can't be fetched in
+        ranges is a single chunk, which restarts from 0.
+     */
+
+    private static final String DATABASE_NAME = "PVDownloads";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE_DOWNLOADS = "downloads";
+    private static final String TABLE_CHUNKS = "chunks";
+
+    private static PVDownloadStore instance;
+
+    public static class Download {
+        @NonNull
+        public final String id;
+        @NonNull
+        public final String url;
+        @NonNull
+        public final String destination;
+        @NonNull
+        public final Map<String, String> headers;
+        @NonNull
+        public String status;
+        // -1 until the first response, and for single-stream downloads of unknown length
+        public long totalBytes = -1;
+        public boolean supportsRanges = false;
+        @Nullable
+        public String etag;
+        @Nullable
+        public String lastModified;
+        @Nullable
+        public String error;
+
+        Download(@NonNull String id, @NonNull String url, @NonNull String destination,
+                 @NonNull Map<String, String> headers, @NonNull String status) {
+            this.id = id;
+            this.url = url;
+            this.destination = destination;
+            this.headers = headers;
+            this.status = status;
+        }
+    }
+
+    public static class Chunk {
+        public final int index;
+        public final long startByte;
+        // Inclusive, or -1 when the length is unknown
+        public final long endByte;
+        public final AtomicLong bytesWritten;
+
+        Chunk(int index, long startByte, long endByte, long bytesWritten) {
+            this.index = index;
+            this.startByte = startByte;
+            this.endByte = endByte;
+            this.bytesWritten = new AtomicLong(bytesWritten);
+        }
+
+        boolean isComplete() {
+            return endByte >= 0 && startByte + bytesWritten.get() > endByte;
+        }
+    }
+
+    PVDownloadStore(@NonNull Context context, @NonNull String databaseName) {
+        super(context.getApplicationContext(), databaseName, null, DATABASE_VERSION);
+    }
+
+    public static synchronized PVDownloadStore getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new PVDownloadStore(context, DATABASE_NAME);
+        }
+
+        return instance;
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.enableWriteAheadLogging();
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_DOWNLOADS + " ("
+                + "id TEXT PRIMARY KEY NOT NULL, "
+                + "url TEXT NOT NULL, "
+                + "destination TEXT NOT NULL, "
+                + "headers TEXT NOT NULL, "
+                + "status TEXT NOT NULL, "
+                + "total_bytes INTEGER NOT NULL DEFAULT -1, "
+                + "supports_ranges INTEGER NOT NULL DEFAULT 0, "
+                + "etag TEXT, "
+                + "last_modified TEXT, "
+                + "error TEXT)");
+        db.execSQL("CREATE TABLE " + TABLE_CHUNKS + " ("
+                + "download_id TEXT NOT NULL, "
+                + "chunk_index INTEGER NOT NULL, "
+                + "start_byte INTEGER NOT NULL, "
+                + "end_byte INTEGER NOT NULL, "
+                + "bytes_written INTEGER NOT NULL, "
+                + "PRIMARY KEY (download_id, chunk_index)) WITHOUT ROWID");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Only one version so far
+    }
+
+    /**
+     * Adds a download, replacing any previous download with the same id and its chunks.
+     */
+    public void putDownload(@NonNull Download download) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_CHUNKS, "download_id = ?", new String[]{download.id});
+
+            ContentValues values = new ContentValues();
+            values.put("id", download.id);
+            values.put("url", download.url);
+            values.put("destination", download.destination);
+            values.put("headers", new JSONObject(download.headers).toString());
+            values.put("status", download.status);
+            values.put("total_bytes", download.totalBytes);
+            values.put("supports_ranges", download.supportsRanges ? 1 : 0);
+            values.put("etag", download.etag);
+            values.put("last_modified", download.lastModified);
+            values.put("error", download.error);
+            db.insertWithOnConflict(TABLE_DOWNLOADS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Nullable
+    public Download getDownload(@NonNull String id) {
+        try (Cursor cursor = queryDownloads("id = ?", new String[]{id})) {
+            return cursor.moveToFirst() ? toDownload(cursor) : null;
+        }
+    }
+
+    @NonNull
+    public List<Download> getDownloads() {
+        List<Download> downloads = new ArrayList<>();
+        try (Cursor cursor = queryDownloads(null, null)) {
+            while (cursor.moveToNext()) {
+                downloads.add(toDownload(cursor));
+            }
+        }
+
+        return downloads;
+    }
+
+    public void setStatus(@NonNull String id, @NonNull String status, @Nullable String error) {
+        ContentValues values = new ContentValues();
+        values.put("status", status);
+        values.put("error", error);
+        getWritableDatabase().update(TABLE_DOWNLOADS, values, "id = ?", new String[]{id});
+    }
+
+    /**
+     * Replaces how a download is fetched: its length, validators and chunks.
+     */
+    public void setPlan(@NonNull Download download, @NonNull List<Chunk> chunks) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            values.put("total_bytes", download.totalBytes);
+            values.put("supports_ranges", download.supportsRanges ? 1 : 0);
+            values.put("etag", download.etag);
+            values.put("last_modified", download.lastModified);
+            db.update(TABLE_DOWNLOADS, values, "id = ?", new String[]{download.id});
+
+            db.delete(TABLE_CHUNKS, "download_id = ?", new String[]{download.id});
+            for (Chunk chunk : chunks) {
+                ContentValues chunkValues = new ContentValues();
+                chunkValues.put("download_id", download.id);
+                chunkValues.put("chunk_index", chunk.index);
+                chunkValues.put("start_byte", chunk.startByte);
+                chunkValues.put("end_byte", chunk.endByte);
+                chunkValues.put("bytes_written", chunk.bytesWritten.get());
+                db.insert(TABLE_CHUNKS, null, chunkValues);
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @NonNull
+    public List<Chunk> getChunks(@NonNull String id) {
+        List<Chunk> chunks = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(
+                TABLE_CHUNKS,
+                new String[]{"chunk_index", "start_byte", "end_byte", "bytes_written"},
+                "download_id = ?",
+                new String[]{id},
+                null, null, "chunk_index")) {
+            while (cursor.moveToNext()) {
+                chunks.add(new Chunk(cursor.getInt(0), cursor.getLong(1), cursor.getLong(2), cursor.getLong(3)));
+            }
+        }
+
+        return chunks;
+    }
+
+    public void setChunkProgress(@NonNull String id, int chunkIndex, long bytesWritten) {
+        ContentValues values = new ContentValues();
+        values.put("bytes_written", bytesWritten);
+        getWritableDatabase().update(TABLE_CHUNKS, values, "download_id = ? AND chunk_index = ?",
+                new String[]{id, String.valueOf(chunkIndex)});
+    }
+
+    /**
+     * Marks a download finished and drops its chunks, which are no longer needed.
+     */
+    public void setFinished(@NonNull String id, long totalBytes) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            values.put("status", PVDownloadEngine.STATUS_FINISHED);
+            values.put("total_bytes", totalBytes);
+            values.putNull("error");
+            db.update(TABLE_DOWNLOADS, values, "id = ?", new String[]{id});
+            db.delete(TABLE_CHUNKS, "download_id = ?", new String[]{id});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public void removeDownload(@NonNull String id) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_DOWNLOADS, "id = ?", new String[]{id});
+            db.delete(TABLE_CHUNKS, "download_id = ?", new String[]{id});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private Cursor queryDownloads(@Nullable String selection, @Nullable String[] selectionArgs) {
+        return getReadableDatabase().query(
+                TABLE_DOWNLOADS,
+                new String[]{"id", "url", "destination", "headers", "status", "total_bytes", "supports_ranges",
+                        "etag", "last_modified", "error"},
+                selection, selectionArgs, null, null, null);
+    }
+
+    private static Download toDownload(Cursor cursor) {
+        Download download = new Download(
+                cursor.getString(0), cursor.getString(1), cursor.getString(2), toHeaders(cursor.getString(3)),
+                cursor.getString(4));
+        download.totalBytes = cursor.getLong(5);
+        download.supportsRanges = cursor.getInt(6) == 1;
+        download.etag = cursor.getString(7);
+        download.lastModified = cursor.getString(8);
+        download.error = cursor.getString(9);
+
+        return download;
+    }
+
+    private static Map<String, String> toHeaders(String headersJson) {
+        Map<String, String> headers = new HashMap<>();
+        try {
+            JSONObject json = new JSONObject(headersJson);
+            Iterator<String> names = json.keys();
+            while (names.hasNext()) {
+                String name = names.next();
+                headers.put(name, json.getString(name));
+            }
+        } catch (JSONException e) {
+            // Always written by putDownload as a JSON object
+        }
+
+        return headers;
+    }
+}
@@ -0,0 +1,465 @@
+package com.podverse.fdroid;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.TimeZone;
+
+public class PVEpisodeStore extends SQLiteOpenHelper {
+    /*
+        Indexed copy of the episodes of podcasts added by RSS feed.
+
+        The podcasts themselves stay in PVLargeValueStore under ADD_BY_RSS_PODCASTS, which is what the
+        rest of the app reads. This store is built from that value once and then updated with only the
+        podcasts that change when it is written, with one row per episode and the fields used for
+        filtering and sorting in their own indexed columns. Episode lists can then load one page of
+        episodes instead of the whole library.
+
+        Each row keeps the episode as JSON. Query results are returned as a JSON array with the podcast,
+        without its episodes, attached to every episode, as getAddByRSSEpisodesLocally did in JS.
+     */
+
+    static final String ADD_BY_RSS_PODCASTS_KEY = "ADD_BY_RSS_PODCASTS";
+
+    private static final String DATABASE_NAME = "PVEpisodeStore";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE_PODCASTS = "podcasts";
+    private static final String TABLE_EPISODES = "episodes";
+
+    private static PVEpisodeStore instance;
+
+    // JSON.stringify output for Date values
+    private final SimpleDateFormat isoDateFormat;
+    private final String databaseName;
+
+    private PVEpisodeStore(@NonNull Context context) {
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * Creates a store backed by its own database, without touching the app's episodes.
+     */
+    PVEpisodeStore(@NonNull Context context, @NonNull String databaseName) {
+        super(context.getApplicationContext(), databaseName, null, DATABASE_VERSION);
+        this.databaseName = databaseName;
+        isoDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        isoDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    public static synchronized PVEpisodeStore getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new PVEpisodeStore(context);
+        }
+
+        return instance;
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.enableWriteAheadLogging();
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_PODCASTS + " ("
+                + "feed_url TEXT PRIMARY KEY NOT NULL, "
+                + "json TEXT NOT NULL)");
+        db.execSQL("CREATE TABLE " + TABLE_EPISODES + " ("
+                + "feed_url TEXT NOT NULL, "
+                + "position INTEGER NOT NULL, "
+                + "pub_date INTEGER, "
+                + "has_video INTEGER NOT NULL, "
+                + "title TEXT, "
+                + "json TEXT NOT NULL, "
+                + "PRIMARY KEY (feed_url, position))");
+        db.execSQL("CREATE INDEX episodes_pub_date ON " + TABLE_EPISODES + " (pub_date)");
+        db.execSQL("CREATE INDEX episodes_feed_url_pub_date ON " + TABLE_EPISODES + " (feed_url, pub_date)");
+        db.execSQL("CREATE INDEX episodes_has_video_pub_date ON " + TABLE_EPISODES + " (has_video, pub_date)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Only one version so far
+    }
+
+    /**
+     * Replaces every podcast and episode with the ones in addByRSSPodcasts, the JSON array stored
+     * under ADD_BY_RSS_PODCASTS. The array is parsed as a stream, one episode at a time.
+     */
+    public synchronized void rebuild(@NonNull Reader addByRSSPodcasts) throws IOException {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+
+        try (JsonReader reader = new JsonReader(addByRSSPodcasts);
+             SQLiteStatement insertEpisode = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_EPISODES
+                     + " (feed_url, position, pub_date, has_video, title, json) VALUES (?, ?, ?, ?, ?, ?)")) {
+            db.delete(TABLE_EPISODES, null, null);
+            db.delete(TABLE_PODCASTS, null, null);
+
+            if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        readPodcast(db, reader, insertEpisode);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endArray();
+            }
+
+            db.setTransactionSuccessful();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Invalid add by RSS podcasts JSON", e);
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Replaces the podcasts in changedPodcasts, a JSON array of podcasts like the one stored under
+     * ADD_BY_RSS_PODCASTS, and removes every podcast whose feed url isn't in feedUrls. Other podcasts
+     * and their episodes are left as they are.
+     */
+    public synchronized void update(@NonNull Reader changedPodcasts, @NonNull Collection<String> feedUrls) throws IOException {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+
+        try (JsonReader reader = new JsonReader(changedPodcasts);
+             SQLiteStatement insertEpisode = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_EPISODES
+                     + " (feed_url, position, pub_date, has_video, title, json) VALUES (?, ?, ?, ?, ?, ?)")) {
+            HashSet<String> keptFeedUrls = new HashSet<>(feedUrls);
+            ArrayList<String> removedFeedUrls = new ArrayList<>();
+            try (Cursor cursor = db.rawQuery("SELECT feed_url FROM " + TABLE_PODCASTS, null)) {
+                while (cursor.moveToNext()) {
+                    if (!keptFeedUrls.contains(cursor.getString(0))) {
+                        removedFeedUrls.add(cursor.getString(0));
+                    }
+                }
+            }
+            for (String feedUrl : removedFeedUrls) {
+                db.delete(TABLE_EPISODES, "feed_url = ?", new String[]{feedUrl});
+                db.delete(TABLE_PODCASTS, "feed_url = ?", new String[]{feedUrl});
+            }
+
+            if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        readPodcast(db, reader, insertEpisode);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endArray();
+            }
+
+            db.setTransactionSuccessful();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Invalid add by RSS podcasts JSON", e);
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public synchronized void clear() {
+        SQLiteDatabase db = getWritableDatabase();
+        db.delete(TABLE_EPISODES, null, null);
+        db.delete(TABLE_PODCASTS, null, null);
+    }
+
+    public synchronized boolean hasEpisodes() {
+        try (Cursor cursor = getReadableDatabase().rawQuery("SELECT 1 FROM " + TABLE_EPISODES + " LIMIT 1", null)) {
+            return cursor.moveToFirst();
+        }
+    }
+
+    /**
+     * Returns the episodes matching query, most recent first, as a JSON array.
+     */
+    @NonNull
+    public synchronized String queryEpisodes(@NonNull Query query) {
+        ArrayList<String> selectionArgs = new ArrayList<>();
+        String where = buildWhere(query, selectionArgs);
+
+        String sql = "SELECT e.json, p.json FROM " + TABLE_EPISODES + " e"
+                + " JOIN " + TABLE_PODCASTS + " p ON p.feed_url = e.feed_url"
+                + where
+                + " ORDER BY e.pub_date DESC, e.feed_url, e.position";
+        if (query.limit > 0) {
+            sql += " LIMIT " + query.limit + " OFFSET " + Math.max(0, query.offset);
+        }
+
+        StringBuilder result = new StringBuilder("[");
+        try (Cursor cursor = getReadableDatabase().rawQuery(sql, selectionArgs.toArray(new String[0]))) {
+            while (cursor.moveToNext()) {
+                if (result.length() > 1) {
+                    result.append(',');
+                }
+                appendEpisodeWithPodcast(result, cursor.getString(0), cursor.getString(1));
+            }
+        }
+
+        return result.append(']').toString();
+    }
+
+    public synchronized int countEpisodes(@NonNull Query query) {
+        ArrayList<String> selectionArgs = new ArrayList<>();
+        String where = buildWhere(query, selectionArgs);
+
+        try (Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT COUNT(*) FROM " + TABLE_EPISODES + " e" + where, selectionArgs.toArray(new String[0]))) {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        }
+    }
+
+    void deleteDatabase(@NonNull Context context) {
+        close();
+        context.getApplicationContext().deleteDatabase(databaseName);
+    }
+
+    @NonNull
+    private static String buildWhere(@NonNull Query query, @NonNull ArrayList<String> selectionArgs) {
+        ArrayList<String> conditions = new ArrayList<>();
+
+        if (query.oldestPubDate != null) {
+            conditions.add("e.pub_date >= ?");
+            selectionArgs.add(String.valueOf(query.oldestPubDate));
+        }
+        if (query.mostRecentPubDate != null) {
+            conditions.add("e.pub_date <= ?");
+            selectionArgs.add(String.valueOf(query.mostRecentPubDate));
+        }
+        if (query.podcastFeedUrl != null) {
+            conditions.add("e.feed_url = ?");
+            selectionArgs.add(query.podcastFeedUrl);
+        }
+        if (query.hasVideo) {
+            conditions.add("e.has_video = 1");
+        }
+        if (query.searchTitle != null && !query.searchTitle.isEmpty()) {
+            conditions.add("e.title LIKE ? ESCAPE '\\'");
+            selectionArgs.add("%" + query.searchTitle
+                    .replace("\\", "\\\\")
+                    .replace("%", "\\%")
+                    .replace("_", "\\_") + "%");
+        }
+
+        return conditions.isEmpty() ? "" : " WHERE " + TextUtils.join(" AND ", conditions);
+    }
+
+    private static void appendEpisodeWithPodcast(@NonNull StringBuilder result, @NonNull String episodeJson, @NonNull String podcastJson) {
+        // Episodes are always stored as JSON objects, so the podcast can be spliced in before the closing brace
+        int end = episodeJson.lastIndexOf('}');
+        result.append(episodeJson, 0, end);
+        if (end > 1) {
+            result.append(',');
+        }
+        result.append("\"podcast\":").append(podcastJson).append('}');
+    }
+
+    private void readPodcast(@NonNull SQLiteDatabase db, @NonNull JsonReader reader, @NonNull SQLiteStatement insertEpisode) throws IOException {
+        // The feed url may come after the episodes, so episodes are buffered until the podcast is complete
+        ArrayList<EpisodeRow> episodes = new ArrayList<>();
+        String feedUrl = null;
+
+        StringWriter podcastJson = new StringWriter();
+        JsonWriter podcastWriter = new JsonWriter(podcastJson);
+        podcastWriter.beginObject();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+
+            if ("episodes".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        episodes.add(readEpisode(reader));
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endArray();
+            } else if ("addByRSSPodcastFeedUrl".equals(name) && reader.peek() == JsonToken.STRING) {
+                feedUrl = reader.nextString();
+                podcastWriter.name(name).value(feedUrl);
+            } else {
+                podcastWriter.name(name);
+                copyValue(reader, podcastWriter);
+            }
+        }
+        reader.endObject();
+
+        podcastWriter.endObject();
+        podcastWriter.close();
+
+        if (feedUrl == null) {
+            return;
+        }
+
+        // The podcast may have fewer episodes than when it was last stored
+        db.delete(TABLE_EPISODES, "feed_url = ?", new String[]{feedUrl});
+
+        ContentValues podcastValues = new ContentValues();
+        podcastValues.put("feed_url", feedUrl);
+        podcastValues.put("json", podcastJson.toString());
+        db.insertWithOnConflict(TABLE_PODCASTS, null, podcastValues, SQLiteDatabase.CONFLICT_REPLACE);
+
+        for (int position = 0; position < episodes.size(); position++) {
+            EpisodeRow episode = episodes.get(position);
+
+            insertEpisode.bindString(1, feedUrl);
+            insertEpisode.bindLong(2, position);
+            if (episode.pubDate != null) {
+                insertEpisode.bindLong(3, episode.pubDate);
+            } else {
+                insertEpisode.bindNull(3);
+            }
+            insertEpisode.bindLong(4, episode.hasVideo ? 1 : 0);
+            if (episode.title != null) {
+                insertEpisode.bindString(5, episode.title);
+            } else {
+                insertEpisode.bindNull(5);
+            }
+            insertEpisode.bindString(6, episode.json);
+            insertEpisode.executeInsert();
+            insertEpisode.clearBindings();
+        }
+    }
+
+    @NonNull
+    private EpisodeRow readEpisode(@NonNull JsonReader reader) throws IOException {
+        EpisodeRow episode = new EpisodeRow();
+        String mediaType = null;
+
+        StringWriter episodeJson = new StringWriter();
+        JsonWriter episodeWriter = new JsonWriter(episodeJson);
+        episodeWriter.beginObject();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+
+            if (reader.peek() == JsonToken.STRING && ("pubDate".equals(name) || "title".equals(name) || "mediaType".equals(name))) {
+                String value = reader.nextString();
+                episodeWriter.name(name).value(value);
+
+                if ("pubDate".equals(name)) {
+                    episode.pubDate = parsePubDate(value);
+                } else if ("title".equals(name)) {
+                    episode.title = value;
+                } else {
+                    mediaType = value;
+                }
+            } else if ("hasVideo".equals(name) && reader.peek() == JsonToken.BOOLEAN) {
+                episode.hasVideo = reader.nextBoolean();
+                episodeWriter.name(name).value(episode.hasVideo);
+            } else {
+                episodeWriter.name(name);
+                copyValue(reader, episodeWriter);
+            }
+        }
+        reader.endObject();
+
+        episodeWriter.endObject();
+        episodeWriter.close();
+
+        // Episodes parsed from RSS only have their enclosure type, not a hasVideo flag
+        episode.hasVideo = episode.hasVideo || (mediaType != null && mediaType.contains("video"));
+        episode.json = episodeJson.toString();
+
+        return episode;
+    }
+
+    @Nullable
+    private Long parsePubDate(@NonNull String pubDate) {
+        try {
+            return isoDateFormat.parse(pubDate).getTime();
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    private static void copyValue(@NonNull JsonReader reader, @NonNull JsonWriter writer) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                reader.beginObject();
+                writer.beginObject();
+                while (reader.hasNext()) {
+                    writer.name(reader.nextName());
+                    copyValue(reader, writer);
+                }
+                reader.endObject();
+                writer.endObject();
+                break;
+            case BEGIN_ARRAY:
+                reader.beginArray();
+                writer.beginArray();
+                while (reader.hasNext()) {
+                    copyValue(reader, writer);
+                }
+                reader.endArray();
+                writer.endArray();
+                break;
+            case STRING:
+                writer.value(reader.nextString());
+                break;
+            case NUMBER:
+                String number = reader.nextString();
+                try {
+                    writer.value(Long.parseLong(number));
+                } catch (NumberFormatException e) {
+                    writer.value(Double.parseDouble(number));
+                }
+                break;
+            case BOOLEAN:
+                writer.value(reader.nextBoolean());
+                break;
+            case NULL:
+                reader.nextNull();
+                writer.nullValue();
+                break;
+            default:
+                reader.skipValue();
+        }
+    }
+
+    public static class Query {
+        @Nullable Long oldestPubDate;
+        @Nullable Long mostRecentPubDate;
+        @Nullable String podcastFeedUrl;
+        @Nullable String searchTitle;
+        boolean hasVideo;
+        int limit;
+        int offset;
+    }
+
+    private static class EpisodeRow {
+        @Nullable Long pubDate;
+        @Nullable String title;
+        boolean hasVideo;
+        String json;
+    }
+}
@@ -0,0 +1,187 @@
+package com.podverse.fdroid;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.reactnativecommunity.asyncstorage.ReactDatabaseSupplier;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class PVEpisodeStoreModule extends ReactContextBaseJavaModule {
+    // Queries the episodes of podcasts added by RSS feed from PVEpisodeStore.
+    // JS calls updateAddByRSSEpisodes with the podcasts it changed after every write of
+    // ADD_BY_RSS_PODCASTS. Until the store has been built once, it is instead filled from the stored
+    // podcasts, on first use or on the first update.
+
+    private static final String EPISODE_STORE_SHARED_PREF_NAME = "PVEpisodeStore";
+    private static final String PREF_KEY_BUILT = "built";
+
+    private final PVEpisodeStore mEpisodeStore;
+    private final PVLargeValueStore mLargeValueStore;
+    private final ReactDatabaseSupplier mReactDatabaseSupplier;
+    private final SharedPreferences mPreferences;
+    private final ExecutorService mStorageExecutor = Executors.newSingleThreadExecutor();
+
+    PVEpisodeStoreModule(ReactApplicationContext context) {
+        super(context);
+        mEpisodeStore = PVEpisodeStore.getInstance(context);
+        mLargeValueStore = PVLargeValueStore.getInstance(context);
+        mReactDatabaseSupplier = ReactDatabaseSupplier.getInstance(context);
+        mPreferences = context.getSharedPreferences(EPISODE_STORE_SHARED_PREF_NAME, Context.MODE_PRIVATE);
+    }
+
+    @Override
+    public String getName() {
+        return "PVEpisodeStore";
+    }
+
+    /**
+     * changedPodcasts is a JSON array of the podcasts that were added or changed, and feedUrls the
+     * feed urls of every podcast now stored, so the ones that were removed can be dropped.
+     */
+    @ReactMethod
+    public void updateAddByRSSEpisodes(String changedPodcasts, ReadableArray feedUrls, Promise promise) {
+        var keptFeedUrls = new ArrayList<String>();
+        for (int i = 0; i < feedUrls.size(); i++) {
+            keptFeedUrls.add(feedUrls.getString(i));
+        }
+
+        mStorageExecutor.execute(() -> {
+            try {
+                if (!mPreferences.getBoolean(PREF_KEY_BUILT, false)) {
+                    rebuild();
+                } else {
+                    update(changedPodcasts, keptFeedUrls);
+                }
+                promise.resolve(null);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVEpisodeStoreModule", "Failed to update episode store", e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void hasEpisodes(Promise promise) {
+        mStorageExecutor.execute(() -> {
+            try {
+                ensureBuilt();
+                promise.resolve(mEpisodeStore.hasEpisodes());
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVEpisodeStoreModule", "Failed to read episode store", e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    /**
+     * Resolves with a JSON array of episodes, most recent first. Options are all optional:
+     * oldestPubDate and mostRecentPubDate (ms, inclusive), podcastFeedUrl, searchTitle, hasVideo,
+     * limit and offset.
+     */
+    @ReactMethod
+    public void queryEpisodes(ReadableMap options, Promise promise) {
+        mStorageExecutor.execute(() -> {
+            try {
+                ensureBuilt();
+                promise.resolve(mEpisodeStore.queryEpisodes(toQuery(options)));
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVEpisodeStoreModule", "Failed to query episode store", e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void countEpisodes(ReadableMap options, Promise promise) {
+        mStorageExecutor.execute(() -> {
+            try {
+                ensureBuilt();
+                promise.resolve(mEpisodeStore.countEpisodes(toQuery(options)));
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVEpisodeStoreModule", "Failed to count episodes", e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    private void ensureBuilt() throws IOException {
+        if (!mPreferences.getBoolean(PREF_KEY_BUILT, false)) {
+            rebuild();
+        }
+    }
+
+    private void rebuild() throws IOException {
+        String key = PVEpisodeStore.ADD_BY_RSS_PODCASTS_KEY;
+
+        // Moves the podcasts out of AsyncStorage if they haven't been read since PVLargeValueStore was added
+        if (!mLargeValueStore.hasItem(key)) {
+            mLargeValueStore.migrateFromAsyncStorage(mReactDatabaseSupplier.get(), key);
+        }
+
+        try {
+            if (!mLargeValueStore.readItem(key, mEpisodeStore::rebuild)) {
+                mEpisodeStore.clear();
+            }
+        } catch (IOException | RuntimeException e) {
+            // The store no longer matches the podcasts, so rebuild it again on next use
+            mPreferences.edit().putBoolean(PREF_KEY_BUILT, false).apply();
+            throw e;
+        }
+
+        mPreferences.edit().putBoolean(PREF_KEY_BUILT, true).apply();
+    }
+
+    private void update(String changedPodcasts, List<String> feedUrls) throws IOException {
+        try {
+            mEpisodeStore.update(new StringReader(changedPodcasts), feedUrls);
+        } catch (IOException | RuntimeException e) {
+            mPreferences.edit().putBoolean(PREF_KEY_BUILT, false).apply();
+            throw e;
+        }
+    }
+
+    private static PVEpisodeStore.Query toQuery(ReadableMap options) {
+        var query = new PVEpisodeStore.Query();
+
+        if (options == null) {
+            return query;
+        }
+
+        if (options.hasKey("oldestPubDate") && !options.isNull("oldestPubDate")) {
+            query.oldestPubDate = (long) options.getDouble("oldestPubDate");
+        }
+        if (options.hasKey("mostRecentPubDate") && !options.isNull("mostRecentPubDate")) {
+            query.mostRecentPubDate = (long) options.getDouble("mostRecentPubDate");
+        }
+        if (options.hasKey("podcastFeedUrl") && !options.isNull("podcastFeedUrl")) {
+            query.podcastFeedUrl = options.getString("podcastFeedUrl");
+        }
+        if (options.hasKey("searchTitle") && !options.isNull("searchTitle")) {
+            query.searchTitle = options.getString("searchTitle");
+        }
+        if (options.hasKey("hasVideo") && !options.isNull("hasVideo")) {
+            query.hasVideo = options.getBoolean("hasVideo");
+        }
+        if (options.hasKey("limit") && !options.isNull("limit")) {
+            query.limit = options.getInt("limit");
+        }
+        if (options.hasKey("offset") && !options.isNull("offset")) {
+            query.offset = options.getInt("offset");
+        }
+
+        return query;
+    }
+}
@@ -0,0 +1,262 @@
+package com.podverse.fdroid;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class PVFeedCache extends SQLiteOpenHelper {
+    /*
+        What the last successful fetch of each feed returned: its ETag and Last-Modified validators
+        and a SHA-256 hash of its body.
+
+        PVFeedParserModule sends the validators as If-None-Match / If-Modified-Since, and treats a
+        304, or a 200 with the same body hash, as unchanged, so the feed isn't parsed and nothing
+        crosses the bridge. Many feed hosts ignore validators, which is what the hash is for.
+
+        It also keeps the key (guid, or enclosure url) and a content hash of every item of each
+        feed, so a refresh can send JS only the items that were added, updated or removed. What a
+        refresh fetched is staged in memory, and only committed once JS has saved the podcast it
+        built from it, so the stored items always describe the saved podcast. When the app stops
+        before that, the next refresh is compared against the last committed items.
+
+        The outcome of every request since the app started is counted for getStats.
+     */
+
+    private static final String DATABASE_NAME = "PVFeedCache";
+    private static final int DATABASE_VERSION = 2;
+
+    private static final String TABLE_FEEDS = "feeds";
+    private static final String TABLE_ITEMS = "items";
+
+    private static PVFeedCache instance;
+
+    private long requestCount = 0;
+    private long notModifiedCount = 0;
+    private long unchangedBodyCount = 0;
+    private long bytesDownloaded = 0;
+    private long itemsSent = 0;
+    private long itemsSkipped = 0;
+
+    private final Map<String, PendingFeed> pendingFeeds = new HashMap<>();
+
+    public static class Validators {
+        @Nullable
+        public final String etag;
+        @Nullable
+        public final String lastModified;
+        @NonNull
+        public final String bodyHash;
+
+        Validators(@Nullable String etag, @Nullable String lastModified, @NonNull String bodyHash) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.bodyHash = bodyHash;
+        }
+    }
+
+    private static class PendingFeed {
+        final Validators validators;
+        final Map<String, String> itemHashes;
+
+        PendingFeed(Validators validators, Map<String, String> itemHashes) {
+            this.validators = validators;
+            this.itemHashes = itemHashes;
+        }
+    }
+
+    private PVFeedCache(@NonNull Context context) {
+        super(context.getApplicationContext(), DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    public static synchronized PVFeedCache getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new PVFeedCache(context);
+        }
+
+        return instance;
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.enableWriteAheadLogging();
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_FEEDS + " ("
+                + "feed_url TEXT PRIMARY KEY NOT NULL, "
+                + "etag TEXT, "
+                + "last_modified TEXT, "
+                + "body_hash TEXT NOT NULL)");
+        createItemsTable(db);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            createItemsTable(db);
+        }
+    }
+
+    private static void createItemsTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_ITEMS + " ("
+                + "feed_url TEXT NOT NULL, "
+                + "item_key TEXT NOT NULL, "
+                + "content_hash TEXT NOT NULL, "
+                + "PRIMARY KEY (feed_url, item_key)) WITHOUT ROWID");
+    }
+
+    @Nullable
+    public Validators getValidators(@NonNull String feedUrl) {
+        try (Cursor cursor = getReadableDatabase().query(
+                TABLE_FEEDS,
+                new String[]{"etag", "last_modified", "body_hash"},
+                "feed_url = ?",
+                new String[]{feedUrl},
+                null, null, null)) {
+            return cursor.moveToFirst()
+                    ? new Validators(cursor.getString(0), cursor.getString(1), cursor.getString(2))
+                    : null;
+        }
+    }
+
+    public void putValidators(@NonNull String feedUrl, @NonNull Validators validators) {
+        ContentValues values = new ContentValues();
+        values.put("feed_url", feedUrl);
+        values.put("etag", validators.etag);
+        values.put("last_modified", validators.lastModified);
+        values.put("body_hash", validators.bodyHash);
+        getWritableDatabase().insertWithOnConflict(TABLE_FEEDS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Returns the content hash of every committed item of a feed by item key, or null when none
+     * have been committed yet.
+     */
+    @Nullable
+    public Map<String, String> getItemHashes(@NonNull String feedUrl) {
+        Map<String, String> itemHashes = new HashMap<>();
+        try (Cursor cursor = getReadableDatabase().query(
+                TABLE_ITEMS,
+                new String[]{"item_key", "content_hash"},
+                "feed_url = ?",
+                new String[]{feedUrl},
+                null, null, null)) {
+            while (cursor.moveToNext()) {
+                itemHashes.put(cursor.getString(0), cursor.getString(1));
+            }
+        }
+
+        return itemHashes.isEmpty() ? null : itemHashes;
+    }
+
+    /**
+     * Holds what a refresh fetched until commit is called for the feed. A later stage replaces it.
+     */
+    public synchronized void stage(
+            @NonNull String feedUrl, @NonNull Validators validators, @NonNull Map<String, String> itemHashes) {
+        pendingFeeds.put(feedUrl, new PendingFeed(validators, itemHashes));
+    }
+
+    /**
+     * Stores the validators and items staged for a feed, if any.
+     */
+    public void commit(@NonNull String feedUrl) {
+        PendingFeed pendingFeed;
+        synchronized (this) {
+            pendingFeed = pendingFeeds.remove(feedUrl);
+        }
+        if (pendingFeed == null) {
+            return;
+        }
+
+        SQLiteDatabase db = getWritableDatabase();
+        SQLiteStatement insertItem = null;
+        db.beginTransaction();
+        try {
+            putValidators(feedUrl, pendingFeed.validators);
+            db.delete(TABLE_ITEMS, "feed_url = ?", new String[]{feedUrl});
+
+            insertItem = db.compileStatement(
+                    "INSERT INTO " + TABLE_ITEMS + " (feed_url, item_key, content_hash) VALUES (?, ?, ?)");
+            for (Map.Entry<String, String> item : pendingFeed.itemHashes.entrySet()) {
+                insertItem.bindString(1, feedUrl);
+                insertItem.bindString(2, item.getKey());
+                insertItem.bindString(3, item.getValue());
+                insertItem.executeInsert();
+                insertItem.clearBindings();
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            if (insertItem != null) {
+                insertItem.close();
+            }
+        }
+    }
+
+    public void remove(@NonNull String feedUrl) {
+        synchronized (this) {
+            pendingFeeds.remove(feedUrl);
+        }
+
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_FEEDS, "feed_url = ?", new String[]{feedUrl});
+            db.delete(TABLE_ITEMS, "feed_url = ?", new String[]{feedUrl});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public synchronized void recordNotModified() {
+        requestCount++;
+        notModifiedCount++;
+    }
+
+    public synchronized void recordDownload(long bytes, boolean unchanged) {
+        requestCount++;
+        bytesDownloaded += bytes;
+        if (unchanged) {
+            unchangedBodyCount++;
+        }
+    }
+
+    public synchronized void recordDelta(int sent, int skipped) {
+        itemsSent += sent;
+        itemsSkipped += skipped;
+    }
+
+    @NonNull
+    public synchronized WritableMap getStats() {
+        long hits = notModifiedCount + unchangedBodyCount;
+
+        WritableMap stats = Arguments.createMap();
+        stats.putDouble("requests", requestCount);
+        stats.putDouble("notModified", notModifiedCount);
+        stats.putDouble("unchangedBody", unchangedBodyCount);
+        stats.putDouble("parsed", requestCount - hits);
+        stats.putDouble("bytesDownloaded", bytesDownloaded);
+        stats.putDouble("notModifiedRate", requestCount > 0 ? notModifiedCount / (double) requestCount : 0);
+        stats.putDouble("hitRate", requestCount > 0 ? hits / (double) requestCount : 0);
+        stats.putDouble("itemsSent", itemsSent);
+        stats.putDouble("itemsSkipped", itemsSkipped);
+
+        return stats;
+    }
+}
@@ -0,0 +1,104 @@
+package com.podverse.fdroid;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+public class PVFeedFetcher {
+    /*
+        Opens the HTTP connection for a feed. HttpURLConnection doesn't follow redirects between
+        http and https, which many feed hosts use, so redirects are followed here, keeping the
+        request headers, up to MAX_REDIRECTS. Authorization is only kept while the scheme, host and
+        port stay the same, so feed credentials are never sent to another host or over plain http.
+     */
+
+    private static final int MAX_REDIRECTS = 5;
+
+    public static class HttpStatusException extends IOException {
+        public final int statusCode;
+
+        HttpStatusException(int statusCode, String url) {
+            super("HTTP " + statusCode + " for " + url);
+            this.statusCode = statusCode;
+        }
+    }
+
+    /**
+     * Returns a connection with a 2xx response. The caller must disconnect it.
+     */
+    @NonNull
+    public static HttpURLConnection open(@NonNull String url, @NonNull Map<String, String> headers, int timeoutMs)
+            throws IOException {
+        String location = url;
+        boolean keepAuthorization = true;
+
+        for (int redirects = 0; redirects <= MAX_REDIRECTS; redirects++) {
+            HttpURLConnection connection = (HttpURLConnection) new URL(location).openConnection();
+            connection.setInstanceFollowRedirects(false);
+            connection.setConnectTimeout(timeoutMs);
+            connection.setReadTimeout(timeoutMs);
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                if (!keepAuthorization && "Authorization".equalsIgnoreCase(header.getKey())) {
+                    continue;
+                }
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+
+            int statusCode = connection.getResponseCode();
+            if (statusCode >= 300 && statusCode < 400 && statusCode != HttpURLConnection.HTTP_NOT_MODIFIED) {
+                String redirect = connection.getHeaderField("Location");
+                connection.disconnect();
+                if (redirect == null) {
+                    throw new HttpStatusException(statusCode, location);
+                }
+                URL from = new URL(location);
+                URL to = new URL(from, redirect);
+                keepAuthorization = keepAuthorization && isSameOrigin(from, to);
+                location = to.toString();
+                continue;
+            }
+
+            if (statusCode >= 400) {
+                connection.disconnect();
+                throw new HttpStatusException(statusCode, location);
+            }
+
+            return connection;
+        }
+
+        throw new IOException("Too many redirects for " + url);
+    }
+
+    private static boolean isSameOrigin(@NonNull URL from, @NonNull URL to) {
+        int fromPort = from.getPort() != -1 ? from.getPort() : from.getDefaultPort();
+        int toPort = to.getPort() != -1 ? to.getPort() : to.getDefaultPort();
+
+        // Comparing schemes also rules out https -> http
+        return from.getProtocol().equalsIgnoreCase(to.getProtocol())
+                && from.getHost().equalsIgnoreCase(to.getHost())
+                && fromPort == toPort;
+    }
+
+    /**
+     * Returns the charset of a Content-Type header, or null to let the XML declaration decide.
+     */
+    @Nullable
+    public static String getCharset(@Nullable String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+
+        for (String parameter : contentType.split(";")) {
+            String trimmed = parameter.trim();
+            if (trimmed.regionMatches(true, 0, "charset=", 0, 8)) {
+                return trimmed.substring(8).replace("\"", "").trim();
+            }
+        }
+
+        return null;
+    }
+}
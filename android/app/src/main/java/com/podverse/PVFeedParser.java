@@ -0,0 +1,487 @@
+package com.podverse.fdroid;
+
+import android.text.TextUtils;
+import android.util.Xml;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TimeZone;
+
+public class PVFeedParser {
+    /*
+        Streams a podcast RSS feed through XmlPullParser into the { meta, episodes } shape that
+        @podverse/podcast-feed-parser returns, limited to the fields parseAddByRSSPodcast reads.
+
+        Only the text of those fields is kept, trimmed, so a feed never exists in memory as a
+        document tree and JS only receives what it uses. pubDates are converted to ISO strings,
+        and itunes:duration to seconds.
+
+        Tags are matched by namespace URI. Feeds also declare the iTunes and Podcast Index namespaces
+        with older or differently capitalized URIs, so known aliases are accepted, and an unknown URI
+        falls back to the conventional itunes, podcast or content prefix, as podcast-feed-parser did.
+     */
+
+    private static final String NAMESPACE_ITUNES = "http://www.itunes.com/dtds/podcast-1.0.dtd";
+    private static final String NAMESPACE_PODCAST = "https://podcastindex.org/namespace/1.0";
+    private static final String NAMESPACE_CONTENT = "http://purl.org/rss/1.0/modules/content/";
+
+    // Lower case, compared after lower casing the declared URI
+    private static final Set<String> NAMESPACE_ITUNES_ALIASES = new HashSet<>(Arrays.asList(
+            "http://www.itunes.com/dtds/podcast-1.0.dtd",
+            "https://www.itunes.com/dtds/podcast-1.0.dtd"
+    ));
+    private static final Set<String> NAMESPACE_PODCAST_ALIASES = new HashSet<>(Arrays.asList(
+            "https://podcastindex.org/namespace/1.0",
+            "http://podcastindex.org/namespace/1.0",
+            "https://github.com/podcastindex-org/podcast-namespace/blob/main/docs/1.0.md"
+    ));
+
+    private static final String FEATURE_RELAXED = "http://xmlpull.org/v1/doc/features.html#relaxed";
+
+    private static final String[] RSS_DATE_FORMATS = {
+            "EEE, dd MMM yyyy HH:mm:ss Z",
+            "EEE, dd MMM yyyy HH:mm:ss zzz",
+            "EEE, dd MMM yyyy HH:mm Z",
+            "EEE, dd MMM yyyy HH:mm zzz",
+            "dd MMM yyyy HH:mm:ss Z",
+            "dd MMM yyyy HH:mm:ss zzz"
+    };
+
+    private final SimpleDateFormat[] rssDateFormats = new SimpleDateFormat[RSS_DATE_FORMATS.length];
+    private final SimpleDateFormat isoDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+
+    public PVFeedParser() {
+        for (int i = 0; i < RSS_DATE_FORMATS.length; i++) {
+            rssDateFormats[i] = new SimpleDateFormat(RSS_DATE_FORMATS[i], Locale.US);
+            rssDateFormats[i].setLenient(true);
+        }
+        isoDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    /**
+     * Parses the feed in input. A parser isn't thread safe, use one per worker.
+     */
+    @NonNull
+    public JSONObject parse(@NonNull InputStream input, @Nullable String encoding)
+            throws XmlPullParserException, IOException, JSONException {
+        XmlPullParser parser = Xml.newPullParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        try {
+            // Lets entities like &nbsp; through instead of failing the whole feed
+            parser.setFeature(FEATURE_RELAXED, true);
+        } catch (XmlPullParserException e) {
+            // Not supported by this parser
+        }
+        parser.setInput(input, encoding);
+
+        JSONObject meta = new JSONObject();
+        JSONArray episodes = new JSONArray();
+
+        int eventType = parser.getEventType();
+        while (eventType != XmlPullParser.END_DOCUMENT) {
+            if (eventType == XmlPullParser.START_TAG && "channel".equals(parser.getName())) {
+                readChannel(parser, meta, episodes);
+                break;
+            }
+            eventType = parser.next();
+        }
+
+        if (!meta.has("title")) {
+            throw new XmlPullParserException("No RSS channel found");
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("meta", meta);
+        result.put("episodes", episodes);
+
+        return result;
+    }
+
+    private void readChannel(XmlPullParser parser, JSONObject meta, JSONArray episodes)
+            throws XmlPullParserException, IOException, JSONException {
+        String rssImageUrl = null;
+        JSONArray funding = new JSONArray();
+        JSONArray value = new JSONArray();
+
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            String namespace = getNamespace(parser);
+            String name = parser.getName();
+
+            if (namespace.isEmpty()) {
+                switch (name) {
+                    case "item":
+                        JSONObject episode = readItem(parser);
+                        if (episode != null) {
+                            episodes.put(episode);
+                        }
+                        break;
+                    case "title":
+                    case "description":
+                    case "link":
+                    case "language":
+                        putText(meta, name, readText(parser));
+                        break;
+                    case "lastBuildDate":
+                    case "pubDate":
+                        putText(meta, name, toIsoDate(readText(parser)));
+                        break;
+                    case "image":
+                        rssImageUrl = readRssImageUrl(parser);
+                        break;
+                    default:
+                        skip(parser);
+                }
+            } else if (NAMESPACE_ITUNES.equals(namespace)) {
+                switch (name) {
+                    case "image":
+                        putText(meta, "imageURL", trim(parser.getAttributeValue(null, "href")));
+                        skip(parser);
+                        break;
+                    case "explicit":
+                        meta.put("explicit", toExplicit(readText(parser)));
+                        break;
+                    case "subtitle":
+                    case "type":
+                        putText(meta, name, readText(parser));
+                        break;
+                    default:
+                        skip(parser);
+                }
+            } else if (NAMESPACE_PODCAST.equals(namespace)) {
+                switch (name) {
+                    case "guid":
+                        putText(meta, "guid", readText(parser));
+                        break;
+                    case "funding":
+                        funding.put(readFunding(parser));
+                        break;
+                    case "value":
+                        value.put(readValue(parser));
+                        break;
+                    default:
+                        skip(parser);
+                }
+            } else {
+                skip(parser);
+            }
+        }
+
+        if (!meta.has("imageURL") && rssImageUrl != null) {
+            meta.put("imageURL", rssImageUrl);
+        }
+        if (funding.length() > 0) {
+            meta.put("funding", funding);
+        }
+        if (value.length() > 0) {
+            meta.put("value", value);
+        }
+    }
+
+    @Nullable
+    private JSONObject readItem(XmlPullParser parser) throws XmlPullParserException, IOException, JSONException {
+        JSONObject episode = new JSONObject();
+        String contentEncoded = null;
+        JSONArray funding = new JSONArray();
+        JSONArray soundbite = new JSONArray();
+        JSONArray value = new JSONArray();
+
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            String namespace = getNamespace(parser);
+            String name = parser.getName();
+
+            if (namespace.isEmpty()) {
+                switch (name) {
+                    case "title":
+                    case "description":
+                    case "link":
+                        putText(episode, name, readText(parser));
+                        break;
+                    case "guid":
+                        putText(episode, "guid", readText(parser));
+                        break;
+                    case "pubDate":
+                        putText(episode, "pubDate", toIsoDate(readText(parser)));
+                        break;
+                    case "enclosure":
+                        JSONObject enclosure = new JSONObject();
+                        putText(enclosure, "url", trim(parser.getAttributeValue(null, "url")));
+                        putText(enclosure, "type", trim(parser.getAttributeValue(null, "type")));
+                        putText(enclosure, "length", trim(parser.getAttributeValue(null, "length")));
+                        episode.put("enclosure", enclosure);
+                        skip(parser);
+                        break;
+                    default:
+                        skip(parser);
+                }
+            } else if (NAMESPACE_ITUNES.equals(namespace)) {
+                switch (name) {
+                    case "image":
+                        putText(episode, "image", trim(parser.getAttributeValue(null, "href")));
+                        skip(parser);
+                        break;
+                    case "explicit":
+                        episode.put("explicit", toExplicit(readText(parser)));
+                        break;
+                    case "duration":
+                        episode.put("duration", toSeconds(readText(parser)));
+                        break;
+                    case "episodeType":
+                        putText(episode, "type", readText(parser));
+                        break;
+                    case "subtitle":
+                    case "summary":
+                        putText(episode, name, readText(parser));
+                        break;
+                    default:
+                        skip(parser);
+                }
+            } else if (NAMESPACE_PODCAST.equals(namespace)) {
+                switch (name) {
+                    case "funding":
+                        funding.put(readFunding(parser));
+                        break;
+                    case "soundbite":
+                        JSONObject clip = new JSONObject();
+                        putText(clip, "startTime", trim(parser.getAttributeValue(null, "startTime")));
+                        putText(clip, "duration", trim(parser.getAttributeValue(null, "duration")));
+                        putText(clip, "title", readText(parser));
+                        soundbite.put(clip);
+                        break;
+                    case "value":
+                        value.put(readValue(parser));
+                        break;
+                    default:
+                        skip(parser);
+                }
+            } else if (NAMESPACE_CONTENT.equals(namespace) && "encoded".equals(name)) {
+                contentEncoded = readText(parser);
+            } else {
+                skip(parser);
+            }
+        }
+
+        JSONObject enclosure = episode.optJSONObject("enclosure");
+        if (enclosure == null || !enclosure.has("url")) {
+            // parseAddByRSSPodcast skips episodes without media
+            return null;
+        }
+
+        if (!episode.has("description") && contentEncoded != null) {
+            episode.put("description", contentEncoded);
+        }
+        if (funding.length() > 0) {
+            episode.put("funding", funding);
+        }
+        if (soundbite.length() > 0) {
+            episode.put("soundbite", soundbite);
+        }
+        if (value.length() > 0) {
+            episode.put("value", value);
+        }
+
+        return episode;
+    }
+
+    @Nullable
+    private String readRssImageUrl(XmlPullParser parser) throws XmlPullParserException, IOException {
+        String url = null;
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            if ("url".equals(parser.getName())) {
+                url = readText(parser);
+            } else {
+                skip(parser);
+            }
+        }
+        return url;
+    }
+
+    private JSONObject readFunding(XmlPullParser parser) throws XmlPullParserException, IOException, JSONException {
+        JSONObject funding = new JSONObject();
+        putText(funding, "url", trim(parser.getAttributeValue(null, "url")));
+        putText(funding, "value", readText(parser));
+        return funding;
+    }
+
+    private JSONObject readValue(XmlPullParser parser) throws XmlPullParserException, IOException, JSONException {
+        JSONObject value = new JSONObject();
+        putText(value, "type", trim(parser.getAttributeValue(null, "type")));
+        putText(value, "method", trim(parser.getAttributeValue(null, "method")));
+        putText(value, "suggested", trim(parser.getAttributeValue(null, "suggested")));
+
+        JSONArray recipients = new JSONArray();
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            if (NAMESPACE_PODCAST.equals(getNamespace(parser)) && "valueRecipient".equals(parser.getName())) {
+                JSONObject recipient = new JSONObject();
+                for (String attribute : new String[]{"name", "type", "address", "split", "fee", "customKey", "customValue"}) {
+                    putText(recipient, attribute, trim(parser.getAttributeValue(null, attribute)));
+                }
+                recipients.put(recipient);
+            }
+            skip(parser);
+        }
+        value.put("recipients", recipients);
+
+        return value;
+    }
+
+    /**
+     * Returns the namespace of the current tag, with the aliases of the iTunes and Podcast Index
+     * namespaces replaced by NAMESPACE_ITUNES and NAMESPACE_PODCAST.
+     */
+    @NonNull
+    private static String getNamespace(XmlPullParser parser) {
+        String namespace = parser.getNamespace();
+        if (namespace.isEmpty() || NAMESPACE_ITUNES.equals(namespace) || NAMESPACE_PODCAST.equals(namespace)
+                || NAMESPACE_CONTENT.equals(namespace)) {
+            return namespace;
+        }
+
+        String normalized = namespace.trim().toLowerCase(Locale.US);
+        if (NAMESPACE_ITUNES_ALIASES.contains(normalized)) {
+            return NAMESPACE_ITUNES;
+        }
+        if (NAMESPACE_PODCAST_ALIASES.contains(normalized)) {
+            return NAMESPACE_PODCAST;
+        }
+
+        String prefix = parser.getPrefix();
+        if ("itunes".equals(prefix)) {
+            return NAMESPACE_ITUNES;
+        } else if ("podcast".equals(prefix)) {
+            return NAMESPACE_PODCAST;
+        } else if ("content".equals(prefix)) {
+            return NAMESPACE_CONTENT;
+        }
+
+        return namespace;
+    }
+
+    /**
+     * Advances to the next child start tag of the element at depth, returning false at its end tag.
+     */
+    private static boolean nextChild(XmlPullParser parser, int depth) throws XmlPullParserException, IOException {
+        while (true) {
+            int eventType = parser.next();
+            if (eventType == XmlPullParser.END_DOCUMENT
+                    || (eventType == XmlPullParser.END_TAG && parser.getDepth() == depth)) {
+                return false;
+            }
+            if (eventType == XmlPullParser.START_TAG && parser.getDepth() == depth + 1) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Reads all text inside the current element, including text of nested elements like unescaped
+     * HTML, and leaves the parser on its end tag.
+     */
+    @Nullable
+    private static String readText(XmlPullParser parser) throws XmlPullParserException, IOException {
+        StringBuilder text = new StringBuilder();
+        int depth = parser.getDepth();
+
+        while (true) {
+            int eventType = parser.next();
+            if (eventType == XmlPullParser.TEXT) {
+                text.append(parser.getText());
+            } else if (eventType == XmlPullParser.END_DOCUMENT
+                    || (eventType == XmlPullParser.END_TAG && parser.getDepth() == depth)) {
+                break;
+            }
+        }
+
+        return trim(text.toString());
+    }
+
+    private static void skip(XmlPullParser parser) throws XmlPullParserException, IOException {
+        int depth = parser.getDepth();
+        while (true) {
+            int eventType = parser.next();
+            if (eventType == XmlPullParser.END_DOCUMENT
+                    || (eventType == XmlPullParser.END_TAG && parser.getDepth() == depth)) {
+                return;
+            }
+        }
+    }
+
+    private static void putText(JSONObject object, String name, @Nullable String value) throws JSONException {
+        if (value != null) {
+            object.put(name, value);
+        }
+    }
+
+    @Nullable
+    private static String trim(@Nullable String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    private static boolean toExplicit(@Nullable String value) {
+        return "yes".equalsIgnoreCase(value) || "true".equalsIgnoreCase(value) || "explicit".equalsIgnoreCase(value);
+    }
+
+    /**
+     * Converts "[[hh:]mm:]ss[.fff]" to whole seconds, or 0 when it can't be read.
+     */
+    private static int toSeconds(@Nullable String duration) {
+        if (TextUtils.isEmpty(duration)) {
+            return 0;
+        }
+
+        int seconds = 0;
+        try {
+            for (String part : duration.split(":")) {
+                seconds = seconds * 60 + (int) Double.parseDouble(part);
+            }
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+
+        return seconds;
+    }
+
+    @Nullable
+    private String toIsoDate(@Nullable String rssDate) {
+        if (rssDate == null) {
+            return null;
+        }
+
+        for (SimpleDateFormat format : rssDateFormats) {
+            try {
+                Date date = format.parse(rssDate);
+                if (date != null) {
+                    return isoDateFormat.format(date);
+                }
+            } catch (ParseException e) {
+                // Try the next format
+            }
+        }
+
+        // Usually already ISO 8601, otherwise JS replaces it with the current date
+        return rssDate;
+    }
+}
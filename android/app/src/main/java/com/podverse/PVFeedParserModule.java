@@ -0,0 +1,327 @@
+package com.podverse.fdroid;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableMapKeySetIterator;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class PVFeedParserModule extends ReactContextBaseJavaModule {
+    // Downloads and parses podcast feeds added by RSS on a pool of worker threads, so XML parsing
+    // never runs on the JS thread. JS sizes the pool with its customRSSParallelParserLimit setting
+    // and receives each feed as the JSON string of PVFeedParser's result.
+    // Refreshes can use PVFeedCache to skip feeds that haven't changed since they were last parsed,
+    // and to send only the items that changed in the ones that have.
+
+    private static final int DEFAULT_PARALLEL_LIMIT = 3;
+    private static final long IDLE_THREAD_TIMEOUT_SECONDS = 30;
+
+    private final PVFeedCache mFeedCache;
+    private final ThreadPoolExecutor mParserPool = new ThreadPoolExecutor(
+            DEFAULT_PARALLEL_LIMIT, DEFAULT_PARALLEL_LIMIT,
+            IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>());
+    private final ThreadLocal<PVFeedParser> mFeedParser = new ThreadLocal<PVFeedParser>() {
+        @Override
+        protected PVFeedParser initialValue() {
+            return new PVFeedParser();
+        }
+    };
+
+    PVFeedParserModule(ReactApplicationContext context) {
+        super(context);
+        mFeedCache = PVFeedCache.getInstance(context);
+        mParserPool.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public String getName() {
+        return "PVFeedParser";
+    }
+
+    @ReactMethod
+    public void setParallelLimit(int limit) {
+        setPoolSize(mParserPool, limit);
+    }
+
+    /**
+     * Resolves with the parsed feed as a JSON string. feedUrl identifies the feed in PVFeedCache, and
+     * url is where it's fetched from, which differs when retrying over https.
+     *
+     * With useCache, resolves with null instead when the feed hasn't changed since it was last
+     * parsed, and with a delta { meta, isDelta, added, updated, removed } when it has and its items
+     * were committed before. added and updated are episodes, removed are item keys.
+     *
+     * Rejects with code HTTP_<status> when the server responds with an error.
+     */
+    @ReactMethod
+    public void parseFeed(
+            String url, String feedUrl, ReadableMap headers, int timeoutMs, boolean useCache, Promise promise) {
+        var requestHeaders = toHeaders(headers);
+
+        mParserPool.execute(() -> {
+            try {
+                promise.resolve(fetchAndParse(
+                        mFeedParser.get(), url, feedUrl, requestHeaders, timeoutMs, mFeedCache, useCache));
+            } catch (PVFeedFetcher.HttpStatusException e) {
+                promise.reject("HTTP_" + e.statusCode, e);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVFeedParserModule", "Failed to parse " + url, e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    /**
+     * Stores what the last parse of each feed fetched, once the podcasts built from it are saved.
+     */
+    @ReactMethod
+    public void commitFeeds(ReadableArray feedUrls, Promise promise) {
+        mParserPool.execute(() -> {
+            try {
+                for (int i = 0; i < feedUrls.size(); i++) {
+                    mFeedCache.commit(feedUrls.getString(i));
+                }
+                promise.resolve(null);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVFeedParserModule", "Failed to commit feeds", e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    /**
+     * Forgets the validators and items of a feed, so its next refresh is always parsed in full.
+     */
+    @ReactMethod
+    public void clearFeedCache(String url, Promise promise) {
+        mParserPool.execute(() -> {
+            try {
+                mFeedCache.remove(url);
+                promise.resolve(null);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVFeedParserModule", "Failed to clear feed cache for " + url, e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void getFeedCacheStats(Promise promise) {
+        promise.resolve(mFeedCache.getStats());
+    }
+
+    /**
+     * Returns the parsed feed, or null when useCache is set and the feed is unchanged, or a delta
+     * when useCache is set and the feed's items were committed before. When feedCache is given,
+     * what was fetched is staged in it under feedUrl, to be committed by the caller.
+     */
+    @Nullable
+    static String fetchAndParse(
+            @NonNull PVFeedParser feedParser,
+            @NonNull String url,
+            @NonNull String feedUrl,
+            @NonNull Map<String, String> headers,
+            int timeoutMs,
+            @Nullable PVFeedCache feedCache,
+            boolean useCache) throws IOException, XmlPullParserException, JSONException {
+        PVFeedCache.Validators validators = feedCache != null && useCache ? feedCache.getValidators(feedUrl) : null;
+
+        // Sent with any Authorization header from JS, so feeds with credentials are validated too
+        Map<String, String> requestHeaders = new HashMap<>(headers);
+        if (validators != null && validators.etag != null) {
+            requestHeaders.put("If-None-Match", validators.etag);
+        }
+        if (validators != null && validators.lastModified != null) {
+            requestHeaders.put("If-Modified-Since", validators.lastModified);
+        }
+
+        HttpURLConnection connection = PVFeedFetcher.open(url, requestHeaders, timeoutMs);
+        try {
+            if (validators != null && connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                feedCache.recordNotModified();
+                return null;
+            }
+
+            byte[] body = readBody(connection);
+            String bodyHash = sha256(body);
+            var newValidators = new PVFeedCache.Validators(
+                    connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"), bodyHash);
+
+            if (validators != null && bodyHash.equals(validators.bodyHash)) {
+                // The committed items still describe the body, so only the validators can change
+                feedCache.recordDownload(body.length, true);
+                feedCache.putValidators(feedUrl, newValidators);
+                return null;
+            }
+
+            JSONObject parsedFeed;
+            try (InputStream input = new ByteArrayInputStream(body)) {
+                parsedFeed = feedParser.parse(input, PVFeedFetcher.getCharset(connection.getContentType()));
+            }
+
+            if (feedCache == null) {
+                return parsedFeed.toString();
+            }
+
+            feedCache.recordDownload(body.length, false);
+            return diff(parsedFeed, feedUrl, newValidators, feedCache, useCache).toString();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Stages the items of a parsed feed, and returns the delta against its committed items, or the
+     * parsed feed itself when there are none or useCache isn't set. Only the first item with a
+     * given key is kept in a delta.
+     */
+    private static JSONObject diff(
+            @NonNull JSONObject parsedFeed,
+            @NonNull String feedUrl,
+            @NonNull PVFeedCache.Validators validators,
+            @NonNull PVFeedCache feedCache,
+            boolean useCache) throws JSONException {
+        Map<String, String> previousHashes = useCache ? feedCache.getItemHashes(feedUrl) : null;
+        Map<String, String> itemHashes = new HashMap<>();
+        JSONArray added = new JSONArray();
+        JSONArray updated = new JSONArray();
+
+        JSONArray episodes = parsedFeed.getJSONArray("episodes");
+        for (int i = 0; i < episodes.length(); i++) {
+            JSONObject episode = episodes.getJSONObject(i);
+            String itemKey = getItemKey(episode);
+            if (itemHashes.containsKey(itemKey)) {
+                continue;
+            }
+
+            String contentHash = sha256(episode.toString().getBytes(StandardCharsets.UTF_8));
+            itemHashes.put(itemKey, contentHash);
+
+            if (previousHashes != null) {
+                // Whatever is left in previousHashes afterwards was removed from the feed
+                String previousHash = previousHashes.remove(itemKey);
+                if (previousHash == null) {
+                    added.put(episode);
+                } else if (!previousHash.equals(contentHash)) {
+                    updated.put(episode);
+                }
+            }
+        }
+
+        feedCache.stage(feedUrl, validators, itemHashes);
+
+        if (previousHashes == null) {
+            return parsedFeed;
+        }
+
+        feedCache.recordDelta(added.length() + updated.length(), itemHashes.size() - added.length() - updated.length());
+
+        JSONObject delta = new JSONObject();
+        delta.put("meta", parsedFeed.getJSONObject("meta"));
+        delta.put("isDelta", true);
+        delta.put("added", added);
+        delta.put("updated", updated);
+        delta.put("removed", new JSONArray(previousHashes.keySet()));
+
+        return delta;
+    }
+
+    /**
+     * The same key parser.ts uses for a saved episode: its guid, or else its enclosure url, which
+     * PVFeedParser guarantees.
+     */
+    @NonNull
+    private static String getItemKey(@NonNull JSONObject episode) throws JSONException {
+        String guid = episode.optString("guid");
+        return !guid.isEmpty() ? guid : episode.getJSONObject("enclosure").getString("url");
+    }
+
+    private static byte[] readBody(HttpURLConnection connection) throws IOException {
+        int contentLength = connection.getContentLength();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(contentLength > 0 ? contentLength : 64 * 1024);
+        byte[] buffer = new byte[16 * 1024];
+
+        try (InputStream input = new BufferedInputStream(connection.getInputStream())) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+        }
+
+        return body.toByteArray();
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format(Locale.US, "%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android version provides SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static void setPoolSize(@NonNull ThreadPoolExecutor pool, int limit) {
+        int size = Math.max(1, limit);
+        synchronized (pool) {
+            // The maximum can never be below the core size, so the order depends on the direction
+            if (size > pool.getMaximumPoolSize()) {
+                pool.setMaximumPoolSize(size);
+                pool.setCorePoolSize(size);
+            } else {
+                pool.setCorePoolSize(size);
+                pool.setMaximumPoolSize(size);
+            }
+        }
+    }
+
+    static Map<String, String> toHeaders(ReadableMap headers) {
+        Map<String, String> requestHeaders = new HashMap<>();
+        if (headers == null) {
+            return requestHeaders;
+        }
+
+        ReadableMapKeySetIterator iterator = headers.keySetIterator();
+        while (iterator.hasNextKey()) {
+            String name = iterator.nextKey();
+            if (!headers.isNull(name)) {
+                requestHeaders.put(name, headers.getString(name));
+            }
+        }
+
+        return requestHeaders;
+    }
+}
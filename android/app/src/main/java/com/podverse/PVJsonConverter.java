@@ -0,0 +1,164 @@
+package com.podverse.fdroid;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+public class PVJsonConverter {
+    /*
+        Converts JSON text straight into WritableMap/WritableArray in a single pass with JsonReader,
+        without building an org.json tree first.
+
+        Numbers keep their precision as far as JS can represent them: integers that fit in an int are
+        put as ints, other numbers up to 2^53 as doubles, and integers beyond that as strings, since JS
+        numbers can't hold them exactly.
+     */
+
+    private static final double MAX_SAFE_INTEGER = 9007199254740991d;
+
+    @NonNull
+    public static WritableMap toWritableMap(@NonNull String json) throws IOException {
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            return readMap(reader);
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Invalid JSON object", e);
+        }
+    }
+
+    @NonNull
+    public static WritableArray toWritableArray(@NonNull String json) throws IOException {
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            return readArray(reader);
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Invalid JSON array", e);
+        }
+    }
+
+    private static WritableMap readMap(JsonReader reader) throws IOException {
+        WritableMap writableMap = Arguments.createMap();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+
+            switch (reader.peek()) {
+                case BEGIN_OBJECT:
+                    writableMap.putMap(key, readMap(reader));
+                    break;
+                case BEGIN_ARRAY:
+                    writableMap.putArray(key, readArray(reader));
+                    break;
+                case STRING:
+                    writableMap.putString(key, reader.nextString());
+                    break;
+                case NUMBER:
+                    putNumber(writableMap, key, reader.nextString());
+                    break;
+                case BOOLEAN:
+                    writableMap.putBoolean(key, reader.nextBoolean());
+                    break;
+                case NULL:
+                    reader.nextNull();
+                    writableMap.putNull(key);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return writableMap;
+    }
+
+    private static WritableArray readArray(JsonReader reader) throws IOException {
+        WritableArray writableArray = Arguments.createArray();
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            switch (reader.peek()) {
+                case BEGIN_OBJECT:
+                    writableArray.pushMap(readMap(reader));
+                    break;
+                case BEGIN_ARRAY:
+                    writableArray.pushArray(readArray(reader));
+                    break;
+                case STRING:
+                    writableArray.pushString(reader.nextString());
+                    break;
+                case NUMBER:
+                    pushNumber(writableArray, reader.nextString());
+                    break;
+                case BOOLEAN:
+                    writableArray.pushBoolean(reader.nextBoolean());
+                    break;
+                case NULL:
+                    reader.nextNull();
+                    writableArray.pushNull();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endArray();
+
+        return writableArray;
+    }
+
+    private static void putNumber(WritableMap writableMap, String key, String number) {
+        if (isIntegral(number)) {
+            long value = parseLongOrMax(number);
+            if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                writableMap.putInt(key, (int) value);
+            } else if (Math.abs((double) value) <= MAX_SAFE_INTEGER) {
+                writableMap.putDouble(key, value);
+            } else {
+                writableMap.putString(key, number);
+            }
+        } else {
+            writableMap.putDouble(key, Double.parseDouble(number));
+        }
+    }
+
+    private static void pushNumber(WritableArray writableArray, String number) {
+        if (isIntegral(number)) {
+            long value = parseLongOrMax(number);
+            if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                writableArray.pushInt((int) value);
+            } else if (Math.abs((double) value) <= MAX_SAFE_INTEGER) {
+                writableArray.pushDouble(value);
+            } else {
+                writableArray.pushString(number);
+            }
+        } else {
+            writableArray.pushDouble(Double.parseDouble(number));
+        }
+    }
+
+    private static boolean isIntegral(String number) {
+        for (int i = 0; i < number.length(); i++) {
+            char c = number.charAt(i);
+            if ((c < '0' || c > '9') && !(i == 0 && c == '-')) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static long parseLongOrMax(String number) {
+        try {
+            return Long.parseLong(number);
+        } catch (NumberFormatException e) {
+            // Too long for a long, which is also beyond what JS can represent exactly
+            return number.startsWith("-") ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.podverse.fdroid;
+
+import android.util.Log;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.reactnativecommunity.asyncstorage.ReactDatabaseSupplier;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class PVLargeValueStorageModule extends ReactContextBaseJavaModule {
+    // Same shape as AsyncStorage's getItem / setItem / removeItem, so keys can be switched over one at a time.
+    // getItem falls back to AsyncStorage for keys that haven't been moved yet and moves them.
+
+    private final PVLargeValueStore mStore;
+    private final ReactDatabaseSupplier mReactDatabaseSupplier;
+    private final ExecutorService mStorageExecutor = Executors.newSingleThreadExecutor();
+
+    PVLargeValueStorageModule(ReactApplicationContext context) {
+        super(context);
+        mStore = PVLargeValueStore.getInstance(context);
+        mReactDatabaseSupplier = ReactDatabaseSupplier.getInstance(context);
+    }
+
+    @Override
+    public String getName() {
+        return "PVLargeValueStorage";
+    }
+
+    @ReactMethod
+    public void getItem(String key, Promise promise) {
+        mStorageExecutor.execute(() -> {
+            try {
+                if (!mStore.hasItem(key)) {
+                    mStore.migrateFromAsyncStorage(mReactDatabaseSupplier.get(), key);
+                }
+                promise.resolve(mStore.getItem(key));
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVLargeValueStorageModule", "Failed to read " + key, e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void setItem(String key, String value, Promise promise) {
+        mStorageExecutor.execute(() -> {
+            try {
+                mStore.setItem(key, value);
+                // Leave no stale copy behind in AsyncStorage for getItem to migrate later
+                mReactDatabaseSupplier.get().delete(PVAsyncStorageSizeTracker.TABLE_CATALYST,
+                        PVAsyncStorageSizeTracker.KEY_COLUMN + " = ?", new String[]{key});
+                promise.resolve(null);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVLargeValueStorageModule", "Failed to write " + key, e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void removeItem(String key, Promise promise) {
+        mStorageExecutor.execute(() -> {
+            try {
+                mStore.removeItem(key);
+                mReactDatabaseSupplier.get().delete(PVAsyncStorageSizeTracker.TABLE_CATALYST,
+                        PVAsyncStorageSizeTracker.KEY_COLUMN + " = ?", new String[]{key});
+                promise.resolve(null);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVLargeValueStorageModule", "Failed to remove " + key, e);
+                promise.reject(e);
+            }
+        });
+    }
+}
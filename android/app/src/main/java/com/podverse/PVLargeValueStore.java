@@ -0,0 +1,380 @@
+package com.podverse.fdroid;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class PVLargeValueStore extends SQLiteOpenHelper {
+    /*
+        Key/value storage for values too large for a single AsyncStorage row, such as the parsed
+        add by RSS podcasts.
+
+        A value is stored as UTF-8, gzipped when it is larger than COMPRESS_THRESHOLD_BYTES, and split
+        into CHUNK_SIZE_BYTES rows. Chunks are written and read one at a time, so a cursor only ever
+        holds a few chunks and the default CursorWindow size is enough.
+
+        Keys still stored in AsyncStorage are moved here the first time they are read.
+     */
+
+    private static final String DATABASE_NAME = "PVLargeValueStorage";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE_ENTRIES = "entries";
+    private static final String TABLE_CHUNKS = "chunks";
+
+    // Well below the 2 MB default CursorWindow, which must fit at least one row
+    static final int CHUNK_SIZE_BYTES = 256 * 1024;
+    static final int COMPRESS_THRESHOLD_BYTES = 64 * 1024;
+
+    private static PVLargeValueStore instance;
+
+    private PVLargeValueStore(@NonNull Context context) {
+        super(context.getApplicationContext(), DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    public static synchronized PVLargeValueStore getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new PVLargeValueStore(context);
+        }
+
+        return instance;
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.enableWriteAheadLogging();
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_ENTRIES + " ("
+                + "key TEXT PRIMARY KEY NOT NULL, "
+                + "chunk_count INTEGER NOT NULL, "
+                + "compressed INTEGER NOT NULL, "
+                + "byte_length INTEGER NOT NULL)");
+        db.execSQL("CREATE TABLE " + TABLE_CHUNKS + " ("
+                + "key TEXT NOT NULL, "
+                + "idx INTEGER NOT NULL, "
+                + "data BLOB NOT NULL, "
+                + "PRIMARY KEY (key, idx))");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Only one version so far
+    }
+
+    /**
+     * Returns the value stored for key, or null if there is none.
+     */
+    @Nullable
+    public synchronized String getItem(@NonNull String key) throws IOException {
+        StringBuilder value = new StringBuilder();
+
+        boolean found = readItem(key, reader -> {
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                value.append(buffer, 0, read);
+            }
+        });
+
+        return found ? value.toString() : null;
+    }
+
+    /**
+     * Streams the value stored for key to itemReader without building it as a String, so large
+     * values can be parsed incrementally. Writes wait until itemReader returns. Returns false if
+     * there is no value for key.
+     */
+    public synchronized boolean readItem(@NonNull String key, @NonNull ItemReader itemReader) throws IOException {
+        SQLiteDatabase db = getWritableDatabase();
+
+        boolean compressed;
+        try (Cursor cursor = db.rawQuery(
+                "SELECT compressed FROM " + TABLE_ENTRIES + " WHERE key = ?", new String[]{key})) {
+            if (!cursor.moveToFirst()) {
+                return false;
+            }
+            compressed = cursor.getInt(0) == 1;
+        }
+
+        try (Cursor cursor = db.rawQuery(
+                "SELECT data FROM " + TABLE_CHUNKS + " WHERE key = ? ORDER BY idx", new String[]{key})) {
+            InputStream input = new ChunkInputStream(cursor);
+            if (compressed) {
+                input = new GZIPInputStream(input, 8192);
+            }
+
+            try (Reader reader = new InputStreamReader(input, StandardCharsets.UTF_8)) {
+                itemReader.read(reader);
+            }
+        }
+
+        return true;
+    }
+
+    public synchronized void setItem(@NonNull String key, @NonNull String value) throws IOException {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+
+        try {
+            deleteChunks(db, key);
+
+            // Compress when the value is certainly above the threshold, a char is at least one UTF-8 byte
+            boolean compressed = value.length() > COMPRESS_THRESHOLD_BYTES;
+            ChunkOutputStream chunkOutput = new ChunkOutputStream(db, key);
+            CountingOutputStream countingOutput = new CountingOutputStream(
+                    compressed ? new GZIPOutputStream(chunkOutput, 8192) : chunkOutput);
+
+            try (Writer writer = new OutputStreamWriter(countingOutput, StandardCharsets.UTF_8)) {
+                writer.write(value);
+            }
+
+            insertEntry(db, key, chunkOutput.chunkCount, compressed, countingOutput.count);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public synchronized void removeItem(@NonNull String key) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+
+        try {
+            deleteChunks(db, key);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public synchronized boolean hasItem(@NonNull String key) {
+        try (Cursor cursor = getWritableDatabase().rawQuery(
+                "SELECT 1 FROM " + TABLE_ENTRIES + " WHERE key = ?", new String[]{key})) {
+            return cursor.moveToFirst();
+        }
+    }
+
+    /**
+     * Moves key from the AsyncStorage database into this store. Returns false if AsyncStorage has no
+     * value for key.
+     *
+     * The legacy value is read in a single query, since SQLite reads the whole value from its
+     * overflow pages for every query on it, however little of it is selected. Its row relies on the
+     * enlarged CursorWindow set up in MainApplication.
+     */
+    public synchronized boolean migrateFromAsyncStorage(@NonNull SQLiteDatabase asyncStorageDb, @NonNull String key) throws IOException {
+        byte[] legacyValue;
+        try (Cursor cursor = asyncStorageDb.rawQuery(
+                "SELECT CAST(" + PVAsyncStorageSizeTracker.VALUE_COLUMN + " AS BLOB) FROM "
+                        + PVAsyncStorageSizeTracker.TABLE_CATALYST + " WHERE " + PVAsyncStorageSizeTracker.KEY_COLUMN + " = ?",
+                new String[]{key})) {
+            if (!cursor.moveToFirst() || cursor.isNull(0)) {
+                return false;
+            }
+            legacyValue = cursor.getBlob(0);
+        }
+        long byteLength = legacyValue.length;
+
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+
+        try {
+            deleteChunks(db, key);
+
+            // The legacy value is already UTF-8, so its bytes are copied without decoding
+            boolean compressed = byteLength > COMPRESS_THRESHOLD_BYTES;
+            ChunkOutputStream chunkOutput = new ChunkOutputStream(db, key);
+
+            try (OutputStream output = compressed ? new GZIPOutputStream(chunkOutput, 8192) : chunkOutput) {
+                output.write(legacyValue);
+            }
+
+            insertEntry(db, key, chunkOutput.chunkCount, compressed, byteLength);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        asyncStorageDb.delete(PVAsyncStorageSizeTracker.TABLE_CATALYST, PVAsyncStorageSizeTracker.KEY_COLUMN + " = ?", new String[]{key});
+        Log.i("com.podverse.fdroid.PVLargeValueStore", "Migrated " + key + " (" + byteLength + " bytes) from AsyncStorage");
+
+        return true;
+    }
+
+    private static void deleteChunks(@NonNull SQLiteDatabase db, @NonNull String key) {
+        String[] whereArgs = new String[]{key};
+        db.delete(TABLE_CHUNKS, "key = ?", whereArgs);
+        db.delete(TABLE_ENTRIES, "key = ?", whereArgs);
+    }
+
+    private static void insertEntry(@NonNull SQLiteDatabase db, @NonNull String key, int chunkCount, boolean compressed, long byteLength) {
+        ContentValues values = new ContentValues();
+        values.put("key", key);
+        values.put("chunk_count", chunkCount);
+        values.put("compressed", compressed ? 1 : 0);
+        values.put("byte_length", byteLength);
+        db.insertOrThrow(TABLE_ENTRIES, null, values);
+    }
+
+    public interface ItemReader {
+        void read(@NonNull Reader reader) throws IOException;
+    }
+
+    /* Buffers written bytes and inserts them as a chunk row each time CHUNK_SIZE_BYTES is reached. */
+    private static class ChunkOutputStream extends OutputStream {
+        private final SQLiteStatement insertStatement;
+        private final String key;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(CHUNK_SIZE_BYTES);
+        private int chunkCount = 0;
+        private boolean closed = false;
+
+        ChunkOutputStream(@NonNull SQLiteDatabase db, @NonNull String key) {
+            this.insertStatement = db.compileStatement("INSERT INTO " + TABLE_CHUNKS + " (key, idx, data) VALUES (?, ?, ?)");
+            this.key = key;
+        }
+
+        @Override
+        public void write(int b) {
+            buffer.write(b);
+            if (buffer.size() >= CHUNK_SIZE_BYTES) {
+                flushChunk();
+            }
+        }
+
+        @Override
+        public void write(@NonNull byte[] bytes, int offset, int length) {
+            while (length > 0) {
+                int count = Math.min(length, CHUNK_SIZE_BYTES - buffer.size());
+                buffer.write(bytes, offset, count);
+                offset += count;
+                length -= count;
+
+                if (buffer.size() >= CHUNK_SIZE_BYTES) {
+                    flushChunk();
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            if (buffer.size() > 0) {
+                flushChunk();
+            }
+            insertStatement.close();
+        }
+
+        private void flushChunk() {
+            insertStatement.bindString(1, key);
+            insertStatement.bindLong(2, chunkCount);
+            insertStatement.bindBlob(3, buffer.toByteArray());
+            insertStatement.executeInsert();
+            insertStatement.clearBindings();
+
+            buffer.reset();
+            chunkCount++;
+        }
+    }
+
+    /* Reads the chunk rows of a cursor as one continuous stream. */
+    private static class ChunkInputStream extends InputStream {
+        private final Cursor cursor;
+        private byte[] chunk = new byte[0];
+        private int position = 0;
+
+        ChunkInputStream(@NonNull Cursor cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public int read() {
+            if (!ensureAvailable()) {
+                return -1;
+            }
+            return chunk[position++] & 0xff;
+        }
+
+        @Override
+        public int read(@NonNull byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!ensureAvailable()) {
+                return -1;
+            }
+
+            int count = Math.min(length, chunk.length - position);
+            System.arraycopy(chunk, position, bytes, offset, count);
+            position += count;
+            return count;
+        }
+
+        private boolean ensureAvailable() {
+            while (position >= chunk.length) {
+                if (!cursor.moveToNext()) {
+                    return false;
+                }
+                chunk = cursor.getBlob(0);
+                position = 0;
+            }
+            return true;
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private final OutputStream output;
+        private long count = 0;
+
+        CountingOutputStream(@NonNull OutputStream output) {
+            this.output = output;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            output.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(@NonNull byte[] bytes, int offset, int length) throws IOException {
+            output.write(bytes, offset, length);
+            count += length;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            output.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.podverse.fdroid;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+
+public class PVMessageIdAllocator {
+    /*
+        Allocates push message ids, which are also used as notification ids and PendingIntent request
+        codes, so they must not repeat while a notification may still be around.
+
+        Ids increase monotonically and survive restarts. To avoid a preferences write per message,
+        ids are reserved in blocks of RESERVE_BLOCK_SIZE: only the end of the current block is stored,
+        and after a restart allocation continues from there, skipping any unused ids of the old block.
+     */
+
+    private static final String MESSAGE_ID_SHARED_PREF_NAME = "PVNotificationIds";
+    private static final String PREF_KEY_RESERVED_UNTIL = "reserved_until";
+    private static final int RESERVE_BLOCK_SIZE = 64;
+
+    private static PVMessageIdAllocator instance;
+
+    private final SharedPreferences preferences;
+    private int lastMessageId;
+    private int reservedUntil;
+
+    private PVMessageIdAllocator(@NonNull Context context) {
+        preferences = context.getApplicationContext().getSharedPreferences(MESSAGE_ID_SHARED_PREF_NAME, Context.MODE_PRIVATE);
+        reservedUntil = preferences.getInt(PREF_KEY_RESERVED_UNTIL, 0);
+        lastMessageId = reservedUntil;
+    }
+
+    public static synchronized PVMessageIdAllocator getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new PVMessageIdAllocator(context);
+        }
+
+        return instance;
+    }
+
+    public synchronized int nextMessageId() {
+        // Ids must stay positive, getInitialNotification treats 0 and below as "no message"
+        lastMessageId = lastMessageId == Integer.MAX_VALUE ? 1 : lastMessageId + 1;
+
+        if (lastMessageId > reservedUntil || lastMessageId == 1) {
+            reservedUntil = lastMessageId > Integer.MAX_VALUE - RESERVE_BLOCK_SIZE
+                    ? Integer.MAX_VALUE
+                    : lastMessageId + RESERVE_BLOCK_SIZE - 1;
+            preferences.edit().putInt(PREF_KEY_RESERVED_UNTIL, reservedUntil).commit();
+        }
+
+        return lastMessageId;
+    }
+}
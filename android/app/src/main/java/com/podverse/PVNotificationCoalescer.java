@@ -0,0 +1,346 @@
+package com.podverse.fdroid;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.PowerManager;
+import android.service.notification.StatusBarNotification;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.app.NotificationCompat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class PVNotificationCoalescer {
+    /*
+        Batches new-episode notifications that arrive close together.
+
+        The first message for a podcast schedules a flush of that podcast COALESCE_WINDOW_MS later and
+        returns right away, so its push worker is free for the next message within the window. The
+        flush runs as a push job and posts everything that arrived for the podcast in the meantime as
+        one group. When a podcast group has more than one notification, an InboxStyle summary is posted
+        for it, and the children, which are hidden inside the collapsed group, skip the image.
+
+        Nothing else keeps the device awake once the push job that added a notification is done, so
+        a partial wakelock is held from the first add until every pending group has been posted.
+        Pending groups are also saved to STORE_FILE_NAME until posted, and a process started after
+        one was killed posts what it left right away.
+     */
+
+    private static final long COALESCE_WINDOW_MS = 2000;
+    private static final String GROUP_KEY_PREFIX = "pv-podcast-";
+    private static final int MAX_SUMMARY_LINES = 5;
+    private static final String STORE_FILE_NAME = "pv_coalescer_pending.bin";
+    // Only a safety net in case a flush never finishes, the wakelock is released once all are posted
+    private static final long WAKE_LOCK_TIMEOUT_MS = COALESCE_WINDOW_MS + 60 * 1000;
+    private static final String WAKE_LOCK_TAG = "podverse:coalescer";
+
+    private static PVNotificationCoalescer instance;
+
+    private final ScheduledExecutorService flushScheduler = Executors.newSingleThreadScheduledExecutor();
+    // Notifications waiting for their scheduled flush, by group key
+    private final Map<String, List<PVPushNotification>> pendingNotifications = new HashMap<>();
+    // Groups taken by a flush that haven't been posted yet, saved along with the pending ones
+    private final List<List<PVPushNotification>> flushingNotifications = new ArrayList<>();
+
+    // Guarded by this, both set on first use
+    private File storeFile;
+    private PowerManager.WakeLock wakeLock;
+
+    public static synchronized PVNotificationCoalescer getInstance() {
+        if (instance == null) {
+            instance = new PVNotificationCoalescer();
+        }
+
+        return instance;
+    }
+
+    /**
+     * Adds a notification to its podcast's batch, scheduling the batch's flush if this opens it.
+     * Saves the batch and returns without waiting for the window.
+     */
+    public void add(@NonNull Context context, @NonNull PVPushNotification notification) {
+        String groupKey = groupKeyOf(notification);
+        Context applicationContext = context.getApplicationContext();
+        List<String> restoredGroupKeys;
+        boolean opensGroup;
+
+        synchronized (this) {
+            restoredGroupKeys = ensureLoaded(applicationContext);
+
+            List<PVPushNotification> groupNotifications = pendingNotifications.get(groupKey);
+            opensGroup = groupNotifications == null;
+            if (opensGroup) {
+                groupNotifications = new ArrayList<>();
+                pendingNotifications.put(groupKey, groupNotifications);
+                acquireWakeLock(applicationContext);
+            }
+            groupNotifications.add(notification);
+            save();
+        }
+
+        for (String restoredGroupKey : restoredGroupKeys) {
+            scheduleFlush(applicationContext, restoredGroupKey, 0);
+        }
+        if (opensGroup) {
+            scheduleFlush(applicationContext, groupKey, COALESCE_WINDOW_MS);
+        }
+    }
+
+    /**
+     * Posts the groups a killed process left pending. Called on app start, does nothing once the
+     * saved groups have been loaded in this process.
+     */
+    public void resume(@NonNull Context context) {
+        Context applicationContext = context.getApplicationContext();
+        List<String> restoredGroupKeys;
+
+        synchronized (this) {
+            restoredGroupKeys = ensureLoaded(applicationContext);
+        }
+
+        for (String restoredGroupKey : restoredGroupKeys) {
+            scheduleFlush(applicationContext, restoredGroupKey, 0);
+        }
+    }
+
+    private void scheduleFlush(@NonNull Context context, @NonNull String groupKey, long delayMs) {
+        flushScheduler.schedule(
+                () -> PVUnifiedPushExecutor.getInstance().submit(context, () -> flush(context, groupKey), null),
+                delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush(@NonNull Context context, @NonNull String groupKey) {
+        List<PVPushNotification> groupNotifications;
+        synchronized (this) {
+            groupNotifications = pendingNotifications.remove(groupKey);
+            if (groupNotifications == null) {
+                releaseWakeLockIfDone();
+                return;
+            }
+            // Still saved until posted, while later notifications for the podcast open a new group
+            flushingNotifications.add(groupNotifications);
+        }
+
+        try {
+            Log.d("com.podverse.fdroid.PVNotificationCoalescer", "Posting " + groupNotifications.size() + " coalesced notifications for " + groupKey);
+
+            NotificationManager notificationManager =
+                    (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+            boolean collapsed = groupNotifications.size() + countActiveChildren(notificationManager, groupKey) > 1;
+
+            for (PVPushNotification notification : groupNotifications) {
+                PVUnifiedPushModule.postNotification(context, notification, groupKey, !collapsed);
+            }
+
+            if (collapsed) {
+                postSummary(context, notificationManager, groupKey, groupNotifications.get(0));
+            }
+        } finally {
+            synchronized (this) {
+                flushingNotifications.remove(groupNotifications);
+                save();
+                releaseWakeLockIfDone();
+            }
+        }
+    }
+
+    // Called holding this
+    private void acquireWakeLock(@NonNull Context context) {
+        if (wakeLock == null) {
+            PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+            wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, WAKE_LOCK_TAG);
+            wakeLock.setReferenceCounted(false);
+        }
+
+        // Acquiring again restarts the timeout, so it covers the group opened last
+        wakeLock.acquire(WAKE_LOCK_TIMEOUT_MS);
+    }
+
+    // Called holding this
+    private void releaseWakeLockIfDone() {
+        if (pendingNotifications.isEmpty() && flushingNotifications.isEmpty() && wakeLock != null && wakeLock.isHeld()) {
+            wakeLock.release();
+        }
+    }
+
+    // Called holding this. Returns the groups loaded from a killed process, which need a flush.
+    @NonNull
+    private List<String> ensureLoaded(@NonNull Context context) {
+        if (storeFile != null) {
+            return Collections.emptyList();
+        }
+        storeFile = new File(context.getFilesDir(), STORE_FILE_NAME);
+
+        if (!storeFile.exists()) {
+            return Collections.emptyList();
+        }
+
+        Map<String, List<PVPushNotification>> restored = new LinkedHashMap<>();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(storeFile)))) {
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                PVPushNotification notification = readNotification(input);
+                restored.computeIfAbsent(groupKeyOf(notification), key -> new ArrayList<>()).add(notification);
+            }
+        } catch (IOException e) {
+            Log.w("com.podverse.fdroid.PVNotificationCoalescer", "Unable to read pending notifications", e);
+        }
+
+        if (restored.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Log.i("com.podverse.fdroid.PVNotificationCoalescer", "Posting notifications left pending by a killed process");
+        pendingNotifications.putAll(restored);
+        acquireWakeLock(context);
+
+        return new ArrayList<>(restored.keySet());
+    }
+
+    // Called holding this
+    private void save() {
+        File tempFile = new File(storeFile.getPath() + ".tmp");
+
+        List<PVPushNotification> notifications = new ArrayList<>();
+        for (List<PVPushNotification> groupNotifications : pendingNotifications.values()) {
+            notifications.addAll(groupNotifications);
+        }
+        for (List<PVPushNotification> groupNotifications : flushingNotifications) {
+            notifications.addAll(groupNotifications);
+        }
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            output.writeInt(notifications.size());
+            for (PVPushNotification notification : notifications) {
+                writeNotification(output, notification);
+            }
+        } catch (IOException e) {
+            Log.w("com.podverse.fdroid.PVNotificationCoalescer", "Unable to save pending notifications", e);
+            tempFile.delete();
+            return;
+        }
+
+        if (!tempFile.renameTo(storeFile)) {
+            tempFile.delete();
+        }
+    }
+
+    private static void writeNotification(@NonNull DataOutputStream output, @NonNull PVPushNotification notification)
+            throws IOException {
+        output.writeInt(notification.messageId);
+        output.writeUTF(notification.instance);
+        output.writeUTF(notification.notificationType);
+        output.writeUTF(notification.title);
+        output.writeUTF(notification.body);
+        writeNullableString(output, notification.imageUrl);
+        writeNullableString(output, notification.podcastId);
+        writeNullableString(output, notification.podcastTitle);
+    }
+
+    @NonNull
+    private static PVPushNotification readNotification(@NonNull DataInputStream input) throws IOException {
+        int messageId = input.readInt();
+        String instance = input.readUTF();
+        String notificationType = input.readUTF();
+        String title = input.readUTF();
+        String body = input.readUTF();
+        String imageUrl = readNullableString(input);
+        String podcastId = readNullableString(input);
+        String podcastTitle = readNullableString(input);
+
+        // The receive time of another process means nothing here, so stage timings start now
+        return new PVPushNotification(messageId, instance, notificationType, title, body, imageUrl,
+                podcastId, podcastTitle, System.nanoTime());
+    }
+
+    private static void writeNullableString(@NonNull DataOutputStream output, @Nullable String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    @Nullable
+    private static String readNullableString(@NonNull DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    @NonNull
+    private static String groupKeyOf(@NonNull PVPushNotification notification) {
+        return GROUP_KEY_PREFIX + (notification.podcastId != null ? notification.podcastId : "");
+    }
+
+    private void postSummary(@NonNull Context context, @NonNull NotificationManager notificationManager,
+                             @NonNull String groupKey, @NonNull PVPushNotification notification) {
+        NotificationCompat.InboxStyle inboxStyle = new NotificationCompat.InboxStyle();
+        int childCount = 0;
+
+        for (StatusBarNotification activeNotification : notificationManager.getActiveNotifications()) {
+            Notification active = activeNotification.getNotification();
+            if (!groupKey.equals(active.getGroup()) || (active.flags & Notification.FLAG_GROUP_SUMMARY) != 0) {
+                continue;
+            }
+
+            if (childCount < MAX_SUMMARY_LINES) {
+                inboxStyle.addLine(active.extras.getCharSequence(Notification.EXTRA_TITLE));
+            }
+            childCount++;
+        }
+
+        String summaryTitle = notification.podcastTitle != null ? notification.podcastTitle : "New Episodes";
+        String summaryText = childCount + " new episodes";
+        inboxStyle.setBigContentTitle(summaryTitle).setSummaryText(summaryText);
+
+        Intent intent = new Intent(context, MainActivity.class);
+        intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        PendingIntent pendingIntent = PendingIntent.getActivity(context, groupKey.hashCode(), intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+
+        NotificationCompat.Builder summaryBuilder = new NotificationCompat.Builder(context, notification.notificationType)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(summaryTitle)
+                .setContentText(summaryText)
+                .setStyle(inboxStyle)
+                .setGroup(groupKey)
+                .setGroupSummary(true)
+                .setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_SUMMARY)
+                .setAutoCancel(true)
+                .setContentIntent(pendingIntent);
+
+        notificationManager.notify(groupKey.hashCode(), summaryBuilder.build());
+    }
+
+    private static int countActiveChildren(@NonNull NotificationManager notificationManager, @NonNull String groupKey) {
+        int count = 0;
+
+        for (StatusBarNotification activeNotification : notificationManager.getActiveNotifications()) {
+            Notification active = activeNotification.getNotification();
+            if (groupKey.equals(active.getGroup()) && (active.flags & Notification.FLAG_GROUP_SUMMARY) == 0) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,400 @@
+package com.podverse.fdroid;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class PVNotificationImageLoader {
+    /*
+        Loads podcast artwork for push notifications.
+
+        Images are downloaded with bounded timeouts, redirects and size, then decoded in two passes:
+        first only the bounds, then with an inSampleSize that brings them close to notification size
+        and a density scale down to it. Decoded bitmaps are kept in a memory LRU sized from the heap, and the downloaded bytes in a size-capped
+        disk LRU under the cache directory. Cached entries are revalidated with the stored ETag and
+        Last-Modified headers once they are older than REVALIDATE_AFTER_MS.
+
+        Concurrent requests for the same URL share a single download, which runs on downloadExecutor so
+        a caller can stop waiting at its deadline. The download gives up at the deadline of the request
+        that started it, with every connect and read timeout shortened to the time left.
+     */
+
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final int READ_TIMEOUT_MS = 10000;
+    static final int MAX_REDIRECTS = 3;
+    static final long MAX_IMAGE_BYTES = 5 * 1024 * 1024;
+
+    // A share of the heap, at least enough for one bitmap at MAX_TARGET_SIZE_PX
+    private static final int MEMORY_CACHE_HEAP_FRACTION = 16;
+    private static final int MIN_MEMORY_CACHE_BYTES = 4 * 1024 * 1024;
+    private static final long DISK_CACHE_BYTES = 20 * 1024 * 1024;
+    private static final long REVALIDATE_AFTER_MS = 60 * 60 * 1000;
+    private static final String DISK_CACHE_DIR = "notification_images";
+
+    // BigPictureStyle is shown about as wide as the screen, so there is no point decoding more than this
+    private static final int MAX_TARGET_SIZE_PX = 1024;
+
+    private static PVNotificationImageLoader instance;
+
+    private final File cacheDir;
+    private final long revalidateAfterMs;
+    private final int targetSizePx;
+    private final LruCache<String, CachedBitmap> memoryCache;
+    private final ConcurrentHashMap<String, FutureTask<Bitmap>> inFlightRequests = new ConcurrentHashMap<>();
+    private final ExecutorService downloadExecutor = Executors.newCachedThreadPool();
+
+    private PVNotificationImageLoader(@NonNull Context context) {
+        this(context, new File(context.getApplicationContext().getCacheDir(), DISK_CACHE_DIR), REVALIDATE_AFTER_MS);
+    }
+
+    // A loader of its own, for PVNotificationImageLoaderTest
+    PVNotificationImageLoader(@NonNull Context context, @NonNull File cacheDir, long revalidateAfterMs) {
+        Context applicationContext = context.getApplicationContext();
+        this.cacheDir = cacheDir;
+        this.revalidateAfterMs = revalidateAfterMs;
+        targetSizePx = Math.min(applicationContext.getResources().getDisplayMetrics().widthPixels, MAX_TARGET_SIZE_PX);
+        int memoryCacheBytes = (int) Math.max(
+                Math.min(Runtime.getRuntime().maxMemory() / MEMORY_CACHE_HEAP_FRACTION, Integer.MAX_VALUE),
+                MIN_MEMORY_CACHE_BYTES);
+        memoryCache = new LruCache<String, CachedBitmap>(memoryCacheBytes) {
+            @Override
+            protected int sizeOf(String key, CachedBitmap value) {
+                return value.bitmap.getByteCount();
+            }
+        };
+    }
+
+    public static synchronized PVNotificationImageLoader getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new PVNotificationImageLoader(context);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Returns the image at imageUrl scaled down for a notification, or null if it can't be loaded
+     * within timeoutNanos. Blocks the calling thread, so it must not be called from the main thread.
+     */
+    @Nullable
+    public Bitmap load(@NonNull String imageUrl, long timeoutNanos) {
+        long deadlineNanos = System.nanoTime() + timeoutNanos;
+
+        CachedBitmap cached = memoryCache.get(imageUrl);
+        if (cached != null && System.currentTimeMillis() - cached.validatedAt < revalidateAfterMs) {
+            return cached.bitmap;
+        }
+
+        FutureTask<Bitmap> task = new FutureTask<Bitmap>(() -> loadUncached(imageUrl, deadlineNanos)) {
+            @Override
+            protected void done() {
+                inFlightRequests.remove(imageUrl, this);
+            }
+        };
+        FutureTask<Bitmap> existingTask = inFlightRequests.putIfAbsent(imageUrl, task);
+
+        if (existingTask != null) {
+            task = existingTask;
+        } else {
+            downloadExecutor.execute(task);
+        }
+
+        try {
+            return task.get(Math.max(deadlineNanos - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            Log.e("com.podverse.fdroid.PVNotificationImageLoader", "Failed to load image " + imageUrl, e.getCause());
+            return null;
+        } catch (TimeoutException e) {
+            Log.w("com.podverse.fdroid.PVNotificationImageLoader", "Image not loaded before the deadline: " + imageUrl);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    @Nullable
+    private Bitmap loadUncached(@NonNull String imageUrl, long deadlineNanos) {
+        Log.d("com.podverse.fdroid.PVNotificationImageLoader", "Getting image url: " + imageUrl);
+
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            Log.w("com.podverse.fdroid.PVNotificationImageLoader", "Unable to create image cache directory");
+        }
+
+        String cacheKey = cacheKey(imageUrl);
+        File imageFile = new File(cacheDir, cacheKey);
+        File metaFile = new File(cacheDir, cacheKey + ".meta");
+        String[] validators = imageFile.exists() ? readValidators(metaFile) : null;
+
+        try {
+            HttpURLConnection connection = openConnection(imageUrl, validators, deadlineNanos);
+
+            try {
+                int responseCode = connection.getResponseCode();
+
+                if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && validators != null) {
+                    Log.d("com.podverse.fdroid.PVNotificationImageLoader", "Image not modified: " + imageUrl);
+                } else if (responseCode == HttpURLConnection.HTTP_OK) {
+                    if (!downloadToFile(connection, imageFile, deadlineNanos)) {
+                        return null;
+                    }
+                    writeValidators(metaFile, connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"));
+                } else {
+                    Log.e("com.podverse.fdroid.PVNotificationImageLoader", "Unexpected response " + responseCode + " for " + imageUrl);
+                    return null;
+                }
+            } finally {
+                connection.disconnect();
+            }
+        } catch (IOException e) {
+            var message = e.getMessage();
+            Log.e("com.podverse.fdroid.PVNotificationImageLoader", message != null ? message : "Unknown IOException");
+
+            // Fall back to the cached copy when the server can't be reached
+            if (!imageFile.exists()) {
+                return null;
+            }
+        }
+
+        imageFile.setLastModified(System.currentTimeMillis());
+        trimDiskCache();
+
+        Bitmap bitmap = decodeSampled(imageFile);
+        if (bitmap != null) {
+            memoryCache.put(imageUrl, new CachedBitmap(bitmap, System.currentTimeMillis()));
+        }
+
+        return bitmap;
+    }
+
+    @NonNull
+    private HttpURLConnection openConnection(@NonNull String imageUrl, @Nullable String[] validators, long deadlineNanos)
+            throws IOException {
+        URL url = new URL(imageUrl);
+
+        // Redirects are followed manually to bound their number and to allow http -> https
+        for (int redirectCount = 0; ; redirectCount++) {
+            int remainingMs = remainingMs(deadlineNanos);
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(Math.min(CONNECT_TIMEOUT_MS, remainingMs));
+            connection.setReadTimeout(Math.min(READ_TIMEOUT_MS, remainingMs));
+            connection.setInstanceFollowRedirects(false);
+            connection.setDoInput(true);
+
+            if (validators != null) {
+                if (validators[0] != null) {
+                    connection.setRequestProperty("If-None-Match", validators[0]);
+                }
+                if (validators[1] != null) {
+                    connection.setRequestProperty("If-Modified-Since", validators[1]);
+                }
+            }
+
+            int responseCode = connection.getResponseCode();
+            boolean isRedirect = responseCode == HttpURLConnection.HTTP_MOVED_PERM
+                    || responseCode == HttpURLConnection.HTTP_MOVED_TEMP
+                    || responseCode == HttpURLConnection.HTTP_SEE_OTHER
+                    || responseCode == 307
+                    || responseCode == 308;
+
+            if (!isRedirect) {
+                return connection;
+            }
+
+            String location = connection.getHeaderField("Location");
+            connection.disconnect();
+
+            if (location == null || redirectCount >= MAX_REDIRECTS) {
+                throw new IOException("Too many redirects for " + imageUrl);
+            }
+
+            url = new URL(url, location);
+        }
+    }
+
+    private boolean downloadToFile(@NonNull HttpURLConnection connection, @NonNull File imageFile, long deadlineNanos)
+            throws IOException {
+        int contentLength = connection.getContentLength();
+        if (contentLength > MAX_IMAGE_BYTES) {
+            Log.w("com.podverse.fdroid.PVNotificationImageLoader", "Image too large: " + contentLength + " bytes");
+            return false;
+        }
+
+        File tempFile = new File(imageFile.getPath() + ".tmp");
+        long totalBytes = 0;
+
+        try (InputStream input = connection.getInputStream(); OutputStream output = new FileOutputStream(tempFile)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                if (System.nanoTime() - deadlineNanos > 0) {
+                    tempFile.delete();
+                    throw new IOException("Image download passed its deadline");
+                }
+
+                totalBytes += read;
+                if (totalBytes > MAX_IMAGE_BYTES) {
+                    Log.w("com.podverse.fdroid.PVNotificationImageLoader", "Image exceeded " + MAX_IMAGE_BYTES + " bytes");
+                    tempFile.delete();
+                    return false;
+                }
+                output.write(buffer, 0, read);
+            }
+        }
+
+        if (!tempFile.renameTo(imageFile)) {
+            tempFile.delete();
+            throw new IOException("Unable to move downloaded image into the cache");
+        }
+
+        return true;
+    }
+
+    @Nullable
+    private Bitmap decodeSampled(@NonNull File imageFile) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(imageFile.getPath(), options);
+
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.e("com.podverse.fdroid.PVNotificationImageLoader", "Unable to decode image " + imageFile.getName());
+            imageFile.delete();
+            return null;
+        }
+
+        // Sampling only goes down in powers of two, so the rest is scaled while decoding, which
+        // keeps the longer side at most targetSizePx
+        int longerSide = Math.max(options.outWidth, options.outHeight);
+        int sampleSize = 1;
+        while (longerSide / (sampleSize * 2) >= targetSizePx) {
+            sampleSize *= 2;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+
+        int sampledLongerSide = longerSide / sampleSize;
+        if (sampledLongerSide > targetSizePx) {
+            options.inScaled = true;
+            options.inDensity = sampledLongerSide;
+            options.inTargetDensity = targetSizePx;
+        }
+
+        return BitmapFactory.decodeFile(imageFile.getPath(), options);
+    }
+
+    // Throws once the deadline has passed, since a timeout of 0 would mean no timeout at all
+    private static int remainingMs(long deadlineNanos) throws IOException {
+        long remainingNanos = deadlineNanos - System.nanoTime();
+        if (remainingNanos <= 0) {
+            throw new IOException("Image download passed its deadline");
+        }
+
+        return (int) Math.max(TimeUnit.NANOSECONDS.toMillis(remainingNanos), 1);
+    }
+
+    private void trimDiskCache() {
+        File[] files = cacheDir.listFiles((dir, name) -> !name.endsWith(".meta") && !name.endsWith(".tmp"));
+        if (files == null) {
+            return;
+        }
+
+        long totalBytes = 0;
+        for (File file : files) {
+            totalBytes += file.length();
+        }
+
+        if (totalBytes <= DISK_CACHE_BYTES) {
+            return;
+        }
+
+        // Least recently used first
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (totalBytes <= DISK_CACHE_BYTES) {
+                break;
+            }
+            totalBytes -= file.length();
+            file.delete();
+            new File(cacheDir, file.getName() + ".meta").delete();
+        }
+    }
+
+    @Nullable
+    private static String[] readValidators(@NonNull File metaFile) {
+        if (!metaFile.exists()) {
+            return null;
+        }
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(metaFile))) {
+            String eTag = reader.readLine();
+            String lastModified = reader.readLine();
+
+            return new String[]{
+                    eTag == null || eTag.isEmpty() ? null : eTag,
+                    lastModified == null || lastModified.isEmpty() ? null : lastModified
+            };
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writeValidators(@NonNull File metaFile, @Nullable String eTag, @Nullable String lastModified) {
+        try (FileWriter writer = new FileWriter(metaFile)) {
+            writer.write((eTag != null ? eTag : "") + "\n" + (lastModified != null ? lastModified : "") + "\n");
+        } catch (IOException e) {
+            Log.w("com.podverse.fdroid.PVNotificationImageLoader", "Unable to store image validators");
+        }
+    }
+
+    @NonNull
+    private static String cacheKey(@NonNull String imageUrl) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(imageUrl.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(imageUrl.hashCode());
+        }
+    }
+
+    private static class CachedBitmap {
+        private final Bitmap bitmap;
+        private final long validatedAt;
+
+        CachedBitmap(Bitmap bitmap, long validatedAt) {
+            this.bitmap = bitmap;
+            this.validatedAt = validatedAt;
+        }
+    }
+}
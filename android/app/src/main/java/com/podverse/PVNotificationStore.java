@@ -0,0 +1,329 @@
+package com.podverse.fdroid;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+public class PVNotificationStore {
+    /*
+        Stored notification payloads, waiting to be consumed when a notification is tapped.
+
+        The index is a fixed-capacity ring buffer, oldest first, with a map from message id to slot,
+        so storing, popping and trimming are O(1). Popped entries leave an empty slot behind which is
+        skipped once it reaches the head of the ring, and when empty slots behind a live head fill the
+        ring, the live entries are moved together instead of trimming one. Only the oldest entry beyond
+        MAX_STORED_NOTIFICATIONS live entries is trimmed.
+
+        Changes are appended to a log file instead of rewriting the whole store. The log is replayed on
+        first access and rewritten with only the live entries once it grows past COMPACT_THRESHOLD records.
+     */
+
+    public static final int MAX_STORED_NOTIFICATIONS = 100;
+    private static final int COMPACT_THRESHOLD = MAX_STORED_NOTIFICATIONS * 4;
+
+    private static final String STORE_FILE_NAME = "pv_notifications.log";
+    private static final byte OP_STORE = 1;
+    private static final byte OP_POP = 2;
+
+    // Previous SharedPreferences based store, migrated on first load
+    private static final String LEGACY_SHARED_PREF_NAME = "PVNotifications";
+    private static final String LEGACY_PREF_KEY_NOTIFICATION_IDS = "notification_ids";
+    private static final String LEGACY_PREF_KEY_NOTIFICATION_PREFIX = "pvn-";
+
+    private static PVNotificationStore instance;
+
+    private final Context context;
+    private final File storeFile;
+    private final boolean shouldMigrateLegacyStore;
+
+    private final int[] messageIds = new int[MAX_STORED_NOTIFICATIONS];
+    private final String[] payloads = new String[MAX_STORED_NOTIFICATIONS];
+    private final HashMap<Integer, Integer> slotsByMessageId = new HashMap<>();
+    private int head = 0;
+    private int size = 0;
+
+    private boolean loaded = false;
+    private int logRecordCount = 0;
+    private DataOutputStream logOutput;
+
+    private PVNotificationStore(@NonNull Context context) {
+        this(context, STORE_FILE_NAME, true);
+    }
+
+    /**
+     * Creates a store backed by its own file, without touching the app's stored notifications.
+     */
+    PVNotificationStore(@NonNull Context context, @NonNull String fileName, boolean shouldMigrateLegacyStore) {
+        this.context = context.getApplicationContext();
+        this.storeFile = new File(this.context.getFilesDir(), fileName);
+        this.shouldMigrateLegacyStore = shouldMigrateLegacyStore;
+    }
+
+    public static synchronized PVNotificationStore getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new PVNotificationStore(context);
+        }
+
+        return instance;
+    }
+
+    public synchronized void store(int messageId, @NonNull String payload) {
+        ensureLoaded();
+
+        insert(messageId, payload);
+        appendRecord(OP_STORE, messageId, payload);
+    }
+
+    @Nullable
+    public synchronized String pop(int messageId) {
+        ensureLoaded();
+
+        String payload = remove(messageId);
+        if (payload != null) {
+            appendRecord(OP_POP, messageId, null);
+        }
+
+        return payload;
+    }
+
+    public synchronized int size() {
+        ensureLoaded();
+
+        return slotsByMessageId.size();
+    }
+
+    private void insert(int messageId, @NonNull String payload) {
+        Integer existingSlot = slotsByMessageId.get(messageId);
+        if (existingSlot != null) {
+            payloads[existingSlot] = payload;
+            return;
+        }
+
+        if (slotsByMessageId.size() == MAX_STORED_NOTIFICATIONS) {
+            dropPoppedHead();
+            Log.d("com.podverse.fdroid.PVNotificationStore", "Trimming notification id " + messageIds[head]);
+            slotsByMessageId.remove(messageIds[head]);
+            payloads[head] = null;
+        }
+
+        dropPoppedHead();
+
+        // Popped slots behind a live head still take up the ring, so move the live entries together
+        if (size == MAX_STORED_NOTIFICATIONS) {
+            compactRing();
+        }
+
+        int slot = (head + size) % MAX_STORED_NOTIFICATIONS;
+        messageIds[slot] = messageId;
+        payloads[slot] = payload;
+        slotsByMessageId.put(messageId, slot);
+        size++;
+    }
+
+    private void dropPoppedHead() {
+        while (size > 0 && payloads[head] == null) {
+            head = (head + 1) % MAX_STORED_NOTIFICATIONS;
+            size--;
+        }
+    }
+
+    private void compactRing() {
+        int liveCount = 0;
+        for (int i = 0; i < size; i++) {
+            int slot = (head + i) % MAX_STORED_NOTIFICATIONS;
+            if (payloads[slot] == null) {
+                continue;
+            }
+
+            // Entries only move towards the head, so a slot is never overwritten before it is read
+            int liveSlot = (head + liveCount) % MAX_STORED_NOTIFICATIONS;
+            if (liveSlot != slot) {
+                messageIds[liveSlot] = messageIds[slot];
+                payloads[liveSlot] = payloads[slot];
+                payloads[slot] = null;
+                slotsByMessageId.put(messageIds[liveSlot], liveSlot);
+            }
+            liveCount++;
+        }
+        size = liveCount;
+    }
+
+    @Nullable
+    private String remove(int messageId) {
+        Integer slot = slotsByMessageId.remove(messageId);
+        if (slot == null) {
+            return null;
+        }
+
+        String payload = payloads[slot];
+        payloads[slot] = null;
+
+        return payload;
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        if (storeFile.exists()) {
+            replayLog();
+        } else if (shouldMigrateLegacyStore) {
+            migrateLegacyStore();
+        }
+    }
+
+    private void replayLog() {
+        boolean truncated = false;
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(storeFile)))) {
+            while (true) {
+                byte op;
+                try {
+                    op = input.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                int messageId = input.readInt();
+                if (op == OP_STORE) {
+                    insert(messageId, input.readUTF());
+                } else if (op == OP_POP) {
+                    remove(messageId);
+                } else {
+                    truncated = true;
+                    break;
+                }
+                logRecordCount++;
+            }
+        } catch (EOFException e) {
+            // The last record was only partly written, keep everything before it
+            truncated = true;
+        } catch (IOException e) {
+            Log.e("com.podverse.fdroid.PVNotificationStore", "Failed to read notification store", e);
+            truncated = true;
+        }
+
+        if (truncated || logRecordCount > COMPACT_THRESHOLD) {
+            compact();
+        }
+    }
+
+    private void migrateLegacyStore() {
+        SharedPreferences preferences = context.getSharedPreferences(LEGACY_SHARED_PREF_NAME, Context.MODE_PRIVATE);
+        String notificationIds = preferences.getString(LEGACY_PREF_KEY_NOTIFICATION_IDS, "");
+
+        for (String messageIdString : notificationIds.split(",")) {
+            if (messageIdString.isEmpty()) {
+                continue;
+            }
+
+            String payload = preferences.getString(LEGACY_PREF_KEY_NOTIFICATION_PREFIX + messageIdString, null);
+            if (payload == null) {
+                continue;
+            }
+
+            try {
+                insert(Integer.parseInt(messageIdString), payload);
+            } catch (NumberFormatException e) {
+                Log.w("com.podverse.fdroid.PVNotificationStore", "Skipping invalid notification id " + messageIdString);
+            }
+        }
+
+        compact();
+
+        if (!preferences.getAll().isEmpty()) {
+            Log.d("com.podverse.fdroid.PVNotificationStore", "Migrated " + slotsByMessageId.size() + " stored notifications");
+            preferences.edit().clear().apply();
+        }
+    }
+
+    private void appendRecord(byte op, int messageId, @Nullable String payload) {
+        try {
+            if (logOutput == null) {
+                logOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(storeFile, true)));
+            }
+
+            logOutput.writeByte(op);
+            logOutput.writeInt(messageId);
+            if (payload != null) {
+                logOutput.writeUTF(payload);
+            }
+            logOutput.flush();
+            logRecordCount++;
+        } catch (IOException e) {
+            Log.e("com.podverse.fdroid.PVNotificationStore", "Failed to append to notification store", e);
+            closeLog();
+        }
+
+        if (logRecordCount > COMPACT_THRESHOLD) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        closeLog();
+
+        File tempFile = new File(storeFile.getPath() + ".tmp");
+        int recordCount = 0;
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            for (int i = 0; i < size; i++) {
+                int slot = (head + i) % MAX_STORED_NOTIFICATIONS;
+                if (payloads[slot] == null) {
+                    continue;
+                }
+
+                output.writeByte(OP_STORE);
+                output.writeInt(messageIds[slot]);
+                output.writeUTF(payloads[slot]);
+                recordCount++;
+            }
+        } catch (IOException e) {
+            Log.e("com.podverse.fdroid.PVNotificationStore", "Failed to compact notification store", e);
+            tempFile.delete();
+            return;
+        }
+
+        if (!tempFile.renameTo(storeFile)) {
+            Log.e("com.podverse.fdroid.PVNotificationStore", "Failed to replace notification store");
+            tempFile.delete();
+            return;
+        }
+
+        logRecordCount = recordCount;
+    }
+
+    synchronized void delete() {
+        closeLog();
+        storeFile.delete();
+    }
+
+    private void closeLog() {
+        if (logOutput == null) {
+            return;
+        }
+
+        try {
+            logOutput.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        logOutput = null;
+    }
+}
@@ -0,0 +1,160 @@
+package com.podverse.fdroid;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class PVPendingPushStore {
+    /*
+        Keeps each received push message on disk until its push job has run or been dropped, so the
+        broadcast can be finished as soon as the message is queued. Messages left over by a process
+        that was killed with jobs still queued are handed out once by takeOrphans, to be queued again.
+
+        Every message is its own file in STORE_DIR_NAME, named after a counter that increases with
+        each message, so leftovers are queued again in the order they arrived.
+     */
+
+    private static final String STORE_DIR_NAME = "pv_push_pending";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static PVPendingPushStore instance;
+
+    public static class Message {
+        @NonNull
+        public final byte[] message;
+        @NonNull
+        public final String instance;
+        // Null when the message couldn't be saved
+        @Nullable
+        final File file;
+
+        Message(@NonNull byte[] message, @NonNull String instance, @Nullable File file) {
+            this.message = message;
+            this.instance = instance;
+            this.file = file;
+        }
+    }
+
+    private final File storeDir;
+    private long nextSequence;
+    private boolean orphansTaken = false;
+
+    private PVPendingPushStore(@NonNull Context context) {
+        storeDir = new File(context.getApplicationContext().getFilesDir(), STORE_DIR_NAME);
+        nextSequence = System.currentTimeMillis() * 1000;
+    }
+
+    public static synchronized PVPendingPushStore getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new PVPendingPushStore(context);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Saves a message. A message that can't be saved is still returned, so it can be handled, but
+     * it won't survive the process being killed.
+     */
+    @NonNull
+    public synchronized Message put(@NonNull byte[] message, @NonNull String instance) {
+        File file = new File(storeDir, Long.toString(nextSequence++));
+        File tempFile = new File(storeDir, file.getName() + TEMP_SUFFIX);
+
+        try {
+            if (!storeDir.isDirectory() && !storeDir.mkdirs()) {
+                throw new IOException("Failed to create " + storeDir);
+            }
+
+            try (var out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeUTF(instance);
+                out.writeInt(message.length);
+                out.write(message);
+            }
+
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Failed to rename " + tempFile);
+            }
+        } catch (IOException e) {
+            Log.e("com.podverse.fdroid.PVPendingPushStore", "Failed to save pending push message", e);
+            tempFile.delete();
+            return new Message(message, instance, null);
+        }
+
+        return new Message(message, instance, file);
+    }
+
+    public void remove(@NonNull Message message) {
+        if (message.file != null) {
+            message.file.delete();
+        }
+    }
+
+    /**
+     * Returns the messages saved by earlier processes, oldest first. Only the first call in a process
+     * returns any, and it has to come before this process saves its own.
+     */
+    @NonNull
+    public synchronized List<Message> takeOrphans() {
+        List<Message> orphans = new ArrayList<>();
+        if (orphansTaken) {
+            return orphans;
+        }
+        orphansTaken = true;
+
+        File[] files = storeDir.listFiles();
+        if (files == null) {
+            return orphans;
+        }
+
+        Arrays.sort(files, (a, b) -> Long.compare(sequenceOf(a), sequenceOf(b)));
+        for (File file : files) {
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                // Interrupted while saving, the broadcast was never finished so it is delivered again
+                file.delete();
+                continue;
+            }
+
+            try (var in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                String instance = in.readUTF();
+                byte[] message = new byte[in.readInt()];
+                in.readFully(message);
+                orphans.add(new Message(message, instance, file));
+                // Never reuse a leftover's name, even if the clock went back since
+                nextSequence = Math.max(nextSequence, sequenceOf(file) + 1);
+            } catch (IOException e) {
+                Log.e("com.podverse.fdroid.PVPendingPushStore", "Dropping unreadable pending push message " + file.getName(), e);
+                file.delete();
+            }
+        }
+
+        return orphans;
+    }
+
+    private static long sequenceOf(@NonNull File file) {
+        String name = file.getName();
+        if (name.endsWith(TEMP_SUFFIX)) {
+            name = name.substring(0, name.length() - TEMP_SUFFIX.length());
+        }
+
+        try {
+            return Long.parseLong(name);
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+}
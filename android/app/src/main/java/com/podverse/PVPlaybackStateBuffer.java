@@ -0,0 +1,208 @@
+package com.podverse.fdroid;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.reactnativecommunity.asyncstorage.ReactDatabaseSupplier;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+public class PVPlaybackStateBuffer {
+    /*
+        Write-behind buffer for the AsyncStorage keys that are rewritten about once a minute while
+        audio is playing: NOW_PLAYING_ITEM, HISTORY_ITEMS and HISTORY_ITEMS_INDEX.
+
+        A write only replaces the pending value of its key, so every position update made between two
+        flushes costs one row write per key. Pending values are written to the AsyncStorage database in
+        a single transaction FLUSH_INTERVAL_MS after the first of them, and straight away when playback
+        pauses, the track changes or the app is trimmed. Reads return the pending value when there is
+        one, so JS always sees its own latest write.
+     */
+
+    private static final long FLUSH_INTERVAL_MS = 5 * 60 * 1000;
+    private static final long MS_PER_HOUR = 60 * 60 * 1000;
+
+    private static PVPlaybackStateBuffer instance;
+
+    private final ReactDatabaseSupplier reactDatabaseSupplier;
+    private final ScheduledExecutorService flushScheduler = Executors.newSingleThreadScheduledExecutor();
+
+    // A null value is a pending removal
+    private final HashMap<String, String> pendingValues = new HashMap<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    private long requestedWrites = 0;
+    private long rowsWritten = 0;
+    private long flushCount = 0;
+    private long playbackMs = 0;
+    private long playingSince = -1;
+
+    private PVPlaybackStateBuffer(@NonNull Context context) {
+        reactDatabaseSupplier = ReactDatabaseSupplier.getInstance(context.getApplicationContext());
+    }
+
+    public static synchronized PVPlaybackStateBuffer getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new PVPlaybackStateBuffer(context);
+        }
+
+        return instance;
+    }
+
+    @Nullable
+    public synchronized String getItem(@NonNull String key) {
+        if (pendingValues.containsKey(key)) {
+            return pendingValues.get(key);
+        }
+
+        SQLiteDatabase db = reactDatabaseSupplier.get();
+        try (Cursor cursor = db.query(
+                PVAsyncStorageSizeTracker.TABLE_CATALYST,
+                new String[]{PVAsyncStorageSizeTracker.VALUE_COLUMN},
+                PVAsyncStorageSizeTracker.KEY_COLUMN + " = ?",
+                new String[]{key},
+                null, null, null)) {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        }
+    }
+
+    public synchronized void setItem(@NonNull String key, @Nullable String value) {
+        requestedWrites++;
+        pendingValues.put(key, value);
+        scheduleFlush();
+    }
+
+    public void removeItem(@NonNull String key) {
+        setItem(key, null);
+    }
+
+    /**
+     * Writes every pending value in one transaction and returns the number of rows written.
+     * If the write fails the values stay pending and are retried on the next interval.
+     */
+    public synchronized int flush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+
+        if (pendingValues.isEmpty()) {
+            return 0;
+        }
+
+        SQLiteDatabase db = reactDatabaseSupplier.get();
+        try {
+            db.beginTransaction();
+            try {
+                SQLiteStatement insert = db.compileStatement(
+                        "INSERT OR REPLACE INTO " + PVAsyncStorageSizeTracker.TABLE_CATALYST + " VALUES (?, ?)");
+                try {
+                    for (Map.Entry<String, String> entry : pendingValues.entrySet()) {
+                        if (entry.getValue() == null) {
+                            db.delete(
+                                    PVAsyncStorageSizeTracker.TABLE_CATALYST,
+                                    PVAsyncStorageSizeTracker.KEY_COLUMN + " = ?",
+                                    new String[]{entry.getKey()});
+                        } else {
+                            insert.clearBindings();
+                            insert.bindString(1, entry.getKey());
+                            insert.bindString(2, entry.getValue());
+                            insert.execute();
+                        }
+                    }
+                } finally {
+                    insert.close();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLiteException e) {
+            Log.e("com.podverse.fdroid.PVPlaybackStateBuffer", "Failed to flush playback state", e);
+            scheduleFlush();
+            return 0;
+        }
+
+        int written = pendingValues.size();
+        rowsWritten += written;
+        flushCount++;
+        pendingValues.clear();
+
+        return written;
+    }
+
+    /**
+     * Flushes on the buffer's own thread, for callers that must not block, like onTrimMemory.
+     */
+    public void flushAsync() {
+        flushScheduler.execute(this::flush);
+    }
+
+    /**
+     * Tracks playback time for getWritesSavedPerPlaybackHour. Pausing also flushes.
+     */
+    public void setPlaying(boolean isPlaying) {
+        synchronized (this) {
+            long now = SystemClock.elapsedRealtime();
+            if (isPlaying && playingSince < 0) {
+                playingSince = now;
+            } else if (!isPlaying && playingSince >= 0) {
+                playbackMs += now - playingSince;
+                playingSince = -1;
+            }
+        }
+
+        if (!isPlaying) {
+            flush();
+        }
+    }
+
+    public synchronized long getRequestedWrites() {
+        return requestedWrites;
+    }
+
+    public synchronized long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    public synchronized long getFlushCount() {
+        return flushCount;
+    }
+
+    public synchronized long getPlaybackMs() {
+        return playingSince < 0 ? playbackMs : playbackMs + SystemClock.elapsedRealtime() - playingSince;
+    }
+
+    /**
+     * Row writes avoided per hour of playback since the app started. Values still pending count
+     * as written.
+     */
+    public synchronized double getWritesSavedPerPlaybackHour() {
+        long playbackMs = getPlaybackMs();
+        if (playbackMs == 0) {
+            return 0;
+        }
+
+        long saved = requestedWrites - rowsWritten - pendingValues.size();
+        return saved / (playbackMs / (double) MS_PER_HOUR);
+    }
+
+    private void scheduleFlush() {
+        if (scheduledFlush == null) {
+            scheduledFlush = flushScheduler.schedule(this::flush, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+}
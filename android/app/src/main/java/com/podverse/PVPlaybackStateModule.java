@@ -0,0 +1,110 @@
+package com.podverse.fdroid;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class PVPlaybackStateModule extends ReactContextBaseJavaModule {
+    // Exposes PVPlaybackStateBuffer to JS. Values are AsyncStorage strings, and a buffered key
+    // must only be read and written through this module, or a read can miss a pending write.
+
+    private final PVPlaybackStateBuffer mPlaybackStateBuffer;
+    private final ExecutorService mStorageExecutor = Executors.newSingleThreadExecutor();
+
+    PVPlaybackStateModule(ReactApplicationContext context) {
+        super(context);
+        mPlaybackStateBuffer = PVPlaybackStateBuffer.getInstance(context);
+    }
+
+    @Override
+    public String getName() {
+        return "PVPlaybackState";
+    }
+
+    @ReactMethod
+    public void getItem(String key, Promise promise) {
+        mStorageExecutor.execute(() -> {
+            try {
+                promise.resolve(mPlaybackStateBuffer.getItem(key));
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVPlaybackStateModule", "Failed to read " + key, e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void setItem(String key, @Nullable String value, Promise promise) {
+        mStorageExecutor.execute(() -> {
+            try {
+                mPlaybackStateBuffer.setItem(key, value);
+                promise.resolve(null);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVPlaybackStateModule", "Failed to write " + key, e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void removeItem(String key, Promise promise) {
+        mStorageExecutor.execute(() -> {
+            try {
+                mPlaybackStateBuffer.removeItem(key);
+                promise.resolve(null);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVPlaybackStateModule", "Failed to remove " + key, e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    /**
+     * Resolves with the number of rows written.
+     */
+    @ReactMethod
+    public void flush(Promise promise) {
+        mStorageExecutor.execute(() -> {
+            try {
+                promise.resolve(mPlaybackStateBuffer.flush());
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVPlaybackStateModule", "Failed to flush playback state", e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void setPlaying(boolean isPlaying, Promise promise) {
+        mStorageExecutor.execute(() -> {
+            try {
+                mPlaybackStateBuffer.setPlaying(isPlaying);
+                promise.resolve(null);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVPlaybackStateModule", "Failed to update playing state", e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void getStats(Promise promise) {
+        WritableMap stats = Arguments.createMap();
+        stats.putDouble("requestedWrites", mPlaybackStateBuffer.getRequestedWrites());
+        stats.putDouble("rowsWritten", mPlaybackStateBuffer.getRowsWritten());
+        stats.putDouble("flushes", mPlaybackStateBuffer.getFlushCount());
+        stats.putDouble("playbackMs", mPlaybackStateBuffer.getPlaybackMs());
+        stats.putDouble("writesSavedPerPlaybackHour", mPlaybackStateBuffer.getWritesSavedPerPlaybackHour());
+        promise.resolve(stats);
+    }
+}
@@ -0,0 +1,151 @@
+package com.podverse.fdroid;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class PVPushDeduplicator {
+    /*
+        Drops pushes that were already handled, e.g. when a distributor redelivers after reconnecting.
+
+        Each push is identified by a 64-bit hash of its podcastId, episodeId, notificationType and
+        timeSent. The most recent MAX_ENTRIES hashes seen within WINDOW_MS are kept in an LRU, which is
+        saved to a small file so the window survives the process being killed between pushes.
+     */
+
+    private static final int MAX_ENTRIES = 256;
+    private static final long WINDOW_MS = 24 * 60 * 60 * 1000;
+    private static final String STORE_FILE_NAME = "pv_push_dedup.bin";
+
+    private static PVPushDeduplicator instance;
+
+    private final File storeFile;
+    private final LinkedHashMap<Long, Long> seenAtByHash = new LinkedHashMap<Long, Long>(MAX_ENTRIES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final AtomicLong duplicateCount = new AtomicLong();
+    private boolean loaded = false;
+
+    private PVPushDeduplicator(@NonNull Context context) {
+        storeFile = new File(context.getApplicationContext().getFilesDir(), STORE_FILE_NAME);
+    }
+
+    public static synchronized PVPushDeduplicator getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new PVPushDeduplicator(context);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Returns true if the same push was already seen within the window, otherwise records it.
+     */
+    public synchronized boolean isDuplicate(@NonNull JSONObject notification, @NonNull String payload) {
+        ensureLoaded();
+
+        long hash = contentHash(notification, payload);
+        long now = System.currentTimeMillis();
+        Long seenAt = seenAtByHash.get(hash);
+
+        if (seenAt != null && now - seenAt < WINDOW_MS) {
+            duplicateCount.incrementAndGet();
+            return true;
+        }
+
+        seenAtByHash.put(hash, now);
+        save();
+
+        return false;
+    }
+
+    public long getDuplicateCount() {
+        return duplicateCount.get();
+    }
+
+    private static long contentHash(@NonNull JSONObject notification, @NonNull String payload) {
+        String podcastId = notification.optString("podcastId");
+        String episodeId = notification.optString("episodeId");
+        String timeSent = notification.optString("timeSent");
+
+        // Without identifying fields, fall back to the whole payload
+        String key = podcastId.isEmpty() && episodeId.isEmpty() && timeSent.isEmpty()
+                ? payload
+                : podcastId + "|" + episodeId + "|" + notification.optString("notificationType") + "|" + timeSent;
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            return key.hashCode();
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        if (!storeFile.exists()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(storeFile)))) {
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                long hash = input.readLong();
+                long seenAt = input.readLong();
+                if (now - seenAt < WINDOW_MS) {
+                    seenAtByHash.put(hash, seenAt);
+                }
+            }
+        } catch (IOException e) {
+            Log.w("com.podverse.fdroid.PVPushDeduplicator", "Unable to read push de-duplication window", e);
+        }
+    }
+
+    private void save() {
+        File tempFile = new File(storeFile.getPath() + ".tmp");
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            output.writeInt(seenAtByHash.size());
+            for (Map.Entry<Long, Long> entry : seenAtByHash.entrySet()) {
+                output.writeLong(entry.getKey());
+                output.writeLong(entry.getValue());
+            }
+        } catch (IOException e) {
+            Log.w("com.podverse.fdroid.PVPushDeduplicator", "Unable to save push de-duplication window", e);
+            tempFile.delete();
+            return;
+        }
+
+        if (!tempFile.renameTo(storeFile)) {
+            tempFile.delete();
+        }
+    }
+}
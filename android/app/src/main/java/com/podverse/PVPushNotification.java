@@ -0,0 +1,37 @@
+package com.podverse.fdroid;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+public class PVPushNotification {
+    public static final String TYPE_LIVE = "live";
+    public static final String TYPE_NEW_EPISODE = "new-episode";
+
+    public final int messageId;
+    public final @NonNull String instance;
+    public final @NonNull String notificationType;
+    public final @NonNull String title;
+    public final @NonNull String body;
+    public final @Nullable String imageUrl;
+    public final @Nullable String podcastId;
+    public final @Nullable String podcastTitle;
+    public final long receivedAtNanos;
+
+    public PVPushNotification(int messageId, @NonNull String instance, @NonNull String notificationType,
+                              @NonNull String title, @NonNull String body, @Nullable String imageUrl,
+                              @Nullable String podcastId, @Nullable String podcastTitle, long receivedAtNanos) {
+        this.messageId = messageId;
+        this.instance = instance;
+        this.notificationType = notificationType;
+        this.title = title;
+        this.body = body;
+        this.imageUrl = imageUrl;
+        this.podcastId = podcastId;
+        this.podcastTitle = podcastTitle;
+        this.receivedAtNanos = receivedAtNanos;
+    }
+
+    public boolean hasImage() {
+        return imageUrl != null && !imageUrl.isEmpty();
+    }
+}
@@ -0,0 +1,177 @@
+package com.podverse.fdroid;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.reactnativecommunity.asyncstorage.ReactDatabaseSupplier;
+
+import org.json.JSONArray;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class PVQueueModule extends ReactContextBaseJavaModule {
+    // Exposes PVQueueStore to JS. Items cross the bridge as NowPlayingItem JSON strings, and every
+    // change is followed by a PVQueueChanged event with the reason and the new queue size.
+
+    public static final String EVENT_QUEUE_CHANGED = "PVQueueChanged";
+
+    private final PVQueueStore mQueueStore;
+    private final ReactDatabaseSupplier mReactDatabaseSupplier;
+    private final ExecutorService mStorageExecutor = Executors.newSingleThreadExecutor();
+
+    PVQueueModule(ReactApplicationContext context) {
+        super(context);
+        mQueueStore = PVQueueStore.getInstance(context);
+        mReactDatabaseSupplier = ReactDatabaseSupplier.getInstance(context);
+    }
+
+    @Override
+    public String getName() {
+        return "PVQueue";
+    }
+
+    @ReactMethod
+    public void getItems(Promise promise) {
+        mStorageExecutor.execute(() -> {
+            try {
+                getQueueStore();
+                promise.resolve(mQueueStore.getItems());
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVQueueModule", "Failed to read queue", e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void addLast(String itemJson, Promise promise) {
+        mStorageExecutor.execute(() -> {
+            try {
+                getQueueStore().addLast(itemJson);
+                emitQueueChanged("addLast");
+                promise.resolve(null);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVQueueModule", "Failed to add queue item", e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void addNext(String itemJson, Promise promise) {
+        mStorageExecutor.execute(() -> {
+            try {
+                getQueueStore().addNext(itemJson);
+                emitQueueChanged("addNext");
+                promise.resolve(null);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVQueueModule", "Failed to add queue item", e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void removeItem(String itemJson, Promise promise) {
+        mStorageExecutor.execute(() -> {
+            try {
+                boolean removed = getQueueStore().remove(itemJson);
+                if (removed) {
+                    emitQueueChanged("remove");
+                }
+                promise.resolve(removed);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVQueueModule", "Failed to remove queue item", e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    /**
+     * Moves itemJson in front of beforeItemJson, or to the end when beforeItemJson is null.
+     */
+    @ReactMethod
+    public void moveItem(String itemJson, @Nullable String beforeItemJson, Promise promise) {
+        mStorageExecutor.execute(() -> {
+            try {
+                boolean moved = getQueueStore().move(itemJson, beforeItemJson);
+                if (moved) {
+                    emitQueueChanged("move");
+                }
+                promise.resolve(moved);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVQueueModule", "Failed to move queue item", e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void setAllItems(String itemsJson, Promise promise) {
+        mStorageExecutor.execute(() -> {
+            try {
+                getQueueStore().setAll(new JSONArray(itemsJson));
+                emitQueueChanged("setAll");
+                promise.resolve(null);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVQueueModule", "Failed to set queue items", e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    /**
+     * Removes the first item and resolves with it, or with null when the queue is empty.
+     */
+    @ReactMethod
+    public void popNext(Promise promise) {
+        mStorageExecutor.execute(() -> {
+            try {
+                String itemJson = getQueueStore().popNext();
+                if (itemJson != null) {
+                    emitQueueChanged("popNext");
+                }
+                promise.resolve(itemJson);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVQueueModule", "Failed to pop next queue item", e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void addListener(String eventName) {
+        // Required by NativeEventEmitter
+    }
+
+    @ReactMethod
+    public void removeListeners(Integer count) {
+        // Required by NativeEventEmitter
+    }
+
+    private PVQueueStore getQueueStore() {
+        mQueueStore.ensureLoaded(mReactDatabaseSupplier.get());
+        return mQueueStore;
+    }
+
+    private void emitQueueChanged(String reason) {
+        var context = getReactApplicationContext();
+        if (!context.hasActiveCatalystInstance()) {
+            return;
+        }
+
+        WritableMap event = Arguments.createMap();
+        event.putString("reason", reason);
+        event.putInt("size", mQueueStore.size());
+        context.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class).emit(EVENT_QUEUE_CHANGED, event);
+    }
+}
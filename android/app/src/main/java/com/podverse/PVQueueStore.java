@@ -0,0 +1,438 @@
+package com.podverse.fdroid;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+public class PVQueueStore {
+    /*
+        The local playback queue, as an ordered list of NowPlayingItem JSON strings.
+
+        Items are kept in a doubly linked list with a map from item key to node, so appending,
+        inserting next, removing and moving an item are all O(1). An item's key is its clipId, or its
+        episodeId when it has no clip, the same identity filterItemFromQueueItems uses in JS.
+
+        Every change is appended to a log file, like PVNotificationStore, instead of rewriting the whole
+        queue. The log is replayed on first access and rewritten with only the current items once it
+        grows past COMPACT_MIN_RECORDS and is more than twice the size of the queue.
+     */
+
+    static final String QUEUE_ITEMS_KEY = "QUEUE_ITEMS";
+
+    private static final String STORE_FILE_NAME = "pv_queue.log";
+    private static final int COMPACT_MIN_RECORDS = 200;
+
+    private static final byte OP_ADD_LAST = 1;
+    private static final byte OP_ADD_NEXT = 2;
+    private static final byte OP_REMOVE = 3;
+    private static final byte OP_MOVE = 4;
+
+    private static PVQueueStore instance;
+
+    private final File storeFile;
+
+    private final HashMap<String, Node> nodesByKey = new HashMap<>();
+    // Sentinel, head.next is the first item and head.previous the last
+    private final Node head = new Node(null, null);
+
+    private boolean loaded = false;
+    private int logRecordCount = 0;
+    private DataOutputStream logOutput;
+
+    private PVQueueStore(@NonNull Context context) {
+        storeFile = new File(context.getApplicationContext().getFilesDir(), STORE_FILE_NAME);
+        head.previous = head;
+        head.next = head;
+    }
+
+    public static synchronized PVQueueStore getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new PVQueueStore(context);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Loads the queue on first use. If there is no queue file yet, the queue is migrated from
+     * QUEUE_ITEMS in asyncStorageDb and that key is removed.
+     */
+    public synchronized void ensureLoaded(@NonNull SQLiteDatabase asyncStorageDb) {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        if (storeFile.exists()) {
+            replayLog();
+        } else {
+            migrateFromAsyncStorage(asyncStorageDb);
+        }
+    }
+
+    public synchronized int size() {
+        return nodesByKey.size();
+    }
+
+    /**
+     * Returns every item, in queue order, as a JSON array.
+     */
+    @NonNull
+    public synchronized String getItems() {
+        StringBuilder items = new StringBuilder("[");
+        for (Node node = head.next; node != head; node = node.next) {
+            if (node != head.next) {
+                items.append(',');
+            }
+            items.append(node.json);
+        }
+
+        return items.append(']').toString();
+    }
+
+    /**
+     * Adds itemJson at the end of the queue, moving it there if it is already queued.
+     */
+    public synchronized void addLast(@NonNull String itemJson) throws JSONException {
+        String key = itemKey(itemJson);
+        insertBefore(key, itemJson, head);
+        appendRecord(OP_ADD_LAST, key, itemJson);
+    }
+
+    /**
+     * Adds itemJson at the front of the queue, moving it there if it is already queued.
+     */
+    public synchronized void addNext(@NonNull String itemJson) throws JSONException {
+        String key = itemKey(itemJson);
+        insertBefore(key, itemJson, head.next);
+        appendRecord(OP_ADD_NEXT, key, itemJson);
+    }
+
+    public synchronized boolean remove(@NonNull String itemJson) throws JSONException {
+        String key = itemKey(itemJson);
+        if (!unlink(key)) {
+            return false;
+        }
+
+        appendRecord(OP_REMOVE, key, null);
+        return true;
+    }
+
+    /**
+     * Moves a queued item in front of beforeItemJson, or to the end of the queue when beforeItemJson
+     * is null or not queued.
+     */
+    public synchronized boolean move(@NonNull String itemJson, @Nullable String beforeItemJson) throws JSONException {
+        String key = itemKey(itemJson);
+        String beforeKey = beforeItemJson != null ? itemKey(beforeItemJson) : "";
+        if (!move(key, beforeKey)) {
+            return false;
+        }
+
+        appendRecord(OP_MOVE, key, beforeKey);
+        return true;
+    }
+
+    /**
+     * Removes and returns the first item, or null if the queue is empty.
+     */
+    @Nullable
+    public synchronized String popNext() {
+        Node first = head.next;
+        if (first == head) {
+            return null;
+        }
+
+        unlink(first.key);
+        appendRecord(OP_REMOVE, first.key, null);
+        return first.json;
+    }
+
+    /**
+     * Replaces the whole queue, for example with the queue from the server.
+     */
+    public synchronized void setAll(@NonNull JSONArray items) throws JSONException {
+        clearNodes();
+        for (int i = 0; i < items.length(); i++) {
+            JSONObject item = items.optJSONObject(i);
+            if (item != null) {
+                String itemJson = item.toString();
+                insertBefore(itemKey(itemJson), itemJson, head);
+            }
+        }
+
+        // A full replacement is written as a fresh log rather than appended
+        compact();
+    }
+
+    private void insertBefore(@NonNull String key, @NonNull String json, @NonNull Node next) {
+        Node node = nodesByKey.get(key);
+
+        if (node == null) {
+            node = new Node(key, json);
+            nodesByKey.put(key, node);
+        } else {
+            node.json = json;
+            if (node == next) {
+                return;
+            }
+            detach(node);
+        }
+
+        attachBefore(node, next);
+    }
+
+    private boolean unlink(@NonNull String key) {
+        Node node = nodesByKey.remove(key);
+        if (node == null) {
+            return false;
+        }
+
+        detach(node);
+        return true;
+    }
+
+    private boolean move(@NonNull String key, @NonNull String beforeKey) {
+        Node node = nodesByKey.get(key);
+        if (node == null) {
+            return false;
+        }
+
+        Node next = nodesByKey.get(beforeKey);
+        if (next == null) {
+            next = head;
+        }
+        if (next == node) {
+            return true;
+        }
+
+        detach(node);
+        attachBefore(node, next);
+        return true;
+    }
+
+    private void clearNodes() {
+        nodesByKey.clear();
+        head.previous = head;
+        head.next = head;
+    }
+
+    private static void detach(@NonNull Node node) {
+        node.previous.next = node.next;
+        node.next.previous = node.previous;
+    }
+
+    private static void attachBefore(@NonNull Node node, @NonNull Node next) {
+        node.next = next;
+        node.previous = next.previous;
+        next.previous.next = node;
+        next.previous = node;
+    }
+
+    @NonNull
+    static String itemKey(@NonNull String itemJson) throws JSONException {
+        JSONObject item = new JSONObject(itemJson);
+        String clipId = item.isNull("clipId") ? "" : item.optString("clipId", "");
+
+        if (!clipId.isEmpty()) {
+            return "clip:" + clipId;
+        }
+
+        return "episode:" + item.optString("episodeId", "");
+    }
+
+    private void migrateFromAsyncStorage(@NonNull SQLiteDatabase asyncStorageDb) {
+        String itemsString = null;
+
+        try (Cursor cursor = asyncStorageDb.rawQuery(
+                "SELECT " + PVAsyncStorageSizeTracker.VALUE_COLUMN + " FROM " + PVAsyncStorageSizeTracker.TABLE_CATALYST
+                        + " WHERE " + PVAsyncStorageSizeTracker.KEY_COLUMN + " = ?",
+                new String[]{QUEUE_ITEMS_KEY})) {
+            if (cursor.moveToFirst()) {
+                itemsString = cursor.getString(0);
+            }
+        }
+
+        if (itemsString != null) {
+            try {
+                JSONArray items = new JSONArray(itemsString);
+                for (int i = 0; i < items.length(); i++) {
+                    JSONObject item = items.optJSONObject(i);
+                    if (item != null) {
+                        String itemJson = item.toString();
+                        // Same as the JS queue, a repeated item keeps its last position
+                        insertBefore(itemKey(itemJson), itemJson, head);
+                    }
+                }
+            } catch (JSONException e) {
+                Log.e("com.podverse.fdroid.PVQueueStore", "Failed to parse stored queue items", e);
+            }
+        }
+
+        compact();
+
+        if (itemsString != null && storeFile.exists()) {
+            Log.d("com.podverse.fdroid.PVQueueStore", "Migrated " + nodesByKey.size() + " queue items");
+            asyncStorageDb.delete(PVAsyncStorageSizeTracker.TABLE_CATALYST,
+                    PVAsyncStorageSizeTracker.KEY_COLUMN + " = ?", new String[]{QUEUE_ITEMS_KEY});
+        }
+    }
+
+    private void replayLog() {
+        boolean truncated = false;
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(storeFile)))) {
+            while (true) {
+                byte op;
+                try {
+                    op = input.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                if (op == OP_ADD_LAST) {
+                    String key = input.readUTF();
+                    insertBefore(key, readJson(input), head);
+                } else if (op == OP_ADD_NEXT) {
+                    String key = input.readUTF();
+                    insertBefore(key, readJson(input), head.next);
+                } else if (op == OP_REMOVE) {
+                    unlink(input.readUTF());
+                } else if (op == OP_MOVE) {
+                    String key = input.readUTF();
+                    move(key, input.readUTF());
+                } else {
+                    truncated = true;
+                    break;
+                }
+                logRecordCount++;
+            }
+        } catch (EOFException e) {
+            // The last record was only partly written, keep everything before it
+            truncated = true;
+        } catch (IOException e) {
+            Log.e("com.podverse.fdroid.PVQueueStore", "Failed to read queue", e);
+            truncated = true;
+        }
+
+        if (truncated || shouldCompact()) {
+            compact();
+        }
+    }
+
+    private void appendRecord(byte op, @NonNull String key, @Nullable String value) {
+        try {
+            if (logOutput == null) {
+                logOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(storeFile, true)));
+            }
+
+            logOutput.writeByte(op);
+            logOutput.writeUTF(key);
+            if (op == OP_ADD_LAST || op == OP_ADD_NEXT) {
+                writeJson(logOutput, value);
+            } else if (op == OP_MOVE) {
+                logOutput.writeUTF(value);
+            }
+            logOutput.flush();
+            logRecordCount++;
+        } catch (IOException e) {
+            Log.e("com.podverse.fdroid.PVQueueStore", "Failed to append to queue", e);
+            closeLog();
+        }
+
+        if (shouldCompact()) {
+            compact();
+        }
+    }
+
+    private boolean shouldCompact() {
+        return logRecordCount > COMPACT_MIN_RECORDS && logRecordCount > nodesByKey.size() * 2;
+    }
+
+    private void compact() {
+        closeLog();
+
+        File tempFile = new File(storeFile.getPath() + ".tmp");
+        int recordCount = 0;
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            for (Node node = head.next; node != head; node = node.next) {
+                output.writeByte(OP_ADD_LAST);
+                output.writeUTF(node.key);
+                writeJson(output, node.json);
+                recordCount++;
+            }
+        } catch (IOException e) {
+            Log.e("com.podverse.fdroid.PVQueueStore", "Failed to compact queue", e);
+            tempFile.delete();
+            return;
+        }
+
+        if (!tempFile.renameTo(storeFile)) {
+            Log.e("com.podverse.fdroid.PVQueueStore", "Failed to replace queue");
+            tempFile.delete();
+            return;
+        }
+
+        logRecordCount = recordCount;
+    }
+
+    // Items can be longer than writeUTF allows, so they are written as length prefixed UTF-8
+    private static void writeJson(@NonNull DataOutputStream output, @NonNull String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    @NonNull
+    private static String readJson(@NonNull DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void closeLog() {
+        if (logOutput == null) {
+            return;
+        }
+
+        try {
+            logOutput.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        logOutput = null;
+    }
+
+    private static class Node {
+        private final String key;
+        private String json;
+        private Node previous;
+        private Node next;
+
+        Node(String key, String json) {
+            this.key = key;
+            this.json = json;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.podverse.fdroid;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class PVTranscript {
+    /*
+        A parsed transcript held in columns instead of one object per row, so a transcript of a
+        multi-hour episode is a handful of arrays and a single string.
+
+        Segments are what PVTranscriptParser adds: a start and end time in seconds, a speaker id
+        and the range of their text in the shared text buffer. Consecutive segments of the same
+        speaker are combined up to COMBINE_SEGMENTS_LENGTH characters, like transcriptator with
+        combineSegments and speakerChange.
+
+        Rows are what the synced-transcript view displays, laid out like transcriptHelpers did in
+        JS: a segment with a speaker starts with an empty row and a speaker row, and its text is
+        word wrapped to LINE_WIDTH columns, one row per line. A row only stores its kind, its
+        segment and the range of its line in the text buffer.
+
+        Not thread safe: build it on one thread, and synchronize reads with any later writes.
+     */
+
+    static final int LINE_WIDTH = 32;
+    static final int COMBINE_SEGMENTS_LENGTH = 64;
+
+    private static final byte ROW_EMPTY_SPACE = 0;
+    private static final byte ROW_SPEAKER = 1;
+    private static final byte ROW_LINE = 2;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final StringBuilder mText = new StringBuilder();
+    private final List<String> mSpeakers = new ArrayList<>();
+    private final Map<String, Integer> mSpeakerIds = new HashMap<>();
+
+    private int mSegmentCount = 0;
+    private float[] mSegmentStart = new float[INITIAL_CAPACITY];
+    private float[] mSegmentEnd = new float[INITIAL_CAPACITY];
+    private int[] mSegmentSpeaker = new int[INITIAL_CAPACITY];
+    private int[] mSegmentTextStart = new int[INITIAL_CAPACITY];
+    private int[] mSegmentTextEnd = new int[INITIAL_CAPACITY];
+    private int[] mSegmentFirstLine = new int[0];
+    private int[] mSegmentLineCount = new int[0];
+    private boolean mIsSortedByStart = true;
+
+    private int mRowCount = 0;
+    private byte[] mRowKind = new byte[0];
+    private int[] mRowSegment = new int[0];
+    private int[] mRowTextStart = new int[0];
+    private int[] mRowTextEnd = new int[0];
+    private int[] mRowLineIndex = new int[0];
+
+    /**
+     * Adds a segment, combining it with the previous one when they have the same speaker and their
+     * text fits in COMBINE_SEGMENTS_LENGTH. text must already be on a single line.
+     */
+    void addSegment(float startTime, float endTime, @Nullable String speaker, @NonNull String text) {
+        String body = text.trim();
+        if (body.isEmpty()) {
+            return;
+        }
+
+        int speakerId = getSpeakerId(speaker);
+        int last = mSegmentCount - 1;
+
+        if (last >= 0 && mSegmentSpeaker[last] == speakerId
+                && mSegmentTextEnd[last] - mSegmentTextStart[last] + 1 + body.length() <= COMBINE_SEGMENTS_LENGTH) {
+            mText.append(' ').append(body);
+            mSegmentTextEnd[last] = mText.length();
+            mSegmentEnd[last] = Math.max(mSegmentEnd[last], endTime);
+            return;
+        }
+
+        if (mSegmentCount == mSegmentStart.length) {
+            int capacity = mSegmentCount * 2;
+            mSegmentStart = Arrays.copyOf(mSegmentStart, capacity);
+            mSegmentEnd = Arrays.copyOf(mSegmentEnd, capacity);
+            mSegmentSpeaker = Arrays.copyOf(mSegmentSpeaker, capacity);
+            mSegmentTextStart = Arrays.copyOf(mSegmentTextStart, capacity);
+            mSegmentTextEnd = Arrays.copyOf(mSegmentTextEnd, capacity);
+        }
+
+        if (last >= 0 && startTime < mSegmentStart[last]) {
+            mIsSortedByStart = false;
+        }
+
+        mSegmentStart[mSegmentCount] = startTime;
+        mSegmentEnd[mSegmentCount] = endTime;
+        mSegmentSpeaker[mSegmentCount] = speakerId;
+        mSegmentTextStart[mSegmentCount] = mText.length();
+        mText.append(body);
+        mSegmentTextEnd[mSegmentCount] = mText.length();
+        mSegmentCount++;
+    }
+
+    /**
+     * Lays out the rows of every segment. Call once after the last addSegment.
+     */
+    void layout() {
+        int capacity = Math.max(INITIAL_CAPACITY, mSegmentCount * 4);
+        mRowKind = new byte[capacity];
+        mRowSegment = new int[capacity];
+        mRowTextStart = new int[capacity];
+        mRowTextEnd = new int[capacity];
+        mRowLineIndex = new int[capacity];
+        mSegmentFirstLine = new int[mSegmentCount];
+        mSegmentLineCount = new int[mSegmentCount];
+        mRowCount = 0;
+
+        for (int segment = 0; segment < mSegmentCount; segment++) {
+            if (mSegmentSpeaker[segment] >= 0) {
+                addRow(ROW_EMPTY_SPACE, segment, 0, 0, 0);
+                addRow(ROW_SPEAKER, segment, 0, 0, 0);
+            }
+
+            mSegmentFirstLine[segment] = mRowCount;
+            mSegmentLineCount[segment] = wrap(segment);
+        }
+    }
+
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    @NonNull
+    public WritableArray getRows(int offset, int limit) {
+        WritableArray rows = Arguments.createArray();
+        int end = Math.min(mRowCount, Math.max(0, offset) + Math.max(0, limit));
+        for (int row = Math.max(0, offset); row < end; row++) {
+            rows.pushMap(getRow(row));
+        }
+
+        return rows;
+    }
+
+    /**
+     * Returns the index of the first line of the segment playing at a position, and its line
+     * count, or an index of -1 when no segment is.
+     */
+    @NonNull
+    public WritableMap getRowAtTime(double position) {
+        int segment = findSegmentAtTime(position);
+
+        WritableMap result = Arguments.createMap();
+        result.putInt("index", segment >= 0 ? mSegmentFirstLine[segment] : -1);
+        result.putInt("lineCount", segment >= 0 ? mSegmentLineCount[segment] : 0);
+
+        return result;
+    }
+
+    /**
+     * Returns the lines that contain searchText, ignoring case, up to limit.
+     */
+    @NonNull
+    public WritableArray searchRows(@NonNull String searchText, int limit) {
+        WritableArray rows = Arguments.createArray();
+        String needle = searchText.toLowerCase(Locale.ROOT);
+        if (needle.isEmpty()) {
+            return rows;
+        }
+
+        int found = 0;
+        for (int row = 0; row < mRowCount && found < limit; row++) {
+            if (mRowKind[row] == ROW_LINE
+                    && mText.substring(mRowTextStart[row], mRowTextEnd[row]).toLowerCase(Locale.ROOT).contains(needle)) {
+                rows.pushMap(getRow(row));
+                found++;
+            }
+        }
+
+        return rows;
+    }
+
+    private int findSegmentAtTime(double position) {
+        if (!mIsSortedByStart) {
+            for (int segment = 0; segment < mSegmentCount; segment++) {
+                if (mSegmentStart[segment] < position && mSegmentEnd[segment] > position) {
+                    return segment;
+                }
+            }
+            return -1;
+        }
+
+        // The last segment that starts before the position
+        int low = 0;
+        int high = mSegmentCount - 1;
+        int candidate = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (mSegmentStart[middle] < position) {
+                candidate = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return candidate >= 0 && mSegmentEnd[candidate] > position ? candidate : -1;
+    }
+
+    private WritableMap getRow(int row) {
+        int segment = mRowSegment[row];
+
+        WritableMap result = Arguments.createMap();
+        result.putInt("index", row);
+
+        switch (mRowKind[row]) {
+            case ROW_EMPTY_SPACE:
+                result.putBoolean("isEmptySpace", true);
+                break;
+            case ROW_SPEAKER:
+                result.putString("speaker", mSpeakers.get(mSegmentSpeaker[segment]));
+                break;
+            default:
+                result.putString("body", mText.substring(mRowTextStart[row], mRowTextEnd[row]));
+                result.putString("speaker", "");
+                result.putDouble("startTime", mSegmentStart[segment]);
+                result.putDouble("endTime", mSegmentEnd[segment]);
+                result.putInt("lineCount", mSegmentLineCount[segment]);
+                result.putInt("lineIndex", mRowLineIndex[row]);
+                break;
+        }
+
+        return result;
+    }
+
+    /**
+     * Wraps the text of a segment at spaces into lines of at most LINE_WIDTH characters, like
+     * word-wrap with trim. A word longer than a line gets a line of its own.
+     */
+    private int wrap(int segment) {
+        int end = mSegmentTextEnd[segment];
+        int position = mSegmentTextStart[segment];
+        int lines = 0;
+
+        while (position < end) {
+            while (position < end && mText.charAt(position) == ' ') {
+                position++;
+            }
+            if (position == end) {
+                break;
+            }
+
+            int lineEnd = position;
+            int scan = position;
+            while (scan < end) {
+                int wordEnd = scan;
+                while (wordEnd < end && mText.charAt(wordEnd) != ' ') {
+                    wordEnd++;
+                }
+                if (wordEnd - position > LINE_WIDTH && lineEnd > position) {
+                    break;
+                }
+                lineEnd = wordEnd;
+                if (wordEnd - position >= LINE_WIDTH) {
+                    break;
+                }
+                scan = wordEnd;
+                while (scan < end && mText.charAt(scan) == ' ') {
+                    scan++;
+                }
+            }
+
+            addRow(ROW_LINE, segment, position, lineEnd, lines);
+            lines++;
+            position = lineEnd;
+        }
+
+        return lines;
+    }
+
+    private void addRow(byte kind, int segment, int textStart, int textEnd, int lineIndex) {
+        if (mRowCount == mRowKind.length) {
+            int capacity = mRowCount * 2;
+            mRowKind = Arrays.copyOf(mRowKind, capacity);
+            mRowSegment = Arrays.copyOf(mRowSegment, capacity);
+            mRowTextStart = Arrays.copyOf(mRowTextStart, capacity);
+            mRowTextEnd = Arrays.copyOf(mRowTextEnd, capacity);
+            mRowLineIndex = Arrays.copyOf(mRowLineIndex, capacity);
+        }
+
+        mRowKind[mRowCount] = kind;
+        mRowSegment[mRowCount] = segment;
+        mRowTextStart[mRowCount] = textStart;
+        mRowTextEnd[mRowCount] = textEnd;
+        mRowLineIndex[mRowCount] = lineIndex;
+        mRowCount++;
+    }
+
+    private int getSpeakerId(@Nullable String speaker) {
+        String name = speaker == null ? "" : speaker.trim();
+        if (name.isEmpty()) {
+            return -1;
+        }
+
+        Integer speakerId = mSpeakerIds.get(name);
+        if (speakerId == null) {
+            speakerId = mSpeakers.size();
+            mSpeakers.add(name);
+            mSpeakerIds.put(name, speakerId);
+        }
+
+        return speakerId;
+    }
+}
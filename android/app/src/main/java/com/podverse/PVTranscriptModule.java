@@ -0,0 +1,166 @@
+package com.podverse.fdroid;
+
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class PVTranscriptModule extends ReactContextBaseJavaModule {
+    // Parses transcripts into PVTranscript off the JS thread, and serves the synced-transcript view
+    // a page of rows at a time. The last MAX_LOADED_TRANSCRIPTS transcripts stay loaded, by id.
+    // Calls for a transcript that isn't loaded reject with TRANSCRIPT_NOT_LOADED, so JS can load
+    // it again.
+
+    private static final int MAX_LOADED_TRANSCRIPTS = 3;
+    private static final int TIMEOUT_MS = 30000;
+
+    private final ExecutorService mTranscriptExecutor = Executors.newSingleThreadExecutor();
+    private final Map<String, PVTranscript> mTranscripts =
+            new LinkedHashMap<String, PVTranscript>(MAX_LOADED_TRANSCRIPTS + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PVTranscript> eldest) {
+                    return size() > MAX_LOADED_TRANSCRIPTS;
+                }
+            };
+
+    PVTranscriptModule(ReactApplicationContext context) {
+        super(context);
+    }
+
+    @Override
+    public String getName() {
+        return "PVTranscript";
+    }
+
+    /**
+     * Downloads and parses the transcript at url, and resolves with { transcriptId, rowCount }.
+     * Rejects with UNSUPPORTED_FORMAT when it isn't SRT, VTT or JSON.
+     */
+    @ReactMethod
+    public void loadTranscript(String url, String userAgent, Promise promise) {
+        mTranscriptExecutor.execute(() -> {
+            try {
+                Map<String, String> headers = new HashMap<>();
+                headers.put("User-Agent", userAgent);
+
+                HttpURLConnection connection = PVFeedFetcher.open(url, headers, TIMEOUT_MS);
+                try (Reader reader = new InputStreamReader(
+                        connection.getInputStream(), getCharset(connection.getContentType()))) {
+                    promise.resolve(putTranscript(url, PVTranscriptParser.parse(reader)));
+                } finally {
+                    connection.disconnect();
+                }
+            } catch (PVTranscriptParser.UnsupportedFormatException e) {
+                promise.reject("UNSUPPORTED_FORMAT", e);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVTranscriptModule", "Failed to load transcript " + url, e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    /**
+     * Parses a transcript JS has already downloaded, like the ones proxied by the Podverse API.
+     */
+    @ReactMethod
+    public void loadTranscriptText(String transcriptId, String text, Promise promise) {
+        mTranscriptExecutor.execute(() -> {
+            try (Reader reader = new StringReader(text)) {
+                promise.resolve(putTranscript(transcriptId, PVTranscriptParser.parse(reader)));
+            } catch (PVTranscriptParser.UnsupportedFormatException e) {
+                promise.reject("UNSUPPORTED_FORMAT", e);
+            } catch (Exception e) {
+                Log.e("com.podverse.fdroid.PVTranscriptModule", "Failed to load transcript " + transcriptId, e);
+                promise.reject(e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void getRows(String transcriptId, int offset, int limit, Promise promise) {
+        synchronized (mTranscripts) {
+            PVTranscript transcript = mTranscripts.get(transcriptId);
+            if (transcript == null) {
+                rejectNotLoaded(transcriptId, promise);
+                return;
+            }
+            promise.resolve(transcript.getRows(offset, limit));
+        }
+    }
+
+    /**
+     * Resolves with { index, lineCount } of the lines playing at position, in seconds, with an
+     * index of -1 when there are none.
+     */
+    @ReactMethod
+    public void getRowAtTime(String transcriptId, double position, Promise promise) {
+        synchronized (mTranscripts) {
+            PVTranscript transcript = mTranscripts.get(transcriptId);
+            if (transcript == null) {
+                rejectNotLoaded(transcriptId, promise);
+                return;
+            }
+            promise.resolve(transcript.getRowAtTime(position));
+        }
+    }
+
+    @ReactMethod
+    public void searchRows(String transcriptId, String searchText, int limit, Promise promise) {
+        synchronized (mTranscripts) {
+            PVTranscript transcript = mTranscripts.get(transcriptId);
+            if (transcript == null) {
+                rejectNotLoaded(transcriptId, promise);
+                return;
+            }
+            promise.resolve(transcript.searchRows(searchText, limit));
+        }
+    }
+
+    @ReactMethod
+    public void releaseTranscript(String transcriptId) {
+        synchronized (mTranscripts) {
+            mTranscripts.remove(transcriptId);
+        }
+    }
+
+    private WritableMap putTranscript(String transcriptId, PVTranscript transcript) {
+        synchronized (mTranscripts) {
+            mTranscripts.put(transcriptId, transcript);
+        }
+
+        WritableMap result = Arguments.createMap();
+        result.putString("transcriptId", transcriptId);
+        result.putInt("rowCount", transcript.getRowCount());
+
+        return result;
+    }
+
+    private static void rejectNotLoaded(String transcriptId, Promise promise) {
+        promise.reject("TRANSCRIPT_NOT_LOADED", "Transcript " + transcriptId + " isn't loaded");
+    }
+
+    private static Charset getCharset(String contentType) {
+        String charset = PVFeedFetcher.getCharset(contentType);
+        try {
+            return charset != null ? Charset.forName(charset) : StandardCharsets.UTF_8;
+        } catch (Exception e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.podverse.fdroid;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class PVTranscriptParser {
+    /*
+        Parses SRT, WebVTT and Podcasting 2.0 JSON transcripts into a PVTranscript while reading
+        them, so the raw transcript is never held in memory as a whole. The format is detected from
+        the start of the content. Other formats, like HTML transcripts, throw
+        UnsupportedFormatException so the caller can fall back to transcriptator in JS.
+
+        Cue text is joined into a single line and stripped of markup. The speaker of a VTT cue is
+        read from its <v> voice tag.
+     */
+
+    private static final int DETECT_FORMAT_CHARS = 1024;
+
+    private static final int FORMAT_UNSUPPORTED = 0;
+    private static final int FORMAT_JSON = 1;
+    private static final int FORMAT_CUES = 2;
+
+    private static final Pattern TIMING_PATTERN = Pattern.compile(
+            "((?:\\d+:)?\\d{1,2}:\\d{2}(?:[.,]\\d{1,3})?)\\s*-->\\s*((?:\\d+:)?\\d{1,2}:\\d{2}(?:[.,]\\d{1,3})?)");
+    private static final Pattern VOICE_PATTERN = Pattern.compile("<v(?:\\.[^\\s>]*)?\\s+([^>]+)>");
+    private static final Pattern TAG_PATTERN = Pattern.compile("<[^>]*>");
+
+    public static class UnsupportedFormatException extends IOException {
+        UnsupportedFormatException() {
+            super("Unsupported transcript format");
+        }
+    }
+
+    @NonNull
+    public static PVTranscript parse(@NonNull Reader reader) throws IOException {
+        BufferedReader input = reader instanceof BufferedReader
+                ? (BufferedReader) reader
+                : new BufferedReader(reader);
+
+        PVTranscript transcript = new PVTranscript();
+
+        switch (detectFormat(input)) {
+            case FORMAT_JSON:
+                parseJson(input, transcript);
+                break;
+            case FORMAT_CUES:
+                parseCues(input, transcript);
+                break;
+            default:
+                throw new UnsupportedFormatException();
+        }
+
+        transcript.layout();
+        return transcript;
+    }
+
+    /**
+     * Detects the format from the start of the content, leaving the reader where it was. SRT and VTT
+     * are parsed the same way, as cues.
+     */
+    private static int detectFormat(BufferedReader input) throws IOException {
+        char[] start = new char[DETECT_FORMAT_CHARS];
+        input.mark(DETECT_FORMAT_CHARS);
+        int length = 0;
+        int read;
+        while (length < start.length && (read = input.read(start, length, start.length - length)) != -1) {
+            length += read;
+        }
+        input.reset();
+
+        String head = new String(start, 0, length).replace("\uFEFF", "").trim();
+        if (head.startsWith("{")) {
+            return FORMAT_JSON;
+        }
+        if (head.startsWith("WEBVTT") || TIMING_PATTERN.matcher(head).find()) {
+            return FORMAT_CUES;
+        }
+
+        return FORMAT_UNSUPPORTED;
+    }
+
+    private static void parseCues(BufferedReader input, PVTranscript transcript) throws IOException {
+        StringBuilder text = new StringBuilder();
+        String speaker = null;
+        float startTime = -1;
+        float endTime = -1;
+
+        String line;
+        while ((line = input.readLine()) != null) {
+            Matcher timing = TIMING_PATTERN.matcher(line);
+            if (timing.find()) {
+                // A cue without a blank line before the next one still ends here
+                addCue(transcript, startTime, endTime, speaker, text);
+                speaker = null;
+                startTime = parseTimestamp(timing.group(1));
+                endTime = parseTimestamp(timing.group(2));
+                continue;
+            }
+
+            String trimmed = line.trim();
+            if (trimmed.isEmpty()) {
+                addCue(transcript, startTime, endTime, speaker, text);
+                speaker = null;
+                startTime = -1;
+                continue;
+            }
+
+            if (startTime < 0) {
+                // Cue numbers and identifiers, the WEBVTT header, NOTE and STYLE blocks
+                continue;
+            }
+
+            Matcher voice = VOICE_PATTERN.matcher(trimmed);
+            if (speaker == null && voice.find()) {
+                speaker = voice.group(1).trim();
+            }
+
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            text.append(decodeEntities(TAG_PATTERN.matcher(trimmed).replaceAll("")));
+        }
+
+        addCue(transcript, startTime, endTime, speaker, text);
+    }
+
+    private static void addCue(
+            PVTranscript transcript, float startTime, float endTime, @Nullable String speaker, StringBuilder text) {
+        if (startTime >= 0 && text.length() > 0) {
+            transcript.addSegment(startTime, endTime, speaker, text.toString());
+        }
+        text.setLength(0);
+    }
+
+    private static void parseJson(BufferedReader input, PVTranscript transcript) throws IOException {
+        JsonReader json = new JsonReader(input);
+        json.setLenient(true);
+
+        json.beginObject();
+        while (json.hasNext()) {
+            if ("segments".equals(json.nextName()) && json.peek() == JsonToken.BEGIN_ARRAY) {
+                json.beginArray();
+                while (json.hasNext()) {
+                    parseJsonSegment(json, transcript);
+                }
+                json.endArray();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+    }
+
+    private static void parseJsonSegment(JsonReader json, PVTranscript transcript) throws IOException {
+        String speaker = null;
+        String body = null;
+        float startTime = -1;
+        float endTime = -1;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (json.peek() == JsonToken.NULL) {
+                json.skipValue();
+                continue;
+            }
+
+            switch (name) {
+                case "startTime":
+                    startTime = (float) json.nextDouble();
+                    break;
+                case "endTime":
+                    endTime = (float) json.nextDouble();
+                    break;
+                case "speaker":
+                    speaker = json.nextString();
+                    break;
+                case "body":
+                    body = json.nextString();
+                    break;
+                default:
+                    json.skipValue();
+                    break;
+            }
+        }
+        json.endObject();
+
+        if (startTime >= 0 && body != null) {
+            transcript.addSegment(startTime, endTime, speaker, body.replaceAll("\\s+", " "));
+        }
+    }
+
+    /**
+     * Parses HH:MM:SS,mmm, HH:MM:SS.mmm or MM:SS.mmm into seconds.
+     */
+    private static float parseTimestamp(String timestamp) {
+        String[] parts = timestamp.replace(',', '.').split(":");
+        float seconds = 0;
+        for (String part : parts) {
+            seconds = seconds * 60 + Float.parseFloat(part);
+        }
+
+        return seconds;
+    }
+
+    private static String decodeEntities(String text) {
+        if (text.indexOf('&') < 0) {
+            return text;
+        }
+
+        return text.replace("&lt;", "<")
+                .replace("&gt;", ">")
+                .replace("&quot;", "\"")
+                .replace("&#39;", "'")
+                .replace("&nbsp;", " ")
+                .replace("&amp;", "&");
+    }
+}
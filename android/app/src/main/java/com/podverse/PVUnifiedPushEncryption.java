@@ -1,21 +1,22 @@
 package com.podverse.fdroid;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.util.Base64;
 import android.util.Log;
 
-import com.facebook.react.bridge.ReactContext;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
 import com.google.crypto.tink.HybridDecrypt;
+import com.google.crypto.tink.HybridEncrypt;
 import com.google.crypto.tink.apps.webpush.WebPushHybridDecrypt;
+import com.google.crypto.tink.apps.webpush.WebPushHybridEncrypt;
 
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
-import java.security.InvalidAlgorithmParameterException;
 import java.security.KeyFactory;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
-import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.SecureRandom;
@@ -23,54 +24,73 @@ import java.security.interfaces.ECPrivateKey;
 import java.security.interfaces.ECPublicKey;
 import java.security.spec.ECGenParameterSpec;
 import java.security.spec.ECPoint;
-import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.Arrays;
 
 public class PVUnifiedPushEncryption {
-    private static final String NOTIFICATION_ENCRYPTION_SHARED_PREF_NAME = "PVNotificationKeys";
+    private static final int BASE64_FLAGS = Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING;
 
-    private final KeyPairGenerator kpg;
-    private final PublicKey publicKey;
-    private final byte[] authKey;
     private final String encodedPublicKey;
-    private final String pushPublicKey;
     private final String encodedAuthKey;
+    private final String pushPublicKey;
     private final String pushPrivateKey;
-    PrivateKey privateKey;
+    private final HybridDecrypt hybridDecrypt;
+    private final ECPublicKey recipientPublicKey;
+    private final byte[] authKey;
 
+    private PVUnifiedPushEncryption(PublicKey publicKey, PrivateKey privateKey, byte[] authKey) throws GeneralSecurityException {
+        this.recipientPublicKey = (ECPublicKey) publicKey;
+        this.authKey = authKey;
+        encodedPublicKey = Base64.encodeToString(serializeRawPublicKey(publicKey), BASE64_FLAGS);
+        encodedAuthKey = Base64.encodeToString(authKey, BASE64_FLAGS);
+        pushPrivateKey = Base64.encodeToString(privateKey.getEncoded(), BASE64_FLAGS);
+        pushPublicKey = Base64.encodeToString(publicKey.getEncoded(), BASE64_FLAGS);
+
+        // Building the WebPush decryptor is the most expensive part of handling a push,
+        // so it is done once per key set and reused for every message
+        hybridDecrypt = new WebPushHybridDecrypt.Builder()
+                .withAuthSecret(authKey)
+                .withRecipientPublicKey((ECPublicKey) publicKey)
+                .withRecipientPrivateKey((ECPrivateKey) privateKey)
+                .build();
+    }
 
-    public PVUnifiedPushEncryption(ReactContext context) {
+    static PVUnifiedPushEncryption generate() {
         try {
-            kpg = KeyPairGenerator.getInstance("EC");
+            KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC");
             ECGenParameterSpec spec = new ECGenParameterSpec("secp256r1");
             kpg.initialize(spec);
             KeyPair keyPair = kpg.generateKeyPair();
-            publicKey = keyPair.getPublic();
-            privateKey = keyPair.getPrivate();
-            encodedPublicKey = Base64.encodeToString(serializeRawPublicKey(publicKey), Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING);
 
-            authKey = new byte[16];
+            byte[] authKey = new byte[16];
 
             SecureRandom secureRandom = new SecureRandom();
             secureRandom.nextBytes(authKey);
 
-            pushPrivateKey = Base64.encodeToString(privateKey.getEncoded(), Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING);
-            pushPublicKey = Base64.encodeToString(publicKey.getEncoded(), Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING);
-            encodedAuthKey = Base64.encodeToString(authKey, Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING);
+            return new PVUnifiedPushEncryption(keyPair.getPublic(), keyPair.getPrivate(), authKey);
+        } catch (GeneralSecurityException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
 
-            SharedPreferences preferences = context.getSharedPreferences(NOTIFICATION_ENCRYPTION_SHARED_PREF_NAME, Context.MODE_PRIVATE);
-            SharedPreferences.Editor editor = preferences.edit();
+    @Nullable
+    static PVUnifiedPushEncryption fromStored(@Nullable String pushPrivateKey, @Nullable String pushPublicKey, @Nullable String encodedAuthKey) {
+        if (pushPrivateKey == null || pushPublicKey == null || encodedAuthKey == null) {
+            return null;
+        }
 
-            editor.putString("push_private_key", pushPrivateKey);
-            editor.putString("push_public_key", pushPublicKey);
-            editor.putString("encoded_auth_key", encodedAuthKey);
+        try {
+            KeyFactory kf = KeyFactory.getInstance("EC");
+            PrivateKey privateKey = kf.generatePrivate(new PKCS8EncodedKeySpec(Base64.decode(pushPrivateKey, Base64.URL_SAFE)));
+            PublicKey publicKey = kf.generatePublic(new X509EncodedKeySpec(Base64.decode(pushPublicKey, Base64.URL_SAFE)));
+            byte[] authKey = Base64.decode(encodedAuthKey, Base64.URL_SAFE);
 
-            editor.apply();
-        } catch (NoSuchAlgorithmException | InvalidAlgorithmParameterException e) {
+            return new PVUnifiedPushEncryption(publicKey, privateKey, authKey);
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
             e.printStackTrace();
-            throw new RuntimeException(e);
+            return null;
         }
     }
 
@@ -82,6 +102,30 @@ public class PVUnifiedPushEncryption {
         return this.encodedAuthKey;
     }
 
+    String getPushPublicKey() {
+        return this.pushPublicKey;
+    }
+
+    String getPushPrivateKey() {
+        return this.pushPrivateKey;
+    }
+
+    byte[] decrypt(byte[] messageEncrypted) throws GeneralSecurityException {
+        return hybridDecrypt.decrypt(messageEncrypted, null);
+    }
+
+    /**
+     * Encrypts like a push server would for these keys, used to generate benchmark payloads.
+     */
+    byte[] encrypt(byte[] plaintext) throws GeneralSecurityException {
+        HybridEncrypt hybridEncrypt = new WebPushHybridEncrypt.Builder()
+                .withAuthSecret(authKey)
+                .withRecipientPublicKey(recipientPublicKey)
+                .build();
+
+        return hybridEncrypt.encrypt(plaintext, null);
+    }
+
     private static byte[] serializeRawPublicKey(PublicKey key) {
         ECPoint point = ((ECPublicKey) key).getW();
         byte[] x = point.getAffineX().toByteArray();
@@ -98,56 +142,36 @@ public class PVUnifiedPushEncryption {
     }
 
     public static String decryptNotification(Context context, byte[] messageEncrypted) {
-        SharedPreferences preferences = context.getSharedPreferences(NOTIFICATION_ENCRYPTION_SHARED_PREF_NAME, Context.MODE_PRIVATE);
-        String pushPrivateKey = preferences.getString("push_private_key", null);
-        String pushPublicKey = preferences.getString("push_public_key", null);
-        Log.d("com.podverse.fdroid.PVUnifiedPushEncryption", "pushPublicKey: " + pushPublicKey);
-        String encodedAuthKey = preferences.getString("encoded_auth_key", null);
-        Log.d("com.podverse.fdroid.PVUnifiedPushEncryption", "encodedAuthKey: " + encodedAuthKey);
-
-        PrivateKey privateKey;
-        PublicKey publicKey;
-        byte[] authKey;
-
-        try {
-            KeyFactory kf = KeyFactory.getInstance("EC");
-            privateKey = kf.generatePrivate(new PKCS8EncodedKeySpec(Base64.decode(pushPrivateKey, Base64.URL_SAFE)));
-            publicKey = kf.generatePublic(new X509EncodedKeySpec(Base64.decode(pushPublicKey, Base64.URL_SAFE)));
-            authKey = Base64.decode(encodedAuthKey, Base64.URL_SAFE);
-        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
-            e.printStackTrace();
-            return null;
-        }
-
-        if (privateKey == null) {
-            Log.e("com.podverse.fdroid.PVUnifiedPushEncryption", "privateKey is null");
-            return null;
-        }
-
-        if (publicKey == null) {
-            Log.e("com.podverse.fdroid.PVUnifiedPushEncryption", "publicKey is null");
-            return null;
-        }
-
-        if (authKey == null) {
-            Log.e("com.podverse.fdroid.PVUnifiedPushEncryption", "authKey is null");
-            return null;
-        }
-
+        var keyStore = PVUnifiedPushKeyStore.getInstance(context);
+        var currentKeys = keyStore.getCurrentKeys();
 
         try {
-            HybridDecrypt hybridDecrypt = new WebPushHybridDecrypt.Builder()
-                    .withAuthSecret(authKey)
-                    .withRecipientPublicKey((ECPublicKey) publicKey)
-                    .withRecipientPrivateKey((ECPrivateKey) privateKey)
-                    .build();
-
-            return new String(hybridDecrypt.decrypt(messageEncrypted, null), StandardCharsets.UTF_8);
+            return new String(currentKeys.decrypt(messageEncrypted), StandardCharsets.UTF_8);
         } catch (GeneralSecurityException e) {
-            e.printStackTrace();
-            throw new RuntimeException(e);
+            // During a key rotation the server may still encrypt to the previous key
+            var previousKeys = keyStore.getPreviousKeys();
+
+            if (previousKeys == null) {
+                e.printStackTrace();
+                throw new RuntimeException(e);
+            }
+
+            try {
+                Log.i("com.podverse.fdroid.PVUnifiedPushEncryption", "Decrypting with previous push keys");
+                return new String(previousKeys.decrypt(messageEncrypted), StandardCharsets.UTF_8);
+            } catch (GeneralSecurityException previousKeysException) {
+                previousKeysException.printStackTrace();
+                throw new RuntimeException(previousKeysException);
+            }
         }
     }
 
-
+    /**
+     * Loads the push keys on a background thread so the first push after app start doesn't pay for
+     * key parsing.
+     */
+    public static void prewarmDecryptor(@NonNull Context context) {
+        Context applicationContext = context.getApplicationContext();
+        new Thread(() -> PVUnifiedPushKeyStore.getInstance(applicationContext).getCurrentKeys(), "pv-push-prewarm").start();
+    }
 }
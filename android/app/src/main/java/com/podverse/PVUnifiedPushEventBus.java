@@ -0,0 +1,82 @@
+package com.podverse.fdroid;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReactContext;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PVUnifiedPushEventBus {
+    /*
+        In-process delivery of native events to JS.
+
+        Events are queued on a lock-free queue and emitted in order once a React context is attached.
+        Events posted before the React instance exists (e.g. a push received while the app is closed)
+        are buffered and replayed once JS subscribes through PVUnifiedPushModule, up to MAX_BUFFERED_EVENTS.
+     */
+
+    private static final int MAX_BUFFERED_EVENTS = 100;
+
+    private static final PVUnifiedPushEventBus instance = new PVUnifiedPushEventBus();
+
+    private final ConcurrentLinkedQueue<PVUnifiedPushMessage> pendingEvents = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private volatile @Nullable ReactContext reactContext;
+
+    public static PVUnifiedPushEventBus getInstance() {
+        return instance;
+    }
+
+    public void post(@NonNull PVUnifiedPushMessage message) {
+        pendingEvents.offer(message);
+
+        if (pendingCount.incrementAndGet() > MAX_BUFFERED_EVENTS && pendingEvents.poll() != null) {
+            pendingCount.decrementAndGet();
+            Log.w("com.podverse.fdroid.PVUnifiedPushEventBus", "Event buffer full, dropping oldest event");
+        }
+
+        drain();
+    }
+
+    public void attach(@NonNull ReactContext context) {
+        reactContext = context;
+        drain();
+    }
+
+    public void detach(@NonNull ReactContext context) {
+        if (reactContext == context) {
+            reactContext = null;
+        }
+    }
+
+    private void drain() {
+        // Only one thread emits at a time so events reach JS in the order they were posted.
+        // The loop re-checks the queue after releasing the flag so an event posted meanwhile isn't missed.
+        while (!pendingEvents.isEmpty()) {
+            var context = reactContext;
+            if (context == null || !context.hasActiveCatalystInstance()) {
+                return;
+            }
+
+            if (!draining.compareAndSet(false, true)) {
+                return;
+            }
+
+            try {
+                PVUnifiedPushMessage message;
+                while (reactContext == context && (message = pendingEvents.poll()) != null) {
+                    pendingCount.decrementAndGet();
+                    PVUnifiedPushModule.emitReactEvent(context, message);
+                }
+            } finally {
+                draining.set(false);
+            }
+        }
+    }
+}
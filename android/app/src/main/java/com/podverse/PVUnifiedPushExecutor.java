@@ -0,0 +1,225 @@
+package com.podverse.fdroid;
+
+import android.content.Context;
+import android.os.PowerManager;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class PVUnifiedPushExecutor {
+    // A distributor that reconnects can flush dozens of messages at once, so every push is handled
+    // by a small fixed pool instead of a thread per message. When the queue is full the oldest
+    // waiting message is dropped, since the newest pushes are the most relevant ones to show.
+    // The broadcast that delivered a push is finished as soon as its job is queued, so a partial
+    // wakelock owned by the executor keeps the device awake while any job is queued or running.
+    private static final int WORKER_COUNT = 2;
+    private static final int QUEUE_CAPACITY = 32;
+    // Only a safety net in case a job never finishes, the wakelock is released when the queue drains
+    private static final long WAKE_LOCK_TIMEOUT_MS = 10 * 60 * 1000;
+    private static final String WAKE_LOCK_TAG = "podverse:push";
+
+    public enum Stage {
+        DECRYPT,
+        STORE,
+        IMAGE,
+        NOTIFY,
+        // From receiving a message, including time spent queued, until its notification is first posted
+        FIRST_NOTIFY
+    }
+
+    private static PVUnifiedPushExecutor instance;
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicInteger peakQueueDepth = new AtomicInteger();
+    private final AtomicLongArray stageCounts = new AtomicLongArray(Stage.values().length);
+    private final AtomicLongArray stageTotalNanos = new AtomicLongArray(Stage.values().length);
+    private final AtomicLongArray stageMaxNanos = new AtomicLongArray(Stage.values().length);
+
+    // Guarded by this
+    private PowerManager.WakeLock wakeLock;
+    private int pendingJobCount = 0;
+
+    private PVUnifiedPushExecutor() {
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                return new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, "pv-push-" + threadCount.incrementAndGet());
+            }
+        };
+
+        RejectedExecutionHandler dropOldestHandler = (runnable, pool) -> {
+            if (pool.isShutdown()) {
+                ((PushJob) runnable).drop();
+                return;
+            }
+
+            var oldest = (PushJob) pool.getQueue().poll();
+            if (oldest != null) {
+                oldest.drop();
+            }
+
+            pool.execute(runnable);
+        };
+
+        executor = new ThreadPoolExecutor(
+                WORKER_COUNT,
+                WORKER_COUNT,
+                30,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+                threadFactory,
+                dropOldestHandler
+        );
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static synchronized PVUnifiedPushExecutor getInstance() {
+        if (instance == null) {
+            instance = new PVUnifiedPushExecutor();
+        }
+
+        return instance;
+    }
+
+    /**
+     * Queues a push job and holds the wakelock until it has run or has been dropped. onFinished runs
+     * after either.
+     */
+    public void submit(@NonNull Context context, @NonNull Runnable job, @Nullable Runnable onFinished) {
+        submittedCount.incrementAndGet();
+        acquireWakeLock(context);
+        executor.execute(new PushJob(job, onFinished));
+
+        int queueDepth = executor.getQueue().size();
+        int currentPeak;
+        do {
+            currentPeak = peakQueueDepth.get();
+        } while (queueDepth > currentPeak && !peakQueueDepth.compareAndSet(currentPeak, queueDepth));
+
+        if (queueDepth > 0) {
+            Log.d("com.podverse.fdroid.PVUnifiedPushExecutor", "Push queue depth: " + queueDepth);
+        }
+    }
+
+    private synchronized void acquireWakeLock(@NonNull Context context) {
+        if (wakeLock == null) {
+            PowerManager powerManager = (PowerManager) context.getApplicationContext().getSystemService(Context.POWER_SERVICE);
+            wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, WAKE_LOCK_TAG);
+            wakeLock.setReferenceCounted(false);
+        }
+
+        if (pendingJobCount++ == 0) {
+            wakeLock.acquire(WAKE_LOCK_TIMEOUT_MS);
+        }
+    }
+
+    private synchronized void releaseWakeLock() {
+        if (--pendingJobCount == 0 && wakeLock.isHeld()) {
+            wakeLock.release();
+        }
+    }
+
+    public void recordStage(@NonNull Stage stage, long startNanos) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        int index = stage.ordinal();
+
+        stageCounts.incrementAndGet(index);
+        stageTotalNanos.addAndGet(index, elapsedNanos);
+
+        long currentMax;
+        do {
+            currentMax = stageMaxNanos.get(index);
+        } while (elapsedNanos > currentMax && !stageMaxNanos.compareAndSet(index, currentMax, elapsedNanos));
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public WritableMap getStats() {
+        WritableMap stats = Arguments.createMap();
+        stats.putInt("queueDepth", getQueueDepth());
+        stats.putInt("peakQueueDepth", peakQueueDepth.get());
+        stats.putInt("activeWorkers", executor.getActiveCount());
+        stats.putDouble("submitted", submittedCount.get());
+        stats.putDouble("completed", completedCount.get());
+        stats.putDouble("dropped", droppedCount.get());
+
+        WritableMap stages = Arguments.createMap();
+        for (Stage stage : Stage.values()) {
+            int index = stage.ordinal();
+            long count = stageCounts.get(index);
+
+            WritableMap stageStats = Arguments.createMap();
+            stageStats.putDouble("count", count);
+            stageStats.putDouble("avgMs", count == 0 ? 0 : stageTotalNanos.get(index) / (double) count / 1_000_000);
+            stageStats.putDouble("maxMs", stageMaxNanos.get(index) / 1_000_000.0);
+            stages.putMap(stage.name().toLowerCase(), stageStats);
+        }
+        stats.putMap("stages", stages);
+
+        return stats;
+    }
+
+    private class PushJob implements Runnable {
+        private final @NonNull Runnable job;
+        private final @Nullable Runnable onFinished;
+
+        PushJob(@NonNull Runnable job, @Nullable Runnable onFinished) {
+            this.job = job;
+            this.onFinished = onFinished;
+        }
+
+        @Override
+        public void run() {
+            try {
+                job.run();
+            } catch (RuntimeException e) {
+                Log.e("com.podverse.fdroid.PVUnifiedPushExecutor", "Push job failed", e);
+            } finally {
+                completedCount.incrementAndGet();
+                finish();
+            }
+        }
+
+        void drop() {
+            droppedCount.incrementAndGet();
+            Log.w("com.podverse.fdroid.PVUnifiedPushExecutor", "Push queue full, dropping oldest message");
+            finish();
+        }
+
+        private void finish() {
+            try {
+                if (onFinished != null) {
+                    onFinished.run();
+                }
+            } catch (RuntimeException e) {
+                Log.e("com.podverse.fdroid.PVUnifiedPushExecutor", "Push job cleanup failed", e);
+            } finally {
+                releaseWakeLock();
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.podverse.fdroid;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+public class PVUnifiedPushKeyStore {
+    private static final String NOTIFICATION_ENCRYPTION_SHARED_PREF_NAME = "PVNotificationKeys";
+    private static final String PREF_KEY_PRIVATE_KEY = "push_private_key";
+    private static final String PREF_KEY_PUBLIC_KEY = "push_public_key";
+    private static final String PREF_KEY_AUTH_KEY = "encoded_auth_key";
+    private static final String PREF_KEY_PREVIOUS_PRIVATE_KEY = "previous_push_private_key";
+    private static final String PREF_KEY_PREVIOUS_PUBLIC_KEY = "previous_push_public_key";
+    private static final String PREF_KEY_PREVIOUS_AUTH_KEY = "previous_encoded_auth_key";
+    private static final String PREF_KEY_PREVIOUS_EXPIRES_AT = "previous_keys_expire_at";
+
+    // How long messages encrypted to the previous keys still decrypt after a rotation,
+    // long enough for the server to pick up the new keys
+    private static final long ROTATION_OVERLAP_MS = 7L * 24 * 60 * 60 * 1000;
+
+    private static PVUnifiedPushKeyStore instance;
+
+    private final SharedPreferences preferences;
+
+    private volatile PVUnifiedPushEncryption currentKeys;
+    private volatile PVUnifiedPushEncryption previousKeys;
+    private volatile long previousKeysExpireAt;
+    private boolean previousKeysLoaded = false;
+
+    private PVUnifiedPushKeyStore(@NonNull Context context) {
+        preferences = context.getApplicationContext().getSharedPreferences(NOTIFICATION_ENCRYPTION_SHARED_PREF_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static synchronized PVUnifiedPushKeyStore getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new PVUnifiedPushKeyStore(context);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Returns the stored push keys, loading them once per process. New keys are generated only if
+     * none are stored yet, so subscriptions the server holds stay valid across app restarts.
+     */
+    @NonNull
+    public PVUnifiedPushEncryption getCurrentKeys() {
+        var keys = currentKeys;
+        if (keys != null) {
+            return keys;
+        }
+
+        synchronized (this) {
+            if (currentKeys == null) {
+                currentKeys = PVUnifiedPushEncryption.fromStored(
+                        preferences.getString(PREF_KEY_PRIVATE_KEY, null),
+                        preferences.getString(PREF_KEY_PUBLIC_KEY, null),
+                        preferences.getString(PREF_KEY_AUTH_KEY, null)
+                );
+            }
+
+            if (currentKeys == null) {
+                Log.i("com.podverse.fdroid.PVUnifiedPushKeyStore", "No stored push keys, generating new keys");
+                var generatedKeys = PVUnifiedPushEncryption.generate();
+                preferences.edit()
+                        .putString(PREF_KEY_PRIVATE_KEY, generatedKeys.getPushPrivateKey())
+                        .putString(PREF_KEY_PUBLIC_KEY, generatedKeys.getPushPublicKey())
+                        .putString(PREF_KEY_AUTH_KEY, generatedKeys.getAuthKey())
+                        .apply();
+                currentKeys = generatedKeys;
+            }
+
+            return currentKeys;
+        }
+    }
+
+    /**
+     * Returns the keys that were current before the last rotation, or null once the overlap window
+     * has passed.
+     */
+    @Nullable
+    public synchronized PVUnifiedPushEncryption getPreviousKeys() {
+        if (!previousKeysLoaded) {
+            previousKeysExpireAt = preferences.getLong(PREF_KEY_PREVIOUS_EXPIRES_AT, 0);
+            previousKeys = PVUnifiedPushEncryption.fromStored(
+                    preferences.getString(PREF_KEY_PREVIOUS_PRIVATE_KEY, null),
+                    preferences.getString(PREF_KEY_PREVIOUS_PUBLIC_KEY, null),
+                    preferences.getString(PREF_KEY_PREVIOUS_AUTH_KEY, null)
+            );
+            previousKeysLoaded = true;
+        }
+
+        if (previousKeys != null && System.currentTimeMillis() > previousKeysExpireAt) {
+            Log.i("com.podverse.fdroid.PVUnifiedPushKeyStore", "Previous push keys expired");
+            previousKeys = null;
+            preferences.edit()
+                    .remove(PREF_KEY_PREVIOUS_PRIVATE_KEY)
+                    .remove(PREF_KEY_PREVIOUS_PUBLIC_KEY)
+                    .remove(PREF_KEY_PREVIOUS_AUTH_KEY)
+                    .remove(PREF_KEY_PREVIOUS_EXPIRES_AT)
+                    .apply();
+        }
+
+        return previousKeys;
+    }
+
+    /**
+     * Generates new keys. The replaced keys keep decrypting messages for ROTATION_OVERLAP_MS.
+     */
+    @NonNull
+    public synchronized PVUnifiedPushEncryption rotateKeys() {
+        var replacedKeys = getCurrentKeys();
+        var generatedKeys = PVUnifiedPushEncryption.generate();
+        long expireAt = System.currentTimeMillis() + ROTATION_OVERLAP_MS;
+
+        preferences.edit()
+                .putString(PREF_KEY_PREVIOUS_PRIVATE_KEY, replacedKeys.getPushPrivateKey())
+                .putString(PREF_KEY_PREVIOUS_PUBLIC_KEY, replacedKeys.getPushPublicKey())
+                .putString(PREF_KEY_PREVIOUS_AUTH_KEY, replacedKeys.getAuthKey())
+                .putLong(PREF_KEY_PREVIOUS_EXPIRES_AT, expireAt)
+                .putString(PREF_KEY_PRIVATE_KEY, generatedKeys.getPushPrivateKey())
+                .putString(PREF_KEY_PUBLIC_KEY, generatedKeys.getPushPublicKey())
+                .putString(PREF_KEY_AUTH_KEY, generatedKeys.getAuthKey())
+                .apply();
+
+        previousKeys = replacedKeys;
+        previousKeysExpireAt = expireAt;
+        previousKeysLoaded = true;
+        currentKeys = generatedKeys;
+
+        Log.i("com.podverse.fdroid.PVUnifiedPushKeyStore", "Rotated push keys");
+
+        return generatedKeys;
+    }
+}
@@ -5,13 +5,20 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 
-import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
 
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.unifiedpush.android.connector.MessagingReceiver;
 
-import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class PVUnifiedPushMessageReceiver extends MessagingReceiver {
+    // Saves each message and queues its push job, one message at a time and in arrival order
+    private static final ExecutorService intakeExecutor = Executors.newSingleThreadExecutor();
+
     public PVUnifiedPushMessageReceiver() {
         super();
     }
@@ -22,23 +29,24 @@ public class PVUnifiedPushMessageReceiver extends MessagingReceiver {
         Log.d("com.podverse.fdroid.PVUnifiedPushMessageReceiver",
                 "received endpoint '" + endpoint + "' for instance '" + instance + "'");
 
-        var keyValues = new String[]{"endpoint," + endpoint};
+        WritableMap payload = Arguments.createMap();
+        payload.putString("endpoint", endpoint);
 
-        PVUnifiedPushModule.emitEvent(context, "UnifiedPushNewEndpoint", instance, keyValues);
+        PVUnifiedPushModule.emitEvent("UnifiedPushNewEndpoint", instance, payload);
     }
 
     @Override
     public void onRegistrationFailed(@NonNull Context context, @NonNull String instance) {
         // called when the registration is not possible, eg. no network
 
-        PVUnifiedPushModule.emitEvent(context, "UnifiedPushRegistrationFailed", instance, (String[]) null);
+        PVUnifiedPushModule.emitEvent("UnifiedPushRegistrationFailed", instance, null);
     }
 
     @Override
     public void onUnregistered(@NonNull Context context, @NonNull String instance) {
         // called when this application is unregistered from receiving push messages
 
-        PVUnifiedPushModule.emitEvent(context, "UnifiedPushUnregistered", instance, (String[]) null);
+        PVUnifiedPushModule.emitEvent("UnifiedPushUnregistered", instance, null);
     }
 
     @Override
@@ -47,10 +55,10 @@ public class PVUnifiedPushMessageReceiver extends MessagingReceiver {
             UnifiedPush notification flow
 
             1. handle receive message
-                a. generate message id (least significant bits of current millisecond timestamp)
-                b. insert message id into property of available messages, comma separated
-                c. insert message into another property, with they message id as key
-                d. in message id list, trim the # of elements to a reasonable number
+                a. drop the message if the same push was already handled recently, otherwise
+                   allocate a message id (persistent, monotonically increasing)
+                b. store the message in PVNotificationStore, with the message id as key
+                c. the store trims the # of stored messages to a reasonable number
             2. generate notification
                 a. generate intent with message id added to extras
                 b. trigger notification with intent
@@ -81,27 +89,89 @@ public class PVUnifiedPushMessageReceiver extends MessagingReceiver {
         // The message contains the full POST body of the push message
         // Encrypted with aes128gcm webpush ecdh
 
-        // Handle decryption and image downloading in a separate thread to avoid blocking the main process
-        new Thread(() -> {
-            Log.i("com.podverse.fdroid.PVUnifiedPushMessageReceiver", "Received UP message");
+        // Handle decryption and image downloading on the push executor to avoid blocking the main process.
+        // goAsync() only covers saving the message and queueing its job, so the next push can be
+        // delivered right away. From then on the executor's wakelock keeps the device awake, and
+        // the saved message is queued again if the process is killed before the job finishes.
+        Context applicationContext = context.getApplicationContext();
+        long receivedAtNanos = System.nanoTime();
+        PendingResult pendingResult = goAsync();
+        intakeExecutor.execute(() -> {
+            try {
+                var pendingPushStore = PVPendingPushStore.getInstance(applicationContext);
+                submitOrphans(applicationContext, pendingPushStore);
+                submitMessage(applicationContext, pendingPushStore.put(message, instance), receivedAtNanos);
+            } finally {
+                pendingResult.finish();
+            }
+        });
+    }
 
-            // if you want to disable encryption
-            // String messageString = new String(message, StandardCharsets.UTF_8);
-            String messageString = PVUnifiedPushEncryption.decryptNotification(context, message);
+    /**
+     * Queues the messages a killed process left unhandled, and posts the notifications it left
+     * waiting in PVNotificationCoalescer. Called on app start.
+     */
+    public static void resumePendingMessages(@NonNull Context context) {
+        Context applicationContext = context.getApplicationContext();
+        intakeExecutor.execute(() -> {
+            submitOrphans(applicationContext, PVPendingPushStore.getInstance(applicationContext));
+            PVNotificationCoalescer.getInstance().resume(applicationContext);
+        });
+    }
 
-            if (messageString == null) {
-                Log.e("com.podverse.fdroid.PVUnifiedPushMessageReceiver", "Unable to decrypt UP message");
-                return;
-            }
+    private static void submitOrphans(@NonNull Context context, @NonNull PVPendingPushStore pendingPushStore) {
+        for (PVPendingPushStore.Message orphan : pendingPushStore.takeOrphans()) {
+            Log.i("com.podverse.fdroid.PVUnifiedPushMessageReceiver", "Queueing UP message left by a killed process");
+            submitMessage(context, orphan, System.nanoTime());
+        }
+    }
+
+    private static void submitMessage(@NonNull Context context, @NonNull PVPendingPushStore.Message pending, long receivedAtNanos) {
+        PVUnifiedPushExecutor.getInstance().submit(
+                context,
+                () -> handleMessage(context, pending.message, pending.instance, receivedAtNanos),
+                () -> PVPendingPushStore.getInstance(context).remove(pending));
+    }
+
+    private static void handleMessage(@NonNull Context context, @NonNull byte[] message, @NonNull String instance, long receivedAtNanos) {
+        Log.i("com.podverse.fdroid.PVUnifiedPushMessageReceiver", "Received UP message");
+
+        var pushExecutor = PVUnifiedPushExecutor.getInstance();
+
+        // if you want to disable encryption
+        // String messageString = new String(message, StandardCharsets.UTF_8);
+        long decryptStart = System.nanoTime();
+        String messageString = PVUnifiedPushEncryption.decryptNotification(context, message);
+        pushExecutor.recordStage(PVUnifiedPushExecutor.Stage.DECRYPT, decryptStart);
+
+        if (messageString == null) {
+            Log.e("com.podverse.fdroid.PVUnifiedPushMessageReceiver", "Unable to decrypt UP message");
+            return;
+        }
+
+        Log.d("com.podverse.fdroid.PVUnifiedPushMessageReceiver", "Decrypted notification payload: " + messageString);
+
+        JSONObject notification;
+        try {
+            notification = new JSONObject(messageString);
+        } catch (JSONException e) {
+            Log.e("com.podverse.fdroid.PVUnifiedPushMessageReceiver", "Failed to parse UP message");
+            e.printStackTrace();
+            return;
+        }
 
-            Log.d("com.podverse.fdroid.PVUnifiedPushMessageReceiver", "Decrypted notification payload: " + messageString);
+        // Drop redelivered pushes before any storage, image or notification work
+        if (PVPushDeduplicator.getInstance(context).isDuplicate(notification, messageString)) {
+            Log.i("com.podverse.fdroid.PVUnifiedPushMessageReceiver", "Dropping duplicate UP message");
+            return;
+        }
 
-            // This isn't a reliable timestamp, just the lowest 32 bits to get something "unique"
-            int messageId = Math.abs((int) new Date().getTime());
+        int messageId = PVMessageIdAllocator.getInstance(context).nextMessageId();
 
-            PVUnifiedPushModule.storeNotificationString(context, messageString, messageId);
+        long storeStart = System.nanoTime();
+        PVUnifiedPushModule.storeNotificationString(context, messageString, messageId);
+        pushExecutor.recordStage(PVUnifiedPushExecutor.Stage.STORE, storeStart);
 
-            PVUnifiedPushModule.sendNotification(context, messageString, messageId, instance);
-        }).start();
+        PVUnifiedPushModule.sendNotification(context, notification, messageId, instance, receivedAtNanos);
     }
 }
\ No newline at end of file
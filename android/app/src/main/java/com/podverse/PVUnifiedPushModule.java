@@ -9,19 +9,17 @@ import static org.unifiedpush.android.connector.UnifiedPush.unregisterApp;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
-import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
-import android.content.SharedPreferences;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.media.RingtoneManager;
 import android.net.Uri;
 import android.os.Build;
+import android.service.notification.StatusBarNotification;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 
 import com.facebook.react.bridge.Arguments;
@@ -31,41 +29,30 @@ import com.facebook.react.bridge.ReactContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.ReadableMap;
-import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.bridge.WritableNativeMap;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
 
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.unifiedpush.android.connector.UnifiedPush;
 
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 public class PVUnifiedPushModule extends ReactContextBaseJavaModule {
 
-    private static final String NOTIFICATIONS_SHARED_PREF_NAME = "PVNotifications";
-    private static final String PREF_KEY_NOTIFICATION_IDS = "notification_ids";
-    private static final String PREF_KEY_NOTIFICATION_PREFIX = "pvn-";
-    private static final int MAX_STORED_NOTIFICATIONS = 100;
-    private static final String DELIMITER = ",";
+    // Images that take longer than this are dropped and the notification stays text only
+    private static final long IMAGE_DEADLINE_NANOS = TimeUnit.SECONDS.toNanos(8);
 
-    private IntentFilter intentFilter;
-    private BroadcastReceiver receiver;
-
-    public static final String INTENT_EMIT_REACT_EVENT = "emit_react_event";
+    private static final Set<String> registeredNotificationChannels = Collections.synchronizedSet(new HashSet<>());
 
     static ReadableMap initialNotification = null;
     private final HashMap<Integer, Boolean> initialNotificationMap = new HashMap<>();
@@ -75,9 +62,10 @@ public class PVUnifiedPushModule extends ReactContextBaseJavaModule {
     }
 
     @Override
-    public void initialize() {
-        super.initialize();
-        initializeBroadcastReceiver();
+    public void onCatalystInstanceDestroy() {
+        PVUnifiedPushEventBus.getInstance().detach(getReactApplicationContext());
+
+        super.onCatalystInstanceDestroy();
     }
 
     @NonNull
@@ -87,87 +75,8 @@ public class PVUnifiedPushModule extends ReactContextBaseJavaModule {
     }
 
 
-    private void initializeBroadcastReceiver() {
-        // This is an internal "event receiver" to receive info from java methods that don't have
-        // access to the react context and send them to react via the native event emitter
-        intentFilter = new IntentFilter();
-        intentFilter.addAction(INTENT_EMIT_REACT_EVENT);
-        receiver = new BroadcastReceiver() {
-            @Override
-            public void onReceive(Context context, Intent intent) {
-                String eventName = intent.getStringExtra("event_name");
-                String instance = intent.getStringExtra("instance");
-
-                if (eventName == null) {
-                    Log.e("com.podverse.fdroid.PVUnifiedPushModule", "event_name is null");
-                    return;
-                }
-
-                if (instance == null) {
-                    Log.e("com.podverse.fdroid.PVUnifiedPushModule", "instance is null");
-                    return;
-                }
-
-                WritableMap payload = null;
-                var payloadParams = intent.getStringArrayExtra("payload_key_values");
-                var data = intent.getStringExtra("data");
-
-                if (payloadParams != null || data != null) {
-                    payload = Arguments.createMap();
-
-                    if (payloadParams != null) {
-                        for (var payloadParam : payloadParams) {
-                            var keyValue = payloadParam.split(",");
-                            var key = keyValue[0];
-                            var value = keyValue[1];
-                            payload.putString(key, value);
-                        }
-                    }
-
-                    if (data != null) {
-                        try {
-                            payload.putMap("data", jsonToReact(new JSONObject(data)));
-                        } catch (JSONException e) {
-                            e.printStackTrace();
-                        }
-                    }
-                }
-
-                var UPMessage = new PVUnifiedPushMessage(
-                        eventName,
-                        instance,
-                        payload
-                );
-
-                emitReactEvent(getReactApplicationContext(), UPMessage);
-            }
-        };
-
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-            getReactApplicationContext().registerReceiver(receiver, intentFilter, Context.RECEIVER_NOT_EXPORTED);
-        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            getReactApplicationContext().registerReceiver(receiver, intentFilter);
-        }
-    }
-
-    static void emitEvent(@NonNull Context context, @NonNull String eventName, @NonNull String instance, String[] keyValues) {
-        Intent broadcastIntent = new Intent();
-        broadcastIntent.setAction(INTENT_EMIT_REACT_EVENT);
-        broadcastIntent.putExtra("event_name", eventName);
-        broadcastIntent.putExtra("instance", instance);
-        if (keyValues != null) {
-            broadcastIntent.putExtra("payload_key_values", keyValues);
-        }
-        context.sendBroadcast(broadcastIntent);
-    }
-
-    static void emitEvent(@NonNull Context context, @NonNull String eventName, @NonNull String instance, @NonNull String data) {
-        Intent broadcastIntent = new Intent();
-        broadcastIntent.setAction(INTENT_EMIT_REACT_EVENT);
-        broadcastIntent.putExtra("event_name", eventName);
-        broadcastIntent.putExtra("instance", instance);
-        broadcastIntent.putExtra("data", data);
-        context.sendBroadcast(broadcastIntent);
+    static void emitEvent(@NonNull String eventName, @NonNull String instance, @Nullable WritableMap payload) {
+        PVUnifiedPushEventBus.getInstance().post(new PVUnifiedPushMessage(eventName, instance, payload));
     }
 
     public static void emitReactEvent(@NonNull ReactContext context, @NonNull PVUnifiedPushMessage message) {
@@ -190,6 +99,18 @@ public class PVUnifiedPushModule extends ReactContextBaseJavaModule {
         this.initialNotificationMap.put(messageId, true);
     }
 
+    @ReactMethod
+    public void addListener(String eventName) {
+        // Called by NativeEventEmitter when JS subscribes. Buffered events are replayed from here,
+        // so they aren't emitted before there is a listener for them.
+        PVUnifiedPushEventBus.getInstance().attach(getReactApplicationContext());
+    }
+
+    @ReactMethod
+    public void removeListeners(Integer count) {
+        // Required by NativeEventEmitter, events keep flowing while the React context is alive
+    }
+
     @ReactMethod
     public void registerExistingDistributor() {
         var context = this.getReactApplicationContext();
@@ -282,8 +203,21 @@ public class PVUnifiedPushModule extends ReactContextBaseJavaModule {
     public void getUPPushKeys(Promise promise) {
         var context = this.getReactApplicationContext();
 
-        var pvUnifiedPushEncryption = new PVUnifiedPushEncryption(context);
+        var pvUnifiedPushEncryption = PVUnifiedPushKeyStore.getInstance(context).getCurrentKeys();
+
+        promise.resolve(pushKeysToMap(pvUnifiedPushEncryption));
+    }
+
+    @ReactMethod
+    public void rotateUPPushKeys(Promise promise) {
+        var context = this.getReactApplicationContext();
 
+        var pvUnifiedPushEncryption = PVUnifiedPushKeyStore.getInstance(context).rotateKeys();
+
+        promise.resolve(pushKeysToMap(pvUnifiedPushEncryption));
+    }
+
+    private static WritableMap pushKeysToMap(PVUnifiedPushEncryption pvUnifiedPushEncryption) {
         var publicKey = pvUnifiedPushEncryption.getPublicKey();
         var authKey = pvUnifiedPushEncryption.getAuthKey();
 
@@ -291,7 +225,15 @@ public class PVUnifiedPushModule extends ReactContextBaseJavaModule {
         writableMap.putString("publicKey", publicKey);
         writableMap.putString("authKey", authKey);
 
-        promise.resolve(writableMap);
+        return writableMap;
+    }
+
+    @ReactMethod
+    public void getPushPipelineStats(Promise promise) {
+        WritableMap stats = PVUnifiedPushExecutor.getInstance().getStats();
+        stats.putDouble("duplicatesDropped", PVPushDeduplicator.getInstance(getReactApplicationContext()).getDuplicateCount());
+
+        promise.resolve(stats);
     }
 
     @ReactMethod
@@ -342,136 +284,43 @@ public class PVUnifiedPushModule extends ReactContextBaseJavaModule {
 
             promise.resolve(writableMap);
             markInitialNotificationAsRead(messageId);
-        } catch (JSONException e) {
+        } catch (IOException e) {
             Log.e("com.podverse.fdroid.PVUnifiedPushModule", e.toString());
             promise.reject(e);
         }
     }
 
-    public static WritableMap jsonToReact(JSONObject jsonObject) throws JSONException {
-        WritableMap writableMap = Arguments.createMap();
-        Iterator<String> iterator = jsonObject.keys();
-        while (iterator.hasNext()) {
-            String key = (String) iterator.next();
-            Object value = jsonObject.get(key);
-            if (value instanceof Float || value instanceof Double) {
-                writableMap.putDouble(key, jsonObject.getDouble(key));
-            } else if (value instanceof Number) {
-                writableMap.putInt(key, jsonObject.getInt(key));
-            } else if (value instanceof String) {
-                writableMap.putString(key, jsonObject.getString(key));
-            } else if (value instanceof JSONObject) {
-                writableMap.putMap(key, jsonToReact(jsonObject.getJSONObject(key)));
-            } else if (value instanceof JSONArray) {
-                writableMap.putArray(key, jsonToReact(jsonObject.getJSONArray(key)));
-            } else if (value == JSONObject.NULL) {
-                writableMap.putNull(key);
-            }
-        }
-
-        return writableMap;
-    }
-
-    public static WritableArray jsonToReact(JSONArray jsonArray) throws JSONException {
-        WritableArray writableArray = Arguments.createArray();
-        for (int i = 0; i < jsonArray.length(); i++) {
-            Object value = jsonArray.get(i);
-            if (value instanceof Float || value instanceof Double) {
-                writableArray.pushDouble(jsonArray.getDouble(i));
-            } else if (value instanceof Number) {
-                writableArray.pushInt(jsonArray.getInt(i));
-            } else if (value instanceof String) {
-                writableArray.pushString(jsonArray.getString(i));
-            } else if (value instanceof JSONObject) {
-                writableArray.pushMap(jsonToReact(jsonArray.getJSONObject(i)));
-            } else if (value instanceof JSONArray) {
-                writableArray.pushArray(jsonToReact(jsonArray.getJSONArray(i)));
-            } else if (value == JSONObject.NULL) {
-                writableArray.pushNull();
-            }
-        }
-        return writableArray;
-    }
-
     public static void storeNotificationString(@NonNull Context context, @NonNull String payload, int messageId) {
-        // Modified from react-native-firebase (Apache-2.0 License)
-        // https://github.com/invertase/react-native-firebase/blob/8d7c28c49f7837e028c902f66276051287956a5a/packages/messaging/android/src/main/java/io/invertase/firebase/messaging/ReactNativeFirebaseMessagingStoreImpl.java#L25-L47
-
-        // Message IDs are stored in one preference key, PREF_KEY_NOTIFICATION_IDS, oldest first separated by DELIMITER
-        // Message payloads are saved to their own preference keys, PREF_KEY_NOTIFICATION_PREFIX + messageId
-        // The number of stored notifications is limited and trimmed to MAX_STORED_NOTIFICATIONS total
-
-        SharedPreferences preferences = context.getSharedPreferences(NOTIFICATIONS_SHARED_PREF_NAME, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = preferences.edit();
-
-        String messageIdKey = PREF_KEY_NOTIFICATION_PREFIX + messageId;
-        Log.d("com.podverse.fdroid.PVUnifiedPushModule", "Saving notification id " + messageIdKey);
-
-        // Store current notification
-        editor.putString(messageIdKey, payload);
-        String notificationIds = preferences.getString(PREF_KEY_NOTIFICATION_IDS, "");
-        notificationIds += messageId + DELIMITER;
-
-        // Remove old notifications
-        List<String> allNotificationList = new ArrayList<>(Arrays.asList(notificationIds.split(DELIMITER)));
-        if (allNotificationList.size() > MAX_STORED_NOTIFICATIONS) {
-            Log.d("com.podverse.fdroid.PVUnifiedPushModule", "Trimming old notifications");
-            String firstMessageId = allNotificationList.get(0);
-            String firstMessageIdKey = PREF_KEY_NOTIFICATION_PREFIX + firstMessageId;
-            editor.remove(firstMessageIdKey);
-            Log.d("com.podverse.fdroid.PVUnifiedPushModule", "Removed notification id " + firstMessageIdKey);
-            notificationIds = notificationIds.replace(firstMessageId + DELIMITER, "");
-        }
-        editor.putString(PREF_KEY_NOTIFICATION_IDS, notificationIds);
+        // Payloads are kept in PVNotificationStore until the notification is tapped,
+        // trimmed to the newest PVNotificationStore.MAX_STORED_NOTIFICATIONS
+        Log.d("com.podverse.fdroid.PVUnifiedPushModule", "Saving notification id " + messageId);
 
-        editor.apply();
+        PVNotificationStore.getInstance(context).store(messageId, payload);
 
-        Log.d("com.podverse.fdroid.PVUnifiedPushModule", "Saved notification id " + messageIdKey);
+        Log.d("com.podverse.fdroid.PVUnifiedPushModule", "Saved notification id " + messageId);
     }
 
     public static String popNotification(@NonNull Context context, int messageId) {
-        SharedPreferences preferences = context.getSharedPreferences(NOTIFICATIONS_SHARED_PREF_NAME, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = preferences.edit();
+        Log.d("com.podverse.fdroid.PVUnifiedPushModule", "Consuming notification id " + messageId);
 
-        String messageIdKey = PREF_KEY_NOTIFICATION_PREFIX + messageId;
-        Log.d("com.podverse.fdroid.PVUnifiedPushModule", "Consuming notification id " + messageIdKey);
+        String notificationPayload = PVNotificationStore.getInstance(context).pop(messageId);
 
-        // Get and remove requested notification
-        String notificationPayload = preferences.getString(messageIdKey, null);
-        editor.remove(messageIdKey);
-
-        String notificationIds = preferences.getString(PREF_KEY_NOTIFICATION_IDS, "");
-
-        // Remove requested notificationId from list
-        notificationIds = notificationIds.replace(messageIdKey + DELIMITER, "");
-        editor.putString(PREF_KEY_NOTIFICATION_IDS, notificationIds);
-
-        editor.apply();
-
-        Log.d("com.podverse.fdroid.PVUnifiedPushModule", "Consumed notification id " + messageIdKey);
+        Log.d("com.podverse.fdroid.PVUnifiedPushModule", "Consumed notification id " + messageId);
 
         return notificationPayload;
     }
 
-    public static JSONObject popNotificationJson(@NonNull Context context, int messageId) throws JSONException {
-        return new JSONObject(popNotification(context, messageId));
-    }
-
-    public static WritableMap popNotificationMap(@NonNull Context context, int messageId) throws JSONException {
-        return jsonToReact(popNotificationJson(context, messageId));
-    }
-
-    public static void sendNotification(@NonNull Context context, @NonNull String payload, int messageId, @NonNull String instance) {
-        JSONObject notification;
+    public static WritableMap popNotificationMap(@NonNull Context context, int messageId) throws IOException {
+        String notificationPayload = popNotification(context, messageId);
 
-        try {
-            notification = new JSONObject(payload);
-        } catch (JSONException e) {
-            Log.e("com.podverse.fdroid.PVUnifiedPushModule", "Failed to parse notification with id " + messageId);
-            e.printStackTrace();
-            return;
+        if (notificationPayload == null) {
+            throw new IOException("No stored notification with id " + messageId);
         }
 
+        return PVJsonConverter.toWritableMap(notificationPayload);
+    }
+
+    public static void sendNotification(@NonNull Context context, @NonNull JSONObject notification, int messageId, @NonNull String instance, long receivedAtNanos) {
         String imageUrl = null;
         String messageTitle;
         String messageBody;
@@ -508,74 +357,116 @@ public class PVUnifiedPushModule extends ReactContextBaseJavaModule {
             return;
         }
 
-        Bitmap image = null;
+        var pushNotification = new PVPushNotification(
+                messageId,
+                instance,
+                notificationType,
+                messageTitle,
+                messageBody,
+                imageUrl,
+                notification.optString("podcastId", null),
+                notification.optString("podcastTitle", null),
+                receivedAtNanos
+        );
 
-        if (imageUrl != null && !imageUrl.isEmpty()) {
-            image = getBitmapfromUrl(imageUrl);
+        if (PVPushNotification.TYPE_NEW_EPISODE.equals(notificationType)) {
+            PVNotificationCoalescer.getInstance().add(context, pushNotification);
+            return;
         }
 
+        postNotification(context, pushNotification, null, true);
+    }
+
+    static void postNotification(@NonNull Context context, @NonNull PVPushNotification notification, @Nullable String groupKey, boolean loadImage) {
+        var pushExecutor = PVUnifiedPushExecutor.getInstance();
+        int messageId = notification.messageId;
+
+        long notifyStart = System.nanoTime();
+
         Intent intent = new Intent(context, MainActivity.class);
         intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
         intent.putExtra("pv_message_id", messageId);
-        intent.putExtra("up_instance", instance);
+        intent.putExtra("up_instance", notification.instance);
         PendingIntent pendingIntent = PendingIntent.getActivity(context, messageId, intent,
                 PendingIntent.FLAG_ONE_SHOT | PendingIntent.FLAG_IMMUTABLE);
         Uri defaultSoundUri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION);
 
-        NotificationCompat.Builder notificationBuilder = new NotificationCompat.Builder(context, notificationType)
+        NotificationCompat.Builder notificationBuilder = new NotificationCompat.Builder(context, notification.notificationType)
                 .setSmallIcon(R.mipmap.ic_launcher)
-                .setContentTitle(messageTitle)
-                .setContentText(messageBody)
+                .setContentTitle(notification.title)
+                .setContentText(notification.body)
                 .setAutoCancel(true)
                 .setSound(defaultSoundUri)
+                .setOnlyAlertOnce(true) /* The update that adds the image shouldn't alert again */
                 .setContentIntent(pendingIntent);
 
-        if (image != null) {
-            notificationBuilder.setLargeIcon(image); /* Notification icon image */
-            notificationBuilder.setStyle(new NotificationCompat.BigPictureStyle().bigPicture(image)); /* Notification with Image */
+        if (groupKey != null) {
+            // The group summary alerts once for the whole group
+            notificationBuilder
+                    .setGroup(groupKey)
+                    .setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_SUMMARY);
         }
 
         NotificationManager notificationManager =
                 (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
 
-        // Android 8 or higher requires a notification channel
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O)
-        {
-            NotificationChannel channel = new NotificationChannel(
-                    notificationType,
-                    notificationType.equals("live") ?
-                            "Live Streams" :
-                            "New Episodes",
-                    notificationType.equals("live") ?
-                            NotificationManager.IMPORTANCE_HIGH :
-                            NotificationManager.IMPORTANCE_DEFAULT);
-            notificationManager.createNotificationChannel(channel);
+        registerNotificationChannel(notificationManager, notification.notificationType);
+
+        Log.d("com.podverse.fdroid.PVUnifiedPushModule", "Sending notification of type " + notification.notificationType + " with id " + messageId);
+
+        // Post the text right away and attach the image once it has loaded,
+        // so a slow image host doesn't delay the notification itself
+        notificationManager.notify(messageId, notificationBuilder.build());
+        pushExecutor.recordStage(PVUnifiedPushExecutor.Stage.NOTIFY, notifyStart);
+        pushExecutor.recordStage(PVUnifiedPushExecutor.Stage.FIRST_NOTIFY, notification.receivedAtNanos);
+
+        if (!loadImage || !notification.hasImage()) {
+            return;
+        }
+
+        long imageStart = System.nanoTime();
+        Bitmap image = PVNotificationImageLoader.getInstance(context).load(notification.imageUrl, IMAGE_DEADLINE_NANOS);
+        pushExecutor.recordStage(PVUnifiedPushExecutor.Stage.IMAGE, imageStart);
+
+        if (image == null) {
+            return;
+        }
+
+        if (!isNotificationActive(notificationManager, messageId)) {
+            Log.d("com.podverse.fdroid.PVUnifiedPushModule", "Notification with id " + messageId + " was dismissed before the image loaded");
+            return;
         }
 
-        Log.d("com.podverse.fdroid.PVUnifiedPushModule", "Sending notification of type " + notificationType + " with id " + messageId);
+        notificationBuilder.setLargeIcon(image); /* Notification icon image */
+        notificationBuilder.setStyle(new NotificationCompat.BigPictureStyle().bigPicture(image)); /* Notification with Image */
 
         notificationManager.notify(messageId, notificationBuilder.build());
     }
 
-    private static Bitmap getBitmapfromUrl(String imageUrl) {
-        try {
-            Log.d("com.podverse.fdroid.PVUnifiedPushModule", "Getting image url: " + imageUrl);
-            URL url = new URL(imageUrl);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setDoInput(true);
-            connection.connect();
-            InputStream input = connection.getInputStream();
-            return BitmapFactory.decodeStream(input);
-        } catch (java.net.MalformedURLException e) {
-            var message = e.getMessage();
-            Log.e("com.podverse.fdroid.PVUnifiedPushModule", Objects.requireNonNullElse(message, "Bad image URL"));
-
-            return null;
-        } catch (java.io.IOException e) {
-            var message = e.getMessage();
-            Log.e("com.podverse.fdroid.PVUnifiedPushModule", Objects.requireNonNullElse(message, "Unknown IOException"));
-
-            return null;
+    private static void registerNotificationChannel(@NonNull NotificationManager notificationManager, @NonNull String notificationType) {
+        // Android 8 or higher requires a notification channel, which only needs creating once per process
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O || !registeredNotificationChannels.add(notificationType)) {
+            return;
+        }
+
+        NotificationChannel channel = new NotificationChannel(
+                notificationType,
+                notificationType.equals(PVPushNotification.TYPE_LIVE) ?
+                        "Live Streams" :
+                        "New Episodes",
+                notificationType.equals(PVPushNotification.TYPE_LIVE) ?
+                        NotificationManager.IMPORTANCE_HIGH :
+                        NotificationManager.IMPORTANCE_DEFAULT);
+        notificationManager.createNotificationChannel(channel);
+    }
+
+    private static boolean isNotificationActive(@NonNull NotificationManager notificationManager, int messageId) {
+        for (StatusBarNotification activeNotification : notificationManager.getActiveNotifications()) {
+            if (activeNotification.getId() == messageId) {
+                return true;
+            }
         }
+
+        return false;
     }
-}
\ No newline at end of file
+}
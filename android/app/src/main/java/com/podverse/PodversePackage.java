@@ -22,6 +22,13 @@ public class PodversePackage implements ReactPackage {
        List<NativeModule> modules = new ArrayList<>();
 
        modules.add(new PVAsyncStorageModule(reactContext));
+       modules.add(new PVLargeValueStorageModule(reactContext));
+       modules.add(new PVEpisodeStoreModule(reactContext));
+       modules.add(new PVQueueModule(reactContext));
+       modules.add(new PVPlaybackStateModule(reactContext));
+       modules.add(new PVFeedParserModule(reactContext));
+       modules.add(new PVTranscriptModule(reactContext));
+       modules.add(new PVDownloadModule(reactContext));
        modules.add(new PVUnifiedPushModule(reactContext));
     //    modules.add(new PVAndroidAutoModule(reactContext));
        modules.add(new NoxAndroidModule(reactContext));
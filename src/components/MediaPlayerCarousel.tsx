@@ -1,11 +1,12 @@
 import { Dimensions, Platform, StyleSheet } from 'react-native'
 import React from 'reactn'
 import ReactNativeHapticFeedback from 'react-native-haptic-feedback'
-import { checkIfHasSupportedCommentTag, Episode, TranscriptRow } from 'podverse-shared'
+import { checkIfHasSupportedCommentTag, Episode } from 'podverse-shared'
 import { PV } from '../resources'
 import { InitialState } from '../resources/Interfaces'
 import { translate } from '../lib/i18n'
 import { hasValidNetworkConnection } from '../lib/network'
+import { emptyParsedTranscript, ParsedTranscript } from '../lib/transcriptHelpers'
 import { playerCheckIfStateIsPlaying } from '../services/player'
 import { v4vGetPluralCurrencyUnitPerMinute } from '../services/v4v/v4v'
 import { getBoostagramItemValueTags, v4vGetActiveProviderInfo } from '../state/actions/v4v/v4v'
@@ -274,7 +275,7 @@ export class MediaPlayerCarousel extends React.PureComponent<Props, State> {
       screenReaderEnabled,
       player,
       screenPlayer,
-      parsedTranscript: this.global.parsedTranscript || [],
+      parsedTranscript: this.global.parsedTranscript || emptyParsedTranscript,
       accessibilityItemSelectedValue: accessibilityItemSelected?.value || null,
       isReady,
       isReady2
@@ -418,7 +419,7 @@ type MPCComponents = {
   isReady?: boolean
   isReady2?: boolean
   navigation: any,
-  parsedTranscript: TranscriptRow[]
+  parsedTranscript: ParsedTranscript
   player: InitialState['player']
   screenPlayer: InitialState['screenPlayer']
   screenReaderEnabled: boolean
@@ -1,27 +1,40 @@
 import { TranscriptRow } from 'podverse-shared'
-import { AppState, AppStateStatus, StyleSheet } from 'react-native'
+import { AppState, AppStateStatus, StyleSheet, VirtualizedList } from 'react-native'
 import React from 'reactn'
 import { translate } from '../lib/i18n'
+import { errorLogger } from '../lib/logger'
+import { ParsedTranscript } from '../lib/transcriptHelpers'
 import { PV } from '../resources'
 import PVEventEmitter from '../services/eventEmitter'
 import { getPlaybackSpeed, playerGetPosition, playerHandleSeekTo } from '../services/player'
 import { PVSearchBar } from './PVSearchBar'
-import { AutoScrollToggle, FlatList, PressableWithOpacity, ScrollView, TableSectionSelectors, Text, View } from './'
+import { AutoScrollToggle, PressableWithOpacity, ScrollView, TableSectionSelectors, Text, View } from './'
 
 type Props = {
   isNowPlaying?: boolean
   navigation?: any
-  parsedTranscript: TranscriptRow[]
+  parsedTranscript: ParsedTranscript
   width?: number
 }
 
 type State = {
   activeTranscriptRowIndexes: number[]
   autoScrollOn: boolean
+  loadedPagesCount: number
   searchText: string
-  searchResults: never[]
+  searchResults: TranscriptRow[]
+  singleLineTranscriptRow: TranscriptRow | null
 }
 
+const _fileName = 'src/components/MediaPlayerCarouselTranscripts.tsx'
+
+/*
+  Rows are loaded from the parsedTranscript a page at a time as they scroll into view,
+  and only the pages closest to the last one requested are kept.
+*/
+const rowsPerPage = 100
+const maxLoadedPages = 8
+
 const getCellID = (item: TranscriptRow, index: number) => `transcript-cell-${index}`
 
 export class MediaPlayerCarouselTranscripts extends React.PureComponent<Props, State> {
@@ -29,6 +42,8 @@ export class MediaPlayerCarouselTranscripts extends React.PureComponent<Props, S
   interval: ReturnType<typeof setInterval> | null = null
   listRef: any | null = null
   appStateListenerChange: any
+  pages: Record<number, TranscriptRow[]> = {}
+  loadingPages: Record<number, boolean> = {}
 
   constructor() {
     super()
@@ -36,8 +51,10 @@ export class MediaPlayerCarouselTranscripts extends React.PureComponent<Props, S
     this.state = {
       activeTranscriptRowIndexes: [],
       autoScrollOn: false,
+      loadedPagesCount: 0,
       searchText: '',
-      searchResults: []
+      searchResults: [],
+      singleLineTranscriptRow: null
     }
   }
 
@@ -45,6 +62,62 @@ export class MediaPlayerCarouselTranscripts extends React.PureComponent<Props, S
     this.appStateListenerChange = AppState.addEventListener('change', this._handleAppStateChange)
     PVEventEmitter.on(PV.Events.PLAYER_SPEED_UPDATED, this.updateAutoscroll)
     PVEventEmitter.on(PV.Events.MPC_TRANSCRIPTS_IN_VIEW, this._inViewHandler)
+    this.loadSingleLineTranscriptRow()
+  }
+
+  componentDidUpdate(prevProps: Props) {
+    if (prevProps.parsedTranscript !== this.props.parsedTranscript) {
+      this.pages = {}
+      this.loadingPages = {}
+      this.setState({ loadedPagesCount: 0, searchText: '', searchResults: [], singleLineTranscriptRow: null })
+      this.loadSingleLineTranscriptRow()
+    }
+  }
+
+  loadSingleLineTranscriptRow = async () => {
+    const { parsedTranscript } = this.props
+    if (parsedTranscript?.rowCount === 1) {
+      const [singleLineTranscriptRow] = await parsedTranscript.getRows(0, 1)
+      if (parsedTranscript === this.props.parsedTranscript) {
+        this.setState({ singleLineTranscriptRow: singleLineTranscriptRow || null })
+      }
+    }
+  }
+
+  getRow = (index: number) => {
+    const page = Math.floor(index / rowsPerPage)
+    const rows = this.pages[page]
+    if (!rows) {
+      this.loadPage(page)
+    }
+
+    return rows?.[index - page * rowsPerPage] || ({ index, isPlaceholder: true } as any)
+  }
+
+  loadPage = async (page: number) => {
+    const { parsedTranscript } = this.props
+    if (this.loadingPages[page]) return
+    this.loadingPages[page] = true
+
+    try {
+      const rows = await parsedTranscript.getRows(page * rowsPerPage, rowsPerPage)
+      if (parsedTranscript !== this.props.parsedTranscript) return
+
+      this.pages[page] = rows
+      const loadedPages = Object.keys(this.pages).map(Number)
+      if (loadedPages.length > maxLoadedPages) {
+        const farthestPage = loadedPages.reduce((farthest, loadedPage) =>
+          Math.abs(loadedPage - page) > Math.abs(farthest - page) ? loadedPage : farthest
+        )
+        delete this.pages[farthestPage]
+      }
+
+      this.setState({ loadedPagesCount: this.state.loadedPagesCount + 1 })
+    } catch (error) {
+      errorLogger(_fileName, 'loadPage', error)
+    } finally {
+      delete this.loadingPages[page]
+    }
   }
 
   componentWillUnmount() {
@@ -122,17 +195,11 @@ export class MediaPlayerCarouselTranscripts extends React.PureComponent<Props, S
         if (parsedTranscript) {
           const currentPosition = await playerGetPosition()
 
-          const firstMatchingIndex = parsedTranscript.findIndex(
-            (item: Record<string, any>) => item.startTime < currentPosition && item.endTime > currentPosition
-          )
+          const { index: firstMatchingIndex, lineCount } = await parsedTranscript.getRowAtTime(currentPosition)
 
           const activeTranscriptRowIndexes = []
           activeTranscriptRowIndexes.push(firstMatchingIndex)
 
-          const activeItem = firstMatchingIndex >= 0 ? parsedTranscript[firstMatchingIndex] : null
-          
-          const lineCount = activeItem?.lineCount || 0
-
           for (let i = 1; i < lineCount; i++) {
             activeTranscriptRowIndexes.push(firstMatchingIndex + i)
           }
@@ -166,7 +233,7 @@ export class MediaPlayerCarouselTranscripts extends React.PureComponent<Props, S
     const { isNowPlaying } = this.props
     const { activeTranscriptRowIndexes } = this.state
     const transcriptionItem = item
-    const { body, isEmptySpace, speaker, startTime, startTimeFormatted } = transcriptionItem
+    const { body, isEmptySpace, isPlaceholder, speaker, startTime, startTimeFormatted } = transcriptionItem
     const cellID = getCellID(transcriptionItem, index)
     const { screenWidth } = this.global.screen
 
@@ -188,8 +255,10 @@ export class MediaPlayerCarouselTranscripts extends React.PureComponent<Props, S
 
     return (
       <>
-        {!!isEmptySpace && <View style={{ height: PV.FlatList.transcriptRowHeights.singleLine }} />}
-        {!isEmptySpace && (
+        {(!!isEmptySpace || !!isPlaceholder) && (
+          <View style={{ height: PV.FlatList.transcriptRowHeights.singleLine }} />
+        )}
+        {!isEmptySpace && !isPlaceholder && (
           <PressableWithOpacity
             accessible
             accessibilityLabel={accessibilityLabel}
@@ -220,7 +289,7 @@ export class MediaPlayerCarouselTranscripts extends React.PureComponent<Props, S
   }
 
   renderSingleLineTranscript = (item: any) => {
-    const transcriptionItem = item
+    const transcriptionItem = item || {}
     const { body } = transcriptionItem
     return (
       <View style={styles.singleLineWrapper}>
@@ -230,16 +299,18 @@ export class MediaPlayerCarouselTranscripts extends React.PureComponent<Props, S
   }
 
   render() {
-    const { isNowPlaying, width } = this.props
-    let { parsedTranscript } = this.props
-    const { autoScrollOn } = this.state
-    const { screenReaderEnabled } = this.global
-
-    if (this.state.searchText) {
-      parsedTranscript = this.state.searchResults || []
-    }
-
-    const isSingleLineTranscript = parsedTranscript.length === 1
+    const { isNowPlaying, parsedTranscript, width } = this.props
+    const {
+      activeTranscriptRowIndexes,
+      autoScrollOn,
+      loadedPagesCount,
+      searchResults,
+      searchText,
+      singleLineTranscriptRow
+    } = this.state
+    const { globalTheme, screenReaderEnabled } = this.global
+
+    const isSingleLineTranscript = parsedTranscript.rowCount === 1
     const wrapperStyle = width ? { width } : { width: '100%' }
 
     return (
@@ -271,39 +342,37 @@ export class MediaPlayerCarouselTranscripts extends React.PureComponent<Props, S
               searchResults: []
             })
           }}
-          onChangeText={(searchText: string) => {
+          onChangeText={async (searchText: string) => {
             if (!searchText || searchText?.length === 0) {
               this.setState({
                 searchText: '',
                 searchResults: []
               })
             } else {
-              const searchResults = parsedTranscript.filter((item: Record<string, any>) => {
-                return item?.body?.toLowerCase().includes(searchText?.toLowerCase())
-              })
+              this.setState({ searchText, autoScrollOn: false }, this.clearAutoScrollInterval)
+
+              const searchResults = await parsedTranscript.searchRows(searchText)
 
-              this.setState(
-                {
-                  searchText,
-                  searchResults,
-                  autoScrollOn: false
-                },
-                this.clearAutoScrollInterval
-              )
+              // Ignore results for a search that has been replaced while it ran
+              if (searchText === this.state.searchText) {
+                this.setState({ searchResults })
+              }
             }
           }}
           testID='transcript_search_bar'
           value={this.state.searchText}
         />
-        {isSingleLineTranscript && <ScrollView>{this.renderSingleLineTranscript(parsedTranscript[0])}</ScrollView>}
+        {isSingleLineTranscript && <ScrollView>{this.renderSingleLineTranscript(singleLineTranscriptRow)}</ScrollView>}
         {!isSingleLineTranscript && (
-          <FlatList
+          <VirtualizedList
             automaticallyAdjustContentInsets={false}
             contentContainerStyle={styles.contentContainerStyle}
             contentOffset={{ x: 0, y: 0 }}
-            customOptimizationProps={PV.FlatList.optimizationPropsFaster}
+            {...PV.FlatList.optimizationPropsFaster}
             data={parsedTranscript}
-            dataTotalCount={parsedTranscript.length}
+            extraData={[activeTranscriptRowIndexes, loadedPagesCount, searchResults]}
+            getItem={(_: any, index: number) => (searchText ? searchResults[index] : this.getRow(index))}
+            getItemCount={() => (searchText ? searchResults.length : parsedTranscript.rowCount)}
             getItemLayout={(_: any, index: number) => {
               return {
                 length: PV.FlatList.transcriptRowHeights.singleLine,
@@ -311,15 +380,14 @@ export class MediaPlayerCarouselTranscripts extends React.PureComponent<Props, S
                 index
               }
             }}
-            ItemSeparatorComponent={() => <></>}
             keyExtractor={(item: TranscriptRow, index: number) => getCellID(item, index)}
-            listRef={(ref: any) => {
+            onScrollBeginDrag={this.disableAutoscroll}
+            ref={(ref: any) => {
               this.listRef = ref
             }}
-            onScrollBeginDrag={this.disableAutoscroll}
             renderItem={this.renderItem}
+            style={[globalTheme.flatList, { backgroundColor: 'transparent' }]}
             testID='transcript-flat-list'
-            transparent
           />
         )}
       </View>
@@ -14,7 +14,7 @@ export const checkIfAsyncStorageIsEnabled = async () => {
   return result
 }
 
-// duplicated in android/gradle.properties
+// duplicated in android/gradle.properties and PVAsyncStorageModule.java
 const AsyncStorage_db_size_in_MB = 33
 
 // Prevent alert from being thrown multiple times in rapid succession
@@ -38,19 +38,117 @@ export const checkInvalidAsyncStorageCapacity = async () => {
       return false
     }
 
-    if (!shouldPreventAlert) {
-      shouldPreventAlert = true
-      Alert.alert(translate('Error'), translate('Storage data exceeded message'), [{ text: translate('Ok') }])
-      setTimeout(() => {
-        shouldPreventAlert = false
-      }, 10000)
-    }
+    showStorageExceededAlert()
 
     return true
   }
 }
 
+const showStorageExceededAlert = () => {
+  if (!shouldPreventAlert) {
+    shouldPreventAlert = true
+    Alert.alert(translate('Error'), translate('Storage data exceeded message'), [{ text: translate('Ok') }])
+    setTimeout(() => {
+      shouldPreventAlert = false
+    }, 10000)
+  }
+}
+
 export const setItemWithStorageCapacityCheck = async (key: string, value: string) => {
+  const { PVAsyncStorage } = NativeModules
+  if (Platform.OS === 'android' && PVAsyncStorage?.setItemWithCapacityCheck) {
+    // The capacity check runs natively as part of the write
+    const result = await PVAsyncStorage.setItemWithCapacityCheck(key, value)
+    if (result?.exceeded) {
+      await handleStorageCapacityExceeded()
+    }
+    return
+  }
+
   await checkInvalidAsyncStorageCapacity()
   await AsyncStorage.setItem(key, value)
 }
+
+/*
+  Much of a full database can be free pages left behind by rewritten values,
+  so reclaim those natively and only warn the user if storage is still nearly full.
+*/
+const handleStorageCapacityExceeded = async () => {
+  const { PVAsyncStorage } = NativeModules
+  try {
+    const result = await PVAsyncStorage.runStorageMaintenance()
+    debugLogger('handleStorageCapacityExceeded', result)
+    if (!result?.exceeded) {
+      return
+    }
+  } catch (error) {
+    debugLogger('handleStorageCapacityExceeded', error)
+  }
+
+  showStorageExceededAlert()
+}
+
+// { pageSize, pageCount, freePages, freeRatio, autoVacuum, lastRunAt, lastBytesReclaimed, totalBytesReclaimed }
+export const getAsyncStorageMaintenanceStats = async () => {
+  const { PVAsyncStorage } = NativeModules
+  if (Platform.OS === 'ios' || !PVAsyncStorage?.getStorageMaintenanceStats) {
+    debugLogger('Not implemented for ios')
+    return null
+  }
+
+  return PVAsyncStorage.getStorageMaintenanceStats()
+}
+
+export const getAsyncStorageBreakdown = async () => {
+  const { PVAsyncStorage } = NativeModules
+  if (Platform.OS === 'ios' || !PVAsyncStorage?.getStorageBreakdown) {
+    debugLogger('Not implemented for ios')
+    return null
+  }
+
+  // { size, limit, keys: [{ key, bytes }] } with keys sorted largest first
+  return PVAsyncStorage.getStorageBreakdown()
+}
+
+/*
+  Reads every key in one native call and one SQLite transaction on Android.
+  Resolves with an object of each key to its value, or to null when it isn't stored.
+*/
+export const multiGetBatched = async (keys: string[]): Promise<Record<string, string | null>> => {
+  const { PVAsyncStorage } = NativeModules
+  if (Platform.OS === 'android' && PVAsyncStorage?.multiGetBatched) {
+    return PVAsyncStorage.multiGetBatched(keys)
+  }
+
+  const keyValuePairs = await AsyncStorage.multiGet(keys)
+  const values: Record<string, string | null> = {}
+  for (const [key, value] of keyValuePairs) {
+    values[key] = value
+  }
+  return values
+}
+
+/*
+  Writes every pair in one native call and one SQLite transaction on Android, removing keys with a null value.
+  Large values are compressed natively, so keys written here must be read with multiGetBatched.
+*/
+export const multiSetBatched = async (keyValuePairs: [string, string | null][]) => {
+  const { PVAsyncStorage } = NativeModules
+  if (Platform.OS === 'android' && PVAsyncStorage?.multiSetBatched) {
+    const result = await PVAsyncStorage.multiSetBatched(keyValuePairs)
+    if (result?.exceeded) {
+      await handleStorageCapacityExceeded()
+    }
+    return
+  }
+
+  await checkInvalidAsyncStorageCapacity()
+  const keysToRemove = keyValuePairs.filter(([, value]) => value === null).map(([key]) => key)
+  const keysToSet = keyValuePairs.filter(([, value]) => value !== null) as [string, string][]
+  if (keysToRemove.length > 0) {
+    await AsyncStorage.multiRemove(keysToRemove)
+  }
+  if (keysToSet.length > 0) {
+    await AsyncStorage.multiSet(keysToSet)
+  }
+}
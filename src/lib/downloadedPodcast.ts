@@ -9,7 +9,7 @@ import { clearNowPlayingItem, getNowPlayingItem } from '../services/userNowPlayi
 import { errorLogger } from './logger'
 import { getDownloadedEpisodeLimits } from './downloadedEpisodeLimiter'
 import { BackgroundDownloader, deleteDownloadedEpisode } from './downloader'
-import { setItemWithStorageCapacityCheck } from './asyncStorage'
+import { multiGetBatched, multiSetBatched } from './asyncStorage'
 
 const _fileName = 'src/lib/downloadedPodcast.ts'
 export const addDownloadedPodcastEpisode = async (episode: any, podcast: any) => {
@@ -125,7 +125,7 @@ type GetDownloadedPodcastsParams = {
 export const getDownloadedPodcasts = async (options?: GetDownloadedPodcastsParams) => {
   try {
     const { hasVideo, isMusic, podcastsOnly, searchTitle } = options || {}
-    const itemsString = await AsyncStorage.getItem(PV.Keys.DOWNLOADED_PODCASTS)
+    const { [PV.Keys.DOWNLOADED_PODCASTS]: itemsString } = await multiGetBatched([PV.Keys.DOWNLOADED_PODCASTS])
     let items = itemsString ? JSON.parse(itemsString) : []
 
     if (isMusic) {
@@ -228,7 +228,8 @@ export const removeAllDownloadedPodcasts = async () => {
 const setDownloadedPodcasts = async (podcasts: any[]) => {
   podcasts = sortPodcastArrayAlphabetically(podcasts)
   if (Array.isArray(podcasts)) {
-    await setItemWithStorageCapacityCheck(PV.Keys.DOWNLOADED_PODCASTS, JSON.stringify(podcasts))
+    // Compressed natively once large, so it must be read with multiGetBatched
+    await multiSetBatched([[PV.Keys.DOWNLOADED_PODCASTS, JSON.stringify(podcasts)]])
   }
 }
 
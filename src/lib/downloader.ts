@@ -1,4 +1,4 @@
-import { Platform, NativeModules, PermissionsAndroid } from 'react-native'
+import { Platform, NativeEventEmitter, NativeModules, PermissionsAndroid } from 'react-native'
 import PromiseQueue from 'queue-promise'
 import Bottleneck from 'bottleneck'
 import { clone } from 'lodash'
@@ -48,10 +48,28 @@ export enum DownloadStatus {
   ERROR = 'ERROR'
 }
 
+/*
+  On Android episodes are downloaded by the native PVDownloadEngine. It fetches a file
+  over several connections when the server supports ranges, and resumes an interrupted
+  download where it stopped, even after the app was killed. Progress for every active
+  download arrives in one PVDownloadProgress event per interval.
+*/
+export const getNativeDownloadEngine = () => {
+  const { PVDownloadEngine } = NativeModules
+  return Platform.OS === 'android' && PVDownloadEngine ? PVDownloadEngine : null
+}
+
 const downloadTasks: any[] = []
 let existingDownloadTasks: any[] = []
 
 export const cancelDownloadTask = (episodeId: string) => {
+  const nativeDownloadEngine = getNativeDownloadEngine()
+  if (nativeDownloadEngine) {
+    delete nativeDownloads[episodeId]
+    nativeDownloadEngine.cancel(episodeId)
+    return
+  }
+
   const task = downloadTasks.find((x: any) => x.id === episodeId)
   if (task) task.stop()
 }
@@ -116,12 +134,12 @@ type FinishDownloadParams = {
   ext: string
   origDestination: string
   podcast: Podcast
-  progressLimiter: any
+  progressLimiter?: any
 }
 
 const finishDownload = async (params: FinishDownloadParams) => {
   const { customLocation, episode, ext, origDestination, podcast, progressLimiter } = params
-  await progressLimiter.stop()
+  await progressLimiter?.stop()
   if (customLocation) {
     try {
       const tempDownloadFileType = await FileSystem.stat(origDestination)
@@ -156,6 +174,66 @@ const finishDownload = async (params: FinishDownloadParams) => {
   debouncePlayerSyncPlayerWithQueue()
 }
 
+// What finishDownload needs for each download in the native engine, by episode id
+const nativeDownloads: { [episodeId: string]: FinishDownloadParams } = {}
+
+const getNativeDownloadParams = async (episode: any, origDestination: string) => {
+  const customLocation = await AsyncStorage.getItem(PV.Keys.EXT_STORAGE_DLOAD_LOCATION)
+  return {
+    customLocation,
+    episode,
+    ext: getExtensionFromUrl(episode.mediaUrl),
+    origDestination,
+    podcast: episode.podcast || {}
+  } as FinishDownloadParams
+}
+
+// The native engine keeps a finished download until it is cleared,
+// so a download that finished while JS wasn't running is finished on the next initDownloads.
+const finishNativeDownload = async (episodeId: string) => {
+  const nativeDownloadEngine = getNativeDownloadEngine()
+  let params = nativeDownloads[episodeId]
+
+  if (!params) {
+    const [episodes, downloads] = await Promise.all([getDownloadingEpisodes(), nativeDownloadEngine.getDownloads()])
+    const episode = episodes.find((x: any) => x.id === episodeId)
+    const nativeDownload = downloads.find((x: any) => x.id === episodeId)
+    if (!episode || !nativeDownload) return
+    params = await getNativeDownloadParams(episode, nativeDownload.destination)
+  }
+
+  delete nativeDownloads[episodeId]
+  finishedDownloadQueue.enqueue(async () => {
+    await finishDownload(params)
+    await nativeDownloadEngine.clear(episodeId)
+  })
+}
+
+const convertNativeDownloadProgress = ({ id, bytesWritten, totalBytes }: any) => ({
+  bytesTotal: totalBytes > 0 ? convertBytesToHumanReadableString(totalBytes) : '---',
+  bytesWritten: convertBytesToHumanReadableString(bytesWritten),
+  episodeId: id,
+  percent: totalBytes > 0 ? bytesWritten / totalBytes : 0
+})
+
+const PVDownloadEngine = getNativeDownloadEngine()
+if (PVDownloadEngine) {
+  const nativeDownloadEvents = new NativeEventEmitter(PVDownloadEngine)
+
+  nativeDownloadEvents.addListener('PVDownloadProgress', ({ downloads }) => {
+    DownloadState.updateDownloadsProgress(downloads.map(convertNativeDownloadProgress))
+  })
+
+  nativeDownloadEvents.addListener('PVDownloadStateChanged', ({ id, status, error }) => {
+    if (status === DownloadStatus.FINISHED) {
+      finishNativeDownload(id)
+    } else if (status === DownloadStatus.ERROR) {
+      DownloadState.updateDownloadError(id)
+      errorLogger(_fileName, 'Download failed', error)
+    }
+  })
+}
+
 // NOTE: I was unable to get BackgroundDownloader to successfully resume tasks that were
 // retrieved from checkForExistingDownloads, so as a workaround, I am forcing those existing tasks
 // to always be restarted instead of resumed.
@@ -212,12 +290,6 @@ export const downloadEpisode = async (
     }
   }
 
-  const progressLimiter = new Bottleneck({
-    highWater: 0,
-    maxConcurrent: 1,
-    minTime: 2000
-  })
-
   let finalFeedUrl = podcast.addByRSSPodcastFeedUrl
   if (podcast.credentialsRequired && !podcast.addByRSSPodcastFeedUrl && podcast.id) {
     finalFeedUrl = await getPodcastFeedUrlAuthority(podcast.id)
@@ -239,6 +311,27 @@ export const downloadEpisode = async (
     if (episode?.imageUrl) await downloadImageFile(episode.imageUrl)
   })()
 
+  const nativeDownloadEngine = getNativeDownloadEngine()
+  if (nativeDownloadEngine) {
+    if (!restart) {
+      episode.podcast = podcast
+      await addDownloadingEpisode(episode)
+    }
+
+    nativeDownloads[episode.id] = { customLocation, episode, ext, origDestination, podcast }
+    await nativeDownloadEngine.download(episode.id, downloadUrl, origDestination, {
+      'user-agent': getAppUserAgent(),
+      ...(Authorization ? { Authorization } : {})
+    })
+    return
+  }
+
+  const progressLimiter = new Bottleneck({
+    highWater: 0,
+    maxConcurrent: 1,
+    minTime: 2000
+  })
+
   // Wait for t.stop() to complete
   setTimeout(() => {
     const task = downloader
@@ -317,6 +410,11 @@ export const deleteDownloadedEpisode = async (episode: Episode) => {
 }
 
 export const initDownloads = async () => {
+  const nativeDownloadEngine = getNativeDownloadEngine()
+  if (nativeDownloadEngine) {
+    return initNativeDownloads(nativeDownloadEngine)
+  }
+
   const [episodes, downloader] = await Promise.all([getDownloadingEpisodes(), BackgroundDownloader()])
   existingDownloadTasks = await downloader.checkForExistingDownloads()
 
@@ -346,26 +444,13 @@ export const initDownloads = async () => {
 
     if (episode) {
       const bytesTotal = downloadTask.totalBytes ? convertBytesToHumanReadableString(downloadTask.totalBytes) : '---'
-      const podcast = episode.podcast || {}
-
-      downloadTaskStates.push({
-        addByRSSPodcastFeedUrl: podcast.addByRSSPodcastFeedUrl || '',
-        bytesTotal,
-        bytesWritten: '0 KB',
-        episodeId: episode.id || '',
-        episodeImageUrl: episode.imageUrl || '',
-        episodeMediaUrl: episode.mediaUrl || '',
-        episodePubDate: episode.pubDate || '',
-        episodeTitle: episode.title || '',
-        percent: 0,
-        podcastId: podcast.id || '',
-        podcastImageUrl: podcast.shrunkImageUrl || podcast.imageUrl || '',
-        podcastIsExplicit: !!podcast.isExplicit,
-        podcastItunesFeedType: podcast.itunesFeedType,
-        podcastSortableTitle: podcast.sortableTitle || '',
-        podcastTitle: podcast.title || '',
-        status: downloadTask.state
-      } as DownloadState.DownloadTaskState)
+      downloadTaskStates.push(
+        convertDownloadingEpisodeToDownloadTaskState(episode, downloadTask.state, {
+          bytesTotal,
+          bytesWritten: '0 KB',
+          percent: 0
+        })
+      )
     }
   }
 
@@ -382,6 +467,128 @@ export const initDownloads = async () => {
     }
   }
 
+  return {
+    downloadsArrayInProgress: downloadTaskStates,
+    downloadsActive: getDownloadsActive(downloadTaskStates)
+  }
+}
+
+const initNativeDownloads = async (nativeDownloadEngine: any) => {
+  const [episodes, downloads] = await Promise.all([getDownloadingEpisodes(), nativeDownloadEngine.getDownloads()])
+
+  for (const download of downloads) {
+    if (!episodes.some((x: any) => x.id === download.id)) {
+      // A finished download's file may already be the downloaded episode, so only forget it
+      if (download.status === DownloadStatus.FINISHED) {
+        await nativeDownloadEngine.clear(download.id)
+      } else {
+        await nativeDownloadEngine.cancel(download.id)
+      }
+    }
+  }
+
+  // Episodes that were downloading under RNBackgroundDownloader before the native engine took over
+  const legacyEpisodes = episodes.filter((x: any) => !downloads.some((y: any) => y.id === x.id))
+  const requeuedEpisodes = []
+  let timeout = 0
+  if (legacyEpisodes.length > 0) {
+    const [legacyTasks, downloadedPodcasts] = await Promise.all([
+      BackgroundDownloader().checkForExistingDownloads(),
+      getDownloadedPodcasts()
+    ])
+
+    for (const task of legacyTasks) {
+      await task.stop()
+      timeout = 1000
+    }
+
+    for (const episode of legacyEpisodes) {
+      const isDownloaded = downloadedPodcasts.some((x: any) =>
+        safelyUnwrapNestedVariable(() => x.episodes, []).some((y: any) => y.id === episode.id)
+      )
+      if (isDownloaded) {
+        await removeDownloadingEpisode(episode.id)
+      } else {
+        requeuedEpisodes.push(episode)
+      }
+    }
+  }
+
+  const shouldDownload = await hasValidDownloadingConnection()
+  const downloadTaskStates = []
+  for (const download of downloads) {
+    const episode = episodes.find((x: any) => x.id === download.id)
+    if (!episode) continue
+
+    nativeDownloads[episode.id] = await getNativeDownloadParams(episode, download.destination)
+
+    if (download.status === DownloadStatus.FINISHED) {
+      finishNativeDownload(episode.id)
+      continue
+    }
+
+    const { bytesTotal, bytesWritten, percent } = convertNativeDownloadProgress(download)
+    downloadTaskStates.push(
+      convertDownloadingEpisodeToDownloadTaskState(episode, download.status, { bytesTotal, bytesWritten, percent })
+    )
+
+    // Downloads that were running when the app was killed are left pending
+    if (download.status === DownloadStatus.PENDING && shouldDownload) {
+      nativeDownloadEngine.resume(download.id)
+    }
+  }
+
+  // The old library's partial files can't be resumed, so those downloads start over in the native engine
+  for (const episode of requeuedEpisodes) {
+    downloadTaskStates.push(
+      convertDownloadingEpisodeToDownloadTaskState(episode, DownloadStatus.PENDING, {
+        bytesTotal: '---',
+        bytesWritten: '0 KB',
+        percent: 0
+      })
+    )
+
+    // Wait for task.stop() to complete
+    setTimeout(() => {
+      const restart = true
+      downloadEpisode(episode, episode.podcast, restart)
+    }, timeout)
+  }
+
+  return {
+    downloadsArrayInProgress: downloadTaskStates,
+    downloadsActive: getDownloadsActive(downloadTaskStates)
+  }
+}
+
+const convertDownloadingEpisodeToDownloadTaskState = (
+  episode: any,
+  status: DownloadStatus,
+  progress: { bytesTotal: string; bytesWritten: string; percent: number }
+) => {
+  const podcast = episode.podcast || {}
+
+  return {
+    addByRSSPodcastFeedUrl: podcast.addByRSSPodcastFeedUrl || '',
+    bytesTotal: progress.bytesTotal,
+    bytesWritten: progress.bytesWritten,
+    episodeId: episode.id || '',
+    episodeImageUrl: episode.imageUrl || '',
+    episodeMediaUrl: episode.mediaUrl || '',
+    episodePubDate: episode.pubDate || '',
+    episodeTitle: episode.title || '',
+    percent: progress.percent,
+    podcastId: podcast.id || '',
+    podcastImageUrl: podcast.shrunkImageUrl || podcast.imageUrl || '',
+    podcastIsExplicit: !!podcast.isExplicit,
+    podcastItunesFeedType: podcast.itunesFeedType,
+    podcastSortableTitle: podcast.sortableTitle || '',
+    podcastTitle: podcast.title || '',
+    status
+  } as DownloadState.DownloadTaskState
+}
+
+const getDownloadsActive = (downloadTaskStates: DownloadState.DownloadTaskState[]) => {
   const downloadsActive = {}
   for (const downloadTaskState of downloadTaskStates) {
     if (
@@ -394,14 +601,24 @@ export const initDownloads = async () => {
     }
   }
 
-  return {
-    downloadsArrayInProgress: downloadTaskStates,
-    downloadsActive
-  }
+  return downloadsActive
 }
 
 export const resumeDownloadTask = async (downloadTaskState: DownloadState.DownloadTaskState) => {
   const { episodeId } = downloadTaskState
+
+  const nativeDownloadEngine = getNativeDownloadEngine()
+  if (nativeDownloadEngine) {
+    const isResumed = await nativeDownloadEngine.resume(episodeId)
+    if (!isResumed) {
+      const podcast = DownloadState.convertDownloadTaskStateToPodcast(downloadTaskState)
+      const episode = DownloadState.convertDownloadTaskStateToEpisode(downloadTaskState)
+      const restart = true
+      await downloadEpisode(episode, podcast, restart)
+    }
+    return
+  }
+
   const task = downloadTasks.find((task) => task.id === episodeId)
 
   if (existingDownloadTasks.some((x: any) => x.id === episodeId)) {
@@ -422,6 +639,15 @@ export const resumeDownloadTask = async (downloadTaskState: DownloadState.Downlo
 
 export const refreshDownloads = async () => {
   const downloadingEpisodes = await getDownloadingEpisodes()
+
+  const nativeDownloadEngine = getNativeDownloadEngine()
+  if (nativeDownloadEngine) {
+    for (const episode of downloadingEpisodes) {
+      await nativeDownloadEngine.resume(episode.id)
+    }
+    return
+  }
+
   downloadTasks.forEach((dTask: any) => {
     if (downloadingEpisodes.some((episode: any) => episode.id === dTask.id)) {
       dTask.resume()
@@ -431,6 +657,13 @@ export const refreshDownloads = async () => {
 
 export const pauseDownloadTask = (downloadTaskState: DownloadState.DownloadTaskState) => {
   const { episodeId } = downloadTaskState
+
+  const nativeDownloadEngine = getNativeDownloadEngine()
+  if (nativeDownloadEngine) {
+    nativeDownloadEngine.pause(episodeId)
+    return
+  }
+
   const task = downloadTasks.find((task) => task.id === episodeId)
   if (task) task.pause()
 }
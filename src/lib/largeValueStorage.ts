@@ -0,0 +1,44 @@
+import AsyncStorage from '@react-native-community/async-storage'
+import { NativeModules, Platform } from 'react-native'
+import { setItemWithStorageCapacityCheck } from './asyncStorage'
+
+/*
+  Storage for values that can grow too large for a single AsyncStorage row.
+  On Android they are stored in chunks by the PVLargeValueStorage native module,
+  which moves a key out of AsyncStorage the first time it is read.
+  Elsewhere this falls back to AsyncStorage.
+*/
+
+const getLargeValueStorageModule = () => {
+  const { PVLargeValueStorage } = NativeModules
+  return Platform.OS === 'android' && PVLargeValueStorage ? PVLargeValueStorage : null
+}
+
+export const getLargeItem = async (key: string): Promise<string | null> => {
+  const PVLargeValueStorage = getLargeValueStorageModule()
+  if (PVLargeValueStorage) {
+    return PVLargeValueStorage.getItem(key)
+  }
+
+  return AsyncStorage.getItem(key)
+}
+
+export const setLargeItem = async (key: string, value: string) => {
+  const PVLargeValueStorage = getLargeValueStorageModule()
+  if (PVLargeValueStorage) {
+    await PVLargeValueStorage.setItem(key, value)
+    return
+  }
+
+  await setItemWithStorageCapacityCheck(key, value)
+}
+
+export const removeLargeItem = async (key: string) => {
+  const PVLargeValueStorage = getLargeValueStorageModule()
+  if (PVLargeValueStorage) {
+    await PVLargeValueStorage.removeItem(key)
+    return
+  }
+
+  await AsyncStorage.removeItem(key)
+}
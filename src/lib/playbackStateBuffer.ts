@@ -0,0 +1,77 @@
+import AsyncStorage from '@react-native-community/async-storage'
+import { NativeModules, Platform } from 'react-native'
+import { errorLogger } from './logger'
+
+/*
+  Storage for the keys that are rewritten on a timer during playback
+  (NOW_PLAYING_ITEM, HISTORY_ITEMS and HISTORY_ITEMS_INDEX).
+  On Android writes are held in memory by the PVPlaybackState native module,
+  which coalesces them per key and flushes them to AsyncStorage in one transaction
+  on an interval, on pause, on track change and when the app is trimmed.
+  Elsewhere this falls back to AsyncStorage.
+  These keys must always be read through here, so reads see pending writes.
+*/
+
+const _fileName = 'src/lib/playbackStateBuffer.ts'
+
+const getPlaybackStateModule = () => {
+  const { PVPlaybackState } = NativeModules
+  return Platform.OS === 'android' && PVPlaybackState ? PVPlaybackState : null
+}
+
+export const getBufferedItem = async (key: string): Promise<string | null> => {
+  const PVPlaybackState = getPlaybackStateModule()
+  if (PVPlaybackState) {
+    return PVPlaybackState.getItem(key)
+  }
+
+  return AsyncStorage.getItem(key)
+}
+
+export const setBufferedItem = async (key: string, value: string) => {
+  const PVPlaybackState = getPlaybackStateModule()
+  if (PVPlaybackState) {
+    await PVPlaybackState.setItem(key, value)
+    return
+  }
+
+  await AsyncStorage.setItem(key, value)
+}
+
+export const removeBufferedItem = async (key: string) => {
+  const PVPlaybackState = getPlaybackStateModule()
+  if (PVPlaybackState) {
+    await PVPlaybackState.removeItem(key)
+    return
+  }
+
+  await AsyncStorage.removeItem(key)
+}
+
+export const flushPlaybackStateBuffer = async () => {
+  const PVPlaybackState = getPlaybackStateModule()
+  if (PVPlaybackState) {
+    try {
+      await PVPlaybackState.flush()
+    } catch (error) {
+      errorLogger(_fileName, 'flushPlaybackStateBuffer', error)
+    }
+  }
+}
+
+/* Pausing also flushes. Playing time is used for getPlaybackStateBufferStats. */
+export const setPlaybackStateBufferPlaying = async (isPlaying: boolean) => {
+  const PVPlaybackState = getPlaybackStateModule()
+  if (PVPlaybackState) {
+    try {
+      await PVPlaybackState.setPlaying(isPlaying)
+    } catch (error) {
+      errorLogger(_fileName, 'setPlaybackStateBufferPlaying', error)
+    }
+  }
+}
+
+export const getPlaybackStateBufferStats = async () => {
+  const PVPlaybackState = getPlaybackStateModule()
+  return PVPlaybackState ? PVPlaybackState.getStats() : null
+}
@@ -1,11 +1,95 @@
 import { convertSecToHHMMSS, removeLinebreaks, TranscriptRow } from 'podverse-shared'
+import { NativeModules, Platform } from 'react-native'
 import { convertFile, Options, TimestampFormatter } from 'transcriptator'
 import wordWrap from 'word-wrap'
 import { request } from '../services/request'
 import { errorLogger } from './logger'
+import { getAppUserAgent } from './utility'
 
 const _fileName = 'src/lib/transcriptHelpers.ts'
 
+const maxSearchResults = 500
+
+/*
+  A parsed transcript, read a page of rows at a time. Its rows are laid out for the synced-transcript view:
+  an empty row and a speaker row before the lines of a segment with a speaker, and the segment's body
+  word wrapped to 32 columns, one row per line. Every line keeps the startTime / endTime of its segment,
+  and only the first has startTimeFormatted.
+*/
+export type ParsedTranscript = {
+  rowCount: number
+  getRows: (offset: number, limit: number) => Promise<TranscriptRow[]>
+  // The index of the first line playing at a position in seconds, or -1, and how many lines it has
+  getRowAtTime: (position: number) => Promise<{ index: number; lineCount: number }>
+  searchRows: (searchText: string) => Promise<TranscriptRow[]>
+}
+
+/*
+  On Android transcripts are parsed and laid out natively by the PVTranscript module, which keeps them
+  in compact arrays, so a long transcript isn't turned into an object per row in JS.
+  It rejects with UNSUPPORTED_FORMAT for transcripts that aren't SRT, VTT or JSON,
+  which are parsed with transcriptator instead.
+*/
+const getNativeTranscriptEngine = () => {
+  const { PVTranscript } = NativeModules
+  return Platform.OS === 'android' && PVTranscript ? PVTranscript : null
+}
+
+const createArrayTranscript = (rows: TranscriptRow[]): ParsedTranscript => ({
+  rowCount: rows.length,
+  getRows: async (offset: number, limit: number) => rows.slice(offset, offset + limit),
+  getRowAtTime: async (position: number) => {
+    const index = rows.findIndex((item: any) => item.startTime < position && item.endTime > position)
+    return { index, lineCount: index >= 0 ? (rows[index] as any).lineCount || 0 : 0 }
+  },
+  searchRows: async (searchText: string) =>
+    rows
+      .filter((item: any) => item?.body?.toLowerCase().includes(searchText?.toLowerCase()))
+      .slice(0, maxSearchResults)
+})
+
+export const emptyParsedTranscript = createArrayTranscript([])
+
+const formatNativeTranscriptRow = (row: any) => {
+  if (row.body === undefined) return row
+
+  const startTimeFormatted = row.lineIndex === 0 ? convertSecToHHMMSS(row.startTime) : ''
+  const endTimeFormatted = row.lineIndex === 0 ? convertSecToHHMMSS(row.endTime) : ''
+  return { ...row, startTimeFormatted, endTimeFormatted }
+}
+
+const createNativeTranscript = (
+  PVTranscript: any,
+  transcript: { transcriptId: string; rowCount: number },
+  reload: () => Promise<any>
+): ParsedTranscript => {
+  const { transcriptId, rowCount } = transcript
+
+  // Only a few transcripts stay loaded natively, so load it again if it was evicted
+  const call = async (method: () => Promise<any>) => {
+    try {
+      return await method()
+    } catch (error) {
+      if (error?.code !== 'TRANSCRIPT_NOT_LOADED') throw error
+      await reload()
+      return method()
+    }
+  }
+
+  return {
+    rowCount,
+    getRows: async (offset: number, limit: number) => {
+      const rows = await call(() => PVTranscript.getRows(transcriptId, offset, limit))
+      return rows.map(formatNativeTranscriptRow)
+    },
+    getRowAtTime: (position: number) => call(() => PVTranscript.getRowAtTime(transcriptId, position)),
+    searchRows: async (searchText: string) => {
+      const rows = await call(() => PVTranscript.searchRows(transcriptId, searchText, maxSearchResults))
+      return rows.map(formatNativeTranscriptRow)
+    }
+  }
+}
+
 Options.setOptions({
   combineSegments: true,
   combineSegmentsLength: 64,
@@ -75,6 +159,19 @@ const enrichTranscriptatorResult = (parsedTranscript: TranscriptRow[]) => {
 export const getParsedTranscript = async (transcriptUrl: string) => {
   let parsedTranscript = [] as TranscriptRow[]
 
+  const PVTranscript = getNativeTranscriptEngine()
+  if (PVTranscript) {
+    try {
+      const load = () => PVTranscript.loadTranscript(transcriptUrl, getAppUserAgent())
+      return createNativeTranscript(PVTranscript, await load(), load)
+    } catch (error) {
+      if (error?.code !== 'UNSUPPORTED_FORMAT') {
+        errorLogger(_fileName, 'getParsedTranscript native', error)
+        return createArrayTranscript(parsedTranscript)
+      }
+    }
+  }
+
   try {
     const response = await request({}, transcriptUrl)
     const { data } = response
@@ -84,7 +181,7 @@ export const getParsedTranscript = async (transcriptUrl: string) => {
     errorLogger(_fileName, 'getParsedTranscript', error)
   }
 
-  return parsedTranscript
+  return createArrayTranscript(parsedTranscript)
 }
 
 export const getEpisodeProxyTranscript = async (episodeId: string, language?: string) => {
@@ -94,17 +191,36 @@ export const getEpisodeProxyTranscript = async (episodeId: string, language?: st
     ? `/episode/${episodeId}/proxy/transcript?${language}`
     : `/episode/${episodeId}/proxy/transcript`
 
-  try {
+  const getProxyTranscript = async () => {
     const response = await request({
       endpoint,
       opts: { timeout: 15000 }
     })
-    const { data } = response
-    parsedTranscript = convertFile(data.data)
+    return response.data.data
+  }
+
+  try {
+    const data = await getProxyTranscript()
+
+    const PVTranscript = getNativeTranscriptEngine()
+    if (PVTranscript) {
+      const transcriptId = `episode:${episodeId}:${language || ''}`
+      const load = async (text: any) =>
+        PVTranscript.loadTranscriptText(transcriptId, typeof text === 'string' ? text : JSON.stringify(text))
+
+      try {
+        const transcript = await load(data)
+        return createNativeTranscript(PVTranscript, transcript, async () => load(await getProxyTranscript()))
+      } catch (error) {
+        if (error?.code !== 'UNSUPPORTED_FORMAT') throw error
+      }
+    }
+
+    parsedTranscript = convertFile(data)
     parsedTranscript = enrichTranscriptatorResult(parsedTranscript)
   } catch (error) {
     console.log('getParsedTranscript error:', error)
   }
 
-  return parsedTranscript
+  return createArrayTranscript(parsedTranscript)
 }
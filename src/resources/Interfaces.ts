@@ -1,4 +1,5 @@
-import { TranscriptRow, ValueTransaction } from 'podverse-shared'
+import { ValueTransaction } from 'podverse-shared'
+import { ParsedTranscript } from '../lib/transcriptHelpers'
 import { AutoQueueSettingsPosition } from '../services/autoQueue'
 import { QueueRepeatModeMusic } from '../services/queue'
 import { V4VProviderConnectedState, V4VSettings } from '../state/actions/v4v/v4v'
@@ -129,7 +130,7 @@ export interface InitialState {
   overlayAlert: {
     shouldShowAlert: boolean
   }
-  parsedTranscript: TranscriptRow[] | null
+  parsedTranscript: ParsedTranscript | null
   clipIntervalActive: boolean
   currentChapter: any
   currentChapters: any
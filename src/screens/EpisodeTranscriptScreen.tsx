@@ -1,10 +1,14 @@
-import { TranscriptRow } from 'podverse-shared'
 import { StyleSheet } from 'react-native'
 import React from 'reactn'
 import { ActivityIndicator, MediaPlayerCarouselTranscripts, View } from '../components'
 import { errorLogger } from '../lib/logger'
 import { translate } from '../lib/i18n'
-import { getEpisodeProxyTranscript, getParsedTranscript } from '../lib/transcriptHelpers'
+import {
+  emptyParsedTranscript,
+  getEpisodeProxyTranscript,
+  getParsedTranscript,
+  ParsedTranscript
+} from '../lib/transcriptHelpers'
 
 const _fileName = 'src/screens/EpisodeTranscriptScreen.tsx'
 
@@ -14,7 +18,7 @@ type Props = {
 
 type State = {
   isLoading: boolean
-  parsedTranscript: TranscriptRow[]
+  parsedTranscript: ParsedTranscript
 }
 
 const testIDPrefix = 'episode_transcript_screen'
@@ -27,7 +31,7 @@ export class EpisodeTranscriptScreen extends React.Component<Props, State> {
 
     this.state = {
       isLoading: true,
-      parsedTranscript: []
+      parsedTranscript: emptyParsedTranscript
     }
   }
 
@@ -37,7 +41,7 @@ export class EpisodeTranscriptScreen extends React.Component<Props, State> {
 
   async componentDidMount() {
     const episode = this.props.navigation.getParam('episode') || {}
-    let parsedTranscript = [] as TranscriptRow[]
+    let parsedTranscript = emptyParsedTranscript
 
     if (episode?.transcript?.[0]?.url && episode?.transcript?.[0]?.type) {
       try {
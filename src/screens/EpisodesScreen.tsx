@@ -645,7 +645,9 @@ export class EpisodesScreen extends HistoryIndexListenerScreen<Props, State> {
 
         const hasAddByRSSEpisodes = await hasAddByRSSEpisodesLocally()
         if (querySort === PV.Filters._mostRecentKey && hasAddByRSSEpisodes) {
-          results = await combineEpisodesWithAddByRSSEpisodesLocally(results, searchTitle)
+          const lastLoadedPubDate = flatListData[flatListData.length - 1]?.pubDate
+          const hasVideo = false
+          results = await combineEpisodesWithAddByRSSEpisodesLocally(results, searchTitle, hasVideo, lastLoadedPubDate)
         }
 
         newState.flatListData = [...flatListData, ...results[0]]
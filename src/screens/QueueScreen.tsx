@@ -22,7 +22,7 @@ import PVEventEmitter from '../services/eventEmitter'
 import { audioMovePlayerItemToNewPosition } from '../services/playerAudio'
 import { playerSyncPlayerWithQueue } from '../services/player'
 import { playerLoadNowPlayingItem } from '../state/actions/player'
-import { addQueueItemToServer, getQueueItems, removeQueueItem, setAllQueueItemsLocally } from '../state/actions/queue'
+import { addQueueItemToServer, getQueueItems, moveQueueItemLocally, removeQueueItem } from '../state/actions/queue'
 import { getHistoryItems, removeHistoryItem } from '../state/actions/userHistoryItem'
 import { core } from '../styles'
 import { HistoryIndexListenerScreen } from './HistoryIndexListenerScreen'
@@ -343,7 +343,7 @@ export class QueueScreen extends HistoryIndexListenerScreen<Props, State> {
       const { queueItems: previousQueueItems = [] } = this.global.session.userInfo
       const item = previousQueueItems[from] as any
 
-      await setAllQueueItemsLocally(data)
+      await moveQueueItemLocally(item, data[to + 1], data)
 
       const offset = to < from ? -1 : 0
       to = (to + 1) * 1000 + offset
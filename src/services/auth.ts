@@ -4,6 +4,7 @@ import * as RNKeychain from 'react-native-keychain'
 import { errorLogger } from '../lib/logger'
 import { translate } from '../lib/i18n'
 import { hasValidNetworkConnection } from '../lib/network'
+import { getBufferedItem, setBufferedItem } from '../lib/playbackStateBuffer'
 import { Credentials, logoutUser } from '../state/actions/auth'
 import { PV } from '../resources'
 import { checkIfNotificationsEnabled } from './notifications'
@@ -108,13 +109,13 @@ export const getAuthenticatedUserInfoLocally = async () => {
   }
 
   try {
-    const historyItemsJSON = await AsyncStorage.getItem(PV.Keys.HISTORY_ITEMS)
+    const historyItemsJSON = await getBufferedItem(PV.Keys.HISTORY_ITEMS)
     if (historyItemsJSON) {
       historyItems = JSON.parse(historyItemsJSON)
     }
   } catch (error) {
     if (Array.isArray(historyItems)) {
-      await AsyncStorage.setItem(PV.Keys.HISTORY_ITEMS, JSON.stringify(historyItems))
+      await setBufferedItem(PV.Keys.HISTORY_ITEMS, JSON.stringify(historyItems))
     }
   }
 
@@ -2,9 +2,11 @@ import AsyncStorage from '@react-native-community/async-storage'
 import { encode as btoa } from 'base-64'
 import pLimit from 'p-limit'
 import { checkIfContainsStringMatch, isValidDate } from 'podverse-shared'
+import { NativeModules, Platform } from 'react-native'
 import * as RNKeychain from 'react-native-keychain'
 import { getGlobal } from 'reactn'
 import { setItemWithStorageCapacityCheck } from '../lib/asyncStorage'
+import { getLargeItem, setLargeItem } from '../lib/largeValueStorage'
 import { debugLogger, errorLogger } from '../lib/logger'
 import { downloadEpisode } from '../lib/downloader'
 import { downloadCustomFileNameId } from '../lib/hash'
@@ -29,15 +31,91 @@ addByRSSPodcast: object {
 }
 */
 
+/*
+  On Android the episodes are also indexed natively by PVEpisodeStore,
+  so episode lists can query them without loading every podcast.
+*/
+const getNativeEpisodeStore = () => {
+  const { PVEpisodeStore } = NativeModules
+  return Platform.OS === 'android' && PVEpisodeStore ? PVEpisodeStore : null
+}
+
+/*
+  On Android feeds are downloaded and parsed by the PVFeedParser native module
+  on a pool of worker threads sized by customRSSParallelParserLimit,
+  so XML parsing doesn't block the JS thread. It resolves with the same
+  { meta, episodes } shape as podcastFeedParser, limited to the fields used here.
+  With useCache it sends the ETag / Last-Modified of the last parse and resolves with null
+  when the server responds 304, or the body hasn't changed. When the body has changed it resolves with
+  { meta, isDelta: true, added, updated, removed } instead: only the episodes added or updated since the
+  items last committed with commitFeeds, and the keys (see getAddByRSSEpisodeKey) of the removed ones.
+*/
+const getNativeFeedParser = () => {
+  const { PVFeedParser } = NativeModules
+  return Platform.OS === 'android' && PVFeedParser ? PVFeedParser : null
+}
+
+const getPodcastFromURL = async (
+  options: { url: string; headers: any; timeout: number },
+  feedUrl: string,
+  useCache?: boolean
+) => {
+  const PVFeedParser = getNativeFeedParser()
+  if (PVFeedParser) {
+    const resultString = await PVFeedParser.parseFeed(
+      options.url,
+      feedUrl,
+      options.headers,
+      options.timeout,
+      !!useCache
+    )
+    return resultString ? JSON.parse(resultString) : null
+  }
+
+  return podcastFeedParser.getPodcastFromURL(options)
+}
+
+/*
+  PVFeedParser only diffs against feeds whose podcast has been saved,
+  so commit them once the podcasts parsed from them are saved.
+*/
+const commitParsedFeeds = async (feedUrls: string[]) => {
+  const PVFeedParser = getNativeFeedParser()
+  if (PVFeedParser && feedUrls.length > 0) {
+    try {
+      await PVFeedParser.commitFeeds(feedUrls)
+    } catch (error) {
+      errorLogger(_fileName, 'commitParsedFeeds', error)
+    }
+  }
+}
+
+// Matches the item key PVFeedParser uses to diff feeds
+const getAddByRSSEpisodeKey = (episode: any) => episode.guid || episode.mediaUrl
+
 export const hasAddByRSSEpisodesLocally = async () => {
+  const PVEpisodeStore = getNativeEpisodeStore()
+  if (PVEpisodeStore) {
+    return PVEpisodeStore.hasEpisodes()
+  }
+
   const results = await getAddByRSSEpisodesLocally()
   return results.length > 0
 }
 
+// Matches the page size of the episodes the server returns
+const addByRSSEpisodesPageSize = 20
+
+/*
+  lastLoadedPubDate is the pubDate of the last episode already in the list, when results is a
+  page after the first. With the native episode store only the episodes that belong between it
+  and the oldest of results are loaded, or the next page of them once there are no results.
+*/
 export const combineEpisodesWithAddByRSSEpisodesLocally = async (
   results: any[],
   searchTitle?: string,
-  hasVideo?: boolean
+  hasVideo?: boolean,
+  lastLoadedPubDate?: Date | string
 ) => {
   let mostRecentDate = ''
   let oldestDate = ''
@@ -61,32 +139,70 @@ export const combineEpisodesWithAddByRSSEpisodesLocally = async (
   mostRecentDate = mostRecentDate ? mostRecentDate : new Date().toString()
   oldestDate = oldestDate ? oldestDate : new Date(0).toString()
 
-  let addByRSSEpisodes =
-    results.length > 0
-      ? await getAddByRSSEpisodesLocallyByDateRange(new Date(mostRecentDate), new Date(oldestDate))
-      : await getAddByRSSEpisodesLocally()
+  let addByRSSEpisodes = [] as any[]
+  let addByRSSEpisodesCount = 0
+  const PVEpisodeStore = getNativeEpisodeStore()
 
-  if (searchTitle) {
+  if (PVEpisodeStore) {
+    const filters = {
+      ...(searchTitle ? { searchTitle } : {}),
+      ...(hasVideo ? { hasVideo } : {})
+    }
+    const mostRecentPubDate = lastLoadedPubDate ? new Date(lastLoadedPubDate).valueOf() : null
+    const hasResults = results[0].length > 0
+    const [episodesString, count] = await Promise.all([
+      PVEpisodeStore.queryEpisodes({
+        ...filters,
+        ...(mostRecentPubDate !== null && !isNaN(mostRecentPubDate) ? { mostRecentPubDate } : {}),
+        // Between pages of results, every episode down to the oldest result belongs to this page.
+        // Without results, episodes are paged on their own.
+        ...(hasResults ? { oldestPubDate: new Date(oldestDate).valueOf() } : { limit: addByRSSEpisodesPageSize })
+      }),
+      PVEpisodeStore.countEpisodes(filters)
+    ])
+    addByRSSEpisodes = JSON.parse(episodesString)
+    addByRSSEpisodesCount = count
+  } else {
+    addByRSSEpisodes =
+      results.length > 0
+        ? await getAddByRSSEpisodesLocallyByDateRange(new Date(mostRecentDate), new Date(oldestDate))
+        : await getAddByRSSEpisodesLocally()
+  }
+
+  if (searchTitle && !PVEpisodeStore) {
     addByRSSEpisodes = addByRSSEpisodes.filter(
       (episode) => episode.title && checkIfContainsStringMatch(searchTitle, episode.title)
     )
   }
 
-  if (hasVideo) {
+  if (hasVideo && !PVEpisodeStore) {
     addByRSSEpisodes = addByRSSEpisodes.filter((episode) => episode.hasVideo)
   }
 
+  if (!PVEpisodeStore) {
+    addByRSSEpisodesCount = addByRSSEpisodes.length
+  }
+
   const sortedResults = [...results[0], ...addByRSSEpisodes].sort((a: any, b: any) => {
     const dateA = new Date(a.pubDate) as any
     const dateB = new Date(b.pubDate) as any
     return dateB - dateA
   })
 
-  const newCount = results[1] + addByRSSEpisodes.length
+  const newCount = results[1] + addByRSSEpisodesCount
 
   return [sortedResults, newCount]
 }
 
+/*
+  { requests, notModified, unchangedBody, parsed, bytesDownloaded, notModifiedRate, hitRate,
+    itemsSent, itemsSkipped } since app start
+*/
+export const getFeedCacheStats = async () => {
+  const PVFeedParser = getNativeFeedParser()
+  return PVFeedParser ? PVFeedParser.getFeedCacheStats() : null
+}
+
 export const getAddByRSSEpisodesLocally = async () => {
   const addByRSSPodcasts = await getAddByRSSPodcastsLocally()
   const combinedEpisodes = [] as any[]
@@ -135,7 +251,7 @@ export const getAddByRSSPodcastLocally = async (feedUrl: string) => {
 
 export const getAddByRSSPodcastsLocally = async () => {
   try {
-    const itemsString = await AsyncStorage.getItem(PV.Keys.ADD_BY_RSS_PODCASTS)
+    const itemsString = await getLargeItem(PV.Keys.ADD_BY_RSS_PODCASTS)
     return itemsString ? JSON.parse(itemsString) : []
   } catch (error) {
     errorLogger(_fileName, 'getAddByRSSPodcastsLocally', error)
@@ -153,10 +269,24 @@ export const getAddByRSSPodcastFeedUrlsLocally = async () => {
   }
 }
 
-const setAddByRSSPodcastsLocally = async (podcasts: any[]) => {
+/*
+  changedPodcasts are the podcasts that were added or changed since the last write,
+  so only their episodes are indexed again in the native episode store.
+*/
+const setAddByRSSPodcastsLocally = async (podcasts: any[], changedPodcasts: any[]) => {
   if (Array.isArray(podcasts)) {
     const cleanedPodcasts = podcasts.filter((podcast: any) => !!podcast)
-    await setItemWithStorageCapacityCheck(PV.Keys.ADD_BY_RSS_PODCASTS, JSON.stringify(cleanedPodcasts))
+    await setLargeItem(PV.Keys.ADD_BY_RSS_PODCASTS, JSON.stringify(cleanedPodcasts))
+
+    const PVEpisodeStore = getNativeEpisodeStore()
+    if (PVEpisodeStore) {
+      try {
+        const feedUrls = cleanedPodcasts.map((podcast: any) => podcast.addByRSSPodcastFeedUrl)
+        await PVEpisodeStore.updateAddByRSSEpisodes(JSON.stringify(changedPodcasts), feedUrls)
+      } catch (error) {
+        errorLogger(_fileName, 'setAddByRSSPodcastsLocally updateAddByRSSEpisodes', error)
+      }
+    }
   }
 }
 
@@ -183,12 +313,16 @@ export const parseAllAddByRSSPodcasts = async () => {
       ? customRSSParallelParserLimit
       : PV.CustomRSS.parallelParserDefaultLimit
 
+  getNativeFeedParser()?.setParallelLimit(safeLimit)
+
   const limitParallelDownloads = pLimit(safeLimit)
   const promises = urls.map((url: string) => {
     return limitParallelDownloads(async () => {
       try {
         const credentials = allAddByRSSPodcastCredentials[url] || ''
-        const parsedPodcast = await parseAddByRSSPodcast(url, credentials)
+        const throwError = false
+        const useFeedCache = true
+        const parsedPodcast = await parseAddByRSSPodcast(url, credentials, throwError, useFeedCache)
         if (parsedPodcast) {
           parsedPodcasts.push(parsedPodcast)
         }
@@ -200,39 +334,75 @@ export const parseAllAddByRSSPodcasts = async () => {
 
   await Promise.all(promises)
 
-  const localPodcasts = await getAddByRSSPodcastsLocally()
-  for (const parsedPodcast of parsedPodcasts) {
-    const index = localPodcasts.findIndex(
+  let localPodcasts = await getAddByRSSPodcastsLocally()
+  const lastAutoDownloadsRefreshDate = await getAutoDownloadsLastRefreshDate()
+  const lastNewEpisodesCountRefreshDate = await getNewEpisodeCountCustomRSSLastRefreshDate()
+  const changedFeedUrls: string[] = []
+
+  for (let parsedPodcast of parsedPodcasts) {
+    let index = localPodcasts.findIndex(
       (localPodcast: any) => localPodcast.addByRSSPodcastFeedUrl === parsedPodcast.addByRSSPodcastFeedUrl
     )
+
+    if (parsedPodcast.isUnchanged || (parsedPodcast.isDelta && index < 0)) {
+      if (parsedPodcast.isUnchanged && index >= 0) {
+        // Nothing has been published since the last refresh, so keep the saved podcast as it is
+        finalParsedPodcasts[index] = localPodcasts[index]
+        continue
+      }
+
+      // The saved podcast is missing, so parse the feed again without the cache
+      const credentials = allAddByRSSPodcastCredentials[parsedPodcast.addByRSSPodcastFeedUrl] || ''
+      parsedPodcast = await parseAddByRSSPodcast(parsedPodcast.addByRSSPodcastFeedUrl, credentials)
+      if (!parsedPodcast || parsedPodcast.isUnchanged) {
+        continue
+      }
+      localPodcasts = await getAddByRSSPodcastsLocally()
+      index = localPodcasts.findIndex(
+        (localPodcast: any) => localPodcast.addByRSSPodcastFeedUrl === parsedPodcast.addByRSSPodcastFeedUrl
+      )
+    }
+
+    let newEpisodes = parsedPodcast.episodes || []
+    if (parsedPodcast.isDelta) {
+      // Only the added episodes can be new, and the unchanged ones are kept from the saved podcast
+      newEpisodes = parsedPodcast.addedEpisodes
+      parsedPodcast = applyAddByRSSPodcastDelta(localPodcasts[index], parsedPodcast)
+      changedFeedUrls.push(parsedPodcast.addByRSSPodcastFeedUrl)
+    }
+
     if (index || index === 0) {
       finalParsedPodcasts[index] = parsedPodcast
     } else {
       finalParsedPodcasts.push(parsedPodcast)
     }
 
-    if (parsedPodcast.episodes && parsedPodcast.episodes.length) {
-      const lastAutoDownloadsRefreshDate = await getAutoDownloadsLastRefreshDate()
-      const lastNewEpisodesCountRefreshDate = await getNewEpisodeCountCustomRSSLastRefreshDate()
-      const newEpisodeIds = []
+    const newEpisodeIds = []
 
-      for (const episode of parsedPodcast.episodes) {
-        if (new Date(episode.pubDate).valueOf() > new Date(lastNewEpisodesCountRefreshDate).valueOf()) {
-          newEpisodeIds.push(episode.id)
-        }
-        if (new Date(episode.pubDate).valueOf() > new Date(lastAutoDownloadsRefreshDate).valueOf()) {
-          const restart = false
-          const waitToAddTask = true
-          if (autoDownloadPodcastSettings[parsedPodcast.addByRSSPodcastFeedUrl]) {
-            downloadEpisode(episode, parsedPodcast, restart, waitToAddTask)
-          }
+    for (const episode of newEpisodes) {
+      if (new Date(episode.pubDate).valueOf() > new Date(lastNewEpisodesCountRefreshDate).valueOf()) {
+        newEpisodeIds.push(episode.id)
+      }
+      if (new Date(episode.pubDate).valueOf() > new Date(lastAutoDownloadsRefreshDate).valueOf()) {
+        const restart = false
+        const waitToAddTask = true
+        if (autoDownloadPodcastSettings[parsedPodcast.addByRSSPodcastFeedUrl]) {
+          downloadEpisode(episode, parsedPodcast, restart, waitToAddTask)
         }
       }
+    }
+
+    if (newEpisodeIds.length > 0) {
       await handleUpdateNewEpisodesCountAddByRSS(parsedPodcast.id, newEpisodeIds)
     }
   }
 
-  await setAddByRSSPodcastsLocally(finalParsedPodcasts)
+  // Fully parsed podcasts were saved as they were parsed, so only the deltas are left to index
+  const changedPodcasts = finalParsedPodcasts.filter(
+    (podcast: any) => podcast && changedFeedUrls.includes(podcast.addByRSSPodcastFeedUrl)
+  )
+  await setAddByRSSPodcastsLocally(finalParsedPodcasts, changedPodcasts)
+  await commitParsedFeeds(changedFeedUrls)
 
   await AsyncStorage.setItem(PV.Keys.NEW_EPISODE_COUNT_CUSTOM_RSS_LAST_REFRESHED, new Date().toISOString())
 
@@ -296,7 +466,19 @@ export const removePodcastCredentials = async (feedUrl: string) => {
   )
 }
 
-export const parseAddByRSSPodcast = async (feedUrl: string, credentials?: string, throwError?: boolean) => {
+/*
+  With useFeedCache, resolves with { addByRSSPodcastFeedUrl, isUnchanged: true } instead of the podcast
+  when the feed hasn't changed since it was last parsed, and the saved podcast is left untouched.
+  When it has changed, it can resolve with the podcast's properties and { isDelta: true, addedEpisodes,
+  updatedEpisodes, removedEpisodeKeys } instead of its episodes, which isn't saved:
+  apply it to the saved podcast with applyAddByRSSPodcastDelta.
+*/
+export const parseAddByRSSPodcast = async (
+  feedUrl: string,
+  credentials?: string,
+  throwError?: boolean,
+  useFeedCache?: boolean
+) => {
   try {
     const userAgent = getAppUserAgent()
     const Authorization = credentials ? `Basic ${btoa(credentials)}` : ''
@@ -304,25 +486,33 @@ export const parseAddByRSSPodcast = async (feedUrl: string, credentials?: string
     let result = null
 
     try {
-      result = await podcastFeedParser.getPodcastFromURL({
-        url: feedUrl,
-        headers: {
-          'User-Agent': userAgent,
-          ...(Authorization ? { Authorization } : {})
-        },
-        timeout: 60000
-      })
-    } catch (error) {
-      if (feedUrl?.startsWith('http://')) {
-        debugLogger('retry parse using a secure protocol')
-        result = await podcastFeedParser.getPodcastFromURL({
-          url: feedUrl.replace('http://', 'https://'),
+      result = await getPodcastFromURL(
+        {
+          url: feedUrl,
           headers: {
             'User-Agent': userAgent,
             ...(Authorization ? { Authorization } : {})
           },
           timeout: 60000
-        })
+        },
+        feedUrl,
+        useFeedCache
+      )
+    } catch (error) {
+      if (feedUrl?.startsWith('http://')) {
+        debugLogger('retry parse using a secure protocol')
+        result = await getPodcastFromURL(
+          {
+            url: feedUrl.replace('http://', 'https://'),
+            headers: {
+              'User-Agent': userAgent,
+              ...(Authorization ? { Authorization } : {})
+            },
+            timeout: 60000
+          },
+          feedUrl,
+          useFeedCache
+        )
       } else {
         throw error
       }
@@ -334,122 +524,168 @@ export const parseAddByRSSPodcast = async (feedUrl: string, credentials?: string
       await removePodcastCredentials(feedUrl)
     }
 
-    const { episodes: parsedEpisodes, meta } = result
+    if (!result) {
+      return { addByRSSPodcastFeedUrl: feedUrl, id: feedUrl, isUnchanged: true }
+    }
+
+    const podcast = convertParsedMetaToPodcast(result.meta, feedUrl)
 
-    const title = meta.title && meta.title.trim()
-    if (!title) {
-      throw new Error('parseAddByRSSPodcast: Title not defined')
+    if (result.isDelta) {
+      return {
+        ...podcast,
+        isDelta: true,
+        addedEpisodes: convertParsedEpisodes(result.added),
+        updatedEpisodes: convertParsedEpisodes(result.updated),
+        removedEpisodeKeys: result.removed
+      }
     }
-    const podcast = {} as any
 
-    podcast.addByRSSPodcastFeedUrl = feedUrl
-    // The podcast.id must be set to the addByRSSPodcastFeedUrl for
-    // addDownloadedPodcastEpisode to work properly.
-    podcast.id = feedUrl
+    setAddByRSSPodcastEpisodes(podcast, convertParsedEpisodes(result.episodes))
 
-    podcast.description = meta.description && meta.description.trim()
+    await addAddByRSSPodcastFeedUrlLocally(feedUrl)
+    await addParsedAddByRSSPodcastLocally(podcast)
+    await commitParsedFeeds([feedUrl])
 
-    const feedLastUpdated = new Date(meta.lastBuildDate || meta.pubDate)
-    podcast.feedLastUpdated = isValidDate(feedLastUpdated) ? feedLastUpdated : new Date()
+    return podcast
+  } catch (error) {
+    errorLogger(_fileName, `parseAddByRSSPodcast ${feedUrl}`, error)
 
-    podcast.funding = meta.funding
-    podcast.guid = meta.guid
-    podcast.imageUrl = meta.imageURL?.trim()
-    podcast.isExplicit = meta.explicit
-    podcast.language = meta.language
-    podcast.linkUrl = meta.link
+    if (throwError) {
+      throw error
+    }
 
-    // TODO: always setting medium to "podcast" by default (until we replace with new parser).
-    podcast.medium = PV.Medium.podcast
+    const previouslySavedPodcast = await getAddByRSSPodcastLocally(feedUrl)
+    return previouslySavedPodcast
+  }
+}
 
-    podcast.sortableTitle = convertToSortableTitle(title)
-    podcast.subtitle = meta.subtitle && meta.subtitle.trim()
-    podcast.title = title
-    podcast.type = meta.type
-    podcast.value = meta.value
+const convertParsedMetaToPodcast = (meta: any, feedUrl: string) => {
+  const title = meta.title && meta.title.trim()
+  if (!title) {
+    throw new Error('parseAddByRSSPodcast: Title not defined')
+  }
+  const podcast = {} as any
 
-    const episodes = [] as any[]
+  podcast.addByRSSPodcastFeedUrl = feedUrl
+  // The podcast.id must be set to the addByRSSPodcastFeedUrl for
+  // addDownloadedPodcastEpisode to work properly.
+  podcast.id = feedUrl
 
-    /* If a feed has more video episodes than audio episodes, mark it as a hasVideo podcast. */
-    let videoCount = 0
-    let audioCount = 0
+  podcast.description = meta.description && meta.description.trim()
 
-    if (parsedEpisodes && Array.isArray(parsedEpisodes)) {
-      parsedEpisodes.sort((a, b) => (new Date(b.pubDate) as any) - (new Date(a.pubDate) as any))
+  const feedLastUpdated = new Date(meta.lastBuildDate || meta.pubDate)
+  podcast.feedLastUpdated = isValidDate(feedLastUpdated) ? feedLastUpdated : new Date()
 
-      if (parsedEpisodes[0]) {
-        const lastEpisodePubDate = new Date(parsedEpisodes[0].pubDate)
-        podcast.lastEpisodePubDate = isValidDate(lastEpisodePubDate) && lastEpisodePubDate
-        podcast.lastEpisodePubDate = podcast.lastEpisodePubDate || parsedEpisodes[0].published || new Date()
-        podcast.lastEpisodeTitle = parsedEpisodes[0].title && parsedEpisodes[0].title.trim()
-      }
+  podcast.funding = meta.funding
+  podcast.guid = meta.guid
+  podcast.imageUrl = meta.imageURL?.trim()
+  podcast.isExplicit = meta.explicit
+  podcast.language = meta.language
+  podcast.linkUrl = meta.link
 
-      for (const parsedEpisode of parsedEpisodes) {
-        const episode = {} as any
-        const enclosure = parsedEpisode.enclosure
-        if (!enclosure || !enclosure.url) continue
-
-        episode.addedByRSS = true
-
-        // The episode.mediaUrl is used as the unique id by the downloads service,
-        // and as the unique key by the FlatList component.
-        episode.id = downloadCustomFileNameId(enclosure.url)
-        episode.mediaUrl = enclosure.url
-
-        // TODO: add chapters support for podcasts added by RSS feed
-        // if (parsedEpisode.chapters) {
-        //   episode.chaptersUrl = parsedEpisode.chapters.url
-        //   episode.chaptersType = parsedEpisode.chapters.type
-        // }
-
-        episode.description = parsedEpisode?.summary?.trim() || parsedEpisode?.description?.trim()
-        episode.duration = parsedEpisode.duration ? parseInt(parsedEpisode.duration, 10) : 0
-        episode.episodeType = parsedEpisode.type
-        episode.funding = parsedEpisode.funding
-        episode.guid = parsedEpisode.guid
-        episode.imageUrl = parsedEpisode.image?.trim()
-        episode.isExplicit = parsedEpisode.explicit
-        episode.isPublic = true
-        episode.linkUrl = parsedEpisode.link
-        episode.mediaType = enclosure.type
-
-        const pubDate = new Date(parsedEpisode.pubDate)
-        episode.pubDate = isValidDate(pubDate) ? pubDate : new Date()
-
-        episode.soundbite = parsedEpisode.soundbite
-        episode.subtitle = parsedEpisode.subtitle && parsedEpisode.subtitle.trim()
-        episode.title = parsedEpisode.title && parsedEpisode.title.trim()
-        episode.value = parsedEpisode.value
-
-        if (parsedEpisode.mediaType && parsedEpisode.mediaType.indexOf('video') >= 0) {
-          videoCount++
-        } else {
-          audioCount++
-        }
+  // TODO: always setting medium to "podcast" by default (until we replace with new parser).
+  podcast.medium = PV.Medium.podcast
 
-        episodes.push(episode)
-      }
+  podcast.sortableTitle = convertToSortableTitle(title)
+  podcast.subtitle = meta.subtitle && meta.subtitle.trim()
+  podcast.title = title
+  podcast.type = meta.type
+  podcast.value = meta.value
+
+  return podcast
+}
+
+const convertParsedEpisodes = (parsedEpisodes: any[]) => {
+  const episodes = [] as any[]
+
+  if (parsedEpisodes && Array.isArray(parsedEpisodes)) {
+    for (const parsedEpisode of parsedEpisodes) {
+      const episode = {} as any
+      const enclosure = parsedEpisode.enclosure
+      if (!enclosure || !enclosure.url) continue
+
+      episode.addedByRSS = true
+
+      // The episode.mediaUrl is used as the unique id by the downloads service,
+      // and as the unique key by the FlatList component.
+      episode.id = downloadCustomFileNameId(enclosure.url)
+      episode.mediaUrl = enclosure.url
+
+      // TODO: add chapters support for podcasts added by RSS feed
+      // if (parsedEpisode.chapters) {
+      //   episode.chaptersUrl = parsedEpisode.chapters.url
+      //   episode.chaptersType = parsedEpisode.chapters.type
+      // }
+
+      episode.description = parsedEpisode?.summary?.trim() || parsedEpisode?.description?.trim()
+      episode.duration = parsedEpisode.duration ? parseInt(parsedEpisode.duration, 10) : 0
+      episode.episodeType = parsedEpisode.type
+      episode.funding = parsedEpisode.funding
+      episode.guid = parsedEpisode.guid
+      episode.imageUrl = parsedEpisode.image?.trim()
+      episode.isExplicit = parsedEpisode.explicit
+      episode.isPublic = true
+      episode.linkUrl = parsedEpisode.link
+      episode.mediaType = enclosure.type
+
+      const pubDate = new Date(parsedEpisode.pubDate)
+      episode.pubDate = isValidDate(pubDate) ? pubDate : new Date()
+
+      episode.soundbite = parsedEpisode.soundbite
+      episode.subtitle = parsedEpisode.subtitle && parsedEpisode.subtitle.trim()
+      episode.title = parsedEpisode.title && parsedEpisode.title.trim()
+      episode.value = parsedEpisode.value
+
+      episodes.push(episode)
     }
+  }
 
-    episodes.sort((a, b) => (new Date(b.pubDate) as any) - (new Date(a.pubDate) as any))
+  return episodes
+}
 
-    podcast.episodes = episodes
-    podcast.hasVideo = videoCount > audioCount
+const setAddByRSSPodcastEpisodes = (podcast: any, episodes: any[]) => {
+  episodes.sort((a, b) => (new Date(b.pubDate) as any) - (new Date(a.pubDate) as any))
 
-    await addAddByRSSPodcastFeedUrlLocally(feedUrl)
-    await addParsedAddByRSSPodcastLocally(podcast)
+  if (episodes[0]) {
+    podcast.lastEpisodePubDate = episodes[0].pubDate
+    podcast.lastEpisodeTitle = episodes[0].title
+  }
 
-    return podcast
-  } catch (error) {
-    errorLogger(_fileName, `parseAddByRSSPodcast ${feedUrl}`, error)
+  /* If a feed has more video episodes than audio episodes, mark it as a hasVideo podcast. */
+  let videoCount = 0
+  let audioCount = 0
 
-    if (throwError) {
-      throw error
+  for (const episode of episodes) {
+    if (episode.mediaType && episode.mediaType.indexOf('video') >= 0) {
+      videoCount++
+    } else {
+      audioCount++
     }
-
-    const previouslySavedPodcast = await getAddByRSSPodcastLocally(feedUrl)
-    return previouslySavedPodcast
   }
+
+  podcast.episodes = episodes
+  podcast.hasVideo = videoCount > audioCount
+}
+
+/*
+  Builds the refreshed podcast from the saved one and a delta from parseAddByRSSPodcast,
+  without converting its unchanged episodes again.
+*/
+const applyAddByRSSPodcastDelta = (localPodcast: any, delta: any) => {
+  const { addedEpisodes, updatedEpisodes, removedEpisodeKeys, isDelta, ...podcast } = delta
+
+  const replacedKeys = new Set([
+    ...removedEpisodeKeys,
+    ...addedEpisodes.map(getAddByRSSEpisodeKey),
+    ...updatedEpisodes.map(getAddByRSSEpisodeKey)
+  ])
+  const episodes = (localPodcast.episodes || []).filter(
+    (episode: any) => !replacedKeys.has(getAddByRSSEpisodeKey(episode))
+  )
+
+  setAddByRSSPodcastEpisodes(podcast, [...episodes, ...addedEpisodes, ...updatedEpisodes])
+
+  return podcast
 }
 
 const addParsedAddByRSSPodcastLocally = async (parsedPodcast: any) => {
@@ -462,7 +698,7 @@ const addParsedAddByRSSPodcastLocally = async (parsedPodcast: any) => {
   } else {
     rssPodcasts.push(parsedPodcast)
   }
-  await setAddByRSSPodcastsLocally(rssPodcasts)
+  await setAddByRSSPodcastsLocally(rssPodcasts, [parsedPodcast])
 }
 
 export const addManyAddByRSSPodcastFeedUrlsOnServer = async (addByRSSPodcastFeedUrls: string[]) => {
@@ -514,8 +750,9 @@ export const removeAddByRSSPodcast = async (feedUrl: string) => {
 
   let podcasts = await getAddByRSSPodcastsLocally()
   podcasts = podcasts.filter((x: any) => x.addByRSSPodcastFeedUrl !== feedUrl)
-  await setAddByRSSPodcastsLocally(podcasts)
+  await setAddByRSSPodcastsLocally(podcasts, [])
   await removePodcastCredentials(feedUrl)
+  await getNativeFeedParser()?.clearFeedCache(feedUrl)
   let addByRSSPodcastFeedUrls = await getAddByRSSPodcastFeedUrlsLocally()
   addByRSSPodcastFeedUrls = addByRSSPodcastFeedUrls.filter((x: string) => x !== feedUrl)
   await setAddByRSSPodcastFeedUrlsLocally(addByRSSPodcastFeedUrls)
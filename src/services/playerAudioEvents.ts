@@ -5,6 +5,7 @@ import { getGlobal } from 'reactn'
 import { cleanVoiceCommandQuery, voicePlayNextQueuedItem, voicePlayNextSubscribedPodcast,
   voicePlayNowPlayingItem, voicePlayPodcastFromSearchAPI } from '../lib/voiceCommandHelpers'
 import { debugLogger, errorLogger } from '../lib/logger'
+import { flushPlaybackStateBuffer, setPlaybackStateBufferPlaying } from '../lib/playbackStateBuffer'
 import { PV } from '../resources'
 import { downloadedEpisodeMarkForDeletion } from '../state/actions/downloads'
 import {
@@ -135,6 +136,7 @@ export const audioHandleActiveTrackChanged = (lastTrack: any, lastPosition: numb
     ;(async () => {
       await audioResetHistoryItemActiveTrackChanged(lastTrack, lastPosition)
       await audioRemovePreviousPrimaryQueueItemTracks()
+      await flushPlaybackStateBuffer()
     })()
   }, 0)
 }
@@ -219,8 +221,11 @@ module.exports = async () => {
             /* Do not listen for State.Stopped. See audioLoadNowPlayingItem for more. */
             if (x.state === State.Paused) {
               const skipSetNowPlaying = true
-              playerUpdateUserPlaybackPosition(skipSetNowPlaying)
+              const shouldAwait = true
+              await playerUpdateUserPlaybackPosition(skipSetNowPlaying, shouldAwait)
+              await setPlaybackStateBufferPlaying(false)
             } else if (x.state === State.Playing) {
+              setPlaybackStateBufferPlaying(true)
               const rate = await getPlaybackSpeed()
               PVAudioPlayer.setRate(rate)
             } else if (x.state === State.Ready) {
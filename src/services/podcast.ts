@@ -1,6 +1,7 @@
 import AsyncStorage from '@react-native-community/async-storage'
 import { getAuthorityFeedUrlFromArray, Podcast } from 'podverse-shared'
 import { setItemWithStorageCapacityCheck } from '../lib/asyncStorage'
+import { getLargeItem } from '../lib/largeValueStorage'
 import { setDownloadedEpisodeLimit } from '../lib/downloadedEpisodeLimiter'
 import { getDownloadedPodcast, removeDownloadedPodcast } from '../lib/downloadedPodcast'
 import { errorLogger } from '../lib/logger'
@@ -180,7 +181,7 @@ export const toggleSubscribeToPodcast = async (id: string, skipRequestReview = f
   const [isLoggedIn, itemsString, addByRSSPodcastsString, globalDownloadedEpisodeLimitDefault] = await Promise.all([
     checkIfLoggedIn(),
     AsyncStorage.getItem(PV.Keys.SUBSCRIBED_PODCAST_IDS),
-    AsyncStorage.getItem(PV.Keys.ADD_BY_RSS_PODCASTS),
+    getLargeItem(PV.Keys.ADD_BY_RSS_PODCASTS),
     AsyncStorage.getItem(PV.Keys.DOWNLOADED_EPISODE_LIMIT_GLOBAL_DEFAULT)
   ])
   let isUnsubscribing = false
@@ -1,5 +1,6 @@
 import AsyncStorage from '@react-native-community/async-storage'
 import { NowPlayingItem } from 'podverse-shared'
+import { NativeModules, Platform } from 'react-native'
 import TrackPlayer, { RepeatMode } from 'react-native-track-player'
 import { errorLogger } from '../lib/logger'
 import { PV } from '../resources'
@@ -10,6 +11,15 @@ import { request } from './request'
 
 const _fileName = 'src/services/queue.ts'
 
+/*
+  On Android the local queue is stored natively by PVQueue, which adds, removes
+  and moves single items instead of rewriting the whole QUEUE_ITEMS string.
+*/
+export const getNativeQueue = () => {
+  const { PVQueue } = NativeModules
+  return Platform.OS === 'android' && PVQueue ? PVQueue : null
+}
+
 export const addQueueItemLast = async (item: NowPlayingItem) => {
   const useServerData = await checkIfShouldUseServerData()
   const results = useServerData ? await addQueueItemLastOnServer(item) : await addQueueItemLastLocally(item)
@@ -29,6 +39,13 @@ export const getQueueItems = async () => {
 
 export const getNextFromQueue = async () => {
   const useServerData = await checkIfShouldUseServerData()
+  const PVQueue = getNativeQueue()
+
+  if (!useServerData && PVQueue) {
+    const itemString = await PVQueue.popNext()
+    return itemString ? JSON.parse(itemString) : undefined
+  }
+
   let item = await getNextFromQueueLocally()
 
   if (useServerData) {
@@ -65,6 +82,13 @@ export const setAllQueueItems = async (items: NowPlayingItem[]) => {
 }
 
 const addQueueItemLastLocally = async (item: NowPlayingItem) => {
+  const PVQueue = getNativeQueue()
+  if (PVQueue) {
+    await PVQueue.addLast(JSON.stringify(item))
+    await playerSyncPlayerWithQueue()
+    return getQueueItemsLocally()
+  }
+
   const items = await getQueueItemsLocally()
   const filteredItems = filterItemFromQueueItems(items, item)
   filteredItems.push(item)
@@ -79,6 +103,13 @@ const addQueueItemLastOnServer = async (item: NowPlayingItem) => {
 }
 
 const addQueueItemNextLocally = async (item: NowPlayingItem) => {
+  const PVQueue = getNativeQueue()
+  if (PVQueue) {
+    await PVQueue.addNext(JSON.stringify(item))
+    await playerSyncPlayerWithQueue()
+    return getQueueItemsLocally()
+  }
+
   const items = await getQueueItemsLocally()
   const filteredItems = filterItemFromQueueItems(items, item)
   filteredItems.unshift(item)
@@ -164,7 +195,8 @@ const getNextFromQueueFromServer = async () => {
 
 export const getQueueItemsLocally = async () => {
   try {
-    const itemsString = await AsyncStorage.getItem(PV.Keys.QUEUE_ITEMS)
+    const PVQueue = getNativeQueue()
+    const itemsString = PVQueue ? await PVQueue.getItems() : await AsyncStorage.getItem(PV.Keys.QUEUE_ITEMS)
     return itemsString ? JSON.parse(itemsString) : []
   } catch (error) {
     return []
@@ -199,6 +231,12 @@ const getQueueItemsFromServer = async () => {
 }
 
 const removeQueueItemLocally = async (item: NowPlayingItem) => {
+  const PVQueue = getNativeQueue()
+  if (PVQueue) {
+    await PVQueue.removeItem(JSON.stringify(item))
+    return getQueueItemsLocally()
+  }
+
   const items = await getQueueItemsLocally()
   const filteredItems = filterItemFromQueueItems(items, item)
   return setAllQueueItemsLocally(filteredItems)
@@ -232,11 +270,35 @@ const removeQueueItemOnServer = async (item: NowPlayingItem) => {
 
 export const setAllQueueItemsLocally = async (items: NowPlayingItem[]) => {
   if (Array.isArray(items)) {
-    await AsyncStorage.setItem(PV.Keys.QUEUE_ITEMS, JSON.stringify(items))
+    const PVQueue = getNativeQueue()
+    if (PVQueue) {
+      await PVQueue.setAllItems(JSON.stringify(items))
+    } else {
+      await AsyncStorage.setItem(PV.Keys.QUEUE_ITEMS, JSON.stringify(items))
+    }
   }
   return items
 }
 
+/*
+  Moves item in front of beforeItem, or to the end of the queue when there is no beforeItem.
+  items is the queue after the move, which is written as a whole when the queue isn't stored natively.
+*/
+export const moveQueueItemLocally = async (
+  item: NowPlayingItem,
+  beforeItem: NowPlayingItem | undefined,
+  items: NowPlayingItem[]
+) => {
+  const PVQueue = getNativeQueue()
+  if (PVQueue) {
+    await PVQueue.moveItem(JSON.stringify(item), beforeItem ? JSON.stringify(beforeItem) : null)
+  } else {
+    await setAllQueueItemsLocally(items)
+  }
+  await playerSyncPlayerWithQueue()
+  return items
+}
+
 export type QueueRepeatModeMusic = 'off' | 'track' | 'queue'
 
 export const getQueueRepeatModeMusic = async () => {
@@ -1,8 +1,8 @@
-import AsyncStorage from '@react-native-community/async-storage'
 import { unionBy } from 'lodash'
 import { NowPlayingItem } from 'podverse-shared'
 import { getGlobal } from 'reactn'
 import { errorLogger } from '../lib/logger'
+import { getBufferedItem, setBufferedItem } from '../lib/playbackStateBuffer'
 import { PV } from '../resources'
 import PVEventEmitter from '../services/eventEmitter'
 import { checkIfShouldUseServerData, getBearerToken } from './auth'
@@ -244,7 +244,7 @@ export const filterItemFromHistoryItems = (items: NowPlayingItem[] = [], item: N
 
 export const getHistoryItemsLocally = async () => {
   try {
-    const itemsString = await AsyncStorage.getItem(PV.Keys.HISTORY_ITEMS)
+    const itemsString = await getBufferedItem(PV.Keys.HISTORY_ITEMS)
     const userHistoryItems = itemsString ? JSON.parse(itemsString) : []
     return {
       userHistoryItems,
@@ -345,7 +345,7 @@ export const combineLocalHistoryItemsWithServerMetaHistoryItems = async (serverM
 
 export const getHistoryItemsIndexLocally = async () => {
   try {
-    const itemsString = await AsyncStorage.getItem(PV.Keys.HISTORY_ITEMS_INDEX)
+    const itemsString = await getBufferedItem(PV.Keys.HISTORY_ITEMS_INDEX)
     const historyItemsIndex = itemsString ? JSON.parse(itemsString) : getDefaultHistoryItemsIndex()
     return historyItemsIndex
   } catch (error) {
@@ -414,7 +414,7 @@ export const setAllHistoryItemsLocally = async (items: NowPlayingItem[]) => {
   items = items.filter((item: NowPlayingItem) => !!item?.episodeId)
 
   if (Array.isArray(items)) {
-    await AsyncStorage.setItem(PV.Keys.HISTORY_ITEMS, JSON.stringify(items))
+    await setBufferedItem(PV.Keys.HISTORY_ITEMS, JSON.stringify(items))
     const newHistoryItemsIndex = generateHistoryItemsIndex(items)
     await setHistoryItemsIndexLocally(newHistoryItemsIndex)
   }
@@ -424,7 +424,7 @@ export const setAllHistoryItemsLocally = async (items: NowPlayingItem[]) => {
 
 export const setHistoryItemsIndexLocally = async (historyItemsIndex: any) => {
   historyItemsIndex = historyItemsIndex || getDefaultHistoryItemsIndex()
-  await AsyncStorage.setItem(PV.Keys.HISTORY_ITEMS_INDEX, JSON.stringify(historyItemsIndex))
+  await setBufferedItem(PV.Keys.HISTORY_ITEMS_INDEX, JSON.stringify(historyItemsIndex))
 }
 
 // Using a get helper since I was running into issues with the const object getting modified.
@@ -1,6 +1,6 @@
-import AsyncStorage from '@react-native-community/async-storage'
 import { checkIfIdMatchesClipIdOrEpisodeIdOrAddByUrl, convertToNowPlayingItem, NowPlayingItem } from 'podverse-shared'
 import { errorLogger } from '../lib/logger'
+import { getBufferedItem, removeBufferedItem, setBufferedItem } from '../lib/playbackStateBuffer'
 import { getDownloadedEpisode } from '../lib/downloadedPodcast'
 import { PV } from '../resources'
 import { checkIfShouldUseServerData, getBearerToken } from './auth'
@@ -30,7 +30,7 @@ export const clearNowPlayingItem = async () => {
 
 export const getNowPlayingItemLocally = async () => {
   try {
-    const itemString = await AsyncStorage.getItem(PV.Keys.NOW_PLAYING_ITEM)
+    const itemString = await getBufferedItem(PV.Keys.NOW_PLAYING_ITEM)
     const parsedObject = itemString ? JSON.parse(itemString) : {}
     // confirm a valid object is found in storage before returning
     return parsedObject.clipId || parsedObject.episodeId ? parsedObject : null
@@ -72,7 +72,7 @@ export const getNowPlayingItemOnServer = async () => {
 export const setNowPlayingItemLocally = async (item: NowPlayingItem | null, playbackPosition: number) => {
   if (item) {
     item.userPlaybackPosition = (playbackPosition && Math.floor(playbackPosition)) || 0
-    await AsyncStorage.setItem(PV.Keys.NOW_PLAYING_ITEM, JSON.stringify(item))
+    await setBufferedItem(PV.Keys.NOW_PLAYING_ITEM, JSON.stringify(item))
   }
 }
 
@@ -108,7 +108,7 @@ export const setNowPlayingItemOnServer = async (item: NowPlayingItem | null, pla
 
 export const clearNowPlayingItemLocally = async () => {
   try {
-    await AsyncStorage.removeItem(PV.Keys.NOW_PLAYING_ITEM)
+    await removeBufferedItem(PV.Keys.NOW_PLAYING_ITEM)
   } catch (error) {
     errorLogger(_fileName, 'clearNowPlayingItemLocally', error)
   }
@@ -340,23 +340,36 @@ export const removeDownloadingEpisode = async (episodeId: string) => {
   })
 }
 
+export type DownloadProgress = {
+  bytesTotal: string
+  bytesWritten: string
+  episodeId: string
+  percent: number
+}
+
 export const updateDownloadProgress = (
   downloadTaskId: string,
   percent: number,
   bytesWritten: string,
   bytesTotal: string
 ) => {
+  updateDownloadsProgress([{ bytesTotal, bytesWritten, episodeId: downloadTaskId, percent }])
+}
+
+// Updates the progress of several downloads with a single setGlobal,
+// like the batches of progress reported by the native download engine.
+export const updateDownloadsProgress = (downloadsProgress: DownloadProgress[]) => {
   const { downloadsActive, downloadsArrayInProgress } = getGlobal()
 
-  for (const task of downloadsArrayInProgress) {
-    if (task.episodeId === downloadTaskId) {
+  for (const { bytesTotal, bytesWritten, episodeId, percent } of downloadsProgress) {
+    const task = downloadsArrayInProgress.find((x: DownloadTaskState) => x.episodeId === episodeId)
+    if (task) {
       task.percent = percent
       task.bytesWritten = bytesWritten
       task.bytesTotal = bytesTotal
       task.completed = false
       task.status = DownloadStatus.DOWNLOADING
-      downloadsActive[downloadTaskId] = true
-      break
+      downloadsActive[episodeId] = true
     }
   }
 
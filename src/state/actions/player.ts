@@ -10,7 +10,7 @@ import {
 import TrackPlayer, { State } from 'react-native-track-player'
 import { getGlobal, setGlobal } from 'reactn'
 import { errorLogger } from '../../lib/logger'
-import { getEpisodeProxyTranscript, getParsedTranscript } from '../../lib/transcriptHelpers'
+import { emptyParsedTranscript, getEpisodeProxyTranscript, getParsedTranscript } from '../../lib/transcriptHelpers'
 import { PV } from '../../resources'
 import PVEventEmitter from '../../services/eventEmitter'
 import { checkIfLiveItemIsLive } from '../../services/liveItem'
@@ -419,7 +419,7 @@ export const handleEnrichingPlayerState = (item: NowPlayingItem) => {
 
 const enrichParsedTranscript = (item: NowPlayingItem) => {
   if (item?.episodeTranscript && item.episodeTranscript[0] && item.episodeTranscript[0].url) {
-    setGlobal({ parsedTranscript: [] }, async () => {
+    setGlobal({ parsedTranscript: emptyParsedTranscript }, async () => {
       try {
         if (item?.episodeTranscript && item.episodeTranscript[0] && item.episodeTranscript[0].url) {
           let parsedTranscript = null
@@ -1,4 +1,5 @@
 import { NowPlayingItem } from 'podverse-shared'
+import { NativeEventEmitter } from 'react-native'
 import { getGlobal, setGlobal } from 'reactn'
 import { PV } from '../../resources'
 import PVEventEmitter from '../../services/eventEmitter'
@@ -8,7 +9,9 @@ import {
   addQueueItemNext as addQueueItemNextService,
   addQueueItemToServer as addQueueItemToServerService,
   getQueueItems as getQueueItemsService,
+  getNativeQueue,
   getQueueItemsLocally,
+  moveQueueItemLocally as moveQueueItemLocallyService,
   removeQueueItem as removeQueueItemService,
   setAllQueueItems as setAllQueueItemsService,
   setQueueRepeatModeMusic as setQueueRepeatModeMusicService,
@@ -18,6 +21,34 @@ import {
   setRNTPRepeatMode
 } from '../../services/queue'
 
+/*
+  The native queue reports every change. Items popped by getNextFromQueue
+  aren't otherwise reflected in global state, so refresh it for those.
+*/
+const PVQueue = getNativeQueue()
+if (PVQueue) {
+  new NativeEventEmitter(PVQueue).addListener('PVQueueChanged', ({ reason }) => {
+    if (reason === 'popNext') {
+      ;(async () => {
+        const globalState = getGlobal()
+        const results = await getQueueItemsLocally()
+
+        setGlobal({
+          session: {
+            ...globalState.session,
+            userInfo: {
+              ...globalState.session.userInfo,
+              queueItems: results
+            }
+          }
+        })
+
+        PVEventEmitter.emit(PV.Events.QUEUE_HAS_UPDATED)
+      })()
+    }
+  })
+}
+
 export const addQueueItemLast = async (queueItem: NowPlayingItem) => {
   const globalState = getGlobal()
   const results = await addQueueItemLastService(queueItem)
@@ -127,6 +158,27 @@ export const setAllQueueItemsLocally = async (queueItems: NowPlayingItem[]) => {
   return results
 }
 
+export const moveQueueItemLocally = async (
+  queueItem: NowPlayingItem,
+  beforeQueueItem: NowPlayingItem | undefined,
+  queueItems: NowPlayingItem[]
+) => {
+  const globalState = getGlobal()
+  const results = await moveQueueItemLocallyService(queueItem, beforeQueueItem, queueItems)
+
+  setGlobal({
+    session: {
+      ...globalState.session,
+      userInfo: {
+        ...globalState.session.userInfo,
+        queueItems: results
+      }
+    }
+  })
+
+  return results
+}
+
 export const setQueueRepeatModeMusic = async (repeatMode: QueueRepeatModeMusic) => {
   const globalState = getGlobal()
   await setQueueRepeatModeMusicService(repeatMode)
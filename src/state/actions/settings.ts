@@ -1,5 +1,6 @@
 import AsyncStorage from '@react-native-community/async-storage'
 import { getGlobal, setGlobal } from 'reactn'
+import { multiGetBatched } from '../../lib/asyncStorage'
 import { PV } from '../../resources'
 import { getCustomRSSParallelParserLimit } from '../../services/customRSSParallelParserLimit'
 import {
@@ -39,45 +40,47 @@ export const settingsRunEveryStartup = async () => {
 
 }
 
+// Read together in one batched call on startup
+export const startupSettingsKeys = [
+  PV.Keys.CENSOR_NSFW_TEXT,
+  PV.Keys.CUSTOM_API_DOMAIN,
+  PV.Keys.CUSTOM_API_DOMAIN_ENABLED,
+  PV.Keys.CUSTOM_WEB_DOMAIN,
+  PV.Keys.CUSTOM_WEB_DOMAIN_ENABLED,
+  PV.Keys.ERROR_REPORTING_ENABLED,
+  PV.Keys.HIDE_COMPLETED,
+  PV.Keys.HIDE_DIVIDERS_IN_LISTS,
+  PV.Keys.NEW_EPISODES_BADGES_HIDE,
+  PV.Keys.PLAYER_JUMP_BACKWARDS,
+  PV.Keys.PLAYER_JUMP_FORWARDS,
+  PV.Keys.PLAYER_ADD_CURRENT_ITEM_NEXT_IN_QUEUE,
+  PV.Keys.PODCASTS_GRID_VIEW_ENABLED,
+  PV.Keys.REFRESH_SUBSCRIPTIONS_ON_LAUNCH
+]
+
 export const initializeSettings = async () => {
-  const [
-    censorNSFWText,
-    customAPIDomain,
-    customAPIDomainEnabled,
-    customWebDomain,
-    customWebDomainEnabled,
-    errorReportingEnabled,
-    hideCompleted,
-    hideDividersInLists,
-    hideNewEpisodesBadges,
-    urlsAPI,
-    urlsWeb,
-    jumpBackwardsTime,
-    jumpForwardsTime,
-    addCurrentItemNextInQueue,
-    podcastsGridViewEnabled,
-    customRSSParallelParserLimit,
-    refreshSubscriptionsOnLaunch
-  ] = await Promise.all([
-    AsyncStorage.getItem(PV.Keys.CENSOR_NSFW_TEXT),
-    AsyncStorage.getItem(PV.Keys.CUSTOM_API_DOMAIN),
-    AsyncStorage.getItem(PV.Keys.CUSTOM_API_DOMAIN_ENABLED),
-    AsyncStorage.getItem(PV.Keys.CUSTOM_WEB_DOMAIN),
-    AsyncStorage.getItem(PV.Keys.CUSTOM_WEB_DOMAIN_ENABLED),
-    AsyncStorage.getItem(PV.Keys.ERROR_REPORTING_ENABLED),
-    AsyncStorage.getItem(PV.Keys.HIDE_COMPLETED),
-    AsyncStorage.getItem(PV.Keys.HIDE_DIVIDERS_IN_LISTS),
-    AsyncStorage.getItem(PV.Keys.NEW_EPISODES_BADGES_HIDE),
+  const [settings, urlsAPI, urlsWeb, customRSSParallelParserLimit] = await Promise.all([
+    multiGetBatched(startupSettingsKeys),
     PV.URLs.api(),
     PV.URLs.web(),
-    AsyncStorage.getItem(PV.Keys.PLAYER_JUMP_BACKWARDS),
-    AsyncStorage.getItem(PV.Keys.PLAYER_JUMP_FORWARDS),
-    AsyncStorage.getItem(PV.Keys.PLAYER_ADD_CURRENT_ITEM_NEXT_IN_QUEUE),
-    AsyncStorage.getItem(PV.Keys.PODCASTS_GRID_VIEW_ENABLED),
-    getCustomRSSParallelParserLimit(),
-    AsyncStorage.getItem(PV.Keys.REFRESH_SUBSCRIPTIONS_ON_LAUNCH)
+    getCustomRSSParallelParserLimit()
   ])
 
+  const censorNSFWText = settings[PV.Keys.CENSOR_NSFW_TEXT]
+  const customAPIDomain = settings[PV.Keys.CUSTOM_API_DOMAIN]
+  const customAPIDomainEnabled = settings[PV.Keys.CUSTOM_API_DOMAIN_ENABLED]
+  const customWebDomain = settings[PV.Keys.CUSTOM_WEB_DOMAIN]
+  const customWebDomainEnabled = settings[PV.Keys.CUSTOM_WEB_DOMAIN_ENABLED]
+  const errorReportingEnabled = settings[PV.Keys.ERROR_REPORTING_ENABLED]
+  const hideCompleted = settings[PV.Keys.HIDE_COMPLETED]
+  const hideDividersInLists = settings[PV.Keys.HIDE_DIVIDERS_IN_LISTS]
+  const hideNewEpisodesBadges = settings[PV.Keys.NEW_EPISODES_BADGES_HIDE]
+  const jumpBackwardsTime = settings[PV.Keys.PLAYER_JUMP_BACKWARDS]
+  const jumpForwardsTime = settings[PV.Keys.PLAYER_JUMP_FORWARDS]
+  const addCurrentItemNextInQueue = settings[PV.Keys.PLAYER_ADD_CURRENT_ITEM_NEXT_IN_QUEUE]
+  const podcastsGridViewEnabled = settings[PV.Keys.PODCASTS_GRID_VIEW_ENABLED]
+  const refreshSubscriptionsOnLaunch = settings[PV.Keys.REFRESH_SUBSCRIPTIONS_ON_LAUNCH]
+
   setGlobal({
     censorNSFWText,
     customRSSParallelParserLimit,
@@ -1,5 +1,6 @@
-import { Episode, NowPlayingItem, TranscriptRow } from 'podverse-shared'
+import { Episode, NowPlayingItem } from 'podverse-shared'
 import 'reactn'
+import { ParsedTranscript } from '../lib/transcriptHelpers'
 import { BannerInfo, GlobalTheme, UserInfo, TempMediaRef } from '../resources/Interfaces'
 import { AutoPlayEpisodesFromPodcast } from '../resources/Queue'
 import { AutoQueueSettingsPosition, QueueRepeatModeMusic } from '../services/queue'
@@ -35,7 +36,7 @@ declare module 'reactn/default' {
     overlayAlert: {
       shouldShowAlert: boolean
     }
-    parsedTranscript: TranscriptRow[] | null
+    parsedTranscript: ParsedTranscript | null
     clipIntervalActive: boolean
     currentChapter: any
     currentChapters: any